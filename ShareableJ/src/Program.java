@@ -273,11 +273,11 @@ public class Program {
                 "[{B:4,\"JA.C\":2,D:43,F:4,\"JE.C\":3,G:22},"+
                 "{B:7,\"JA.C\":4,D:29,F:7,\"JE.C\":2,G:31}]");
             CheckResults(8, 6, "select from JA left join JE on B=F",
-    "[{B:4,\"JA.C\":2,D:43,F:4,\"JE.C\":3,G:22},{B:7,\"JA.C\":4,D:29,F:7,\"JE.C\":2,G:31}," +
-    "{B:8,\"JA.C\":3,D:82}]");
+    "[{B:4,\"JA.C\":2,D:43,F:4,\"JE.C\":3,G:22},{B:8,\"JA.C\":3,D:82}," +
+    "{B:7,\"JA.C\":4,D:29,F:7,\"JE.C\":2,G:31}]");
             CheckResults(8, 7, "select from JA right join JE on B=F",
-    "[{B:4,\"JA.C\":2,D:43,F:4,\"JE.C\":3,G:22},{B:7,\"JA.C\":4,D:29,F:7,\"JE.C\":2,G:31}," +
-    "{F:11,\"JE.C\":4,G:10}]");
+    "[{B:4,\"JA.C\":2,D:43,F:4,\"JE.C\":3,G:22},{F:11,\"JE.C\":4,G:10}," +
+    "{B:7,\"JA.C\":4,D:29,F:7,\"JE.C\":2,G:31}]");
             CheckResults(8, 8, "select from JA full join JE on B=F",
     "[{B:4,\"JA.C\":2,D:43,F:4,\"JE.C\":3,G:22},{B:7,\"JA.C\":4,D:29,F:7,\"JE.C\":2,G:31}," +
     "{B:8,\"JA.C\":3,D:82},{F: 11,\"JE.C\":4,G:10}]");
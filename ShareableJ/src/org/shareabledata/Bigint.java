@@ -89,7 +89,7 @@ public class Bigint implements Comparable {
                 v.add(b);
                 iVal >>= 8;
             }
-            if (iVal == -1 && b > 0) 
+            if (iVal == -1 && b >= 0) 
                 v.add((byte) -1);
             if (iVal==0 && b<0)
                 v.add((byte)0);
@@ -148,9 +148,15 @@ public class Bigint implements Comparable {
                 r = 0;
             }
         }
+        if (getSign() && c.length > 0 && c[0] < 0) // e.g. -128: needs another byte
+        {
+            var d = new byte[c.length + 1];
+            System.arraycopy(c, 0, d, 1, c.length);
+            c = d;
+        }
         return new Bigint(c);
     }
-    
+
     public Bigint Abs()
     {
         return (getSign())? Negate() : this;
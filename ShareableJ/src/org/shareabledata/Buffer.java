@@ -29,4 +29,30 @@ public class Buffer {
         len = n;
         pos = 0;
     }
+    /// <summary>
+    /// The largest frame size a connection can agree (see Types.FrameSize).
+    /// Until it does, its frames are Size bytes.
+    /// </summary>
+    public static final int MaxSize = 65536;
+    /// <summary>
+    /// The number of bytes in the length header of a frame of the given size.
+    /// Each holds 7 bits of the length, high part first, so frames of Size
+    /// bytes have the 2-byte header they always had.
+    /// </summary>
+    static int Head(int size)
+    {
+        return (size <= 1 << 14) ? 2 : 3;
+    }
+    static void PutHead(byte[] b,int off,int h,int n)
+    {
+        for (var i = h - 1; i >= 0; i--, n >>= 7)
+            b[off + i] = (byte)(n & 0x7f);
+    }
+    static int GetHead(byte[] b,int off,int h)
+    {
+        var n = 0;
+        for (var i = 0; i < h; i++)
+            n = (n << 7) + (b[off + i] & 0x7f);
+        return n;
+    }
 }
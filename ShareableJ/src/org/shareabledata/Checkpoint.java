@@ -0,0 +1,389 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * A checkpoint of a database file, so that Open need not replay the whole log.
+ * The checkpoint file (the database file name with .ckpt added) holds,
+ * as of a log position P:
+ *   the log positions of the definitions (tables, columns, indexes, alters
+ *   and drops) before P, which are replayed to give the catalog,
+ *   the rows of each table, and the entries of each index,
+ * followed by a CRC32 of the contents.
+ * The entries of an index are not decoded when the checkpoint is restored:
+ * the index is only built when something first uses it (see SIndex.Rows),
+ * so indexes that are never used cost only their bytes. A checkpoint is valid only if the
+ * log still has the bytes it was taken from (see Fingerprint), so if it is
+ * missing, damaged or stale Open simply replays the log as before.
+ * Checkpoints are taken from an installed SDatabase, which is immutable,
+ * so they are written by a background thread without holding any lock
+ * that a committing transaction needs.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class Checkpoint {
+    public static long interval = 64L*1024*1024; // log bytes between checkpoints
+    public static boolean lazyIndexes = true; // false: build every index in Restore
+    static final int magic = 0x53434B50, version = 2;
+    static final AtomicInteger restored = new AtomicInteger(), // indexes restored
+            built = new AtomicInteger(); // and how many of them have been built
+    static final ExecutorService background =
+            Executors.newSingleThreadExecutor(r -> {
+                var t = new Thread(r, "Checkpoint");
+                t.setDaemon(true);
+                return t;
+            });
+    final LogFile log;
+    public final File file;
+    final Object writing = new Object(); // one checkpoint at a time
+    boolean running = false; // a background checkpoint has been started
+    long pos = 0; // the position of the latest checkpoint
+    SDatabase schema = null; // the catalog alone as of pos
+    long[] defs = new long[0]; // the positions of its definitions
+    Checkpoint(LogFile f,File df)
+    {
+        log = f;
+        file = new File(df.getPath() + ".ckpt");
+    }
+    /// <summary>
+    /// Called after a commit: start a background checkpoint
+    /// if the log has grown by interval since the last one
+    /// </summary>
+    public void Maybe(SDatabase db)
+    {
+        synchronized (this)
+        {
+            if (running || db.curpos - pos < interval)
+                return;
+            running = true;
+        }
+        background.execute(() -> {
+            try {
+                Write(SDatabase.Installed(db.name));
+            } catch (Exception e) {
+                // the next commit will try again
+            } finally {
+                synchronized (this) { running = false; }
+            }
+        });
+    }
+    /// <summary>
+    /// Write a checkpoint of the installed database db. Nothing is written
+    /// if the file has been compacted: db is then of the new file
+    /// </summary>
+    public void Write(SDatabase db) throws Exception
+    {
+        synchronized (writing)
+        {
+            var p = db.curpos;
+            if (p <= pos || log.superseded || db.Log() != log) // see Compactor
+                return;
+            log.channel.force(false); // the checkpoint must not get ahead of the log
+            // bring the catalog up to p: only the log since the last checkpoint is read
+            var s = (schema == null) ? new SDatabase(db.name, log) : schema;
+            var ds = new ArrayList<Long>();
+            for (var d : defs)
+                ds.add(d);
+            var rd = new Reader(s, (schema == null) ? 0 : pos, p);
+            for (var ob = rd._Get(); ob != null && ob != Serialisable.Null; ob = rd._Get())
+                if (!(ob instanceof SRecord || ob instanceof SDelete))
+                {
+                    ds.add(((SDbObject)ob).uid);
+                    rd.db = rd.db._Add((SDbObject)ob, rd.Position());
+                }
+            var nd = new long[ds.size()];
+            for (var i = 0; i < nd.length; i++)
+                nd[i] = ds.get(i);
+            var tmp = new File(file.getPath() + ".tmp");
+            var crc = new CRC32();
+            try (var os = new BufferedOutputStream(new FileOutputStream(tmp))) {
+                var w = new CheckpointWriter(new CheckedOutputStream(os, crc));
+                w.PutInt(magic);
+                w.PutInt(version);
+                w.PutLong(p);
+                w.PutLong(Fingerprint(p));
+                w.PutInt(nd.length);
+                for (var d : nd)
+                    w.PutLong(d);
+                Put(w, db);
+                var c = crc.getValue();
+                for (var i = 56; i >= 0; i -= 8)
+                    os.write((int)(c >> i));
+            }
+            Files.move(tmp.toPath(), file.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            schema = new SDatabase(rd.db, p);
+            defs = nd;
+            pos = p;
+        }
+    }
+    /// <summary>
+    /// The rows of each table, and the entries of each index
+    /// </summary>
+    static void Put(CheckpointWriter w, SDatabase db) throws Exception
+    {
+        var ts = new ArrayList<STable>();
+        var xs = new ArrayList<SIndex>();
+        for (var c = db.objects.Cursor(0L); c.Advance();) // not the system tables
+        {
+            var ob = c.Value();
+            if (ob instanceof STable && ((STable)ob).rows != null)
+                ts.add((STable)ob);
+            else if (ob instanceof SIndex)
+                xs.add((SIndex)ob);
+        }
+        w.PutInt(ts.size());
+        for (var tb : ts)
+        {
+            w.PutLong(tb.uid);
+            w.PutInt(tb.rows.Length);
+            for (var c = tb.rows.Cursor(); c.Advance();)
+            {
+                w.PutLong(c.LongKey());
+                w.PutLong(c.Value());
+            }
+        }
+        w.PutInt(xs.size());
+        for (var x : xs)
+        {
+            w.PutLong(x.uid);
+            // an index that is still deferred has not changed: copy its bytes
+            var d = (x.deferred == null) ? null : x.deferred.Data();
+            if (d != null)
+                w.PutInt(x.deferred.count);
+            else
+            {
+                var es = new ArrayList<SSlot<SCList<Variant>, Long>>();
+                for (var b = x.Rows().First(); b != null; b = b.Next())
+                    es.add(b.getValue());
+                w.PutInt(es.size());
+                var bs = new ByteArrayOutputStream();
+                var ew = new CheckpointWriter(bs);
+                for (var e : es)
+                {
+                    ew.PutInt(e.key.Length);
+                    for (var k = e.key; k != null && k.Length > 0; k = (SCList<Variant>)k.next)
+                    {
+                        var v = (Serialisable)k.element.ob;
+                        ew.WriteByte((byte)((v == null) ? 0 : 1));
+                        if (v != null)
+                            v.Put(ew);
+                    }
+                    ew.PutLong(e.val);
+                }
+                d = bs.toByteArray();
+            }
+            w.PutInt(d.length);
+            for (var b : d)
+                w.WriteByte(b);
+        }
+    }
+    /// <summary>
+    /// Open uses this to start from the latest valid checkpoint:
+    /// if there is none, db itself is returned and the whole log is replayed
+    /// </summary>
+    SDatabase Restore(SDatabase db)
+    {
+        try {
+            if (!file.exists() || !Valid())
+                return db;
+            try (var is = new BufferedInputStream(new FileInputStream(file))) {
+                var r = new CheckpointReader(is);
+                if (r.GetInt() != magic || r.GetInt() != version)
+                    return db;
+                var p = r.GetLong();
+                if (p > log.length() || r.GetLong() != Fingerprint(p))
+                    return db;
+                // replay the definitions for the catalog
+                var nd = new long[r.GetInt()];
+                var s = db;
+                for (var i = 0; i < nd.length; i++)
+                {
+                    nd[i] = r.GetLong();
+                    var rd = new Reader(s, nd[i], p);
+                    var ob = (SDbObject)rd._Get();
+                    s = rd.db._Add(ob, rd.Position());
+                }
+                var obs = s.objects;
+                for (var n = r.GetInt(); n > 0; n--)
+                {
+                    var tb = (STable)obs.get(r.GetLong());
+                    var m = r.GetInt();
+                    var ks = new long[m];
+                    var vs = new Object[m];
+                    for (var i = 0; i < m; i++)
+                    {
+                        ks[i] = r.GetLong();
+                        vs[i] = r.GetLong();
+                    }
+                    obs = obs.AddLong(tb.uid, new STable(tb, SLongDict.<Long>Build(SDict.LARGE, ks, vs, m)));
+                }
+                for (var n = r.GetInt(); n > 0; n--)
+                {
+                    var x = (SIndex)obs.get(r.GetLong());
+                    var m = r.GetInt();
+                    var d = new byte[r.GetInt()];
+                    if (is.readNBytes(d, 0, d.length) != d.length)
+                        return db;
+                    var xd = new Deferred(d, m, x.Rows()._info);
+                    if (!lazyIndexes)
+                        xd.Get();
+                    obs = obs.AddLong(x.uid, new SIndex(x, xd));
+                }
+                synchronized (writing)
+                {
+                    schema = new SDatabase(s, p);
+                    defs = nd;
+                    pos = p;
+                }
+                return new SDatabase(s, obs, s.role, p);
+            }
+        } catch (Exception e) {
+            return db;
+        }
+    }
+    /// <summary>
+    /// Check the CRC at the end of the file
+    /// </summary>
+    boolean Valid() throws Exception
+    {
+        var n = file.length() - 8;
+        if (n < 0)
+            return false;
+        var crc = new CRC32();
+        long c = 0;
+        try (var is = new BufferedInputStream(new FileInputStream(file))) {
+            var b = new byte[65536];
+            for (long i = 0; i < n;)
+            {
+                var m = is.read(b, 0, (int)Math.min(b.length, n - i));
+                if (m < 0)
+                    return false;
+                crc.update(b, 0, m);
+                i += m;
+            }
+            for (var i = 0; i < 8; i++)
+                c = (c << 8) | (is.read() & 0xff);
+        }
+        return c == crc.getValue();
+    }
+    /// <summary>
+    /// A CRC32 of the first and last 4KB of the log before p,
+    /// so that a checkpoint of a different (e.g. recreated) file is not used
+    /// </summary>
+    long Fingerprint(long p) throws Exception
+    {
+        var crc = new CRC32();
+        var n = (int)Math.min(p, 4096);
+        for (var s : new long[] { 0, p - n })
+        {
+            var bb = ByteBuffer.allocate(n);
+            while (bb.hasRemaining() && log.channel.read(bb, s + bb.position()) > 0)
+                ;
+            bb.flip();
+            crc.update(bb);
+        }
+        return crc.getValue();
+    }
+    /// <summary>
+    /// The number of indexes restored from checkpoints that have been built
+    /// </summary>
+    public static int getIndexesLoaded()
+    {
+        return built.get();
+    }
+    /// <summary>
+    /// The number of indexes restored from checkpoints that have not been used yet
+    /// </summary>
+    public static int getIndexesDeferred()
+    {
+        return restored.get() - built.get();
+    }
+    /// <summary>
+    /// The entries of an index, as written by Put, until the index is first used
+    /// </summary>
+    static class Deferred
+    {
+        final int count;
+        final SList<TreeInfo<Serialisable>> info;
+        byte[] data; // null once the tree has been built
+        SMTree<Serialisable> tree = null;
+        Deferred(byte[] d, int n, SList<TreeInfo<Serialisable>> ti)
+        {
+            data = d;
+            count = n;
+            info = ti;
+            restored.incrementAndGet();
+        }
+        synchronized SMTree<Serialisable> Get()
+        {
+            if (tree != null)
+                return tree;
+            try {
+                var r = new CheckpointReader(new ByteArrayInputStream(data));
+                var es = new ArrayList<SSlot<SCList<Variant>, Long>>(count);
+                for (var i = 0; i < count; i++)
+                {
+                    var k = new Variant[r.GetInt()];
+                    for (var j = 0; j < k.length; j++)
+                        k[j] = new Variant(Variants.Ascending,
+                                (r.ReadByte() == 0) ? null : r._Get());
+                    es.add(new SSlot<SCList<Variant>, Long>(new SCList<Variant>(k), r.GetLong()));
+                }
+                tree = SMTree.Build(info, es);
+            } catch (Exception e) {
+                throw new Error("bad checkpoint index");
+            }
+            data = null;
+            built.incrementAndGet();
+            return tree;
+        }
+        /// <summary>
+        /// The undecoded entries, or null if the tree has been built
+        /// </summary>
+        synchronized byte[] Data()
+        {
+            return data;
+        }
+    }
+    static class CheckpointWriter extends WriterBase
+    {
+        final OutputStream os;
+        CheckpointWriter(OutputStream s)
+        {
+            os = s;
+        }
+        @Override
+        public void WriteByte(byte value) throws Exception
+        {
+            os.write(value);
+        }
+    }
+    static class CheckpointReader extends ReaderBase
+    {
+        final InputStream is;
+        CheckpointReader(InputStream s)
+        {
+            is = s;
+        }
+        @Override
+        public int ReadByte() throws Exception
+        {
+            return is.read();
+        }
+    }
+}
@@ -0,0 +1,128 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * The rows of a query, fetched from the server in batches of fetchSize rows
+ * (see StrongConnect.OpenCursor). Each row is decoded as it is reached, and
+ * the next batch is only requested when the last one has been read, so
+ * neither side holds more than a batch of rows at a time.
+ * If the connection has BinaryRows, NextRow gives the rows as ClientRows.
+ * While the cursor is open, the connection must not be used for anything else:
+ * read it to the end or Close it.
+ * This class is not shareable
+ * @author Malcolm
+ */
+public class ClientCursor implements Iterator<Document> {
+        final StrongConnect conn;
+        public final int fetchSize;
+        public final SDict<Integer,String> description;
+        final boolean binary;
+        Object row = null; // the next row, if we have read it
+        boolean done = false; // the server has sent the last row
+        ClientCursor(StrongConnect c,int n,SDict<Integer,String> d,boolean b)
+        {
+            conn = c;
+            fetchSize = n;
+            description = d;
+            binary = b;
+        }
+        @Override
+        public boolean hasNext()
+        {
+            if (row == null && !done)
+                try {
+                    row = Advance();
+                } catch (Exception e) {
+                    done = true;
+                    conn.cursor = null;
+                    throw new RuntimeException(e.getMessage(), e);
+                }
+            return row != null;
+        }
+        @Override
+        public Document next()
+        {
+            if (!hasNext())
+                throw new NoSuchElementException();
+            var r = row;
+            row = null;
+            return binary ? ((ClientRow)r).ToDocument() : (Document)r;
+        }
+        /// <summary>
+        /// The next row with typed values: needs BinaryRows
+        /// </summary>
+        public ClientRow NextRow()
+        {
+            if (!binary)
+                throw new IllegalStateException("BinaryRows expected");
+            if (!hasNext())
+                throw new NoSuchElementException();
+            var r = (ClientRow)row;
+            row = null;
+            return r;
+        }
+        /// <summary>
+        /// Read the next row, asking for another batch if need be
+        /// </summary>
+        Object Advance() throws Exception
+        {
+            var rdr = conn.asy.rdr;
+            for (;;)
+                switch (rdr.ReadByte())
+                {
+                    case Types.SRow:
+                        if (binary)
+                            return new ClientRow(rdr, description);
+                        return new Document(rdr.GetString());
+                    case Types.Fetch:
+                        conn.asy.wtr.Write(Types.Fetch);
+                        conn.asy.wtr.PutInt(fetchSize);
+                        if (conn.asy.Receive().proto != Types.Done)
+                            throw new Exception("PE29");
+                        continue;
+                    case Types.CloseCursor:
+                        done = true;
+                        conn.cursor = null;
+                        return null;
+                    default:
+                        throw new Exception("PE29");
+                }
+        }
+        /// <summary>
+        /// Discard the rest of the rows. The server is told to drop the cursor
+        /// unless it has already sent the last row.
+        /// </summary>
+        public void Close() throws Exception
+        {
+            if (done)
+                return;
+            row = null;
+            var rdr = conn.asy.rdr;
+            for (var more = true; more;)
+                switch (rdr.ReadByte())
+                {
+                    case Types.SRow:
+                        if (binary)
+                            new ClientRow(rdr, description);
+                        else
+                            rdr.GetString();
+                        break;
+                    case Types.Fetch:
+                        conn.asy.wtr.Write(Types.CloseCursor);
+                        conn.asy.Receive();
+                        more = false;
+                        break;
+                    default:
+                        more = false;
+                }
+            done = true;
+            conn.cursor = null;
+        }
+}
@@ -0,0 +1,208 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Requests sent without waiting for their responses (see StrongConnect.Pipeline).
+ * Each method queues a request and returns a future for its response. The
+ * requests queued since the last Flush go to the server together as one
+ * message, and the server carries them out in order. A reader thread takes
+ * the responses in the same order and completes the futures.
+ * If a request fails, its future completes with the ServerException. As for
+ * any failed request, the server rolls back the current transaction. It then
+ * skips the rest of the message, and the futures of the skipped requests
+ * complete with a ServerException saying so. A message that continues a
+ * transaction starts with a check that the transaction is still open
+ * (Types.InTransaction), so if it is not, that message is skipped in the
+ * same way, and so is each one after it until Rollback or BeginTransaction.
+ * Other messages flushed after the failed one are carried out as usual.
+ * While the pipeline is open, the connection must not be used for anything
+ * else: Close it (or Sync it) first.
+ * This class is not shareable
+ * @author Malcolm
+ */
+public class ClientPipeline {
+        static final int NonQuery = 0, Query = 1, Begin = 2, End = 3, Stop = 4,
+                Check = 5;
+        /// <summary>
+        /// A request whose response has not been read
+        /// </summary>
+        static class Request {
+            final int kind;
+            final int message; // see Flush
+            final CompletableFuture future = new CompletableFuture();
+            Request(int k,int m) { kind = k; message = m; }
+        }
+        final StrongConnect conn;
+        final LinkedBlockingQueue<Request> requests = new LinkedBlockingQueue<>();
+        final Thread reader;
+        int message = 0; // the number of the message being queued
+        Request last = null; // the last request queued
+        boolean open = false; // the requests queued are in a transaction
+        volatile Exception broken = null; // the connection has failed
+        ClientPipeline(StrongConnect c)
+        {
+            conn = c;
+            reader = new Thread(this::Read);
+            reader.setDaemon(true);
+            reader.start();
+        }
+        /// <summary>
+        /// If this is the first request of a message in a transaction,
+        /// start the message with the check (see Types.InTransaction)
+        /// </summary>
+        void Continue() throws Exception
+        {
+            if (open && (last == null || last.message != message))
+            {
+                conn.asy.wtr.Write((byte)Types.InTransaction);
+                Add(Check);
+            }
+        }
+        CompletableFuture Add(int k)
+        {
+            last = new Request(k, message);
+            requests.add(last);
+            if (broken != null)
+                Fail(broken);
+            return last.future;
+        }
+        public CompletableFuture<ClientTriple> ExecuteNonQuery(String sql)
+                throws Exception
+        {
+            var s = Parser.Parse(sql);
+            Continue();
+            var wtr = conn.asy.wtr;
+            wtr.SendUids(s.ns);
+            s.ob.Put(wtr);
+            return Add(NonQuery);
+        }
+        public CompletableFuture<DocArray> ExecuteQuery(String sql)
+                throws Exception
+        {
+            var pair = Parser.Parse(sql);
+            if (pair.ob.type!=Types.SSelect)
+                throw new Exception("Bad query " + sql);
+            Continue();
+            var wtr = conn.asy.wtr;
+            wtr.SendUids(pair.ns);
+            wtr.Write((byte)Types.DescribedGet);
+            pair.ob.Put(wtr);
+            return Add(Query);
+        }
+        public CompletableFuture<ClientTriple> BeginTransaction() throws Exception
+        {
+            conn.asy.wtr.Write((byte)Types.SBegin);
+            open = true;
+            return Add(Begin);
+        }
+        public CompletableFuture<ClientTriple> Commit() throws Exception
+        {
+            Continue();
+            conn.asy.wtr.Write((byte)Types.SCommit);
+            open = false;
+            return Add(End);
+        }
+        public CompletableFuture<ClientTriple> Rollback() throws Exception
+        {
+            conn.asy.wtr.Write((byte)Types.SRollback);
+            open = false;
+            return Add(End);
+        }
+        /// <summary>
+        /// Send the requests queued since the last Flush as one message
+        /// </summary>
+        public void Flush() throws Exception
+        {
+            var wtr = conn.asy.wtr;
+            if (wtr.buf.pos > wtr.head)
+            {
+                wtr.PutLast();
+                message++;
+            }
+        }
+        /// <summary>
+        /// Flush, and wait for all the responses
+        /// </summary>
+        public void Sync() throws Exception
+        {
+            Flush();
+            if (last != null)
+                try {
+                    last.future.join();
+                } catch (Exception e) {
+                    // the failure is for the caller to find in the futures
+                }
+        }
+        /// <summary>
+        /// Sync, stop the reader thread, and give the connection back
+        /// for ordinary use
+        /// </summary>
+        public void Close() throws Exception
+        {
+            Sync();
+            requests.add(new Request(Stop, message));
+            reader.join();
+            conn.pipeline = null;
+        }
+        /// <summary>
+        /// The reader thread: read a response for each request in order
+        /// </summary>
+        void Read()
+        {
+            var failed = -1; // the message in which a request has failed
+            String why = null;
+            for (;;)
+            {
+                Request r;
+                try {
+                    r = requests.take();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                if (r.kind == Stop)
+                    return;
+                if (r.message == failed)
+                {
+                    r.future.completeExceptionally(
+                            new ServerException("Not done: " + why));
+                    continue;
+                }
+                try {
+                    var b = conn.asy.Response();
+                    if (r.kind == Query)
+                    {
+                        conn.Describe(b);
+                        r.future.complete(conn.Rows());
+                    } else
+                    {
+                        if (r.kind == Begin || r.kind == End)
+                            conn.inTransaction = (r.kind == Begin);
+                        r.future.complete(b);
+                    }
+                } catch (ServerException e) {
+                    conn.inTransaction = false; // the server has rolled back
+                    failed = r.message;
+                    why = e.getMessage();
+                    r.future.completeExceptionally(e);
+                } catch (Exception e) {
+                    // the connection has failed: so do all the requests
+                    broken = e;
+                    r.future.completeExceptionally(e);
+                    Fail(e);
+                    return;
+                }
+            }
+        }
+        void Fail(Exception e)
+        {
+            for (var q = requests.poll(); q != null; q = requests.poll())
+                q.future.completeExceptionally(e);
+        }
+}
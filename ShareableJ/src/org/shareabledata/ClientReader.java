@@ -16,37 +16,40 @@ public class ClientReader extends SocketReader
         boolean getting;
         public ClientReader(Socket c)  throws Exception
         { super(c); } 
-        public boolean GetBuf(long p) // parameter is ignored
+        @Override
+        public boolean GetBuf(long p) throws Exception // parameter is ignored
         {
             getting = true;
-            int rcount;
             try
             {
-                var rc = client.getInputStream().read(buf.buf, Buffer.Size, 0);
-                if (rc == 0)
+                var rcount = ReadFrame();
+                if (rcount == size - 1)
                 {
-                    rcount = 0;
-                    getting = false;
-                    return false;
-                }
-                rcount = (buf.buf[0] << 7) + buf.buf[1];
-                buf.len = rcount + 2;
-                if (rcount == Buffer.Size - 1)
+                    buf.pos = head;
                     GetException();
-                getting = false;
+                }
                 return rcount > 0;
             }
+            catch (ServerException e)
+            {
+                throw e; // the request has failed, but the connection is fine
+            }
             catch (Exception e)
             {
                 return false;
             }
+            finally
+            {
+                getting = false;
+            }
         }
         // v2.0 exception handling during server comms
         // an illegal nonzero rcount value indicates an exception
         int GetException() throws Exception
         {
-            var rcount = (buf.buf[buf.pos++] << 7) + (buf.buf[buf.pos++] & 0x7f);
-            buf.len = rcount + 4;
+            var rcount = Buffer.GetHead(buf.buf, buf.pos, head);
+            buf.pos += head;
+            buf.len = rcount + 2 * head;
             var b = buf.buf[buf.pos++];
             if (b != (byte)Types.Exception)
                 throw new Exception("PE30");
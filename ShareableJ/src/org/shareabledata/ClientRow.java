@@ -0,0 +1,134 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.ArrayList;
+
+/**
+ * A row of a query result sent in binary (see StrongConnect.BinaryRows):
+ * a value for each column of the description, decoded by ReaderBase._Get
+ * as the server has it, so the typed accessors need no string conversion.
+ * A missing value is Serialisable.Null, for which the accessors give 0,
+ * false or null. An accessor for the wrong type of value throws
+ * ClassCastException.
+ * This class is not shareable
+ * @author Malcolm
+ */
+public class ClientRow {
+        public final SDict<Integer,String> description;
+        public final Serialisable[] vals;
+        ClientRow(ReaderBase f,SDict<Integer,String> d) throws Exception
+        {
+            description = d;
+            vals = new Serialisable[(d==null)?0:d.Length];
+            for (var i = 0; i < vals.length; i++)
+                vals[i] = f._Get();
+        }
+        public int Length() { return vals.length; }
+        /// <summary>
+        /// The position of the named column, or -1
+        /// </summary>
+        public int Column(String n)
+        {
+            if (description!=null)
+                for (var b=description.First();b!=null;b=b.Next())
+                    if (b.getValue().val.equals(n))
+                        return b.getValue().key;
+            return -1;
+        }
+        public Serialisable get(int i) { return vals[i]; }
+        public boolean isNull(int i) { return vals[i] == Serialisable.Null; }
+        public int getInt(int i)
+        {
+            return (int)getLong(i);
+        }
+        public long getLong(int i)
+        {
+            var v = vals[i];
+            if (v == Serialisable.Null)
+                return 0;
+            var n = (SInteger)v;
+            return (n.big==null)?n.value:n.big.toLong();
+        }
+        public double getDouble(int i)
+        {
+            var v = vals[i];
+            if (v instanceof SNumeric)
+                return ((SNumeric)v).num.toDouble();
+            return getLong(i);
+        }
+        public Numeric getNumeric(int i)
+        {
+            var v = vals[i];
+            if (v == Serialisable.Null)
+                return null;
+            if (v instanceof SInteger)
+            {
+                var n = (SInteger)v;
+                return new Numeric((n.big==null)?new Bigint(n.value):n.big,0);
+            }
+            return ((SNumeric)v).num;
+        }
+        public String getString(int i)
+        {
+            var v = vals[i];
+            return (v == Serialisable.Null)?null:((SString)v).str;
+        }
+        public boolean getBoolean(int i)
+        {
+            var v = vals[i];
+            return (v == Serialisable.Null)?false:((SBoolean)v).sbool;
+        }
+        public SDate getDate(int i)
+        {
+            var v = vals[i];
+            return (v == Serialisable.Null)?null:(SDate)v;
+        }
+        public STimeSpan getTimeSpan(int i)
+        {
+            var v = vals[i];
+            return (v == Serialisable.Null)?null:(STimeSpan)v;
+        }
+        public long getLong(String n) { return getLong(Column(n)); }
+        public int getInt(String n) { return getInt(Column(n)); }
+        public double getDouble(String n) { return getDouble(Column(n)); }
+        public String getString(String n) { return getString(Column(n)); }
+        /// <summary>
+        /// The Document that the JSON text of the row would give
+        /// (see SRow.Append and DocBase.GetValue)
+        /// </summary>
+        public Document ToDocument()
+        {
+            var a = new ArrayList<SSlot<String,Object>>();
+            for (var i = 0; i < vals.length; i++)
+            {
+                var v = vals[i];
+                Object ob;
+                switch (v.type)
+                {
+                    case Types.Serialisable: continue; // not in the JSON
+                    case Types.SInteger: ob = ((SInteger)v).value; break;
+                    case Types.SBigInt: {
+                        var b = ((SInteger)v).big;
+                        ob = (b.compareTo(Bigint.longMax)<0
+                                && b.Negate().compareTo(Bigint.longMax)<0)?
+                                (Object)b.toLong():b;
+                        break;
+                    }
+                    case Types.SNumeric: ob = ((SNumeric)v).num; break;
+                    case Types.SString: ob = ((SString)v).str; break;
+                    case Types.SDate: ob = ((SDate)v).str(); break;
+                    case Types.SBoolean: ob = String.valueOf(((SBoolean)v).sbool); break;
+                    default: ob = v.toString(); break; // STimeSpan
+                }
+                a.add(new SSlot<>(description.get(i),ob));
+            }
+            var d = new Document();
+            for (var j = a.size() - 1; j >= 0; j--)
+                d.fields = new SList<>(a.get(j),d.fields);
+            return d;
+        }
+}
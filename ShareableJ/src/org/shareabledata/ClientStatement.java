@@ -0,0 +1,114 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * A select, update or delete statement with ? parameters, prepared once on
+ * the server (see StrongConnect.PrepareStatement and Types.Prepare): each
+ * execution sends only the statement's number and the parameter values, so
+ * the server does not parse or plan it again. If the server has dropped the
+ * statement because the schema has changed, it is prepared again
+ * and the execution repeated.
+ * This class is not shareable
+ * @author Malcolm
+ */
+public class ClientStatement {
+        final StrongConnect conn;
+        public final String sql;
+        public final int params;
+        final ParsePair pair;
+        int id = -1; // the server's number for the statement, -1 if not prepared
+        ClientStatement(StrongConnect c,String s) throws Exception
+        {
+            conn = c;
+            sql = s;
+            pair = Parser.Parse(s);
+            switch (pair.ob.type)
+            {
+                case Types.SSelect:
+                case Types.SUpdateSearch:
+                case Types.SDeleteSearch: break;
+                default: throw new Exception("Cannot prepare " + s);
+            }
+            params = pair.params;
+        }
+        /// <summary>
+        /// Register the statement with the server
+        /// </summary>
+        void Prepare() throws Exception
+        {
+            var wtr = conn.asy.wtr;
+            wtr.SendUids(pair.ns);
+            wtr.Write((byte)Types.Prepare);
+            wtr.PutInt(params);
+            pair.ob.Put(wtr);
+            var b = conn.asy.Receive();
+            if (b.proto == Types.Exception)
+            {
+                conn.inTransaction = false;
+                conn.asy.rdr.GetException();
+            }
+            if (b.proto != Types.Done)
+                throw new Exception("PE28");
+            id = conn.asy.rdr.GetInt();
+        }
+        /// <summary>
+        /// Send an Execute request, preparing the statement first if need be,
+        /// and give the first part of the reply
+        /// </summary>
+        ClientTriple Execute(Serialisable[] args) throws Exception
+        {
+            if (args.length != params)
+                throw new Exception("Wrong number of parameters for " + sql);
+            if (conn.cursor != null)
+                conn.cursor.Close();
+            for (var retry = 0; ; retry++)
+            {
+                if (id < 0)
+                    Prepare();
+                var wtr = conn.asy.wtr;
+                wtr.Write((byte)Types.Execute);
+                wtr.PutInt(id);
+                wtr.PutInt(args.length);
+                for (var i = 0; i < args.length; i++)
+                    args[i].Put(wtr);
+                var b = conn.asy.Receive();
+                if (b.proto != Types.Prepare || retry > 0)
+                    return b;
+                id = -1; // the schema has changed
+            }
+        }
+        public DocArray ExecuteQuery(Serialisable... args) throws Exception
+        {
+            if (pair.ob.type != Types.SSelect)
+                throw new Exception("Bad query " + sql);
+            conn.Describe(Execute(args));
+            return conn.Rows();
+        }
+        /// <summary>
+        /// As ExecuteQuery, but with typed values: the connection is
+        /// switched to BinaryRows if need be
+        /// </summary>
+        public ClientRow[] ExecuteRows(Serialisable... args) throws Exception
+        {
+            if (pair.ob.type != Types.SSelect)
+                throw new Exception("Bad query " + sql);
+            conn.BinaryRows();
+            return conn.ClientRows(conn.Describe(Execute(args)));
+        }
+        public int ExecuteNonQuery(Serialisable... args) throws Exception
+        {
+            if (pair.ob.type == Types.SSelect)
+                throw new Exception("Bad statement " + sql);
+            var b = Execute(args);
+            if (b.proto == Types.Exception)
+            {
+                conn.inTransaction = false;
+                conn.asy.rdr.GetException();
+            }
+            return b.proto;
+        }
+}
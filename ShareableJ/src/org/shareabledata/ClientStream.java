@@ -21,14 +21,23 @@ public class ClientStream {
             client = c;
             rdr = new ClientReader(client);
             wtr = new ClientWriter(client);
-            rdr.buf.pos = 2;
+            rdr.buf.pos = rdr.head;
             rdr.buf.len = 0;
         }
         public ClientTriple Receive() throws Exception
         {
-            if (wtr.buf.pos > 2)
-                wtr.PutBuf();
-            rdr.buf.pos = 2;
+            if (wtr.buf.pos > wtr.head)
+                wtr.PutLast();
+            return Response();
+        }
+        /// <summary>
+        /// Read the start of the next response. Each response starts a new
+        /// frame (see ServerStream.Flush), so any rest of the last is skipped.
+        /// A ServerException is thrown if the request has failed.
+        /// </summary>
+        ClientTriple Response() throws Exception
+        {
+            rdr.buf.pos = rdr.head;
             rdr.buf.len = 0;
             long ts = 0,te = 0;
             var t = (byte)rdr.ReadByte();
@@ -41,12 +50,12 @@ public class ClientStream {
         }
         public void Flush() throws Exception
         {
-            rdr.buf.pos = 2;
+            rdr.buf.pos = rdr.head;
             rdr.buf.len = 0;
             try
             {
-                wtr.PutBuf();
-                wtr.buf.pos = 2;
+                wtr.PutLast();
+                wtr.buf.pos = wtr.head;
             }
             catch (SocketException e)
             {
@@ -6,6 +6,12 @@
 package org.shareabledata;
 
 import java.lang.reflect.Array;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 /**
  *
@@ -22,6 +28,47 @@ public abstract class Collection<T> {
 
     public abstract Bookmark<T> First();
 
+    /// <summary>
+    /// By default a Spliterator that follows the Bookmarks. 
+    /// Length is not always the number of elements (e.g. for RowSets), 
+    /// so classes where it is should use SizedSpliterator instead.
+    /// Immutable trees override this to split along their nodes.
+    /// </summary>
+    public Spliterator<T> spliterator() {
+        return Spliterators.spliteratorUnknownSize(Elements(),
+                Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+    protected Spliterator<T> SizedSpliterator() {
+        return Spliterators.spliterator(Elements(), Length,
+                Spliterator.ORDERED | Spliterator.IMMUTABLE);
+    }
+    public Stream<T> stream() {
+        return StreamSupport.stream(spliterator(), false);
+    }
+    /// <summary>
+    /// Collections are immutable, so a parallel stream needs no locking
+    /// </summary>
+    public Stream<T> parallelStream() {
+        return StreamSupport.stream(spliterator(), true);
+    }
+    Iterator<T> Elements() {
+        return new Iterator<T>() {
+            Bookmark<T> b = First();
+            @Override
+            public boolean hasNext() {
+                return b != null;
+            }
+            @Override
+            public T next() {
+                if (b == null)
+                    throw new NoSuchElementException();
+                var r = b.getValue();
+                b = b.Next();
+                return r;
+            }
+        };
+    }
+
     public T[] ToArray(Class<T> c) throws Exception {
         T[] r = (T[]) Array.newInstance(c, Length);
         for (Bookmark<T> b = First(); b != null; b = b.Next()) {
@@ -0,0 +1,314 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+
+/**
+ * Log compaction. The log keeps every SUpdate and SDelete forever, so the
+ * file (and the time to load it) grows with the history of the database
+ * rather than its contents. A compaction writes a new file holding only
+ * the live schema and the current version of each row:
+ *   the tables and their columns, in table order,
+ *   one SRecord per live row, with its current field values,
+ *   and then the indexes, which Load builds from the rows in one go.
+ * Everything gets a new uid (its position in the new file): the old uids
+ * are mapped to the new ones in Writer.uids, and Writer.Fix is used for
+ * references, as for a Commit.
+ * The new file is written from a snapshot and loaded beside the old one
+ * without any lock, so commits go on meanwhile. Then, under SDatabase.files
+ * and the LogFile lock, the rows committed since the snapshot are appended
+ * to it (CatchUp), and it is renamed as the next generation of the file
+ * (see LogFile.Current) and registered with a State of its own. If anything
+ * fails before that, the database goes on as it was.
+ * Since all uids change, transactions begun before the swap cannot
+ * commit: STransaction.Commit rejects them. Other snapshots taken before it
+ * (open cursors, queries in progress) go on reading the old file, which
+ * is left open for them (see SDatabase.Log), and closed and deleted once
+ * none of them refers to it (see LogFile.Release).
+ * Online compaction (Online, or SDatabase.Compact) runs on an open database;
+ * Offline opens the database just for this, e.g. from the command line.
+ * Views and other objects not listed above are not copied.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class Compactor {
+    static final int flushBytes = 1024*1024; // don't build the whole file in memory
+    public final String name;
+    public long sizeBefore = -1, sizeAfter = -1; // bytes
+    public long loadBefore = -1, loadAfter = -1; // cold start milliseconds, -1 if not measured
+    Compactor(String n)
+    {
+        name = n;
+    }
+    /// <summary>
+    /// Compact the open database with the given name
+    /// </summary>
+    public static Compactor Online(String name) throws Exception
+    {
+        var c = new Compactor(name);
+        var os = SDatabase.Registered(name);
+        if (os == null)
+            throw new Exception("Database " + name + " is not open");
+        var old = os.file;
+        synchronized (old.checkpoint.writing) // no checkpoint or other compaction of it meanwhile
+        {
+            if (SDatabase.Registered(name) != os)
+                throw new Exception("Database " + name + " was closed or compacted");
+            var db = os.installed.get();
+            c.sizeBefore = db.curpos;
+            var tmp = new File(old.path.getAbsoluteFile().getParentFile(), name + ".compact");
+            var next = old.Next(name);
+            tmp.delete();
+            LogFile nf = null;
+            try {
+                nf = new LogFile(tmp, "rw");
+                var w = new Writer(nf);
+                Write(db, w);
+                var t = System.nanoTime();
+                var nd = new SDatabase(name, nf).Load();
+                c.loadAfter = (System.nanoTime() - t) / 1000000;
+                synchronized (SDatabase.files)
+                {
+                    old.lock.lock();
+                    try
+                    {
+                        if (SDatabase.Registered(name) != os)
+                            throw new Exception("Database " + name + " was closed during compaction");
+                        // what was committed while we wrote and loaded the new file
+                        var end = old.length();
+                        if (end > db.curpos)
+                        {
+                            CatchUp(name, db, new Reader(db, db.curpos, end).GetAll(end), w);
+                            nd = nd.Catchup(nf.length());
+                        }
+                        nf.channel.force(true);
+                        c.sizeBefore = end;
+                        c.sizeAfter = nf.length();
+                        old.group.Retire(); // release the commits waiting for a force
+                        RecordCache.shared.Clear(nf);
+                        nf.Close();
+                        nf = null;
+                        // the new generation is complete before it has its name
+                        Files.move(tmp.toPath(), next.toPath(), StandardCopyOption.ATOMIC_MOVE);
+                        SDatabase.State ns;
+                        try {
+                            ns = new SDatabase.State(new LogFile(next, "rw"));
+                        } catch (Exception e) {
+                            // the next Open would load it, so nothing more may be committed to old
+                            if (!next.delete())
+                                SDatabase.Register(name, os, null);
+                            throw e;
+                        }
+                        ns.installed.set(new SDatabase(nd, ns.file));
+                        SDatabase.Register(name, os, ns); // we hold SDatabase.files, so os is still there
+                        old.Supersede();
+                        RecordCache.shared.Clear(old);
+                    } finally {
+                        old.lock.unlock();
+                    }
+                }
+            } finally {
+                if (nf != null)
+                {
+                    RecordCache.shared.Clear(nf);
+                    nf.Close();
+                }
+                tmp.delete();
+            }
+        }
+        return c;
+    }
+    /// <summary>
+    /// Compact a database that is not open, timing a cold start before and after
+    /// </summary>
+    public static Compactor Offline(String path, String name) throws Exception
+    {
+        if (SDatabase.Registered(name) != null)
+            throw new Exception("Database " + name + " is open: use Online");
+        new File(path, name + ".ckpt").delete(); // time a replay of the whole log
+        var t = System.nanoTime();
+        var db = SDatabase.Open(path, name);
+        var lb = (System.nanoTime() - t) / 1000000;
+        Compactor c;
+        try {
+            c = Online(name);
+        } finally {
+            db.Close();
+        }
+        c.loadBefore = lb;
+        t = System.nanoTime();
+        SDatabase.Open(path, name).Close();
+        c.loadAfter = (System.nanoTime() - t) / 1000000;
+        return c;
+    }
+    /// <summary>
+    /// Write the live contents of db to w, which is positioned at the start of an empty file
+    /// </summary>
+    static void Write(SDatabase db, Writer w) throws Exception
+    {
+        w.uids = new SLongDict<Long>(-1L, -1L);
+        for (var c = db.objects.Cursor(0L); c.Advance();) // not the system tables
+            if (c.Value() instanceof STable)
+            {
+                var tb = (STable)c.Value();
+                w.uids = w.uids.AddLong(tb.uid, w.length());
+                w.WriteByte((byte)Types.STable);
+                w.PutString(db.Name(tb.uid));
+                if (tb.cpos != null)
+                    for (var b = tb.cpos.First(); b != null; b = b.Next())
+                        if (b.getValue().val instanceof SColumn)
+                            Put(db, (SColumn)b.getValue().val, w);
+            }
+        for (var c = db.objects.Cursor(0L); c.Advance();)
+            if (c.Value() instanceof STable && ((STable)c.Value()).rows != null)
+            {
+                var tb = (STable)c.Value();
+                for (var b = tb.rows.Cursor(); b.Advance();)
+                {
+                    Put(tb, db.Get(b.Value()), w);
+                    if (w.buf.pos >= flushBytes)
+                        w.Flush();
+                }
+            }
+        for (var c = db.objects.Cursor(0L); c.Advance();)
+            if (c.Value() instanceof SIndex)
+                Put((SIndex)c.Value(), w);
+        w.Flush();
+    }
+    /// <summary>
+    /// As SColumn(SColumn,String,Writer)
+    /// </summary>
+    static void Put(SDatabase db, SColumn sc, Writer w) throws Exception
+    {
+        var nm = db.Name(sc.uid);
+        w.uids = w.uids.AddLong(sc.uid, w.length());
+        w.WriteByte((byte)Types.SColumn);
+        w.PutString(nm);
+        w.WriteByte((byte)sc.dataType);
+        w.PutLong(w.Fix(sc.table));
+        w.PutInt((sc.constraints == null) ? 0 : sc.constraints.Length);
+        if (sc.constraints != null)
+            for (var b = sc.constraints.First(); b != null; b = b.Next())
+            {
+                w.PutString(b.getValue().key);
+                b.getValue().val.Fix(w).Put(w);
+            }
+    }
+    /// <summary>
+    /// The current version of a row, as a new SRecord: fields of dropped columns are left out.
+    /// The row's new position is noted in w.uids for any SUpdate or SDelete of it in CatchUp
+    /// </summary>
+    static void Put(STable tb, SRecord r, Writer w) throws Exception
+    {
+        w.uids = w.uids.AddLong(r.Defpos(), w.length());
+        w.WriteByte((byte)Types.SRecord);
+        w.PutLong(w.Fix(tb.uid));
+        Put(tb, r.fields, w);
+    }
+    /// <summary>
+    /// The fields of live columns, with their count
+    /// </summary>
+    static void Put(STable tb, SDict<Long,Serialisable> fs, Writer w) throws Exception
+    {
+        var n = 0;
+        for (var b = (fs == null) ? null : fs.First(); b != null; b = b.Next())
+            if (tb.cols.Contains(b.getValue().key))
+                n++;
+        w.PutInt(n);
+        for (var b = (fs == null) ? null : fs.First(); b != null; b = b.Next())
+            if (tb.cols.Contains(b.getValue().key))
+            {
+                w.PutLong(w.Fix(b.getValue().key));
+                b.getValue().val.Put(w);
+            }
+    }
+    /// <summary>
+    /// Append the rows committed since db, the snapshot that Write copied, with
+    /// their uids mapped as Write mapped them. A change of schema meanwhile is
+    /// not copied: the compaction fails, and the database goes on as it was.
+    /// </summary>
+    static void CatchUp(String name, SDatabase db, SDbObject[] since, Writer w) throws Exception
+    {
+        for (var ob : since)
+            switch (ob.type)
+            {
+                case Types.SRecord:
+                {
+                    var r = (SRecord)ob;
+                    Put((STable)db.objects.get(r.table), r, w);
+                    break;
+                }
+                case Types.SUpdate:
+                {
+                    var u = (SUpdate)ob;
+                    var tb = (STable)db.objects.get(u.table);
+                    w.WriteByte((byte)Types.SUpdate);
+                    w.PutLong(w.Fix(tb.uid));
+                    Put(tb, u.fields, w);
+                    w.PutLong(w.Fix(u.Defpos()));
+                    Put(tb, u.oldfields, w);
+                    break;
+                }
+                case Types.SDelete:
+                {
+                    var d = (SDelete)ob;
+                    var tb = (STable)db.objects.get(d.table);
+                    w.WriteByte((byte)Types.SDelete);
+                    w.PutLong(w.Fix(tb.uid));
+                    w.PutLong(w.Fix(d.delpos));
+                    Put(tb, d.oldfields, w);
+                    break;
+                }
+                default:
+                    throw new Exception("The schema of " + name
+                            + " changed during compaction: try again");
+            }
+        w.Flush();
+    }
+    /// <summary>
+    /// As SIndex(SDatabase,SIndex,Writer)
+    /// </summary>
+    static void Put(SIndex x, Writer w) throws Exception
+    {
+        w.uids = w.uids.AddLong(x.uid, w.length());
+        w.WriteByte((byte)Types.SIndex);
+        w.PutLong(w.Fix(x.table));
+        w.WriteByte((byte)(x.primary ? 1 : 0));
+        w.PutInt(x.cols.Length);
+        for (var b = x.cols.First(); b != null; b = b.Next())
+            w.PutLong(w.Fix(b.getValue()));
+        w.PutLong(w.Fix(x.references));
+    }
+    @Override
+    public String toString()
+    {
+        var sb = new StringBuilder(name);
+        sb.append(": size ").append(sizeBefore).append(" -> ").append(sizeAfter).append(" bytes");
+        if (loadAfter >= 0)
+        {
+            sb.append(", cold start ");
+            if (loadBefore >= 0)
+                sb.append(loadBefore).append(" -> ");
+            sb.append(loadAfter).append(" ms");
+        }
+        return sb.toString();
+    }
+    /// <summary>
+    /// Compactor path name: compact a database that is not in use
+    /// </summary>
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length != 2)
+        {
+            System.out.println("Usage: Compactor path name");
+            return;
+        }
+        System.out.println(Offline(args[0], args[1]));
+    }
+}
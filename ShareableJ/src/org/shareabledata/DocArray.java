@@ -5,6 +5,9 @@
  */
 package org.shareabledata;
 
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  *
  * @author Malcolm
@@ -13,6 +16,10 @@ public class DocArray extends DocBase
     {
         public SList<Document> items = null;
         public DocArray() { }
+        DocArray(List<Document> a)
+        {
+            Add(a);
+        }
         public DocArray(String s)
         {
             if (s == null) 
@@ -29,34 +36,37 @@ public class DocArray extends DocBase
         int Items(String s,int i,int n)
         {
             var state = ParseState.StartValue;
+            var a = new ArrayList<Document>(); // SList.InsertAt at the end is O(n)
             while (i < n)
             {
                 var c = s.charAt(i++);
                 if (Character.isWhitespace(c))
                     continue;
-                if (c == ']' && items==null)
+                if (c == ']' && a.isEmpty())
                     break;
-                switch (state)
+                if (state == ParseState.StartValue)
                 {
-                    case StartValue:
-                        var op = GetValue(s, n, i);
-                        if (op.ob!=null)
-                            items=(items==null)?new SList(op.ob):
-                                    items.InsertAt((Document)op.ob,items.Length);
-                        i = op.pos;
-                        state = ParseState.Comma;
-                        continue;
-                    case Comma:
-                        if (c == ']')
-                            return i;
-                        if (c != ',')
-                            throw new Error(", expected");
-                        state = ParseState.StartValue;
-                        continue;
+                    var op = GetValue(s, n, i);
+                    if (op.ob!=null)
+                        a.add((Document)op.ob);
+                    i = op.pos;
+                    state = ParseState.Comma;
+                    continue;
                 }
+                if (c == ']')
+                    break;
+                if (c != ',')
+                    throw new Error(", expected");
+                state = ParseState.StartValue;
             }
+            Add(a);
             return i;
         }
+        void Add(List<Document> a)
+        {
+            for (var j = a.size() - 1; j >= 0; j--)
+                items = new SList<>(a.get(j), items);
+        }
         public int getLength() { return (items==null)?0:items.Length; }
         public Document get(int n)
         {
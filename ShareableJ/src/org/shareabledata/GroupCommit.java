@@ -0,0 +1,141 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Group commit for a LogFile.
+ * Committing transactions append their records under the LogFile lock as before,
+ * but make them durable here, outside the lock: the first to arrive becomes
+ * the leader, waits up to maxDelay for other active committers to join
+ * (at most maxBatch in all), forces the file once for all of them and then
+ * releases them together.
+ * A transaction is installed only once it is durable (see STransaction.Commit),
+ * so no session sees a commit that a crash could lose.
+ * If a force fails, the file is marked as failed: whether the batch reached
+ * the disk is unknown, so its transactions and any waiting for it fail, and
+ * so does every later commit, until the database is closed and reopened.
+ * A ReentrantLock and Condition are used rather than synchronized and wait,
+ * which would pin the carrier thread of a virtual thread (see StrongStart).
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class GroupCommit {
+        public static long maxDelay = 200; // microseconds
+        public static int maxBatch = 32;
+        final LogFile log;
+        final ReentrantLock lock = new ReentrantLock();
+        final Condition changed = lock.newCondition();
+        long durable = 0; // everything before this position has been forced
+        boolean syncing = false; // a leader is collecting or forcing a batch
+        int active = 0; // transactions between Enter and the end of Sync
+        int waiting = 0; // transactions in Sync
+        GroupCommit(LogFile f)
+        {
+            log = f;
+        }
+        /// <summary>
+        /// Called before a transaction starts to write its records
+        /// </summary>
+        public void Enter()
+        {
+            lock.lock();
+            try {
+                active++;
+            } finally {
+                lock.unlock();
+            }
+        }
+        /// <summary>
+        /// Called instead of Sync if the transaction failed to write its records
+        /// </summary>
+        public void Leave()
+        {
+            lock.lock();
+            try {
+                active--;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /// <summary>
+        /// Called by Compactor, holding the LogFile lock, before the file is closed:
+        /// wait for a force in progress, then force everything written so far
+        /// and release any transactions still waiting in Sync
+        /// </summary>
+        void Retire() throws Exception
+        {
+            lock.lock();
+            try {
+                while (syncing)
+                    changed.await();
+                try {
+                    log.channel.force(false);
+                } catch (Exception e) {
+                    log.failed = true;
+                    throw e;
+                }
+                durable = Long.MAX_VALUE;
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+        /// <summary>
+        /// Wait until the file has been forced as far as position upto
+        /// </summary>
+        public void Sync(long upto) throws Exception
+        {
+            lock.lock();
+            try {
+                waiting++;
+                if (waiting >= Math.min(active, maxBatch))
+                    changed.signalAll(); // the batch is complete
+                while (durable < upto && syncing)
+                    changed.await();
+                if (durable >= upto || log.failed)
+                {
+                    waiting--;
+                    active--;
+                    changed.signalAll();
+                    if (durable < upto)
+                        throw new Exception("Database file could not be forced: transaction state unknown");
+                    return;
+                }
+                syncing = true; // we lead the next batch
+                var deadline = System.nanoTime() + maxDelay * 1000;
+                for (var w = maxDelay * 1000; waiting < Math.min(active, maxBatch) && w > 0;
+                        w = deadline - System.nanoTime())
+                    changed.awaitNanos(w);
+            } finally {
+                lock.unlock();
+            }
+            var target = 0L;
+            var done = false;
+            try {
+                target = log.length();
+                log.channel.force(false);
+                done = true;
+            } finally {
+                lock.lock();
+                try {
+                    if (done && target > durable)
+                        durable = target;
+                    if (!done)
+                        log.failed = true;
+                    syncing = false;
+                    waiting--;
+                    active--;
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            }
+        }
+}
@@ -48,7 +48,8 @@ public class GroupRowSet extends RowSet {
             }
             var mb = t.PositionAt(k);
             var m = (long)((mb!=null)?mb.getValue().val:0);
-            var ag = AddIn(sce._tr, r.get(m), b._cx);
+            // the aggregates are in our context, the values in the row's
+            var ag = AddIn(sce._tr, r.get(m), (cx==null)?null:Context.Append(b._cx,cx));
             r =(r==null)?new SDict(m, ag):r.Add(m,ag);
         }
         _tree = t;
@@ -86,7 +87,9 @@ public class GroupRowSet extends RowSet {
     static SDict<Long,Serialisable> AddIn(SDatabase tr, 
             SDict<Long,Serialisable> cur, Context cx) throws Exception
     {
-        var ags = (cx==null)?null:cx.Ags();
+        if (cx==null) // no aggregates
+            return cur;
+        var ags = cx.Ags();
         for (var b=ags.First(); b!=null;b=b.Next())
         {
             var f = (SFunction)b.getValue().val;
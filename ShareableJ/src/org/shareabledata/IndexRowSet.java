@@ -15,11 +15,12 @@ public class IndexRowSet extends RowSet {
         public final SCList<Variant> _key;
         public final int _op;
         public final boolean _unique;
+        public final SDict<Long,Boolean> _cols; // the columns to decode, null for all
         public IndexRowSet(SDatabase db,STable t,SIndex ix,SCList<Variant> key,
-                int op,SList<Serialisable> wh,Context cx)
+                int op,SList<Serialisable> wh,SDict<Long,Boolean> cs,Context cx)
         {
             super(db.Rdc(ix,key),t,null);
-            _ix = ix; _wh = wh;
+            _ix = ix; _wh = wh; _cols = cs;
             _key = key; _op = op;
             _unique = key!=null && key.Length == _ix.cols.Length;
         }
@@ -27,11 +28,11 @@ public class IndexRowSet extends RowSet {
         public Bookmark<Serialisable> First()
         {
             try {
-                var b = (MTreeBookmark<Long>)((_key==null)?_ix.rows.First()
-                        :_ix.rows.PositionAt(_key));
+                var b = (MTreeBookmark<Long>)((_key==null)?_ix.Rows().First()
+                        :_ix.Rows().PositionAt(_key));
                 for (;b!=null;b=NextOrPrev(_op,b))
                 {
-                    var r = _tr.Get(b.getValue().val);
+                    var r = _tr.Get(b.getValue().val,_cols);
                     var rb = new IndexRowBookmark(this, new SRow(_tr,r), b, 0);
                     if (r.Matches(rb,_wh))
                         return rb;
@@ -65,7 +66,7 @@ public class IndexRowSet extends RowSet {
                 for (var b = NextOrPrev(_irs._op,_mbm); b != null; 
                         b = NextOrPrev(_irs._op,b))
                 {
-                    var r = _irs._tr.Get((long)b.getValue().val);
+                    var r = _irs._tr.Get((long)b.getValue().val,_irs._cols);
                     var rb = new IndexRowBookmark(_irs,
                                 new SRow(_irs._tr, r), b , Position+1);
                     if (r.Matches(rb,_irs._wh))
@@ -78,13 +79,13 @@ public class IndexRowSet extends RowSet {
             public STransaction Update(STransaction tr, 
                     SDict<Long, Serialisable> assigs) throws Exception
             {
-                var rc =Ob().rec;
+                var rc = tr.Full(Ob().rec);
                 return (STransaction)tr.Install(new SUpdate(tr, rc, assigs),
                     tr.curpos); // ok
             }
             public STransaction Delete(STransaction tr) throws Exception
             {
-                var rc = Ob().rec;
+                var rc = tr.Full(Ob().rec);
                 return (STransaction)tr.Install(new SDelete(tr, rc),
                         tr.curpos); // ok
             }
@@ -0,0 +1,117 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * The equi-join key of a row, for the hash table of a hash join.
+ * Keys are equal if their values compare equal, as in SJoin.Compare.
+ * Serialisable has no hashCode to match compareTo, so Hash below
+ * gives equal hashes to values that compare equal: numbers are hashed
+ * on their value with trailing zeros removed (an SInteger can equal
+ * an SNumeric), dates and time spans on their ticks. Other types cannot
+ * be hashed (see Hashable), and JoinRowSet sorts and merges them instead.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class JoinKey {
+    public final Serialisable[] vals;
+    final int hash;
+    public JoinKey(Serialisable[] v)
+    {
+        vals = v;
+        var h = 0;
+        for (var x : v)
+            h = h * 31 + Hash(x);
+        hash = h;
+    }
+    @Override
+    public int hashCode()
+    {
+        return hash;
+    }
+    @Override
+    public boolean equals(Object o)
+    {
+        if (!(o instanceof JoinKey))
+            return false;
+        var k = (JoinKey)o;
+        if (k.hash != hash || k.vals.length != vals.length)
+            return false;
+        for (var i = 0; i < vals.length; i++)
+            if (vals[i].compareTo(k.vals[i]) != 0)
+                return false;
+        return true;
+    }
+    static int Hash(Serialisable v)
+    {
+        if (v instanceof SRow)
+        {
+            var sr = (SRow)v;
+            if (sr.cols.Length == 1) // compares as its only value
+                return Hash(sr.vals.First().getValue().val);
+        }
+        if (v instanceof SString)
+            return ((SString)v).str.hashCode();
+        if (v instanceof SInteger)
+        {
+            var si = (SInteger)v;
+            return (si.big == null) ? Hash(si.value, 0) : Hash(si.big, 0);
+        }
+        if (v instanceof SNumeric)
+        {
+            var nm = ((SNumeric)v).num;
+            return Hash(nm.mantissa, nm.scale);
+        }
+        if (v instanceof SBoolean)
+            return ((SBoolean)v).sbool ? 1 : 0;
+        if (v instanceof SDate)
+        {
+            var d = (SDate)v;
+            return Hash(d.rest, 0) * 31 + d.year * 12 + d.month;
+        }
+        if (v instanceof STimeSpan)
+            return Hash(((STimeSpan)v).ticks, 0);
+        return v.type; // Null
+    }
+    /// <summary>
+    /// Whether Hash gives v a hash that agrees with compareTo
+    /// </summary>
+    static boolean Hashable(Serialisable v)
+    {
+        if (v instanceof SRow)
+        {
+            var sr = (SRow)v;
+            return sr.cols.Length == 1 && Hashable(sr.vals.First().getValue().val);
+        }
+        return v == Serialisable.Null || v instanceof SString || v instanceof SInteger
+                || v instanceof SNumeric || v instanceof SBoolean
+                || v instanceof SDate || v instanceof STimeSpan;
+    }
+    /// <summary>
+    /// The hash of m*10^-s
+    /// </summary>
+    static int Hash(long m, int s)
+    {
+        if (m == 0)
+            return 0;
+        for (; m % 10 == 0; s--)
+            m /= 10;
+        return Long.hashCode(m) * 31 + s;
+    }
+    static final Bigint ten = new Bigint(10);
+    static int Hash(Bigint m, int s)
+    {
+        for (;; s--)
+        {
+            if (m.compareTo(Bigint.longMin) >= 0 && m.compareTo(Bigint.longMax) <= 0)
+                return Hash(m.toLong(), s);
+            var q = m.Divide(ten);
+            if (q.Times(ten).compareTo(m) != 0) // too long for Hash(long,int)
+                return m.toString().hashCode() * 31 + s;
+            m = q;
+        }
+    }
+}
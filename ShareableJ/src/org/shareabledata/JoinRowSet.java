@@ -5,14 +5,24 @@
  */
 package org.shareabledata;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+
 /**
- *
+ * An equi-join is done by hashing: the rows of one input are put in
+ * a hash table on their join key, and the other input is streamed
+ * through it. Otherwise, or if a join key has a value that JoinKey
+ * cannot hash, both inputs are sorted and merged.
  * @author Malcolm
  */
 public class JoinRowSet extends RowSet {
+    public static boolean hashJoins = true; // false forces sort-merge
     public final SJoin _join;
     public final RowSet _left, _right;
     public final int _klen;
+    public final HashMap<JoinKey, ArrayList<RowBookmark>> _hash; // or null
+    public final boolean _buildLeft; // the hash table has the left rows
+    final SList<TreeInfo<Serialisable>> _probeKey;
     JoinRowSet(SDatabase tr,SQuery top, SJoin j,RowSet lf,RowSet rg,
             Context cx) throws Exception
     {
@@ -44,14 +54,97 @@ public class JoinRowSet extends RowSet {
             n++;
         }
         _klen = (lti==null)?0:lti.Length;
-        if (lti!=null)
+        var jt = j.joinType;
+        var lr = SJoin.JoinType.Left|SJoin.JoinType.Right;
+        var bl = false;
+        HashMap<JoinKey, ArrayList<RowBookmark>> h = null;
+        if (hashJoins && lti!=null && (jt&SJoin.JoinType.Cross)==0 
+                && (jt&lr)!=lr)
+        {
+            // an outer join must probe with the rows it keeps:
+            // otherwise the smaller input goes in the hash table
+            bl = (jt&SJoin.JoinType.Right)!=0 ||
+                ((jt&SJoin.JoinType.Left)==0 && Estimate(lf)<Estimate(rg));
+            h = Build(bl?lf:rg, bl?lti:rti);
+        }
+        if (h != null)
         {
-            lf = new OrderedRowSet(lf, lti);
-            rg = new OrderedRowSet(rg, rti);
+            _buildLeft = bl;
+            _probeKey = bl?rti:lti;
+            _hash = h;
+        }
+        else
+        {
+            _buildLeft = false;
+            _probeKey = null;
+            _hash = null;
+            if (lti!=null)
+            {
+                lf = new OrderedRowSet(lf, lti);
+                rg = new OrderedRowSet(rg, rti);
+            }
         }
         _left = lf;
         _right = rg;
     }
+    /// <summary>
+    /// A guess at the number of rows in rs, for choosing the build side
+    /// </summary>
+    static int Estimate(RowSet rs)
+    {
+        if (rs instanceof TableRowSet)
+            return ((TableRowSet)rs)._tb.rows.Length;
+        if (rs instanceof IndexRowSet)
+        {
+            var irs = (IndexRowSet)rs;
+            return irs._unique?1:irs._ix.Rows().Length;
+        }
+        if (rs instanceof SearchRowSet)
+            return Estimate(((SearchRowSet)rs)._sce);
+        if (rs instanceof AliasRowSet)
+            return Estimate(((AliasRowSet)rs)._sce);
+        return Integer.MAX_VALUE;
+    }
+    JoinKey Key(RowBookmark b,SList<TreeInfo<Serialisable>> ti)
+    {
+        var k = new Serialisable[ti.Length];
+        var i = 0;
+        for (var c = ti.First(); c != null; c = c.Next())
+            k[i++] = c.getValue().headName.Lookup(_tr,b._cx);
+        return new JoinKey(k);
+    }
+    /// <summary>
+    /// The hash table of the rows of rs, or null if a key cannot be hashed
+    /// </summary>
+    HashMap<JoinKey, ArrayList<RowBookmark>> Build(RowSet rs,
+            SList<TreeInfo<Serialisable>> ti)
+    {
+        var h = new HashMap<JoinKey, ArrayList<RowBookmark>>();
+        for (var b = (RowBookmark)rs.First(); b != null; b = (RowBookmark)b.Next())
+        {
+            var k = Key(b,ti);
+            for (var v : k.vals)
+                if (!JoinKey.Hashable(v))
+                    return null;
+            h.computeIfAbsent(k, x -> new ArrayList<>()).add(b);
+        }
+        return h;
+    }
+    /// <summary>
+    /// The first result from probe row p onwards
+    /// </summary>
+    Bookmark<Serialisable> Probe(RowBookmark p,int pos)
+    {
+        var outer = (_join.joinType&
+                (_buildLeft?SJoin.JoinType.Right:SJoin.JoinType.Left))!=0;
+        for (; p != null; p = (RowBookmark)p.Next())
+        {
+            var ms = _hash.get(Key(p,_probeKey));
+            if (ms != null || outer)
+                return new HashJoinBookmark(this, p, ms, 0, pos);
+        }
+        return null;
+    }
     static SRow _Row(JoinRowSet jrs,RowBookmark lbm,boolean ul,
             RowBookmark rbm,boolean ur) 
     {
@@ -120,6 +213,8 @@ public class JoinRowSet extends RowSet {
 
     public Bookmark<Serialisable> First()
     {
+        if (_hash != null)
+            return Probe((RowBookmark)(_buildLeft?_right:_left).First(), 0);
         RowBookmark lf, rg;
         for (lf= (RowBookmark)_left.First(),rg = (RowBookmark)_right.First();
             lf!=null && rg!=null; )
@@ -152,9 +247,35 @@ public class JoinRowSet extends RowSet {
     {
         var cx = (rbm==null)?null:rbm._cx;
         if (lbm != null)
-            cx = Context.Append(lbm._cx, cx);
+            cx = (cx==null)?lbm._cx:Context.Append(lbm._cx, cx);
         return RowBookmark._Cx(this,_Row(this,lbm, ul, rbm, ur), cx);
     }
+    Context _Context(RowBookmark pbm, ArrayList<RowBookmark> ms, int mi)
+    {
+        var bbm = (ms==null)?null:ms.get(mi);
+        return _buildLeft ? _Context(bbm, bbm!=null, pbm, true)
+                : _Context(pbm, true, bbm, bbm!=null);
+    }
+    public class HashJoinBookmark extends RowBookmark
+    {
+        public final JoinRowSet _jrs;
+        public final RowBookmark _pbm; // the probe row
+        final ArrayList<RowBookmark> _ms; // its matches, or null
+        final int _mi;
+        protected HashJoinBookmark(JoinRowSet jrs,RowBookmark pbm,
+                ArrayList<RowBookmark> ms,int mi,int pos)
+        {
+            super(jrs,jrs._Context(pbm,ms,mi),pos);
+            _jrs = jrs; _pbm = pbm; _ms = ms; _mi = mi;
+        }
+        @Override
+        public Bookmark<Serialisable> Next()
+        {
+            if (_ms != null && _mi + 1 < _ms.size())
+                return new HashJoinBookmark(_jrs, _pbm, _ms, _mi + 1, Position + 1);
+            return _jrs.Probe((RowBookmark)_pbm.Next(), Position + 1);
+        }
+    }
     public class JoinRowBookmark extends RowBookmark
     {
         public final JoinRowSet _jrs;
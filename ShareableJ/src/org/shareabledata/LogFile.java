@@ -0,0 +1,220 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.io.*;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A database file. Readers see the file through read-only mapped segments
+ * of SegmentSize bytes, so they need no lock and no copying:
+ * MappedByteBuffer.get(int) does not change the buffer's state.
+ * The last segment is remapped as the file grows. A superseded mapping
+ * stays valid for any Reader still using it.
+ * Appends go through the FileChannel, and are made durable by GroupCommit.
+ * The locks are ReentrantLocks rather than monitors, as file I/O is done
+ * while they are held: a virtual thread blocked in a synchronized section
+ * would pin its carrier thread (see StrongStart).
+ * Each compaction (see Compactor) writes a new generation of the file,
+ * name.gen1, name.gen2 and so on, since the file it replaces may still be
+ * open for snapshots (and on Windows an open file cannot be replaced).
+ * A LogFile is closed once nothing refers to it, i.e. no snapshot, Reader or
+ * Writer uses it, and a superseded generation is then deleted.
+ * @author Malcolm
+ */
+public class LogFile {
+    public static long SegmentSize = 64L*1024*1024;
+    static final String generation = ".gen";
+    static final Cleaner cleaner = Cleaner.create();
+    public final RandomAccessFile file;
+    public final ReentrantLock lock = new ReentrantLock(); // the lock for writers
+    final ReentrantLock mapping = new ReentrantLock(); // for Remap
+    public final FileChannel channel;
+    public final GroupCommit group = new GroupCommit(this);
+    public final Checkpoint checkpoint;
+    public final File path;
+    volatile boolean superseded = false; // replaced by a compacted file, see Compactor
+    volatile boolean failed = false; // a force failed, see GroupCommit
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    final Release release;
+    /// <summary>
+    /// Closes the file when the LogFile is unreachable, and deletes a superseded
+    /// one. It must not refer to the LogFile, or that would never be unreachable.
+    /// The path may have been reused since (a database deleted and created
+    /// again), so the file is deleted only if it is still the same file.
+    /// </summary>
+    static class Release implements Runnable
+    {
+        final RandomAccessFile file;
+        final File path;
+        final String id;
+        volatile boolean delete = false;
+        Release(RandomAccessFile f,File p)
+        {
+            file = f; path = p;
+            id = Id(p);
+        }
+        static String Id(File p)
+        {
+            try {
+                var a = Files.readAttributes(p.toPath(), BasicFileAttributes.class);
+                return a.fileKey() + " " + a.creationTime();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        @Override
+        public void run()
+        {
+            try {
+                file.close();
+            } catch (IOException e) {
+            }
+            // if this fails (e.g. a mapping is still there), Current deletes it
+            if (delete && id != null && id.equals(Id(path)))
+                path.delete();
+        }
+    }
+    public LogFile(File f,String mode) throws Exception
+    {
+        path = f;
+        file = new RandomAccessFile(f,mode);
+        channel = file.getChannel();
+        checkpoint = new Checkpoint(this,f);
+        release = new Release(file,f);
+        cleaner.register(this, release);
+    }
+    /// <summary>
+    /// The generation of the file fn of the named database: 0 for the name
+    /// itself, n for name.genn, and -1 if fn is not one of its files
+    /// </summary>
+    static int Generation(String fn,String name)
+    {
+        if (fn.equals(name))
+            return 0;
+        var p = name + generation;
+        if (!fn.startsWith(p) || fn.length() == p.length() || fn.length() > p.length() + 9)
+            return -1;
+        for (var i = p.length(); i < fn.length(); i++)
+            if (!Character.isDigit(fn.charAt(i)))
+                return -1;
+        return Integer.parseInt(fn.substring(p.length()));
+    }
+    /// <summary>
+    /// The current file of the named database: its latest generation.
+    /// Older generations, left by a crash or still open when they were
+    /// superseded, are deleted with their checkpoints, as is a compaction
+    /// that did not finish. Only called when the database is not open.
+    /// </summary>
+    public static File Current(String path,String name)
+    {
+        var f = new File(path,name);
+        var fs = f.getAbsoluteFile().getParentFile().listFiles();
+        if (fs == null)
+            return f;
+        var cur = f;
+        var g = 0;
+        for (var x : fs)
+        {
+            var n = Generation(x.getName(),name);
+            if (n > g)
+            {
+                cur = x;
+                g = n;
+            }
+        }
+        for (var x : fs)
+        {
+            var n = Generation(x.getName(),name);
+            if (n >= 0 && n < g)
+            {
+                x.delete();
+                new File(x.getPath() + ".ckpt").delete();
+            }
+        }
+        new File(f.getPath() + ".compact").delete();
+        return cur;
+    }
+    /// <summary>
+    /// The file for the generation after this one
+    /// </summary>
+    File Next(String name)
+    {
+        return new File(path.getAbsoluteFile().getParentFile(),
+                name + generation + (Generation(path.getName(),name) + 1));
+    }
+    /// <summary>
+    /// Called by Compactor, holding the lock, when a new generation has replaced
+    /// this file: commits now fail, and the file is deleted once it is closed
+    /// </summary>
+    void Supersede()
+    {
+        superseded = true;
+        release.delete = true;
+        checkpoint.file.delete(); // it describes this file
+    }
+    public long length() throws Exception
+    {
+        return channel.size();
+    }
+    /// <summary>
+    /// The segment containing position s, or null if s is beyond the end of file.
+    /// The segment starts at (s/SegmentSize)*SegmentSize.
+    /// </summary>
+    public MappedByteBuffer Segment(long s) throws Exception
+    {
+        var segs = segments;
+        var i = (int)(s / SegmentSize);
+        if (i < segs.length && segs[i] != null
+                && segs[i].limit() > (int)(s - i * SegmentSize))
+            return segs[i];
+        return Remap(i, s);
+    }
+    MappedByteBuffer Remap(int i,long s) throws Exception
+    {
+        mapping.lock();
+        try {
+            var segs = segments;
+            var off = (int)(s - i * SegmentSize);
+            if (i < segs.length && segs[i] != null && segs[i].limit() > off)
+                return segs[i]; // another thread got here first
+            var base = i * SegmentSize;
+            var n = Math.min(SegmentSize, channel.size() - base);
+            if (n <= off)
+                return null;
+            // never map beyond the end of file: for a writable channel map() would extend it
+            var m = channel.map(FileChannel.MapMode.READ_ONLY, base, n);
+            var ns = new MappedByteBuffer[Math.max(segs.length, i + 1)];
+            System.arraycopy(segs, 0, ns, 0, segs.length);
+            ns[i] = m;
+            segments = ns;
+            return m;
+        } finally {
+            mapping.unlock();
+        }
+    }
+    /// <summary>
+    /// Append the given bytes at the end of the file. The caller holds the lock.
+    /// </summary>
+    public void Append(byte[] b,int n) throws Exception
+    {
+        var bb = ByteBuffer.wrap(b, 0, n);
+        var p = channel.size();
+        while (bb.hasRemaining())
+            p += channel.write(bb, p);
+    }
+    public void Close() throws IOException
+    {
+        segments = new MappedByteBuffer[0];
+        file.close();
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Replays a long stretch of the log using all cores, for SDatabase.Load.
+ * The log has no record lengths, so there are three phases:
+ *   a scan finds where each record starts: the bodies of records, updates
+ *   and deletes are skipped without constructing anything, while
+ *   definitions are decoded and installed in a catalog-only database
+ *   (as in Checkpoint.Write) because they can change how later records
+ *   are read;
+ *   chunks of data records are then decoded by worker threads, each with
+ *   its own Reader, since decoding them does not depend on the database;
+ *   and this thread installs everything with _Add in log order, decoding
+ *   the definitions again against the real database as it reaches them.
+ * The result is the same as the serial loop in Load.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class LogLoader {
+    static final int Chunk = 4096; // records decoded by one task
+    final SDatabase start;
+    final long limit;
+    long[] pos = new long[Chunk]; // record start positions, then the limit
+    boolean[] data = new boolean[Chunk]; // SRecord, SUpdate or SDelete
+    int count = 0;
+    SDatabase schema; // the catalog as of the end of the scan
+    LogLoader(SDatabase db) throws Exception
+    {
+        start = db;
+        limit = db.Log().length();
+    }
+    SDatabase Load() throws Exception
+    {
+        Scan();
+        var par = Math.max(1, Runtime.getRuntime().availableProcessors());
+        var pending = new ArrayDeque<CompletableFuture<SDbObject[]>>();
+        var next = 0; // the first record not yet given to a task
+        var db = start;
+        for (var c = 0; c < count; c += Chunk)
+        {
+            while (next < count && pending.size() <= 2 * par)
+            {
+                var s = next;
+                next = Math.min(count, next + Chunk);
+                var e = next;
+                pending.add(CompletableFuture.supplyAsync(() -> Decode(s, e)));
+            }
+            SDbObject[] obs;
+            try {
+                obs = pending.remove().join();
+            } catch (CompletionException ex) {
+                throw (ex.getCause() instanceof Exception) ? (Exception)ex.getCause() : ex;
+            }
+            for (var i = c; i < c + obs.length; i++)
+                if (data[i])
+                    db = db._Add(obs[i - c], pos[i + 1]);
+                else
+                {
+                    var rd = new Reader(db, pos[i], limit);
+                    var s = (SDbObject)rd._Get();
+                    db = rd.db._Add(s, rd.Position());
+                }
+        }
+        return new SDatabase(db, pos[count]);
+    }
+    /// <summary>
+    /// Find the record boundaries between start.curpos and limit
+    /// </summary>
+    void Scan() throws Exception
+    {
+        var rd = new Reader(start, start.curpos, limit);
+        for (;;)
+        {
+            var p = rd.Position();
+            var tp = rd.ReadByte();
+            if (count + 1 >= pos.length)
+            {
+                pos = Arrays.copyOf(pos, pos.length * 2);
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            pos[count] = p;
+            if (tp < 0)
+                break;
+            switch (tp)
+            {
+                case Types.SRecord:
+                case Types.SUpdate:
+                    rd.SkipInteger(); // table
+                    rd.SkipFields();
+                    if (tp == Types.SUpdate)
+                    {
+                        rd.SkipInteger(); // defpos
+                        rd.SkipFields(); // oldfields
+                    }
+                    break;
+                case Types.SDelete:
+                    rd.SkipInteger(); // table
+                    rd.SkipInteger(); // delpos
+                    rd.SkipFields(); // oldfields
+                    break;
+                default:
+                    rd.GetBuf(p);
+                    var s = rd._Get();
+                    if (s == null || s == Serialisable.Null)
+                    {
+                        pos[count] = rd.Position(); // as in the serial loop
+                        schema = rd.db;
+                        return;
+                    }
+                    rd.db = rd.db._Add((SDbObject)s, rd.Position());
+                    data[count++] = false;
+                    continue;
+            }
+            data[count++] = true;
+        }
+        schema = rd.db;
+    }
+    /// <summary>
+    /// Decode the data records in [s,e): other entries are left null
+    /// </summary>
+    SDbObject[] Decode(int s, int e)
+    {
+        var r = new SDbObject[e - s];
+        try {
+            Reader rd = null;
+            for (var i = s; i < e; i++)
+                if (data[i])
+                {
+                    if (rd == null || rd.Position() != pos[i])
+                        rd = new Reader(schema, pos[i], limit);
+                    r[i - s] = (SDbObject)rd._Get();
+                }
+        } catch (Exception ex) {
+            throw new CompletionException(ex);
+        }
+        return r;
+    }
+}
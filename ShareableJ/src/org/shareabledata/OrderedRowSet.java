@@ -5,6 +5,8 @@
  */
 package org.shareabledata;
 
+import java.util.ArrayList;
+
 /**
  *
  * @author Malcolm
@@ -26,8 +28,9 @@ public class OrderedRowSet extends RowSet {
                         !b.getValue().desc);
                 ti = (ti==null)?new SList(inf):ti.InsertAt(inf, n);
             }
-            var t = new SMTree<Serialisable>(ti);
-            SDict<Integer, SRow> r = null;
+            // rows arrive in order of m, and both trees are built bottom-up
+            var ks = new ArrayList<SSlot<SCList<Variant>, Long>>();
+            var r = new SDictBuilder<Integer, SRow>();
             int m = 0;
             for (var b = (RowBookmark)sce.First(); b != null; b = (RowBookmark)b.Next(),m++)
             {
@@ -36,19 +39,19 @@ public class OrderedRowSet extends RowSet {
                 for (var c = sel.order.First(); c != null; c = c.Next())
                     k[i] = new Variant(c.getValue().col.Lookup(_tr,b._cx),
                             !c.getValue().desc);
-                t = t.Add(m,k);
-                r=(r==null)?new SDict(0,b.Ob()):r.Add(m, b.Ob());
+                ks.add(new SSlot<SCList<Variant>, Long>(new SCList<Variant>(k), (long)m));
+                r.Add(m, b.Ob());
             }
-            _tree = t;
-            _rows = r;
+            _tree = SMTree.Build(ti, ks);
+            _rows = r.Build();
         }
         public OrderedRowSet(RowSet sce,SList<TreeInfo<Serialisable>>ti)
                 throws Exception
         {
             super(sce._tr,sce._qry,sce._cx);
             _sce = sce;
-            var t = new SMTree<Serialisable>(ti);
-            SDict<Integer, SRow> r = null;
+            var ks = new ArrayList<SSlot<SCList<Variant>, Long>>();
+            var r = new SDictBuilder<Integer, SRow>();
             int m = 0;
             for (var b = (RowBookmark)sce.First(); b != null; b = (RowBookmark)b.Next())
             {
@@ -56,12 +59,12 @@ public class OrderedRowSet extends RowSet {
                 var i = 0;
                 for (var c = ti.First(); c != null; c = c.Next())
                     k[i] = new Variant(c.getValue().headName.Lookup(_tr,b._cx),true);
-                t = t.Add(m, k);
-                r=(r==null)?new SDict(m, b.Ob()):r.Add(m,b.Ob());
+                ks.add(new SSlot<SCList<Variant>, Long>(new SCList<Variant>(k), (long)m));
+                r.Add(m, b.Ob());
                 m++;
             }
-            _tree = t;
-            _rows = r;
+            _tree = SMTree.Build(ti, ks);
+            _rows = r.Build();
         }
         @Override
         public Bookmark<Serialisable> First()
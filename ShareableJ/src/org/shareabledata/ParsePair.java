@@ -12,5 +12,7 @@ package org.shareabledata;
 public class ParsePair {
     public final Serialisable ob;
     public final SDict<Long,String> ns;
-    public ParsePair(Serialisable s,SDict<Long,String> n) {ob = s; ns=n; }
+    public final int params; // the number of ? parameters
+    public ParsePair(Serialisable s,SDict<Long,String> n) {ob = s; ns=n; params=0; }
+    public ParsePair(Serialisable s,SDict<Long,String> n,int p) {ob = s; ns=n; params=p; }
 }
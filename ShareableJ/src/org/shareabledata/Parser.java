@@ -375,6 +375,8 @@ public class Parser {
                     case ',': Advance(); return tok = Sym.COMMA;
                     case ')': Advance(); return tok = Sym.RPAREN;
                     case '=': Advance(); return tok = Sym.EQUAL;
+                    case '?': Advance(); val = new SParam(psr.params++);
+                        return tok = Sym.LITERAL;
                     case '!':
                         Advance();
                         if (ch == '=')
@@ -421,6 +423,7 @@ public class Parser {
     long _uid = -1;
     SDict<String,Long> names = null;
     SDict<Long,String> uids = null;
+    int params = 0; // the number of ? parameters so far
     Lexer lxr;
     Parser(String inp) throws Exception
     {
@@ -428,7 +431,9 @@ public class Parser {
     }
     public static ParsePair Parse(String sql) throws Exception
     {
-        return new Parser(sql).Statement();
+        var p = new Parser(sql);
+        var r = p.Statement();
+        return (p.params == 0)? r : new ParsePair(r.ob, r.ns, p.params);
     }
     int Next() throws Exception
     {
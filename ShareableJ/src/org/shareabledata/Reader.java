@@ -5,53 +5,128 @@
  */
 package org.shareabledata;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.io.*;
+import java.nio.MappedByteBuffer;
 /**
- * This class is not shareable
+ * This class is not shareable.
+ * Bytes are read directly from the mapped segments of the LogFile:
+ * buf.start is the start of the current segment, buf.pos the offset in it
+ * and buf.len the mapped length of the segment.
  * @author Malcolm
  */
 public class Reader extends ReaderBase {
-    public RandomAccessFile file;
+    public LogFile log;
     public final long limit;
+    MappedByteBuffer seg = null;
     public boolean GetBuf(long s) throws Exception
     {
-        int m = (limit == 0 || limit >= s + Buffer.Size) ? Buffer.Size : (int)(limit - s);
-        synchronized(file)
+        seg = log.Segment(s);
+        if (seg == null)
         {
-            file.seek(s);
-            buf.len = file.read(buf.buf, 0, m);
+            buf.start = s;
+            buf.pos = 0;
+            buf.len = 0;
+            return false;
         }
-        buf.start = s;
-        return buf.len>0;
+        buf.start = (s / LogFile.SegmentSize) * LogFile.SegmentSize;
+        buf.pos = (int)(s - buf.start);
+        buf.len = seg.limit();
+        return true;
     }
     @Override
     public int ReadByte() throws Exception
     {
         if (Position() >= limit)
             return -1;
-        if (buf.pos==buf.len)
+        if (buf.pos==buf.len && !GetBuf(Position()))
+            return -1;
+        return seg.get(buf.pos++);
+    }
+    /// <summary>
+    /// A record or update with only the fields in cs decoded (see STable.Projection)
+    /// </summary>
+    SRecord GetRecord(SDict<Long,Boolean> cs) throws Exception
+    {
+        var p = Position();
+        switch (ReadByte())
         {
-            if (!GetBuf(buf.start + buf.len))
-                return -1;
-            buf.pos = 0;
+            case Types.SRecord: return new SRecord(Types.SRecord,this,cs);
+            case Types.SUpdate: return new SUpdate(this,cs);
+        }
+        GetBuf(p);
+        return (SRecord)_Get();
+    }
+    void SkipInteger() throws Exception
+    {
+        for (var n = ReadByte(); n > 0; n--)
+            ReadByte();
+    }
+    /// <summary>
+    /// Skip a list of fields (column uid and value) as written for a record
+    /// </summary>
+    void SkipFields() throws Exception
+    {
+        for (var n = GetInt(); n > 0; n--)
+        {
+            SkipInteger();
+            SkipValue();
+        }
+    }
+    /// <summary>
+    /// Skip a value as written by its Put without constructing it:
+    /// values of other types than these are decoded
+    /// </summary>
+    void SkipValue() throws Exception
+    {
+        var p = Position();
+        switch (ReadByte())
+        {
+            case Types.Serialisable:
+                return;
+            case Types.SBoolean:
+                ReadByte();
+                return;
+            case Types.SInteger:
+            case Types.SBigInt:
+            case Types.STimeSpan:
+                SkipInteger();
+                return;
+            case Types.SNumeric:
+            case Types.SDate:
+                SkipInteger();
+                SkipInteger();
+                SkipInteger();
+                return;
+            case Types.SString:
+                for (var n = GetInt(); n > 0; n--)
+                    ReadByte();
+                return;
+            default:
+                GetBuf(p);
+                _Get();
         }
-        return buf.buf[buf.pos++];
     }
     Reader(SDatabase d) throws Exception
     {
         db = d;
-        file = d.File();
-        limit = file.length();
+        log = d.Log();
+        limit = log.length();
         GetBuf(d.curpos);
     }
     Reader(SDatabase d, long s) throws Exception
     {
         db = d;
-        db = d;
-        file = d.File();
+        log = d.Log();
         limit = d.curpos;
         GetBuf(s);
     }
+    /// <summary>
+    /// A reader for the part of the log between s and lim
+    /// </summary>
+    Reader(SDatabase d, long s, long lim) throws Exception
+    {
+        db = d;
+        log = d.Log();
+        limit = lim;
+        GetBuf(s);
+    }
 }
@@ -15,34 +15,65 @@ public abstract class ReaderBase extends IOBase {
     public Context ctx = Context.Empty;
     public SDbObject context = SRole.Public; // set a function or object being defined
     public long lastAlias = SDbObject.maxAlias;
+    public Serialisable[] args = null; // the parameters of a statement being prepared
     public Serialisable req;
     public SDatabase db;   // a copy, updatable during Get, Load
     public long Position()
     { return buf.start + buf.pos; }
     public Bigint GetInteger() throws Exception
     {
-        var n = ReadByte();
+        return GetInteger(ReadByte());
+    }
+    /// <summary>
+    /// The rest of an integer whose length byte n has been read
+    /// </summary>
+    Bigint GetInteger(int n) throws Exception
+    {
         var cs = new byte[n];
         for (int j = 0; j < n; j++)
             cs[j] = (byte)ReadByte();
         return new Bigint(cs);
     }
+    /// <summary>
+    /// As GetInteger(n).toLong(), but integers of up to 8 bytes
+    /// (all those written by PutInt and PutLong) are assembled
+    /// directly from the big-endian two's complement bytes.
+    /// </summary>
+    long GetLong(int n) throws Exception
+    {
+        if (n < 0 || n > 8)
+            return GetInteger(n).toLong();
+        long v = 0;
+        for (int j = 0; j < n; j++)
+        {
+            var b = ReadByte();
+            v = (j == 0) ? (byte)b : (v << 8) | (b & 0xff);
+        }
+        return v;
+    }
     public static long pe13;
     public int GetInt() throws Exception
     {
         pe13 = Position();
-        return GetInteger().toInt();
+        return (int)GetLong(ReadByte());
     }
     public long GetLong() throws Exception
     {
-        return GetInteger().toLong();
+        return GetLong(ReadByte());
+    }
+    /// <summary>
+    /// Fill b from the input: see SocketReader
+    /// </summary>
+    protected void GetBytes(byte[] b) throws Exception
+    {
+        for (int j = 0; j < b.length; j++)
+            b[j] = (byte)ReadByte();
     }
     public String GetString() throws Exception
     {
         int n = GetInt();
         byte[] cs = new byte[n];
-        for (int j = 0; j < n; j++)
-        cs[j] = (byte)ReadByte();
+        GetBytes(cs);
         return new String(cs, 0, n, "UTF-8");
     }
     public Serialisable _Get() throws Exception
@@ -88,6 +119,7 @@ public abstract class ReaderBase extends IOBase {
             case Types.SName: s = SDbObject.Get(this); break;
             case Types.SArg: s = new SArg(this); break;
             case Types.SDropIndex: s = new SDropIndex(this); break;
+            case Types.SParam: s = new SParam(this); break;
             default: s = Serialisable.Null; break;
         }
         return s;
@@ -110,7 +142,12 @@ public abstract class ReaderBase extends IOBase {
     {
         var r = new ArrayList();
         while (Position() < max)
-            r.add((SDbObject)_Get());
+        {
+            var s = _Get();
+            if (s == null) // reached the limit of this reader
+                break;
+            r.add((SDbObject)s);
+        }
         return (SDbObject[])r.toArray(new SDbObject[0]);
     }
     public Serialisable Lookup(long pos)
@@ -0,0 +1,191 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A shared cache of records decoded from the database files, keyed by
+ * file and log position. Committed log entries never change, so entries
+ * are never invalidated, only evicted.
+ * A compacted file (see Compactor) is a different LogFile, so snapshots
+ * of the old file never see its records, nor it theirs.
+ * The cache can be bounded by number of entries and/or approximate bytes:
+ * a limit of 0 means no limit of that sort.
+ * Eviction is by the CLOCK algorithm: a hit only sets the entry's
+ * reference bit, so readers never take a lock, and the hand (the ring
+ * of entries in the order they were added) gives each referenced entry
+ * a second chance before evicting it. Only eviction and Clear are
+ * synchronized, on the ring.
+ * @author Malcolm
+ */
+public class RecordCache {
+        // rough heap cost of a decoded record per byte of its log entry
+        static final int heapPerLogByte = 4;
+        public static final RecordCache shared = new RecordCache(100000,0);
+        static class Key
+        {
+            final LogFile log;
+            final long pos;
+            Key(LogFile f,long p)
+            {
+                log = f; pos = p;
+            }
+            @Override
+            public boolean equals(Object o)
+            {
+                if (!(o instanceof Key))
+                    return false;
+                var k = (Key)o;
+                return pos == k.pos && log == k.log;
+            }
+            @Override
+            public int hashCode()
+            {
+                return Long.hashCode(pos) * 31 + System.identityHashCode(log);
+            }
+        }
+        static class Entry
+        {
+            final Key key;
+            final Serialisable ob;
+            final long size;
+            volatile boolean referenced = false; // used since the hand last passed
+            Entry(Key k,Serialisable s,long z)
+            {
+                key = k; ob = s; size = z;
+            }
+        }
+        volatile int maxEntries;
+        volatile long maxBytes;
+        final AtomicInteger count = new AtomicInteger();
+        final AtomicLong bytes = new AtomicLong();
+        final LongAdder hits = new LongAdder();
+        final LongAdder misses = new LongAdder();
+        final ConcurrentHashMap<Key,Entry> map = new ConcurrentHashMap<>(1024);
+        // the clock: entries that may still be in the map, oldest first
+        final ConcurrentLinkedQueue<Entry> ring = new ConcurrentLinkedQueue<>();
+        public RecordCache(int n,long b)
+        {
+            maxEntries = n;
+            maxBytes = b;
+        }
+        /// <summary>
+        /// Change the limits. Existing entries are trimmed as needed.
+        /// </summary>
+        public void Configure(int n,long b)
+        {
+            maxEntries = n;
+            maxBytes = b;
+            Trim();
+        }
+        boolean Over()
+        {
+            return (maxEntries > 0 && count.get() > maxEntries)
+                    || (maxBytes > 0 && bytes.get() > maxBytes);
+        }
+        /// <summary>
+        /// Move the hand until we are within the limits: a referenced entry
+        /// loses its bit and goes round again, an unreferenced one is evicted.
+        /// After two turns an entry is evicted anyway, so that readers that
+        /// keep setting bits cannot hold up a writer.
+        /// </summary>
+        void Trim()
+        {
+            if (!Over())
+                return;
+            synchronized (ring)
+            {
+                var turns = 2L * count.get() + 1;
+                for (Entry e; Over() && (e = ring.poll()) != null; turns--)
+                {
+                    if (map.get(e.key) != e)
+                        continue; // already cleared
+                    if (e.referenced && turns > 0)
+                    {
+                        e.referenced = false;
+                        ring.add(e);
+                    }
+                    else
+                        Remove(e);
+                }
+            }
+        }
+        void Remove(Entry e)
+        {
+            if (map.remove(e.key, e))
+            {
+                count.decrementAndGet();
+                bytes.addAndGet(-e.size);
+            }
+        }
+        public Serialisable Get(LogFile f,long pos)
+        {
+            var e = map.get(new Key(f,pos));
+            if (e == null)
+            {
+                misses.increment();
+                return null;
+            }
+            if (!e.referenced) // avoid writing to a shared line on every hit
+                e.referenced = true;
+            hits.increment();
+            return e.ob;
+        }
+        /// <summary>
+        /// Add a decoded record. len is the length of its log entry.
+        /// A record already cached is kept, as the entry has not changed.
+        /// </summary>
+        public void Put(LogFile f,long pos,Serialisable s,long len)
+        {
+            var k = new Key(f,pos);
+            var e = new Entry(k,s,len * heapPerLogByte);
+            if (map.putIfAbsent(k, e) != null)
+                return;
+            count.incrementAndGet();
+            bytes.addAndGet(e.size);
+            ring.add(e);
+            Trim();
+        }
+        /// <summary>
+        /// Forget everything read from the given file, e.g. when it is closed or replaced
+        /// </summary>
+        public void Clear(LogFile f)
+        {
+            synchronized (ring)
+            {
+                for (var e : map.values()) // including any not yet on the ring
+                    if (e.key.log == f)
+                        Remove(e);
+                ring.removeIf(e -> e.key.log == f);
+            }
+        }
+        public long getHits()
+        {
+            return hits.sum();
+        }
+        public long getMisses()
+        {
+            return misses.sum();
+        }
+        public int Count()
+        {
+            return count.get();
+        }
+        public long Bytes()
+        {
+            return bytes.get();
+        }
+        public void ResetCounters()
+        {
+            hits.reset();
+            misses.reset();
+        }
+}
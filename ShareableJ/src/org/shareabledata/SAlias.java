@@ -63,6 +63,11 @@ public class SAlias extends SQuery {
             return new SAlias(q,f.GetLong(),f,u);
         }
         @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return Needs(cs, qry);
+        }
+        @Override
         public RowSet RowSet(SDatabase tr, SQuery top,
                 Context cx) throws Exception
         {
@@ -54,4 +54,10 @@ public class SArray<T> extends Collection<T> {
             return (Length==0)? null 
                     : new SArrayBookmark<T>(this,0);
         }
+        @Override
+        public Spliterator<T> spliterator()
+        {
+            return Spliterators.spliterator(elements, 
+                    Spliterator.ORDERED | Spliterator.IMMUTABLE);
+        }
 }
@@ -10,22 +10,25 @@ import java.util.ArrayList;
  * @author Malcolm
  */
 public abstract class SBucket<K extends Comparable,V> {
-        public final byte count;
+        public final int count;
         public final int total;
-        protected SBucket(int c,int tot) { count = (byte)c; total = tot; }
+        protected SBucket(int c,int tot) { count = c; total = tot; }
         // API for SDict to call
         public abstract boolean Contains(K k);
         public abstract V Lookup(K k);
-        abstract SBucket<K, V> Add(K k, V v);
+        // S is the node size of the SDict
+        abstract SBucket<K, V> Add(K k, V v, int S);
         abstract SBucket<K, V> Update(K k, V v);
-        abstract SBucket<K, V> Remove(K k);
+        abstract SBucket<K, V> Remove(K k, int S);
         public abstract MatchPos PositionFor(K k);
-        // API for internal housekeeping
+        // API for internal housekeeping: only full buckets are split
         SBucket<K,V> Split() { return new SInner<K, V>(TopHalf(), total, LowHalf()); }
         abstract SBucket<K, V> TopHalf();
         abstract SSlot<K,SBucket<K,V>> LowHalf();
         abstract SSlot<K, Object> Slot(int i);
         abstract void Add(ArrayList ab);
+        // Remove can leave the root with no slots: then reduce the height of the tree
+        SBucket<K, V> Reduce() { return this; }
         public abstract K Last();
         public SBucket<K, V> Gtr() { return null; }
         public int getEndPos() { return count - 1; }
@@ -0,0 +1,96 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * An SDictCursor for the SBucket trees of SDict.
+ * nodes[0..depth-1] is the path from the root to the current leaf,
+ * and pos[d] is the child of nodes[d] we are in.
+ * @author Malcolm
+ */
+public class SBucketCursor<K extends Comparable, V> extends SDictCursor<K, V> {
+        final SBucket<K, V>[] nodes;
+        final int[] pos;
+        SLeaf<K, V> leaf = null; // null once we have finished
+        int i; // the current entry in leaf
+        /// <summary>
+        /// A cursor before the first entry with key at least k (or the first entry if k is null)
+        /// </summary>
+        SBucketCursor(SBucket<K, V> root, K k)
+        {
+            var h = 1;
+            for (var b = root; b instanceof SInner; b = ((SInner<K, V>)b).gtr)
+                h++;
+            nodes = (SBucket<K, V>[])new SBucket[h];
+            pos = new int[h];
+            if (root == null || root.total == 0)
+                return;
+            var p = 0; // the number of entries before the start
+            var d = 0;
+            var b = root;
+            for (; b instanceof SInner; d++)
+            {
+                var n = (SInner<K, V>)b;
+                var j = (k == null) ? 0 : n.PositionFor(k).pos;
+                for (var s = 0; s < j; s++)
+                    p += n.slots[s].val.total;
+                nodes[d] = n;
+                pos[d] = j;
+                b = n.Child(j);
+            }
+            nodes[d] = b;
+            leaf = (SLeaf<K, V>)b;
+            i = (k == null) ? -1 : leaf.PositionFor(k).pos - 1;
+            remaining = root.total - p - i - 1;
+        }
+        @Override
+        public boolean Advance()
+        {
+            if (leaf == null)
+                return false;
+            if (++i < leaf.count)
+            {
+                remaining--;
+                return true;
+            }
+            // pop till we can move right, then go down to the leftmost leaf
+            for (var d = nodes.length - 2; d >= 0; d--)
+            {
+                var n = (SInner<K, V>)nodes[d];
+                if (pos[d] == n.count)
+                    continue;
+                var b = n.Child(++pos[d]);
+                for (d++; b instanceof SInner; d++)
+                {
+                    nodes[d] = b;
+                    pos[d] = 0;
+                    b = ((SInner<K, V>)b).Child(0);
+                }
+                nodes[d] = b;
+                leaf = (SLeaf<K, V>)b;
+                i = 0;
+                remaining--;
+                return true;
+            }
+            leaf = null;
+            return false;
+        }
+        @Override
+        public K Key()
+        {
+            return leaf.slots[i].key;
+        }
+        @Override
+        public V Value()
+        {
+            return leaf.slots[i].val;
+        }
+        @Override
+        public SSlot<K, V> Slot()
+        {
+            return leaf.slots[i];
+        }
+}
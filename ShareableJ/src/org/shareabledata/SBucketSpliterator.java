@@ -0,0 +1,49 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * An SDictSpliterator for the SBucket trees of SDict
+ * @author Malcolm
+ */
+public class SBucketSpliterator<K extends Comparable, V> 
+        extends SDictSpliterator<K, V, SBucket<K, V>> {
+        SBucketSpliterator(SBucket<K, V> root)
+        {
+            super(new Object[] { root }, 0, (root == null) ? 0 : 1,
+                    (root == null) ? 0 : root.total);
+        }
+        SBucketSpliterator(Object[] p, int f, int t, long s)
+        {
+            super(p, f, t, s);
+        }
+        @Override
+        protected int Total(SBucket<K, V> b)
+        {
+            return b.total;
+        }
+        @Override
+        protected Object[] Children(SBucket<K, V> b)
+        {
+            if (!(b instanceof SInner))
+                return null;
+            var n = (SInner<K, V>)b;
+            var r = new Object[n.count + 1];
+            for (var i = 0; i <= n.count; i++)
+                r[i] = n.Child(i);
+            return r;
+        }
+        @Override
+        protected SDictCursor<K, V> Cursor(SBucket<K, V> b)
+        {
+            return new SBucketCursor<K, V>(b, null);
+        }
+        @Override
+        protected SDictSpliterator<K, V, SBucket<K, V>> New(Object[] p, int f, int t, long s)
+        {
+            return new SBucketSpliterator<K, V>(p, f, t, s);
+        }
+}
@@ -223,6 +223,11 @@ public class SColumn extends SSelector {
             return false;
         }
         @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return Needs(cs, uid);
+        }
+        @Override
         public String toString()
         {
             var sb = new StringBuilder(_Uid(table));
@@ -6,6 +6,9 @@
 package org.shareabledata;
 
 import java.io.*;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
 
 /**
  *
@@ -14,12 +17,19 @@ import java.io.*;
 public class SDatabase {
 
     public final String name;
-    public final SDict<Long, SDbObject> objects;
+    public final SLongDict<SDbObject> objects;
     public final long curpos;
     public final SRole role;
-    static final Object files = new Object(); // a lock 
-    protected static SDict<String, RandomAccessFile> dbfiles = null;
-    protected static SDict<String, SDatabase> databases = null;
+    final LogFile log; // the file this snapshot reads from, see Compactor
+    static final Object files = new Object(); // a lock for Close and Compactor
+    // the open databases: the immutable root is replaced by compare-and-set
+    // (see Register), so sessions read it without locking
+    static final AtomicReference<SDict<String, State>> registry = new AtomicReference<>(null);
+    // scans of tables with at least this many rows may use all cores
+    public static int parallelRows = 10000;
+    // Load decodes at least this many bytes of log on all cores (see LogLoader)
+    public static long parallelLoad = (Runtime.getRuntime().availableProcessors() > 1)
+            ? 4L*1024*1024 : Long.MAX_VALUE;
     public static final SDatabase _system = System();
 
     SDatabase getRollback() {
@@ -31,44 +41,139 @@ public class SDatabase {
     }
 
     public static SDatabase Open(String path, String fname) throws Exception {
-        if (dbfiles != null && dbfiles.Contains(fname)) {
-            var r = databases.Lookup(fname);
-            if (r == null) {
-                throw new Exception("Database is loading");
+        for (;;) {
+            var s = Registered(fname);
+            if (s != null) {
+                var r = s.installed.get();
+                if (r == null) {
+                    throw new Exception("Database is loading");
+                }
+                return r;
             }
-            return r;
-        }
-        var db = new SDatabase(fname);
-        var file = new RandomAccessFile(new File(path,fname),"rws");
-        if (dbfiles == null) {
-            dbfiles = new SDict<>(fname, file);
-        } else {
-            dbfiles = dbfiles.Add(fname, file);
+            var ns = new State(new LogFile(LogFile.Current(path,fname),"rw")); // see GroupCommit
+            if (!Register(fname, null, ns)) {
+                ns.file.Close(); // another session opened it first
+                continue;
+            }
+            try {
+                Install(new SDatabase(fname, ns.file).Load());
+            } catch (Exception e) {
+                Register(fname, ns, null);
+                ns.file.Close();
+                throw e;
+            }
+            return ns.installed.get();
         }
-        db = db.Load();
-        Install(db);
-        return db;
     }
     protected static SDatabase System()
     {
         return SysTable.SysTables(new SDatabase());
     }
-
-    synchronized public static void Install(SDatabase db) {
-        if (databases == null) {
-            databases = new SDict<>(db.name, db);
-        } else {
-            databases = databases.Add(db.name, db);
+    /// <summary>
+    /// The state of an open database: its file and the installed database,
+    /// which is null while the database is loading.
+    /// Compactor registers a new State for the compacted file.
+    /// </summary>
+    static class State
+    {
+        final LogFile file;
+        final AtomicReference<SDatabase> installed = new AtomicReference<>(null);
+        State(LogFile f)
+        {
+            file = f;
+        }
+    }
+    /// <summary>
+    /// The State of the named database, or null if it is not open
+    /// </summary>
+    static State Registered(String name)
+    {
+        var r = registry.get();
+        return (r == null) ? null : r.Lookup(name);
+    }
+    /// <summary>
+    /// The installed database with the given name, or null
+    /// </summary>
+    static SDatabase Installed(String name)
+    {
+        var s = Registered(name);
+        return (s == null) ? null : s.installed.get();
+    }
+    /// <summary>
+    /// Replace the State old of the named database by s (either may be null).
+    /// The root is rebuilt and swapped in by compare-and-set, retrying if
+    /// another database was registered meanwhile
+    /// </summary>
+    /// <returns>false if the database's State is no longer old</returns>
+    static boolean Register(String name, State old, State s)
+    {
+        for (;;) {
+            var r = registry.get();
+            var cur = (r == null) ? null : r.Lookup(name);
+            if (cur != old)
+                return false;
+            var nr = (s == null) ? ((r == null) ? null : r.Remove(name))
+                    : (r == null) ? new SDict<>(name, s) : r.Add(name, s);
+            if (registry.compareAndSet(r, nr))
+                return true;
         }
     }
 
+    /// <summary>
+    /// Publish db as the installed database for its name, unless it has been
+    /// closed or compacted (db is of another file). Commits are installed once
+    /// they are durable, and the batches of GroupCommit are released in no
+    /// particular order, so db replaces only a database earlier in the log
+    /// </summary>
+    public static void Install(SDatabase db) {
+        var s = Registered(db.name);
+        if (s != null && db.Log() == s.file)
+            s.installed.accumulateAndGet(db,
+                    (cur, d) -> (cur != null && cur.curpos >= d.curpos) ? cur : d);
+    }
+
     public SRecord Get(Long pos) {
         return (SRecord)_Get(pos);
     }
+    /// <summary>
+    /// The record at pos, decoding only the fields in cs if it is not already
+    /// in the RecordCache. Such partial records are not cached.
+    /// </summary>
+    public SRecord Get(long pos,SDict<Long,Boolean> cs) {
+        if (cs == null || pos < 0 || pos >= STransaction._uid)
+            return Get(pos);
+        var r = RecordCache.shared.Get(Log(), pos);
+        if (r != null)
+            return (SRecord)r;
+        try {
+            return new Reader(this,pos).GetRecord(cs);
+        } catch(Exception e)
+        {
+            throw new Error("bad log at "+pos);
+        }
+    }
+    /// <summary>
+    /// The record r with all its fields, e.g. for an update or delete
+    /// </summary>
+    public SRecord Full(SRecord r) {
+        return r.partial ? Get(r.uid) : r;
+    }
 
+    /// <summary>
+    /// Records in the log never change, so decoded data records are kept
+    /// in the shared RecordCache
+    /// </summary>
     public Serialisable _Get(long pos) {
+        var f = Log();
+        var r = RecordCache.shared.Get(f, pos);
+        if (r != null)
+            return r;
         try {
-            return new Reader(this,pos)._Get();
+            var rdr = new Reader(this,pos);
+            r = rdr._Get();
+            if ((r instanceof SRecord || r instanceof SDelete) && !f.superseded)
+                RecordCache.shared.Put(f, pos, r, rdr.Position()-pos);
+            return r;
         } catch(Exception e)
         {
             throw new Error("bad log at "+pos);
@@ -91,12 +196,14 @@ public class SDatabase {
         objects = null;
         role = SRole.Public;
         curpos = 0;
+        log = null;
     }
-    SDatabase(String fname) {
+    SDatabase(String fname, LogFile f) {
         name = fname;
         objects = _system.objects;
         role = _system.role;
         curpos = 0;
+        log = f;
     }
 
     protected SDatabase(SDatabase db) {
@@ -104,15 +211,27 @@ public class SDatabase {
         objects = db.objects;
         role = db.role;
         curpos = db.curpos;
+        log = db.log;
+    }
+    /// <summary>
+    /// The database db, reading from f instead: see Compactor
+    /// </summary>
+    SDatabase(SDatabase db, LogFile f) {
+        name = db.name;
+        objects = db.objects;
+        role = db.role;
+        curpos = db.curpos;
+        log = f;
     }
 
     // CRUD on Records changes indexes as well as table, so we need this
-    protected SDatabase(SDatabase db, SDict<Long, SDbObject> obs, 
+    protected SDatabase(SDatabase db, SLongDict<SDbObject> obs, 
             SRole r,long c) {
         name = db.name;
         objects = obs;
         role = r;
         curpos = c;
+        log = db.log;
     }
     protected SDatabase(SDatabase db,long pos)
     {
@@ -120,8 +239,9 @@ public class SDatabase {
         objects = db.objects;
         role = db.role;
         curpos = pos;
+        log = db.log;
     }
-    SDatabase New(SDict<Long, SDbObject> obs, 
+    SDatabase New(SLongDict<SDbObject> obs, 
             SRole r,long c)
     {
         return new SDatabase(this,obs,r,c);
@@ -154,14 +274,14 @@ public class SDatabase {
     }
 
     protected SDatabase Install(STable t, String n,long c) {
-        return New((objects==null)?new SDict(t.uid,t):objects.Add(t.uid, t),
+        return New((objects==null)?new SLongDict<SDbObject>(t.uid,t):objects.AddLong(t.uid, t),
                 new SRole(role,n,t.uid),c);
     }
     public SDatabase Install(SColumn c, String n, long p) throws Exception
     {
         var obs = objects;
         if (c.uid >= STransaction._uid)
-            obs = obs.Add(c.uid, c);
+            obs = obs.AddLong(c.uid, c);
         var tb = ((STable)obs.get(c.table)).Add(-1,c,n);
         if (role.subs!=null && role.subs.Contains(c.table) && 
                 role.subs.get(c.table).defs.Contains(n))
@@ -173,7 +293,7 @@ public class SDatabase {
             {
                 case "NOTNULL": throw new Exception("Table is not empty");
             }
-        return New(obs.Add(c.table,tb).Add(c.uid, c), 
+        return New(obs.AddLong(c.table,tb).AddLong(c.uid, c), 
                 role.Add(c.table,-1,c.uid,n).Add(c.uid,n), p);
     }
 
@@ -181,7 +301,7 @@ public class SDatabase {
     {
         var obs = objects;
         if (a.uid>STransaction._uid)
-            obs = obs.Add(a.uid, a);
+            obs = obs.AddLong(a.uid, a);
         if (a.col == -1) {
             var ot = (STable)obs.Lookup(a.defpos);
             return New(obs,
@@ -190,7 +310,7 @@ public class SDatabase {
             var ot = (STable) obs.Lookup(a.defpos);
             var nc = new SColumn(a.col, ot.uid, a.dataType);
             var nt = ot.Add(a.seq,nc,Name(nc.uid));
-            return New(obs.Add(a.defpos, nt),role,c);
+            return New(obs.AddLong(a.defpos, nt),role,c);
         }
     }
 
@@ -198,7 +318,7 @@ public class SDatabase {
     {
         var obs = objects;
         if (d.uid>=STransaction._uid)
-            obs = obs.Add(d.uid, d);
+            obs = obs.AddLong(d.uid, d);
         if (d.parent == -1) {
             var ro = role;
             var ot = objects.Lookup(d.drpos);
@@ -218,7 +338,7 @@ public class SDatabase {
                     var x = (SIndex)ot;
                     var tb = (STable)objects.get(x.table);
                     tb = new STable(tb.indexes.Remove(x.uid),tb);
-                    obs = obs.Add(tb.uid,tb);
+                    obs = obs.AddLong(tb.uid,tb);
                     break;
                 }
             }
@@ -231,7 +351,7 @@ public class SDatabase {
             if (d.detail.length() == 0)
             {
                 var nt = ot.Remove(d.drpos);
-                obs = obs.Add(d.parent, nt);
+                obs = obs.AddLong(d.parent, nt);
                 return New(obs, role.Remove(d.parent,sq), c);
             } else
             {
@@ -239,50 +359,106 @@ public class SDatabase {
                         sc.constraints.Remove(d.detail));
                 var nt = ot.Add(sq,nc, Name(nc.uid));
                 var ro = role.Add(Name(nt.uid),nt.uid);
-                obs = obs.Add(d.drpos, nc).Add(nt.uid,nt);
+                obs = obs.AddLong(d.drpos, nc).AddLong(nt.uid,nt);
                 return New(obs,ro,c);
             }
         }
     }
 
     protected SDatabase Install(SView v, String n, long c) {
-        return New(objects.Add(v.uid, v),role.Add(n, v.uid),c);
+        return New(objects.AddLong(v.uid, v),role.Add(n, v.uid),c);
     }
 
     protected SDatabase Install(SIndex x, long c) throws Exception
     {
         var tb = (STable)objects.Lookup(x.table);
-        if (tb.rows != null) {
-            for (var b = tb.rows.First(); b != null; b = b.Next()) 
+        if (tb.rows != null && x.Rows().Length == 0) {
+            // build the new index bottom-up rather than by repeated Add.
+            // The records are fetched and their keys computed in parallel 
+            // for a large table: the stream keeps the order of the rows.
+            var ix = x;
+            var rs = tb.rows.stream();
+            if (tb.rows.Length >= parallelRows)
+                rs = rs.parallel();
+            var ks = rs.map(s -> {
+                    try {
+                        return new SSlot<SCList<Variant>, Long>(ix.Key(Get(s.val), ix.cols), s.val);
+                    } catch(Exception e) {
+                        return null;
+                    }})
+                .filter(s -> s != null)
+                .collect(Collectors.toCollection(ArrayList::new));
+            x = new SIndex(x, SMTree.Build(x.Rows()._info, ks));
+        }
+        else if (tb.rows != null) {
+            for (var rc = tb.rows.Cursor(); rc.Advance();) 
             try {
-                x = x.Add(Get(b.getValue().val), b.getValue().val);
+                x = x.Add(Get(rc.Value()), rc.Value());
             } catch(Exception e){}
         }
         tb = new STable((tb.indexes==null)?new SDict(x.uid,true):tb.indexes.Add(x.uid,true),tb);
-        return New(objects.Add(x.uid, x).Add(tb.uid,tb),role,c);
+        return New(objects.AddLong(x.uid, x).AddLong(tb.uid,tb),role,c);
     }
     protected SDatabase Install(SDropIndex d,long c) throws Exception
     {
         var obs = objects;
         if (d.uid >= STransaction._uid)
-            obs = obs.Add(d.uid, d);
+            obs = obs.AddLong(d.uid, d);
         var tb = (STable)objects.Lookup(d.table);
         var x = tb.FindIndex(this,d.key);
         tb = new STable(tb.indexes.Remove(x.uid),tb);
-        return New(obs.Remove(x.uid).Add(tb.uid,tb),role,c);
+        return New(obs.Remove(x.uid).AddLong(tb.uid,tb),role,c);
     }
 
-    public RandomAccessFile File() {
-        return dbfiles.Lookup(name);
+    public LogFile File() {
+        return Registered(name).file;
+    }
+    /// <summary>
+    /// The file this snapshot was read from. After a compaction this is no
+    /// longer File(), but the snapshot goes on reading its own rows from it
+    /// </summary>
+    LogFile Log() {
+        return (log != null) ? log : File();
     }
 
     SDatabase Load() throws Exception {
-        var rd = new Reader(this);
+        // start from the latest checkpoint, if any, so only the log since then is read
+        var ck = Log().checkpoint.Restore(this);
+        if (Log().length() - ck.curpos >= parallelLoad)
+            return new LogLoader(ck).Load();
+        var rd = new Reader(ck);
         var db = this;
         for (var s = (SDbObject)rd._Get(); s != null && s!=Serialisable.Null; s = (SDbObject)rd._Get())
             rd.db = rd.db._Add(s, rd.Position());
         return new SDatabase(rd.db,rd.Position());
     }
+    /// <summary>
+    /// Write a checkpoint now, rather than waiting for Checkpoint.interval
+    /// bytes of log, e.g. before a planned shutdown
+    /// </summary>
+    public void Checkpoint() throws Exception {
+        File().checkpoint.Write(Installed(name));
+    }
+    /// <summary>
+    /// Rewrite the database file with only the live schema and rows (see Compactor).
+    /// Transactions begun before this cannot commit.
+    /// </summary>
+    public Compactor Compact() throws Exception {
+        return Compactor.Online(name);
+    }
+    /// <summary>
+    /// Apply only the log records between curpos and end.
+    /// Used during Commit: the cost depends on what other writers have done,
+    /// not on the size of the database
+    /// </summary>
+    SDatabase Catchup(long end) throws Exception {
+        if (curpos >= end)
+            return this;
+        var rd = new Reader(this, curpos, end);
+        for (var s = (SDbObject)rd._Get(); s != null && s!=Serialisable.Null; s = (SDbObject)rd._Get())
+            rd.db = rd.db._Add(s, rd.Position());
+        return new SDatabase(rd.db,rd.Position());
+    }
     public SDatabase _Add(SDbObject s, long p) throws Exception {
         switch (s.type) {
             case Types.SRecord:
@@ -309,9 +485,11 @@ public class SDatabase {
 
     public void Close() throws IOException {
         synchronized (files) {
-            var f = dbfiles.Lookup(name);
-            databases = databases.Remove(name);
-            dbfiles = dbfiles.Remove(name);
+            var s = Registered(name);
+            if (s != null) {
+                Register(name, s, null);
+                RecordCache.shared.Clear(s.file);
+            }
         }
     }
 
@@ -319,14 +497,14 @@ public class SDatabase {
         var obs = objects;
         var ro = role;
         if (r.uid>=STransaction._uid)
-            obs = obs.Add(r.uid,r);
+            obs = obs.AddLong(r.uid,r);
         var st = ((STable)obs.Lookup(r.table)).Add(r);
-        obs = obs.Add(r.table, st);
+        obs = obs.AddLong(r.table, st);
         if (st.indexes!=null)
         for (var b = st.indexes.First(); b != null; b = b.Next()) {
                 var x = (SIndex)obs.Lookup(b.getValue().key);
                 x.Check(this,r,false);
-                obs = obs.Add(x.uid,x.Add(r,r.uid));
+                obs = obs.AddLong(x.uid,x.Add(r,r.uid));
             }
         return New(obs, ro, p);
     }
@@ -335,9 +513,9 @@ public class SDatabase {
         var obs = objects;
         var ro = role;
         if (u.uid >= STransaction._uid)
-            obs = obs.Add(u.uid, u);
+            obs = obs.AddLong(u.uid, u);
         var st = ((STable)obs.Lookup(u.table)).Add(u);
-        obs = obs.Add(u.table, st);
+        obs = obs.AddLong(u.table, st);
         var fs = u.fields;
         if (u.oldfields!=null)
             for (var b = u.oldfields.First();b!=null;b=b.Next())
@@ -350,10 +528,10 @@ public class SDatabase {
             {
                 var ok = x.Key(fs,x.cols);
                 x.Check(this,u,ok.compareTo(uk)==0);
-                obs = obs.Add(x.uid, x.Update(u.defpos, ok,u,uk, c));
+                obs = obs.AddLong(x.uid, x.Update(u.defpos, ok,u,uk, c));
             }
             else
-                obs = obs.Add(x.uid,x.Update(u.defpos,uk,u,uk,c));
+                obs = obs.AddLong(x.uid,x.Update(u.defpos,uk,u,uk,c));
         }
         return New(obs, ro, c);
     }
@@ -361,12 +539,12 @@ public class SDatabase {
     public SDatabase Install(SDelete d, long p) throws Exception {
         var obs = objects;
         if (d.uid >= STransaction._uid)
-            obs = obs.Add(d.uid, d);
+            obs = obs.AddLong(d.uid, d);
         var st = ((STable)obs.Lookup(d.table));
         if (st.indexes!=null)
         for (var b = st.indexes.First(); b != null; b = b.Next()) {
             var x = (SIndex) obs.Lookup(b.getValue().key);
-            obs = obs.Add(x.uid, x.Remove(d.oldfields, p));
+            obs = obs.AddLong(x.uid, x.Remove(d.oldfields, p));
             if (!x.primary)
                 continue;
             var k = x.Key(d.oldfields,x.cols);
@@ -377,19 +555,23 @@ public class SDatabase {
                     for (var ox = ot.indexes.First(); ox != null; ox = ox.Next())
                     {
                         var nx = (SIndex)obs.get(ox.getValue().key);
-                        if (nx.references == d.table && nx.rows.Contains(k))
+                        if (nx.references == d.table && nx.Rows().Contains(k))
                             throw new Exception("Referential constraint: illegal delete");
                     }
                 }
         }
         var ro = role;
         st = st.Remove(d.delpos);
-        obs = obs.Add(d.table, st);
+        obs = obs.AddLong(d.table, st);
         return New(obs, ro, p);
     }
 
-    public STransaction Transact(ReaderBase rdr,boolean auto) {
-        return new STransaction(databases.get(name), rdr, auto);
+    public STransaction Transact(ReaderBase rdr,boolean auto) throws Exception {
+        var s = Registered(name);
+        var d = (s == null) ? null : s.installed.get();
+        if (d == null)
+            throw new Exception("Database " + name + " is not available");
+        return new STransaction(d, rdr, auto);
     }
 
     public SSlot<SDatabase,Long> MaybeAutoCommit() throws Exception {
@@ -413,9 +595,9 @@ public class SDatabase {
     }
 
     SIndex GetPrimaryIndex(long t) throws Exception {
-        for (var b = objects.First(); b != null; b = b.Next()) {
-            if (b.getValue().val.type == Types.SIndex) {
-                var x = (SIndex) b.getValue().val;
+        for (var c = objects.Cursor(); c.Advance();) {
+            if (c.Value().type == Types.SIndex) {
+                var x = (SIndex) c.Value();
                 if (x.table == t) {
                     return x;
                 }
@@ -90,11 +90,16 @@ public class SDbObject extends Serialisable {
             throw new Error("Internal error - misplaced database object");
         }
         uid = f.length();
-        f.uids = f.uids.Add(s.uid, uid);
+        f.uids = f.uids.AddLong(s.uid, uid);
         f.WriteByte((byte) s.type);
     }
     @Override
     public boolean isValue() { return false;}
+    @Override
+    public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+    {
+        return (type == Types.SName) ? Needs(cs, uid) : AllColumns;
+    }
     public long getAffects() { return uid; }
     public static Serialisable Get(ReaderBase f) throws Exception
     {
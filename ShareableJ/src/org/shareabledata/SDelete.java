@@ -57,24 +57,28 @@ public class SDelete extends SDbObject {
         {
             return new SDelete(f);
         }
+        public static SDelete Get(ReaderBase f) throws Exception
+        {
+            return new SDelete(f);
+        }
         public void CheckConstraints(SDatabase db,STable st) throws Exception
         {
-            for (var b = st.indexes.First(); b != null; b = b.Next())
+            for (var b = (st.indexes==null)?null:st.indexes.First(); b != null; b = b.Next())
             {
                 var px = (SIndex)db.objects.get(b.getValue().key);
                 if (!px.primary)
                     continue;
                 var k = px.Key(oldfields, px.cols);
-                for (var ob = db.objects.PositionAt(0L); ob != null; ob = ob.Next()) // don't bother with system tables
+                for (var oc = db.objects.Cursor(0L); oc.Advance();) // don't bother with system tables
                 {    
-                    var ov = ob.getValue().val;
+                    var ov = oc.Value();
                     if(ov.type==Types.STable)
                     {
                         var ot = (STable)ov;
-                        for (var ox = ot.indexes.First(); ox != null; ox = ox.Next())
+                        for (var ox = (ot.indexes==null)?null:ot.indexes.First(); ox != null; ox = ox.Next())
                         {
                             var x = (SIndex)db.objects.get(ox.getValue().key);
-                            if (x.references == table && x.rows.Contains(k))
+                            if (x.references == table && x.Rows().Contains(k))
                                 throw new Exception("Referential constraint: illegal delete");
                         }
                     }
@@ -1,155 +1,221 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
-package org.shareabledata;
-
-/**
- *
- * @author Malcolm
- */
-public class SDict<K extends Comparable, V> extends Collection<SSlot<K, V>>
-        implements ILookup<K,V> {
-
-    public static final int SIZE = 8;
-    public final SBucket<K, V> root;
-
-    public SDict(K k, V v) {
-        this(new SLeaf<K, V>(new SSlot<K, V>(k, v)));
-    }
-    public SDict(SSlot<K,V>... pairs)
-    {
-        super(pairs.length);
-        SBucket<K, V> r = null;
-        for (var i=0;i<pairs.length;i++)
-            r = (r==null)?new SLeaf<K,V>(pairs[i]): 
-                    r.Add(pairs[i].key,pairs[i].val);
-        root = r;
-    }
-    SDict(SBucket<K, V> r) {
-        super((r == null) ? 0 : r.total);
-        root = r;
-    }
-    public Bookmark<SSlot<K,V>> PositionAt(K k)
-    {
-        SBookmark<K,V> bmk = null;
-        var cb = root;
-        while (cb!=null)
-        {
-                var bpos = cb.PositionFor(k);
-                bmk = new SBookmark<K, V>(cb, bpos.pos, bmk);
-                if (bpos.pos == cb.count)
-                {
-                    if (!(cb instanceof SInner))
-                        return null;
-                    var inr = (SInner<K,V>)cb;
-                    cb = inr.gtr;
-                }
-                else {
-                    var ob = cb.Slot(bpos.pos).val;
-                    cb = (ob instanceof SBucket)?(SBucket<K,V>)ob:null;
-                }
-            }
-            return (bmk==null)?null:new SDictBookmark<K,V>(bmk);
-    }
-    @Override
-    public SDictBookmark<K,V> First() {
-        if(root == null || root.total == 0)
-            return null;
-        var stk = new SBookmark<K,V>(root, 0, null);
-        var d = root.Slot(0);
-        var b = d.val;
-        while (b instanceof SBucket)
-        {
-            stk = new SBookmark<K,V>((SBucket)b,0,stk);
-            d = stk._bucket.Slot(0);
-            b = d.val;
-        }
-        return new SDictBookmark<K,V>(stk);
-    }
-    public SDictBookmark<K,V> Last()
-    {
-        if(root == null || root.total == 0)
-            return null;
-        var stk = new SBookmark<K,V>(root, root.getEndPos(), null);
-        var d = root.Slot(root.count-1);
-        var b = root.Gtr();
-        while (b instanceof SBucket)
-        {
-            var bb = (SBucket)b;
-            stk = new SBookmark<K,V>(bb,bb.getEndPos(),stk);
-            d = bb.Slot(bb.count-1);
-            b = ((SBucket)d.val).Gtr();
-        }
-        return new SDictBookmark<K,V>(stk);
-    }
-
-    public SDict<K, V> Add(K k, V v) {
-        return (root == null || root.total == 0) ? new SDict<>(k, v)
-                : (root.Contains(k)) ? new SDict<>(root.Update(k, v))
-                : (root.count == SIZE) ? new SDict<>(root.Split()).Add(k, v)
-                        : new SDict<>(root.Add(k, v));
-    }
-
-    public SDict<K, V> Remove(K k) {
-        return (root == null || root.Lookup(k) == null) ? this
-                : (root.total == 1) ? new SDict((SBucket)null)
-                        : new SDict<>(root.Remove(k));
-    }
-
-    public boolean Contains(K k) {
-        return (root == null) ? false : root.Contains(k);
-    }
-
-    public V Lookup(K k) {
-        return (root == null) ? null : root.Lookup(k);
-    }
-
-    public SDict<K, V> Merge(SDict<K, V> ud) {
-        SDict<K, V> r = null;
-        var ob = First();
-        var ub = ud.First();
-        while (ob != null && ub != null) {
-            var ok = ob.getValue().key;
-            var uk = ub.getValue().key;
-            var c = ok.compareTo(uk);
-            if (c == 0) {
-                var uv = ub.getValue().val;
-                r = (r == null) ? new SDict<K, V>(uk, uv) : r.Add(uk, uv);
-                ob = ob.Next();
-                ub = ub.Next();
-            } else if (c < 0) {
-                var ov = ob.getValue().val;
-                r = (r == null) ? new SDict(ok, ov) : r.Add(ok, ov);
-                ob = ob.Next();
-            } else {
-                var uv = ub.getValue().val;
-                r = (r == null) ? new SDict<K, V>(uk, uv) : r.Add(uk, uv);
-                ub = ub.Next();
-            }
-        }
-        for (; ob != null; ob = ob.Next()) {
-            var ok = ob.getValue().key;
-            var ov = ob.getValue().val;
-            r = (r == null) ? new SDict(ok, ov) : r.Add(ok, ov);
-        }
-        for (; ub != null; ub = ub.Next()) {
-            var uk = ub.getValue().key;
-            var uv = ub.getValue().val;
-            r = (r == null) ? new SDict<K, V>(uk, uv) : r.Add(uk, uv);
-        }
-        return r;
-    }
-
-    @Override
-    public boolean defines(K s) {
-        return Contains(s);
-    }
-
-    @Override
-    public V get(K s) {
-        return Lookup(s);
-    }
-}
-
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Spliterator;
+import java.util.function.BiConsumer;
+
+/**
+ *
+ * @author Malcolm
+ */
+public class SDict<K extends Comparable, V> extends Collection<SSlot<K, V>>
+        implements ILookup<K,V> {
+
+    public static final int SIZE = 8; // the default node size
+    // for dictionaries that can grow large, such as table rows and index trees:
+    // wider nodes give shallower trees, and faster lookups and scans
+    public static final int LARGE = 32;
+    public final int size; // the node size for this dictionary
+    private final SBucket<K, V> root; // see Root()
+
+    public SDict(K k, V v) {
+        this(SIZE, k, v);
+    }
+    /// <summary>
+    /// A dictionary with the given node size: all dictionaries
+    /// derived from it by Add, Remove etc will use the same size
+    /// </summary>
+    public SDict(int s, K k, V v) {
+        this(s, new SLeaf<K, V>(new SSlot<K, V>(k, v)));
+    }
+    public SDict(SSlot<K,V>... pairs)
+    {
+        this(SIZE, Build(pairs));
+    }
+    SDict(SBucket<K, V> r) {
+        this(SIZE, r);
+    }
+    // for subclasses that keep their entries elsewhere: they override Root()
+    protected SDict(int s, int n) {
+        super(n);
+        if (s < 4)
+            throw new Error("Bad node size " + s);
+        size = s;
+        root = null;
+    }
+    SDict(int s, SBucket<K, V> r) {
+        super((r == null) ? 0 : r.total);
+        if (s < 4)
+            throw new Error("Bad node size " + s);
+        size = s;
+        root = r;
+    }
+    /// <summary>
+    /// The tree of SBuckets that holds the entries. SDict's methods reach it
+    /// only through here, as should any code that walks the tree itself.
+    /// A subclass that keeps its entries in another form (SLongDict)
+    /// overrides this and all the methods that use it.
+    /// </summary>
+    public SBucket<K, V> Root() {
+        return root;
+    }
+    static <K extends Comparable, V> SBucket<K, V> Build(SSlot<K,V>[] pairs)
+    {
+        SDict<K, V> d = null;
+        for (var i=0;i<pairs.length;i++)
+            d = (d==null)?new SDict<K, V>(pairs[i].key,pairs[i].val):
+                    d.Add(pairs[i].key,pairs[i].val);
+        return (d==null)?null:d.Root();
+    }
+    public Bookmark<SSlot<K,V>> PositionAt(K k)
+    {
+        SBookmark<K,V> bmk = null;
+        var cb = Root();
+        while (cb!=null)
+        {
+                var bpos = cb.PositionFor(k);
+                bmk = new SBookmark<K, V>(cb, bpos.pos, bmk);
+                if (bpos.pos == cb.count)
+                {
+                    if (!(cb instanceof SInner))
+                        return null;
+                    var inr = (SInner<K,V>)cb;
+                    cb = inr.gtr;
+                }
+                else {
+                    var ob = cb.Slot(bpos.pos).val;
+                    cb = (ob instanceof SBucket)?(SBucket<K,V>)ob:null;
+                }
+            }
+            return (bmk==null)?null:new SDictBookmark<K,V>(bmk);
+    }
+    @Override
+    public SDictBookmark<K,V> First() {
+        var r = Root();
+        if(r == null || r.total == 0)
+            return null;
+        var stk = new SBookmark<K,V>(r, 0, null);
+        var d = r.Slot(0);
+        var b = d.val;
+        while (b instanceof SBucket)
+        {
+            stk = new SBookmark<K,V>((SBucket)b,0,stk);
+            d = stk._bucket.Slot(0);
+            b = d.val;
+        }
+        return new SDictBookmark<K,V>(stk, 0);
+    }
+    public SDictBookmark<K,V> Last()
+    {
+        var r = Root();
+        if(r == null || r.total == 0)
+            return null;
+        var stk = new SBookmark<K,V>(r, r.getEndPos(), null);
+        var d = r.Slot(r.count-1);
+        var b = r.Gtr();
+        while (b instanceof SBucket)
+        {
+            var bb = (SBucket)b;
+            stk = new SBookmark<K,V>(bb,bb.getEndPos(),stk);
+            d = bb.Slot(bb.count-1);
+            b = ((SBucket)d.val).Gtr();
+        }
+        return new SDictBookmark<K,V>(stk);
+    }
+
+    public SDict<K, V> Add(K k, V v) {
+        var r = Root();
+        return (r == null || r.total == 0) ? new SDict<>(size, k, v)
+                : (r.Contains(k)) ? new SDict<>(size, r.Update(k, v))
+                : (r.count == size) ? new SDict<>(size, r.Split()).Add(k, v)
+                        : new SDict<>(size, r.Add(k, v, size));
+    }
+
+    public SDict<K, V> Remove(K k) {
+        var r = Root();
+        return (r == null || r.Lookup(k) == null) ? this
+                : (r.total == 1) ? new SDict(size, (SBucket)null)
+                        : new SDict<>(size, r.Remove(k, size).Reduce());
+    }
+
+    public boolean Contains(K k) {
+        var r = Root();
+        return (r == null) ? false : r.Contains(k);
+    }
+
+    public V Lookup(K k) {
+        var r = Root();
+        return (r == null) ? null : r.Lookup(k);
+    }
+
+    /// <summary>
+    /// Entries of ud replace those of this with the same key.
+    /// Both are traversed in order, so the result is built bottom-up in linear time
+    /// </summary>
+    public SDict<K, V> Merge(SDict<K, V> ud) {
+        var r = new SDictBuilder<K, V>(size);
+        var oc = Cursor();
+        var uc = ud.Cursor();
+        var om = oc.Advance();
+        var um = uc.Advance();
+        while (om && um) {
+            var ok = oc.Key();
+            var uk = uc.Key();
+            var c = ok.compareTo(uk);
+            if (c == 0) {
+                r.Add(uk, uc.Value());
+                om = oc.Advance();
+                um = uc.Advance();
+            } else if (c < 0) {
+                r.Add(ok, oc.Value());
+                om = oc.Advance();
+            } else {
+                r.Add(uk, uc.Value());
+                um = uc.Advance();
+            }
+        }
+        for (; om; om = oc.Advance())
+            r.Add(oc.Key(), oc.Value());
+        for (; um; um = uc.Advance())
+            r.Add(uc.Key(), uc.Value());
+        return r.Build();
+    }
+
+    /// <summary>
+    /// A mutable cursor before the first entry: see SDictCursor
+    /// </summary>
+    public SDictCursor<K, V> Cursor() {
+        return new SBucketCursor<K, V>(Root(), null);
+    }
+    /// <summary>
+    /// A mutable cursor before the first entry with key at least k
+    /// </summary>
+    public SDictCursor<K, V> Cursor(K k) {
+        return new SBucketCursor<K, V>(Root(), k);
+    }
+    /// <summary>
+    /// Splits along the slot boundaries of the SInner nodes, with exact sizes
+    /// </summary>
+    @Override
+    public Spliterator<SSlot<K, V>> spliterator() {
+        return new SBucketSpliterator<K, V>(Root());
+    }
+    public void ForEach(BiConsumer<? super K, ? super V> f) {
+        for (var c = Cursor(); c.Advance();)
+            f.accept(c.Key(), c.Value());
+    }
+    @Override
+    public boolean defines(K s) {
+        return Contains(s);
+    }
+
+    @Override
+    public V get(K s) {
+        return Lookup(s);
+    }
+}
+
@@ -1,32 +1,56 @@
-/*
- * To change this license header, choose License Headers in Project Properties.
- * To change this template file, choose Tools | Templates
- * and open the template in the editor.
- */
-package org.shareabledata;
-
-/**
- *
- * @author Malcolm
- */
-public class SDictBookmark<K extends Comparable,V> extends Bookmark<SSlot<K,V>> {
-    public final SBookmark<K,V> _bmk;
-    SDictBookmark(SBookmark<K,V> bmk) 
-    { 
-        super(bmk.position());
-        _bmk = bmk; 
-    }
-    @Override
-    public SDictBookmark<K, V> Next(){
-        SBookmark<K,V> b = _bmk.Next(_bmk,null);
-        return (b==null)?null:new SDictBookmark<K,V>(b);
-    }
-    public SDictBookmark<K, V> Previous(){
-        SBookmark<K,V> b = _bmk.Previous(_bmk,null);
-        return (b==null)?null:new SDictBookmark<K,V>(b);
-    }
-    @Override
-    public SSlot<K, V> getValue() {
-        return ((SLeaf<K,V>)_bmk._bucket).slots[_bmk._bpos];
-    }
-}
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ *
+ * @author Malcolm
+ */
+public class SDictBookmark<K extends Comparable,V> extends Bookmark<SSlot<K,V>> {
+    private final SBookmark<K,V> _bmk; // see Bmk()
+    SDictBookmark(SBookmark<K,V> bmk) 
+    { 
+        super(bmk.position());
+        _bmk = bmk; 
+    }
+    // for subclasses that do not use SBookmark: they override Bmk()
+    protected SDictBookmark(int p)
+    {
+        super(p);
+        _bmk = null;
+    }
+    // the position of a neighbour is known: SBookmark.position() costs O(size*depth)
+    SDictBookmark(SBookmark<K,V> bmk,int p)
+    {
+        super(p);
+        _bmk = bmk;
+    }
+    /// <summary>
+    /// The path of SBookmarks to our entry: our methods reach it only
+    /// through here, as should any code that walks it itself
+    /// (see SDict.Root())
+    /// </summary>
+    public SBookmark<K,V> Bmk()
+    {
+        return _bmk;
+    }
+    @Override
+    public SDictBookmark<K, V> Next(){
+        var m = Bmk();
+        SBookmark<K,V> b = m.Next(m,null);
+        return (b==null)?null:new SDictBookmark<K,V>(b, Position + 1);
+    }
+    public SDictBookmark<K, V> Previous(){
+        var m = Bmk();
+        SBookmark<K,V> b = m.Previous(m,null);
+        return (b==null)?null:new SDictBookmark<K,V>(b, Position - 1);
+    }
+    @Override
+    public SSlot<K, V> getValue() {
+        var m = Bmk();
+        return ((SLeaf<K,V>)m._bucket).slots[m._bpos];
+    }
+}
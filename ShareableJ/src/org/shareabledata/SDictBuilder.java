@@ -0,0 +1,107 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.ArrayList;
+
+/**
+ * Bottom-up construction of an SDict from entries supplied in key order.
+ * Instead of N calls to SDict.Add, each copying a path and splitting,
+ * the leaves are filled directly and then each level of SInner nodes
+ * is built over the level below, so the cost is O(N).
+ * Every node except the root has between size/2 and size entries
+ * (as SInner.Remove expects), and entries are spread evenly so that
+ * all nodes are nearly full.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class SDictBuilder<K extends Comparable, V> {
+    final ArrayList<SSlot<K, V>> slots = new ArrayList<>();
+    public final int size; // the node size of the result
+    public SDictBuilder() 
+    {
+        this(SDict.SIZE);
+    }
+    public SDictBuilder(int s)
+    {
+        size = s;
+    }
+    /// <summary>
+    /// Keys must be supplied in ascending order.
+    /// A repeated key replaces the previous value, as SDict.Add does.
+    /// </summary>
+    public SDictBuilder<K, V> Add(K k, V v)
+    {
+        var n = slots.size();
+        if (n > 0)
+        {
+            var c = k.compareTo(slots.get(n - 1).key);
+            if (c < 0)
+                throw new Error("SDictBuilder: keys out of order");
+            if (c == 0)
+            {
+                slots.set(n - 1, new SSlot<K, V>(k, v));
+                return this;
+            }
+        }
+        slots.add(new SSlot<K, V>(k, v));
+        return this;
+    }
+    public int Count()
+    {
+        return slots.size();
+    }
+    /// <summary>
+    /// An empty builder gives null, as SDict.Merge always has
+    /// </summary>
+    public SDict<K, V> Build()
+    {
+        var r = Root(slots, size);
+        return (r == null) ? null : new SDict<K, V>(size, r);
+    }
+    static <K extends Comparable, V> SBucket<K, V> Root(ArrayList<SSlot<K, V>> s, int S)
+    {
+        int n = s.size();
+        if (n == 0)
+            return null;
+        // the leaves: ceiling(n/S) of them, evenly filled
+        int L = (n + S - 1) / S;
+        var level = new ArrayList<SBucket<K, V>>(L);
+        for (int i = 0, st = 0; i < L; i++)
+        {
+            int e = (int)((long)n * (i + 1) / L);
+            var a = (SSlot<K, V>[])new SSlot[e - st];
+            for (int j = st; j < e; j++)
+                a[j - st] = s.get(j);
+            level.add(new SLeaf<K, V>(a));
+            st = e;
+        }
+        // each SInner takes up to S+1 children: S in its slots and one as gtr
+        while (level.size() > 1)
+        {
+            int c = level.size();
+            int I = (c + S) / (S + 1);
+            var up = new ArrayList<SBucket<K, V>>(I);
+            for (int i = 0, st = 0; i < I; i++)
+            {
+                int e = (int)((long)c * (i + 1) / I);
+                var a = (SSlot<K, SBucket<K, V>>[])new SSlot[e - st - 1];
+                int t = 0;
+                for (int j = st; j < e - 1; j++)
+                {
+                    var b = level.get(j);
+                    a[j - st] = new SSlot<K, SBucket<K, V>>(b.Last(), b);
+                    t += b.total;
+                }
+                var g = level.get(e - 1);
+                up.add(new SInner<K, V>(g, t + g.total, a));
+                st = e;
+            }
+            level = up;
+        }
+        return level.get(0);
+    }
+}
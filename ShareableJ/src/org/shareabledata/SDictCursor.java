@@ -0,0 +1,67 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A mutable, single-use cursor over an SDict, for scans that do not need 
+ * the immutable Bookmarks: it keeps one path stack and reuses it, 
+ * so a scan allocates nothing per entry.
+ * A cursor starts before its first entry:
+ *   for (var c = d.Cursor(); c.Advance();) ... c.Key() ... c.Value() ...
+ * It is also a Spliterator over the entries.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public abstract class SDictCursor<K extends Comparable, V> 
+        implements Spliterator<SSlot<K, V>> {
+        protected long remaining; // entries after the current one
+        /// <summary>
+        /// Move to the next entry: false if there is none
+        /// </summary>
+        public abstract boolean Advance();
+        public abstract K Key();
+        public abstract V Value();
+        // the current entry as an SSlot
+        public abstract SSlot<K, V> Slot();
+        @Override
+        public boolean tryAdvance(Consumer<? super SSlot<K, V>> action)
+        {
+            if (!Advance())
+                return false;
+            action.accept(Slot());
+            return true;
+        }
+        @Override
+        public void forEachRemaining(Consumer<? super SSlot<K, V>> action)
+        {
+            while (Advance())
+                action.accept(Slot());
+        }
+        @Override
+        public Spliterator<SSlot<K, V>> trySplit()
+        {
+            return null;
+        }
+        @Override
+        public long estimateSize()
+        {
+            return remaining;
+        }
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | DISTINCT | SORTED | SIZED | NONNULL | IMMUTABLE;
+        }
+        @Override
+        public Comparator<? super SSlot<K, V>> getComparator()
+        {
+            return (a, b) -> a.key.compareTo(b.key);
+        }
+}
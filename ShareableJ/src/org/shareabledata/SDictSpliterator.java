@@ -0,0 +1,104 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over a sequence of whole subtrees parts[from..to-1] 
+ * of an SDict (B is the node type). Subtrees know their totals, 
+ * so splitting is exact (SIZED|SUBSIZED): if only one subtree is left 
+ * it is replaced by its children, i.e. the split follows the slot 
+ * boundaries of the non-leaf nodes. Each subtree is traversed 
+ * with an SDictCursor. The trees are immutable, so no locking is needed.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public abstract class SDictSpliterator<K extends Comparable, V, B> 
+        implements Spliterator<SSlot<K, V>> {
+        Object[] parts; // shared with the spliterators split from this one: never modified
+        int from, to;
+        long size;
+        SDictCursor<K, V> cur = null; // traversing parts[from-1]
+        protected SDictSpliterator(Object[] p, int f, int t, long s)
+        {
+            parts = p; from = f; to = t; size = s;
+        }
+        protected abstract int Total(B b);
+        // the children of b in order, or null if b is a leaf
+        protected abstract Object[] Children(B b);
+        protected abstract SDictCursor<K, V> Cursor(B b);
+        protected abstract SDictSpliterator<K, V, B> New(Object[] p, int f, int t, long s);
+        @Override
+        public boolean tryAdvance(Consumer<? super SSlot<K, V>> action)
+        {
+            for (;;)
+            {
+                if (cur != null)
+                {
+                    if (cur.Advance())
+                    {
+                        size--;
+                        action.accept(cur.Slot());
+                        return true;
+                    }
+                    cur = null;
+                }
+                if (from == to)
+                    return false;
+                cur = Cursor((B)parts[from++]);
+            }
+        }
+        @Override
+        public void forEachRemaining(Consumer<? super SSlot<K, V>> action)
+        {
+            while (tryAdvance(action))
+                ;
+        }
+        @Override
+        public Spliterator<SSlot<K, V>> trySplit()
+        {
+            if (cur != null) // the rest of the current subtree must come first
+                return null;
+            while (to - from == 1)
+            {
+                var c = Children((B)parts[from]);
+                if (c == null)
+                    return null;
+                parts = c;
+                from = 0;
+                to = c.length;
+            }
+            if (to == from)
+                return null;
+            // the prefix with about half of the entries
+            long h = size / 2, t = Total((B)parts[from]);
+            int m = from + 1;
+            while (m < to - 1 && t + Total((B)parts[m]) <= h)
+                t += Total((B)parts[m++]);
+            var r = New(parts, from, m, t);
+            from = m;
+            size -= t;
+            return r;
+        }
+        @Override
+        public long estimateSize()
+        {
+            return size;
+        }
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | DISTINCT | SORTED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+        @Override
+        public Comparator<? super SSlot<K, V>> getComparator()
+        {
+            return (a, b) -> a.key.compareTo(b.key);
+        }
+}
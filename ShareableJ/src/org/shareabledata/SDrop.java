@@ -68,10 +68,10 @@ public class SDrop extends SDbObject {
             if (pr == -1)
             {
                 dp = tb.uid;
-                for (var b = tr.objects.First(); b != null; b = b.Next())
-                    if (b.getValue().val instanceof SIndex)
+                for (var c = tr.objects.Cursor(); c.Advance();)
+                    if (c.Value() instanceof SIndex)
                     {
-                        var x = (SIndex)b.getValue().val;
+                        var x = (SIndex)c.Value();
                         if (x.references == tb.uid)
                             throw new Exception("Restricted by reference");
                     }
@@ -63,10 +63,10 @@ public class SDropIndex extends SDbObject {
         var x = tb.FindIndex(db, key);
         if (x!=null)
         {
-            for (var xb = db.objects.First(); xb != null; xb = xb.Next())
-                if (xb.getValue().val instanceof SIndex)
+            for (var xc = db.objects.Cursor(); xc.Advance();)
+                if (xc.Value() instanceof SIndex)
                 {
-                    var rx = (SIndex)xb.getValue().val;
+                    var rx = (SIndex)xc.Value();
                     if (rx.refindex == x.uid)   
                         throw new Exception("Restricted by reference");
                 }
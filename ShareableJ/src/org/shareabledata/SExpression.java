@@ -27,6 +27,11 @@ public class SExpression extends SDbObject {
         }
         @Override
         public  boolean isValue() {return false; }
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return Needs(Needs(cs, left), right);
+        }
         public class Op 
         { 
             public static final int 
@@ -28,6 +28,11 @@ public class SFunction extends Serialisable {
         }
         @Override
         public boolean isValue() { return false;}
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return Needs(cs, arg);
+        }
         public static class Func {
             public static final byte Sum =0, Count =1, Max=2, Min=3, Null=4,
                     NotNull=5,Constraint=6,Default=7,Generated=8;
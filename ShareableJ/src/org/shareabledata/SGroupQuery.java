@@ -191,6 +191,20 @@ public class SGroupQuery extends SQuery {
         return new SGroupQuery((SQuery)source, f,u);
     }
     @Override
+    public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+    {
+        if (cpos != null)
+            for (var b = cpos.First(); b != null; b = b.Next())
+                cs = Needs(cs, b.getValue().val);
+        if (groupby != null)
+            for (var b = groupby.First(); b != null; b = b.Next())
+                cs = Needs(cs, b.getValue().val);
+        if (having != null)
+            for (var b = having.First(); b != null; b = b.Next())
+                cs = Needs(cs, b.getValue());
+        return Needs(cs, source);
+    }
+    @Override
     public RowSet RowSet(SDatabase tr, SQuery top, Context cx)
             throws Exception
     {
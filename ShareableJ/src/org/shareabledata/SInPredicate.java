@@ -19,6 +19,11 @@ public class SInPredicate extends Serialisable {
         }
         @Override
         public boolean isValue() { return false;}
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return Needs(Needs(cs, arg), list);
+        }
         public static SInPredicate Get(ReaderBase f) throws Exception
         {
             var a = f._Get();
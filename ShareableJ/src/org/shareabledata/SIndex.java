@@ -16,7 +16,8 @@ public class SIndex extends SDbObject {
     public final long references;
     public final long refindex;
     public final SList<Long> cols;
-    public final SMTree<Serialisable> rows;
+    private final SMTree<Serialisable> rows; // see Rows()
+    final Checkpoint.Deferred deferred; // entries not yet read from a checkpoint
     /// <summary>
     /// A primary or unique index
     /// </summary>
@@ -32,6 +33,7 @@ public class SIndex extends SDbObject {
         references = r;
         rows = new SMTree(null);
         refindex = -1L;
+        deferred = null;
     }
     public SIndex(STransaction tr,long t, boolean p, long r, SList<Long> c)
             throws Exception {
@@ -50,6 +52,7 @@ public class SIndex extends SDbObject {
         else
             refindex = -1;
             rows = new SMTree(Info((STable)tr.objects.get(table), cols,references>=0));
+        deferred = null;
     }
 
     SIndex(ReaderBase f) throws Exception 
@@ -71,7 +74,7 @@ public class SIndex extends SDbObject {
         }
         else
             rows = new SMTree(null);
-
+        deferred = null;
     }
     @Override
     public Serialisable Prepare(STransaction tr,SDict<Long,Long>pt)
@@ -122,6 +125,7 @@ public class SIndex extends SDbObject {
         f.PutLong(references);
         cols = new SList(c);
         rows = new SMTree(Info((STable)db.objects.get(table), cols, references >= 0));
+        deferred = null;
     }
 
     public SIndex(SIndex x, SMTree<Serialisable>.MTResult mt) throws Exception 
@@ -136,6 +140,7 @@ public class SIndex extends SDbObject {
         refindex = x.refindex;
         cols = x.cols;
         rows = mt.t;
+        deferred = null;
     }
     
     public SIndex(SIndex x, SMTree<Serialisable> mt) throws Exception 
@@ -147,6 +152,30 @@ public class SIndex extends SDbObject {
         refindex = x.refindex;
         cols = x.cols;
         rows = mt;
+        deferred = null;
+    }
+    /// <summary>
+    /// An index restored from a checkpoint, whose entries are only
+    /// built when something first needs them
+    /// </summary>
+    SIndex(SIndex x, Checkpoint.Deferred d)
+    {
+        super(x);
+        table = x.table;
+        primary = x.primary;
+        references = x.references;
+        refindex = x.refindex;
+        cols = x.cols;
+        rows = x.rows;
+        deferred = d;
+    }
+    /// <summary>
+    /// The entries of the index: for a deferred index this reads them
+    /// from the checkpoint the first time, e.g. for a query or a constraint check
+    /// </summary>
+    public SMTree<Serialisable> Rows()
+    {
+        return (deferred == null) ? rows : deferred.Get();
     }
     @Override
     public void Put(WriterBase f) throws Exception
@@ -166,31 +195,31 @@ public class SIndex extends SDbObject {
             throws Exception
     {
         var k = Key(r, cols);
-        if ((!updating) && refindex == -1 && rows.Contains(k))
+        if ((!updating) && refindex == -1 && Rows().Contains(k))
             throw new Exception("Duplicate Key constraint violation");
         if (refindex != -1)
         {
             var rx = (SIndex)db.objects.get(refindex);
-            if (!rx.rows.Contains(k))
+            if (!rx.Rows().Contains(k))
                 throw new Exception("Referential constraint violation");
         }
     }
     public boolean Contains(SRecord sr) throws Exception {
-        return rows.Contains(Key(sr, cols));
+        return Rows().Contains(Key(sr, cols));
     }
 
     public SIndex Add(SRecord r, long c) throws Exception {
-        return new SIndex(this, rows.Add(Key(r, cols), c));
+        return new SIndex(this, Rows().Add(Key(r, cols), c));
     }
 
     public SIndex Update(long r, SCList<Variant> ok, SUpdate u, 
             SCList<Variant> uk, long c) throws Exception {
         return new SIndex(this, 
-                rows.Remove(ok, r).Add(uk, u.uid));
+                Rows().Remove(ok, r).Add(uk, u.uid));
     }
 
     public SIndex Remove(SDict<Long,Serialisable> sr, long c) throws Exception {
-        return new SIndex(this, rows.Remove(Key(sr, cols), c));
+        return new SIndex(this, Rows().Remove(Key(sr, cols), c));
     }
 
     SList<TreeInfo<Serialisable>> Info(STable tb, SList<Long> cols, boolean fkey) 
@@ -209,9 +238,10 @@ public class SIndex extends SDbObject {
     }
         SCList<Variant> Key(SDict<Long,Serialisable>f,SList<Long>cols)
         {
-            if (cols.Length == 0)
+            if (cols == null) // an empty SList is null
                 return null;
-            return new SCList(f.Lookup(cols.element), Key(f, cols.next)); // not null
+            return new SCList<Variant>(new Variant(Variants.Ascending,
+                    f.Lookup(cols.element)), Key(f, cols.next));
         }
         SCList<Variant> Key(SRecord sr,SList<Long> cols)
         {
@@ -94,7 +94,7 @@ public class SInner<K extends Comparable,V> extends SBucket<K,V> {
             }
         }
         @Override
-        SBucket<K, V> Add(K k, V v)
+        SBucket<K, V> Add(K k, V v, int S)
         {
             // by the time we get here we have made sure there is at least one empty Slot
             // in the current bucket
@@ -104,15 +104,15 @@ public class SInner<K extends Comparable,V> extends SBucket<K,V> {
             {
                 SSlot<K,SBucket<K,V>> d = slots[m.pos];
                 b = d.val;
-                if (b.count == SDict.SIZE)
-                    return Split(m.pos).Add(k, v); // try again
-                return new SInner<K, V>(gtr, total + 1, Replace(m.pos, new SSlot<K, SBucket<K, V>>(d.key, b.Add(k, v))));
+                if (b.count == S)
+                    return Split(m.pos).Add(k, v, S); // try again
+                return new SInner<K, V>(gtr, total + 1, Replace(m.pos, new SSlot<K, SBucket<K, V>>(d.key, b.Add(k, v, S))));
             }
             else
             {
-                if (gtr.count == SDict.SIZE)
-                    return SplitGtr().Add(k, v); // try again
-                return new SInner<K, V>(gtr.Add(k, v), total + 1, slots);
+                if (gtr.count == S)
+                    return SplitGtr().Add(k, v, S); // try again
+                return new SInner<K, V>(gtr.Add(k, v, S), total + 1, slots);
             }
         }
         SInner<K, V> SplitGtr()
@@ -121,129 +121,85 @@ public class SInner<K extends Comparable,V> extends SBucket<K,V> {
         }
         SSlot<K,SBucket<K,V>> LowHalf()
         {
-            int m = SDict.SIZE >> 1;
+            int m = count >> 1;
             int h = 0;
             for (int i = 0; i < m; i++)
                 h += slots[i].val.total;
             return new SSlot<K, SBucket<K, V>>(slots[m - 1].key, new SInner<K, V>(slots[m - 1].val, h, slots, 0, m - 2));
         }
 
-        SBucket<K, V> Remove(K k)
+        SBucket<K, V> Remove(K k, int S)
         {
-            MatchPos nj = PositionFor(k);
-            SBucket<K, V> nb;
-            int m = SDict.SIZE >> 1;
-            if (nj.pos < count)
+            int j = PositionFor(k).pos;
+            SBucket<K, V> nb = Child(j).Remove(k, S);
+            // a leaf needs at least S/2 entries, a non-leaf at least S/2 children
+            int m = (nb instanceof SInner) ? (S >> 1) - 1 : S >> 1;
+            if (nb.count >= m)
             {
-                SSlot<K,SBucket<K,V>> e = slots[nj.pos];
-                nb = e.val;
-                nb = nb.Remove(k);
-                if (nb.count >= m)
-                    return new SInner<K, V>(gtr, total - 1, 
-                            Replace(nj.pos, new SSlot<K, SBucket<K, V>>(nb.Last(), nb)));
-            }
-            else
-            {
-                nb = gtr.Remove(k);
-                if (nb.count >= m)
+                if (j == count)
                     return new SInner<K, V>(nb, total - 1, slots);
+                return new SInner<K, V>(gtr, total - 1,
+                        Replace(j, new SSlot<K, SBucket<K, V>>(nb.Last(), nb)));
             }
-            // completely rebuild the current non-leaf node (too many cases to consider otherwise)
-            // still two different cases depending on whether children are leaves
-            int S = SDict.SIZE;
-            SBucket<K, V> b, g = null;
+            // nb is too small: merge it with a neighbour (there always is one
+            // as this node has at least two children), and split the result
+            // evenly if it is too big for one node
+            int a = (j > 0) ? j - 1 : 0; // the left one of the pair
+            SBucket<K, V> lt = (a == j) ? nb : Child(a);
+            SBucket<K, V> rt = (a == j) ? Child(a + 1) : nb;
+            int t = lt.total + rt.total;
             ArrayList ab = new ArrayList();
-            int i, j;
-            for (j = 0; j < count; j++)
-            {
-                b = (j == nj.pos) ? nb : slots[j].val;
-                b.Add(ab);
-                if (b instanceof SInner)
-                    ab.add(new SSlot<K, SBucket<K, V>>(slots[j].key, ((SInner<K, V>)b).gtr));
-            }
-            b = (count == nj.pos) ? nb : gtr;
-            b.Add(ab);
-            if (b instanceof SInner)
-                g = ((SInner<K, V>)b).gtr;
-            var s = (SSlot<K,V>[])ab.toArray(new SSlot[ab.size()]);
-            if (g == null) // we use Size entries from s for each new Bucket (all Leaves)
-            {
-                var a = new ArrayList<SSlot<K, V>>();
-                for (j = 0; j < s.length; j++)
-                    a.add(s[j]);
-                var ss = a.toArray(new SSlot[0]);
-                if (s.length <= S) // can happen at root: reduce height of tree
-                    return new SLeaf<K, V>(ss);
-                // suppose s.Length = Size*A+B
-                int A = s.length / S;
-                int B = s.length - A * S;
-                // need t.Length = A-1 if B==0, else A (size gtr can take up to Size entries)
-                var ts = new ArrayList<SSlot<K, SBucket<K, V>>>(); // new list of children
-                int sce = 0;
-                SSlot<K, V> d;
-                // if B==0 or B>=Size>>1 we want t.Length entries constructed here
-                // if 1<=B<(Size>>1) we need to keep one in hand for later
-                int C = (1 <= B && B < (S >> 1)) ? 1 : 0;
-                int D = (B == 0) ? (A - 1) : A;
-                for (i = 0; i < D - C; i++)
-                {
-                    d = ss[sce + S - 1]; // last entry in new bucket
-                    ts.add(new SSlot<K, SBucket<K, V>>(d.key, new SLeaf<K, V>(ss, sce, sce + S - 1)));
-                    sce += S;
-                }
-                if (C == 1)
-                {
-                    // be careful for the last entry: the new gtr still needs at least Size>>1 entries
-                    m = S >> 1;
-                    d = ss[sce + m - 1];
-                    ts.add(new SSlot<K, SBucket<K, V>>(d.key, new SLeaf<K, V>(ss, sce, sce + m - 1)));
-                    sce += m;
-                }
-                return new SInner<K, V>(new SLeaf<K, V>(ss, sce, s.length - 1), total - 1, ts.toArray(new SSlot[0]));
-            }
-            else // we use Size+1 entries from s for each new Bucket: g is an extra one
+            lt.Add(ab);
+            if (lt instanceof SInner)
+                ab.add(new SSlot<K, SBucket<K, V>>(lt.Last(), lt.Gtr()));
+            rt.Add(ab);
+            int n = ab.size();
+            var s = (SSlot[])ab.toArray(new SSlot[n]);
+            if (!(lt instanceof SInner))
             {
-                var a = new ArrayList<SSlot<K, SBucket<K, V>>>();
-                for (j = 0; j < s.length; j++)
-                    a.add((SSlot<K, SBucket<K, V>>)s[j]);
-                var ss = a.toArray(new SSlot[0]);
-                if (s.length <= S) // can happen at root: reduce height of tree
-                    return new SInner<K, V>(g, total - 1, ss);
-                int A = (s.length + 1) / (S + 1); // not forgetting g
-                int B = s.length + 1 - A * (S + 1);
-                // need t.Length = A-1 if B==0, else A (size gtr can take up to Size entries)
-                var ts = new ArrayList<SSlot<K, SBucket<K, V>>>(); // new list of children
-                int sce = 0;
-                SSlot<K, SBucket<K, V>> d;
-                // if B==0 or B>=Size>>1 we want t.Length entries constructed here
-                // if 1<=B<(Size>>1) we need to keep one in hand for later
-                int C = (1 <= B && B < (S >> 1)) ? 1 : 0;
-                int D = (B == 0) ? (A - 1) : A;
-                for (i = 0; i < D - C; i++)
-                {
-                    d = ss[sce + S]; // last entry in new bucket
-                    int dt = 0;
-                    for (int di = sce; di < sce + S; di++)
-                        dt += ((SBucket)ss[di].val).total;
-                    ts.add(new SSlot<K, SBucket<K, V>>(d.key, new SInner<K, V>(d.val, dt, ss, sce, sce + S - 1)));
-                    sce += S + 1;
-                }
-                if (C == 1)
-                {
-                    // be careful for the last entry: the new gtr still needs at least Size>>1 entries
-                    d = ss[sce + m];
-                    int dt = 0;
-                    for (int di = sce; di < sce + m; di++)
-                        dt += ((SBucket)ss[di].val).total;
-                    ts.add(new SSlot<K, SBucket<K, V>>(d.key, new SInner<K, V>(d.val, dt, ss, sce, sce + m - 1)));
-                    sce += m + 1;
-                }
-                int gt = 0;
-                for (int di = sce; di < s.length; di++)
-                    gt += ((SBucket)ss[di].val).total;
-                return new SInner<K, V>(new SInner<K, V>(g, gt, ss, sce, s.length - 1), total - 1, ts.toArray(new SSlot[0]));
+                if (n <= S)
+                    return Merge(a, total - 1, new SLeaf<K, V>(s));
+                int h = n >> 1;
+                return Merge(a, total - 1, new SLeaf<K, V>(s, 0, h - 1),
+                        new SLeaf<K, V>(s, h, n - 1));
             }
-
+            // s holds all but the last child of the pair: that is rt's gtr
+            var g = rt.Gtr();
+            if (n <= S)
+                return Merge(a, total - 1, new SInner<K, V>(g, t, s));
+            int h = n >> 1;
+            int lh = 0;
+            for (int i = 0; i <= h; i++)
+                lh += ((SBucket)s[i].val).total;
+            return Merge(a, total - 1,
+                    new SInner<K, V>((SBucket<K, V>)s[h].val, lh, s, 0, h - 1),
+                    new SInner<K, V>(g, t - lh, s, h + 1, n - 1));
+        }
+        SBucket<K, V> Child(int j)
+        {
+            return (j == count) ? gtr : slots[j].val;
+        }
+        /// <summary>
+        /// A copy of this node in which the children at a and a+1 are 
+        /// replaced by the one or two given buckets
+        /// </summary>
+        SInner<K, V> Merge(int a, int t, SBucket<K, V>... nb)
+        {
+            var n = count - 2 + nb.length; // the new count
+            var s = (SSlot<K, SBucket<K, V>>[])new SSlot[n];
+            int i, k = 0;
+            for (i = 0; i < a; i++)
+                s[k++] = slots[i];
+            for (i = 0; i < nb.length && k < n; i++)
+                s[k++] = new SSlot<K, SBucket<K, V>>(nb[i].Last(), nb[i]);
+            for (i = a + 2; i < count; i++)
+                s[k++] = slots[i];
+            return new SInner<K, V>((a + 2 > count) ? nb[nb.length - 1] : gtr, t, s);
+        }
+        @Override
+        SBucket<K, V> Reduce()
+        {
+            return (count == 0) ? gtr : this;
         }
         protected SSlot<K, SBucket<K, V>>[] Replace(int j, SSlot<K, SBucket<K, V>> d)
         {
@@ -265,11 +221,11 @@ public class SInner<K extends Comparable,V> extends SBucket<K,V> {
 
         SBucket<K, V> TopHalf()
         {
-            int m = SDict.SIZE >> 1;
+            int m = count >> 1;
             int h = total;
             for (int i = 0; i < m; i++)
                 h -= slots[i].val.total;
-            return new SInner<K, V>(gtr, h, slots, m, SDict.SIZE - 1);
+            return new SInner<K, V>(gtr, h, slots, m, count - 1);
         }
         SBucket<K,V> Split(int j)
         {
@@ -89,21 +89,21 @@ public class SInsert extends Serialisable  {
             case Types.SValues:
             {
                 var svs = (SValues)vals;
-                SDict<Long, Serialisable> f = null;
+                SLongDict<Serialisable> f = null;
                 var c = svs.vals;
                 if (cols==null && tb.cpos!=null)
                     for (var b = tb.cpos.First(); c!=null && b != null; b = b.Next(), c = c.next)
                     {
                         var sc = (SColumn)b.getValue().val;
                         var v = sc.Check(tr,c.element.Lookup(tr,cx),Context.New(f,cx));
-                        f =(f==null)?new SDict(sc.uid, v):f.Add(sc.uid, v);
+                        f =(f==null)?new SLongDict<Serialisable>(sc.uid, v):f.AddLong(sc.uid, v);
                     }
                 else if (cols!=null)
                     for (var b = cols; c!=null && b!=null; b = b.next, c = c.next)
                     {
                         var sc = (SColumn)tr.objects.get(b.element);
                         var v = sc.Check(tr,c.element.Lookup(tr,cx),Context.New(f, cx));
-                        f =(f==null)?new SDict(sc.uid, v):f.Add(sc.uid, v);
+                        f =(f==null)?new SLongDict<Serialisable>(sc.uid, v):f.AddLong(sc.uid, v);
                     }
                 else
                     throw new Exception("PE05");
@@ -116,21 +116,21 @@ public class SInsert extends Serialisable  {
                 var rs = ss.RowSet(tr, ss, null);
                 for (var rb = (RowBookmark)rs.First();rb!=null;rb=(RowBookmark)rb.Next())
                 {
-                    SDict<Long, Serialisable> f = null;
+                    SLongDict<Serialisable> f = null;
                     var c = rb.Ob().vals.First();
                     if (cols==null)
                         for (var b = tb.cpos.First(); c!= null && b != null; b = b.Next(), c = c.Next())
                         {
                             var sc = (SColumn)b.getValue().val;
                             var v = sc.Check(tr,c.getValue().val.Lookup(tr,cx), cx);
-                            f=(f==null)?new SDict(sc.uid, v):f.Add(sc.uid, v);
+                            f=(f==null)?new SLongDict<Serialisable>(sc.uid, v):f.AddLong(sc.uid, v);
                         }
                     else
                         for (var b = cols; c != null && b.Length != 0; b = b.next, c = c.Next())
                         {
                             var sc = (SColumn)tr.objects.get(b.element);
                             var v = sc.Check(tr,c.getValue().val.Lookup(tr,cx), cx);
-                            f =(f==null)?new SDict(b.element, v):f.Add(b.element,v);
+                            f =(f==null)?new SLongDict<Serialisable>(b.element, v):f.AddLong(b.element,v);
                         }
                     tr = (STransaction)tr.Install(new SRecord(tr, table, f), tr.curpos);
                 }
@@ -32,10 +32,6 @@ public class SInteger extends Serialisable implements Comparable {
                 value = 0; big = b;
             }
         }
-        SInteger(ReaderBase f) throws Exception
-        {
-            this(f.GetInteger());
-        }
         @Override
         public void Put(WriterBase f) throws Exception
         {
@@ -52,7 +48,12 @@ public class SInteger extends Serialisable implements Comparable {
         }
         public static Serialisable Get(ReaderBase f) throws Exception
         {
-            return new SInteger(f);
+            var n = f.ReadByte();
+            if (n < 0 || n > 4)
+                return new SInteger(f.GetInteger(n));
+            var v = f.GetLong(n); // no Bigint needed
+            return (v < Integer.MAX_VALUE && v > Integer.MIN_VALUE) ?
+                    new SInteger((int)v) : new SInteger(new Bigint(v));
         }
         @Override
         public void Append(StringBuilder sb)
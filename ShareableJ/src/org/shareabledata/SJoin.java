@@ -349,6 +349,17 @@ public class SJoin extends SQuery {
             return 0;
         }
         @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            if (ons != null)
+                for (var b = ons.First(); b != null; b = b.Next())
+                    cs = Needs(cs, b.getValue());
+            if (uses != null)
+                for (var b = uses.First(); b != null; b = b.Next())
+                    cs = Needs(Needs(cs, b.getValue().key), b.getValue().val);
+            return Needs(Needs(cs, left), right);
+        }
+        @Override
         public RowSet RowSet(SDatabase tr,SQuery top,
                 Context cx) throws Exception
         {
@@ -42,7 +42,7 @@ public class SLeaf<K extends Comparable, V> extends SBucket<K, V> {
     }
 
     @Override
-    SBucket<K, V> Add(K k, V v) {
+    SBucket<K, V> Add(K k, V v, int S) {
         return new SLeaf<K, V>(Add(PositionFor(k).pos, new SSlot<K, V>(k, v)));
     }
 
@@ -52,7 +52,7 @@ public class SLeaf<K extends Comparable, V> extends SBucket<K, V> {
     }
 
     @Override
-    SBucket<K, V> Remove(K k) {
+    SBucket<K, V> Remove(K k, int S) {
         return new SLeaf<K, V>(Remove(PositionFor(k).pos));
     }
 
@@ -78,12 +78,12 @@ public class SLeaf<K extends Comparable, V> extends SBucket<K, V> {
 
     @Override
     SBucket<K, V> TopHalf() {
-        return new SLeaf<K, V>(slots, SDict.SIZE >> 1, SDict.SIZE - 1);
+        return new SLeaf<K, V>(slots, count >> 1, count - 1);
     }
 
     @Override
     SSlot<K, SBucket<K, V>> LowHalf() {
-        int m = SDict.SIZE >> 1;
+        int m = count >> 1;
         return new SSlot<K, SBucket<K, V>>(slots[m - 1].key, new SLeaf<K, V>(slots, 0, m - 1));
     }
 
@@ -5,6 +5,8 @@
  */
 package org.shareabledata;
 
+import java.util.Spliterator;
+
 @SuppressWarnings("unchecked")
 /**
  * An empty list is null.
@@ -73,4 +75,9 @@ public class SList<T> extends Collection<T>
     {
         return new SListBookmark<T>(this,0);
     }
+    @Override
+    public Spliterator<T> spliterator()
+    {
+        return SizedSpliterator();
+    }
 }
@@ -0,0 +1,43 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * A node of an SLongDict: the keys are held in a long[] array.
+ * As for SBucket, S is the node size of the dictionary.
+ * @author Malcolm
+ */
+public abstract class SLongBucket<V> {
+        public final int count; // the number of keys
+        public final int total; // the number of entries in the subtree
+        protected SLongBucket(int c,int t) { count = c; total = t; }
+        public abstract boolean Contains(long k);
+        public abstract V Lookup(long k);
+        // insert, or replace the value for an existing key
+        abstract SLongBucket<V> Add(long k, V v, int S);
+        // k must be present
+        abstract SLongBucket<V> Remove(long k, int S);
+        // only full buckets are split: the separator between the halves is r[0].Last()
+        abstract SLongBucket<V>[] Split();
+        public abstract long Last();
+        /// <summary>
+        /// Binary search with primitive comparison: 
+        /// the first i such that k<=keys[i], or keys.length
+        /// </summary>
+        static int PositionFor(long[] keys, long k)
+        {
+            int low = 0, high = keys.length;
+            while (low < high)
+            {
+                int mid = (low + high) >>> 1;
+                if (keys[mid] < k)
+                    low = mid + 1;
+                else
+                    high = mid;
+            }
+            return high;
+        }
+}
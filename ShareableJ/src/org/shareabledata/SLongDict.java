@@ -0,0 +1,239 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Arrays;
+import java.util.Spliterator;
+
+/**
+ * An SDict specialised for long keys: the keys are kept in long[] arrays 
+ * in the nodes, so there is no boxing, no Comparable.compareTo and no SSlot 
+ * per entry. It is immutable and shareable like SDict and can be used 
+ * wherever an SDict&lt;Long,V&gt; is expected, but the methods taking a long 
+ * avoid boxing the key.
+ * The tree is held in its own field, and SLongDict overrides every method
+ * of SDict that uses SDict's tree of SBuckets. Code that walks that tree
+ * itself gets an equivalent one from Root(), built in O(n).
+ * @author Malcolm
+ */
+public class SLongDict<V> extends SDict<Long, V> {
+    public final SLongBucket<V> tree;
+    public SLongDict(long k, V v) {
+        this(SIZE, k, v);
+    }
+    /// <summary>
+    /// A dictionary with the given node size: all dictionaries
+    /// derived from it by Add, Remove etc will use the same size
+    /// </summary>
+    public SLongDict(int s, long k, V v) {
+        this(s, new SLongLeaf<V>(new long[] { k }, new Object[] { v }));
+    }
+    SLongDict(int s, SLongBucket<V> r) {
+        super(s, (r == null) ? 0 : r.total);
+        tree = r;
+    }
+    /// <summary>
+    /// Add with a long key, without boxing it. This has its own name so that
+    /// Add(Long,V) is never ambiguous, as it would be for an SLongDict&lt;Long&gt;.
+    /// </summary>
+    public SLongDict<V> AddLong(long k, V v) {
+        if (tree == null || tree.total == 0)
+            return new SLongDict<V>(size, k, v);
+        var r = tree;
+        if (r.count == size) // make sure the root is not full
+        {
+            var h = r.Split();
+            r = new SLongInner<V>(new long[] { h[0].Last() }, h, r.total);
+        }
+        return new SLongDict<V>(size, r.Add(k, v, size));
+    }
+    /// <summary>
+    /// Build bottom-up from the first n entries of k and v, as SDictBuilder
+    /// does for SDict: the keys must be strictly ascending.
+    /// An empty dictionary gives null.
+    /// </summary>
+    public static <V> SLongDict<V> Build(int S, long[] k, Object[] v, int n) {
+        if (n == 0)
+            return null;
+        for (int i = 1; i < n; i++)
+            if (k[i - 1] >= k[i])
+                throw new Error("SLongDict.Build: keys out of order");
+        // the leaves: ceiling(n/S) of them, evenly filled
+        int L = (n + S - 1) / S;
+        var level = (SLongBucket<V>[])new SLongBucket[L];
+        for (int i = 0, st = 0; i < L; i++)
+        {
+            int e = (int)((long)n * (i + 1) / L);
+            level[i] = new SLongLeaf<V>(Arrays.copyOfRange(k, st, e),
+                    Arrays.copyOfRange(v, st, e));
+            st = e;
+        }
+        // each SLongInner takes up to S+1 children
+        while (level.length > 1)
+        {
+            int c = level.length;
+            int I = (c + S) / (S + 1);
+            var up = (SLongBucket<V>[])new SLongBucket[I];
+            for (int i = 0, st = 0; i < I; i++)
+            {
+                int e = (int)((long)c * (i + 1) / I);
+                var ks = new long[e - st - 1];
+                int t = 0;
+                for (int j = st; j < e; j++)
+                {
+                    if (j < e - 1)
+                        ks[j - st] = level[j].Last();
+                    t += level[j].total;
+                }
+                up[i] = new SLongInner<V>(ks, Arrays.copyOfRange(level, st, e), t);
+                st = e;
+            }
+            level = up;
+        }
+        return new SLongDict<V>(S, level[0]);
+    }
+    /// <summary>
+    /// The same entries in a tree of SBuckets, as SDict keeps them: none of
+    /// our own methods needs this, so it is built afresh each time
+    /// </summary>
+    @Override
+    public SBucket<Long, V> Root() {
+        var b = new SDictBuilder<Long, V>(size);
+        for (var c = Cursor(); c.Advance();)
+            b.Add(c.LongKey(), c.Value());
+        var d = b.Build();
+        return (d == null) ? null : d.Root();
+    }
+    @Override
+    public SLongDict<V> Add(Long k, V v) {
+        return AddLong(k, v);
+    }
+    public SLongDict<V> Remove(long k) {
+        if (tree == null || !tree.Contains(k))
+            return this;
+        if (tree.total == 1)
+            return new SLongDict<V>(size, (SLongBucket<V>)null);
+        var r = tree.Remove(k, size);
+        if (r.count == 0 && r instanceof SLongInner) // reduce the height of the tree
+            r = ((SLongInner<V>)r).kids[0];
+        return new SLongDict<V>(size, r);
+    }
+    @Override
+    public SLongDict<V> Remove(Long k) {
+        return Remove((long)k);
+    }
+    public boolean Contains(long k) {
+        return (tree == null) ? false : tree.Contains(k);
+    }
+    @Override
+    public boolean Contains(Long k) {
+        return Contains((long)k);
+    }
+    public V Lookup(long k) {
+        return (tree == null) ? null : tree.Lookup(k);
+    }
+    @Override
+    public V Lookup(Long k) {
+        return Lookup((long)k);
+    }
+    @Override
+    public SLongDictBookmark<V> First() {
+        if (tree == null || tree.total == 0)
+            return null;
+        if (tree instanceof SLongLeaf)
+            return new SLongDictBookmark<V>((SLongLeaf<V>)tree, 0, null, 0);
+        return SLongDictBookmark.Down(
+                new SLongDictBookmark.Up<V>((SLongInner<V>)tree, 0, null), 0);
+    }
+    @Override
+    public SLongDictBookmark<V> Last() {
+        if (tree == null || tree.total == 0)
+            return null;
+        SLongDictBookmark.Up<V> u = null;
+        var b = tree;
+        while (b instanceof SLongInner)
+        {
+            var i = (SLongInner<V>)b;
+            u = new SLongDictBookmark.Up<V>(i, i.count, u);
+            b = i.kids[i.count];
+        }
+        return new SLongDictBookmark<V>((SLongLeaf<V>)b, b.count - 1, u, tree.total - 1);
+    }
+    /// <summary>
+    /// The first entry with key at least k, or null if there is none
+    /// </summary>
+    public SLongDictBookmark<V> PositionAt(long k) {
+        if (tree == null || tree.total == 0)
+            return null;
+        SLongDictBookmark.Up<V> u = null;
+        var b = tree;
+        var p = 0;
+        while (b instanceof SLongInner)
+        {
+            var n = (SLongInner<V>)b;
+            var i = SLongBucket.PositionFor(n.keys, k);
+            for (var j = 0; j < i; j++)
+                p += n.kids[j].total;
+            u = new SLongDictBookmark.Up<V>(n, i, u);
+            b = n.kids[i];
+        }
+        var f = (SLongLeaf<V>)b;
+        var i = SLongBucket.PositionFor(f.keys, k);
+        if (i < f.count)
+            return new SLongDictBookmark<V>(f, i, u, p + i);
+        return SLongDictBookmark.After(u, p + i);
+    }
+    @Override
+    public SLongDictBookmark<V> PositionAt(Long k) {
+        return PositionAt((long)k);
+    }
+    @Override
+    public SLongDictCursor<V> Cursor() {
+        return new SLongDictCursor<V>(tree, false, 0);
+    }
+    public SLongDictCursor<V> Cursor(long k) {
+        return new SLongDictCursor<V>(tree, true, k);
+    }
+    @Override
+    public SLongDictCursor<V> Cursor(Long k) {
+        return Cursor((long)k);
+    }
+    @Override
+    public Spliterator<SSlot<Long, V>> spliterator() {
+        return new SLongDictSpliterator<V>(tree);
+    }
+    /// <summary>
+    /// Entries of ud replace those of this with the same key.
+    /// Both are traversed in order, so the result is built bottom-up in linear time
+    /// </summary>
+    @Override
+    public SLongDict<V> Merge(SDict<Long, V> ud) {
+        var ks = new long[Length + ud.Length];
+        var vs = new Object[ks.length];
+        var n = 0;
+        var oc = Cursor();
+        var uc = ud.Cursor();
+        var lc = (uc instanceof SLongDictCursor) ? (SLongDictCursor<V>)uc : null;
+        var om = oc.Advance();
+        var um = uc.Advance();
+        while (om || um) {
+            var ok = om ? oc.LongKey() : 0L;
+            var uk = um ? ((lc != null) ? lc.LongKey() : (long)uc.Key()) : 0L;
+            if (um && (!om || uk <= ok)) {
+                ks[n] = uk;
+                vs[n++] = uc.Value();
+                if (om && uk == ok)
+                    om = oc.Advance();
+                um = uc.Advance();
+            } else {
+                ks[n] = ok;
+                vs[n++] = oc.Value();
+                om = oc.Advance();
+            }
+        }
+        return (n == 0) ? this : Build(size, ks, vs, n);
+    }
+}
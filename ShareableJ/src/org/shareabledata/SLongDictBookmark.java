@@ -0,0 +1,104 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * A position in an SLongDict: a leaf, an offset in it, 
+ * and the path of non-leaf nodes above it.
+ * It is an SDictBookmark only so that SLongDict can override SDict's methods:
+ * it overrides all of SDictBookmark's, and Bmk() gives the path to the same
+ * entry in the tree that SLongDict.Root() builds.
+ * @author Malcolm
+ */
+public class SLongDictBookmark<V> extends SDictBookmark<Long, V> {
+        static class Up<V>
+        {
+            final SLongInner<V> node;
+            final int pos; // the child we are in
+            final Up<V> parent;
+            Up(SLongInner<V> n, int p, Up<V> u)
+            {
+                node = n; pos = p; parent = u;
+            }
+        }
+        public final SLongLeaf<V> _leaf;
+        public final int _pos;
+        final Up<V> _up;
+        SLongDictBookmark(SLongLeaf<V> f, int i, Up<V> u, int p)
+        {
+            super(p);
+            _leaf = f; _pos = i; _up = u;
+        }
+        /// <summary>
+        /// The first entry at or after the start of child i of u.node
+        /// </summary>
+        static <V> SLongDictBookmark<V> Down(Up<V> u, int p)
+        {
+            var b = u.node.kids[u.pos];
+            while (b instanceof SLongInner)
+            {
+                u = new Up<V>((SLongInner<V>)b, 0, u);
+                b = u.node.kids[0];
+            }
+            return new SLongDictBookmark<V>((SLongLeaf<V>)b, 0, u, p);
+        }
+        /// <summary>
+        /// The first entry after the subtree we are in at u (null if none)
+        /// </summary>
+        static <V> SLongDictBookmark<V> After(Up<V> u, int p)
+        {
+            while (u != null && u.pos == u.node.count)
+                u = u.parent;
+            return (u == null) ? null : Down(new Up<V>(u.node, u.pos + 1, u.parent), p);
+        }
+        @Override
+        public SLongDictBookmark<V> Next()
+        {
+            if (_pos + 1 < _leaf.count)
+                return new SLongDictBookmark<V>(_leaf, _pos + 1, _up, Position + 1);
+            return After(_up, Position + 1);
+        }
+        @Override
+        public SLongDictBookmark<V> Previous()
+        {
+            if (_pos > 0)
+                return new SLongDictBookmark<V>(_leaf, _pos - 1, _up, Position - 1);
+            var u = _up;
+            while (u != null && u.pos == 0)
+                u = u.parent;
+            if (u == null)
+                return null;
+            u = new Up<V>(u.node, u.pos - 1, u.parent);
+            var b = u.node.kids[u.pos];
+            while (b instanceof SLongInner)
+            {
+                var n = (SLongInner<V>)b;
+                u = new Up<V>(n, n.count, u);
+                b = n.kids[n.count];
+            }
+            return new SLongDictBookmark<V>((SLongLeaf<V>)b, b.count - 1, u, Position - 1);
+        }
+        @Override
+        public SBookmark<Long, V> Bmk()
+        {
+            var u = _up;
+            while (u != null && u.parent != null)
+                u = u.parent;
+            var t = new SLongDict<V>(SDict.SIZE, (u == null) ? _leaf : u.node);
+            var b = (SDictBookmark<Long, V>)new SDict<Long, V>(SDict.SIZE, t.Root())
+                    .PositionAt(getKey());
+            return b.Bmk();
+        }
+        public long getKey()
+        {
+            return _leaf.keys[_pos];
+        }
+        @Override
+        public SSlot<Long, V> getValue()
+        {
+            return new SSlot<Long, V>(_leaf.keys[_pos], (V)_leaf.vals[_pos]);
+        }
+}
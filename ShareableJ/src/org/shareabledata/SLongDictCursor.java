@@ -0,0 +1,100 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * An SDictCursor for SLongDict. LongKey() gives the key without boxing;
+ * Slot() has to construct an SSlot.
+ * @author Malcolm
+ */
+public class SLongDictCursor<V> extends SDictCursor<Long, V> {
+        final SLongBucket<V>[] nodes;
+        final int[] pos;
+        SLongLeaf<V> leaf = null; // null once we have finished
+        int i; // the current entry in leaf
+        /// <summary>
+        /// A cursor before the first entry with key at least k 
+        /// (or the first entry if from is false)
+        /// </summary>
+        SLongDictCursor(SLongBucket<V> root, boolean from, long k)
+        {
+            var h = 1;
+            for (var b = root; b instanceof SLongInner; b = ((SLongInner<V>)b).kids[0])
+                h++;
+            nodes = (SLongBucket<V>[])new SLongBucket[h];
+            pos = new int[h];
+            if (root == null || root.total == 0)
+                return;
+            var p = 0; // the number of entries before the start
+            var d = 0;
+            var b = root;
+            for (; b instanceof SLongInner; d++)
+            {
+                var n = (SLongInner<V>)b;
+                var j = from ? SLongBucket.PositionFor(n.keys, k) : 0;
+                for (var s = 0; s < j; s++)
+                    p += n.kids[s].total;
+                nodes[d] = n;
+                pos[d] = j;
+                b = n.kids[j];
+            }
+            nodes[d] = b;
+            leaf = (SLongLeaf<V>)b;
+            i = from ? SLongBucket.PositionFor(leaf.keys, k) - 1 : -1;
+            remaining = root.total - p - i - 1;
+        }
+        @Override
+        public boolean Advance()
+        {
+            if (leaf == null)
+                return false;
+            if (++i < leaf.count)
+            {
+                remaining--;
+                return true;
+            }
+            // pop till we can move right, then go down to the leftmost leaf
+            for (var d = nodes.length - 2; d >= 0; d--)
+            {
+                var n = (SLongInner<V>)nodes[d];
+                if (pos[d] == n.count)
+                    continue;
+                var b = n.kids[++pos[d]];
+                for (d++; b instanceof SLongInner; d++)
+                {
+                    nodes[d] = b;
+                    pos[d] = 0;
+                    b = ((SLongInner<V>)b).kids[0];
+                }
+                nodes[d] = b;
+                leaf = (SLongLeaf<V>)b;
+                i = 0;
+                remaining--;
+                return true;
+            }
+            leaf = null;
+            return false;
+        }
+        public long LongKey()
+        {
+            return leaf.keys[i];
+        }
+        @Override
+        public Long Key()
+        {
+            return leaf.keys[i];
+        }
+        @Override
+        public V Value()
+        {
+            return (V)leaf.vals[i];
+        }
+        @Override
+        public SSlot<Long, V> Slot()
+        {
+            return new SSlot<Long, V>(leaf.keys[i], (V)leaf.vals[i]);
+        }
+}
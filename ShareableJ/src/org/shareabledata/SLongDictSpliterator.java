@@ -0,0 +1,43 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * An SDictSpliterator for SLongDict
+ * @author Malcolm
+ */
+public class SLongDictSpliterator<V> 
+        extends SDictSpliterator<Long, V, SLongBucket<V>> {
+        SLongDictSpliterator(SLongBucket<V> root)
+        {
+            super(new Object[] { root }, 0, (root == null) ? 0 : 1,
+                    (root == null) ? 0 : root.total);
+        }
+        SLongDictSpliterator(Object[] p, int f, int t, long s)
+        {
+            super(p, f, t, s);
+        }
+        @Override
+        protected int Total(SLongBucket<V> b)
+        {
+            return b.total;
+        }
+        @Override
+        protected Object[] Children(SLongBucket<V> b)
+        {
+            return (b instanceof SLongInner) ? ((SLongInner<V>)b).kids : null;
+        }
+        @Override
+        protected SDictCursor<Long, V> Cursor(SLongBucket<V> b)
+        {
+            return new SLongDictCursor<V>(b, false, 0);
+        }
+        @Override
+        protected SDictSpliterator<Long, V, SLongBucket<V>> New(Object[] p, int f, int t, long s)
+        {
+            return new SLongDictSpliterator<V>(p, f, t, s);
+        }
+}
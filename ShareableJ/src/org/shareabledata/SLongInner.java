@@ -0,0 +1,144 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Arrays;
+
+/**
+ * A non-leaf node of an SLongDict. keys[i] is at least as large as any key 
+ * in kids[i] and less than any key in kids[i+1]; there is one more child 
+ * than keys, the last one taking the place of SInner's gtr.
+ * Separators are not changed when entries are removed, as they remain valid.
+ * @author Malcolm
+ */
+public class SLongInner<V> extends SLongBucket<V> {
+        public final long[] keys;
+        public final SLongBucket<V>[] kids;
+        SLongInner(long[] k, SLongBucket<V>[] c, int t)
+        {
+            super(k.length, t);
+            keys = k; kids = c;
+        }
+        @Override
+        public boolean Contains(long k)
+        {
+            return kids[PositionFor(keys, k)].Contains(k);
+        }
+        @Override
+        public V Lookup(long k)
+        {
+            return kids[PositionFor(keys, k)].Lookup(k);
+        }
+        @Override
+        SLongBucket<V> Add(long k, V v, int S)
+        {
+            // by the time we get here we have made sure this node is not full
+            var i = PositionFor(keys, k);
+            var b = kids[i];
+            if (b.count == S)
+                return SplitKid(i).Add(k, v, S); // try again
+            var nb = b.Add(k, v, S);
+            var nc = kids.clone();
+            nc[i] = nb;
+            return new SLongInner<V>(keys, nc, total + nb.total - b.total);
+        }
+        SLongInner<V> SplitKid(int i)
+        {
+            var h = kids[i].Split();
+            var nk = new long[count + 1];
+            var nc = (SLongBucket<V>[])new SLongBucket[count + 2];
+            System.arraycopy(keys, 0, nk, 0, i);
+            nk[i] = h[0].Last();
+            System.arraycopy(keys, i, nk, i + 1, count - i);
+            System.arraycopy(kids, 0, nc, 0, i);
+            nc[i] = h[0];
+            nc[i + 1] = h[1];
+            System.arraycopy(kids, i + 1, nc, i + 2, count - i);
+            return new SLongInner<V>(nk, nc, total);
+        }
+        @Override
+        SLongBucket<V>[] Split()
+        {
+            // kids 0..m-1 and keys 0..m-2 go to the low half: keys[m-1] is dropped
+            int m = count >> 1;
+            var lc = Arrays.copyOfRange(kids, 0, m);
+            int t = 0;
+            for (var b : lc)
+                t += b.total;
+            return new SLongBucket[] {
+                new SLongInner<V>(Arrays.copyOfRange(keys, 0, m - 1), lc, t),
+                new SLongInner<V>(Arrays.copyOfRange(keys, m, count),
+                        Arrays.copyOfRange(kids, m, count + 1), total - t)
+            };
+        }
+        @Override
+        SLongBucket<V> Remove(long k, int S)
+        {
+            var i = PositionFor(keys, k);
+            var nb = kids[i].Remove(k, S);
+            // a leaf needs at least S/2 entries, a non-leaf at least S/2 children
+            int m = (nb instanceof SLongInner) ? (S >> 1) - 1 : S >> 1;
+            if (nb.count >= m)
+            {
+                var nc = kids.clone();
+                nc[i] = nb;
+                return new SLongInner<V>(keys, nc, total - 1);
+            }
+            // nb is too small: merge it with a neighbour and split the result if need be
+            int a = (i > 0) ? i - 1 : 0; // the left one of the pair
+            var lt = (a == i) ? nb : kids[a];
+            var rt = (a == i) ? kids[a + 1] : nb;
+            var r = (nb instanceof SLongInner) ?
+                    Merge((SLongInner<V>)lt, keys[a], (SLongInner<V>)rt, S)
+                    : SLongLeaf.Merge((SLongLeaf<V>)lt, (SLongLeaf<V>)rt, S);
+            // replace kids a and a+1 by r, and keys[a] by r[0].Last() if there are two
+            var nk = new long[count - 2 + r.length];
+            var nc = (SLongBucket<V>[])new SLongBucket[count - 1 + r.length];
+            System.arraycopy(keys, 0, nk, 0, a);
+            System.arraycopy(kids, 0, nc, 0, a);
+            nc[a] = r[0];
+            if (r.length == 2)
+            {
+                nk[a] = r[0].Last();
+                nc[a + 1] = r[1];
+            }
+            System.arraycopy(keys, a + 1, nk, a + r.length - 1, count - a - 1);
+            System.arraycopy(kids, a + 2, nc, a + r.length, count - a - 1);
+            return new SLongInner<V>(nk, nc, total - 1);
+        }
+        /// <summary>
+        /// The children of a and b in one node if they fit, otherwise evenly in two.
+        /// sep is the separator between a and b in their parent
+        /// </summary>
+        static <V> SLongBucket<V>[] Merge(SLongInner<V> a, long sep, SLongInner<V> b, int S)
+        {
+            int n = a.count + b.count + 2; // children
+            var nk = new long[n - 1];
+            System.arraycopy(a.keys, 0, nk, 0, a.count);
+            nk[a.count] = sep;
+            System.arraycopy(b.keys, 0, nk, a.count + 1, b.count);
+            var nc = Arrays.copyOf(a.kids, n);
+            System.arraycopy(b.kids, 0, nc, a.count + 1, b.count + 1);
+            var t = a.total + b.total;
+            if (n <= S + 1)
+                return new SLongBucket[] { new SLongInner<V>(nk, nc, t) };
+            int h = n >> 1;
+            var lc = Arrays.copyOfRange(nc, 0, h);
+            int lt = 0;
+            for (var c : lc)
+                lt += c.total;
+            return new SLongBucket[] {
+                new SLongInner<V>(Arrays.copyOfRange(nk, 0, h - 1), lc, lt),
+                new SLongInner<V>(Arrays.copyOfRange(nk, h, n - 1),
+                        Arrays.copyOfRange(nc, h, n), t - lt)
+            };
+        }
+        @Override
+        public long Last()
+        {
+            return kids[count].Last();
+        }
+}
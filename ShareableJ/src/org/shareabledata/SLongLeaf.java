@@ -0,0 +1,100 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Arrays;
+
+/**
+ * A leaf of an SLongDict: parallel arrays of keys and values, 
+ * with no SSlot per entry. The arrays are never modified once the leaf 
+ * has been constructed, so a leaf can share them with its predecessor.
+ * @author Malcolm
+ */
+public class SLongLeaf<V> extends SLongBucket<V> {
+        public final long[] keys;
+        public final Object[] vals;
+        SLongLeaf(long[] k, Object[] v)
+        {
+            super(k.length, k.length);
+            keys = k; vals = v;
+        }
+        @Override
+        public boolean Contains(long k)
+        {
+            var i = PositionFor(keys, k);
+            return i < count && keys[i] == k;
+        }
+        @Override
+        public V Lookup(long k)
+        {
+            var i = PositionFor(keys, k);
+            return (i < count && keys[i] == k) ? (V)vals[i] : null;
+        }
+        @Override
+        SLongBucket<V> Add(long k, V v, int S)
+        {
+            var i = PositionFor(keys, k);
+            if (i < count && keys[i] == k)
+            {
+                var nv = vals.clone();
+                nv[i] = v;
+                return new SLongLeaf<V>(keys, nv);
+            }
+            var nk = new long[count + 1];
+            var nv = new Object[count + 1];
+            System.arraycopy(keys, 0, nk, 0, i);
+            System.arraycopy(vals, 0, nv, 0, i);
+            nk[i] = k;
+            nv[i] = v;
+            System.arraycopy(keys, i, nk, i + 1, count - i);
+            System.arraycopy(vals, i, nv, i + 1, count - i);
+            return new SLongLeaf<V>(nk, nv);
+        }
+        @Override
+        SLongBucket<V> Remove(long k, int S)
+        {
+            var i = PositionFor(keys, k);
+            var nk = new long[count - 1];
+            var nv = new Object[count - 1];
+            System.arraycopy(keys, 0, nk, 0, i);
+            System.arraycopy(vals, 0, nv, 0, i);
+            System.arraycopy(keys, i + 1, nk, i, count - i - 1);
+            System.arraycopy(vals, i + 1, nv, i, count - i - 1);
+            return new SLongLeaf<V>(nk, nv);
+        }
+        @Override
+        SLongBucket<V>[] Split()
+        {
+            int m = count >> 1;
+            return new SLongBucket[] {
+                new SLongLeaf<V>(Arrays.copyOfRange(keys, 0, m), Arrays.copyOfRange(vals, 0, m)),
+                new SLongLeaf<V>(Arrays.copyOfRange(keys, m, count), Arrays.copyOfRange(vals, m, count))
+            };
+        }
+        /// <summary>
+        /// The entries of a and b, in one leaf if they fit, otherwise evenly in two
+        /// </summary>
+        static <V> SLongBucket<V>[] Merge(SLongLeaf<V> a, SLongLeaf<V> b, int S)
+        {
+            int n = a.count + b.count;
+            var nk = Arrays.copyOf(a.keys, n);
+            var nv = Arrays.copyOf(a.vals, n);
+            System.arraycopy(b.keys, 0, nk, a.count, b.count);
+            System.arraycopy(b.vals, 0, nv, a.count, b.count);
+            if (n <= S)
+                return new SLongBucket[] { new SLongLeaf<V>(nk, nv) };
+            int h = n >> 1;
+            return new SLongBucket[] {
+                new SLongLeaf<V>(Arrays.copyOfRange(nk, 0, h), Arrays.copyOfRange(nv, 0, h)),
+                new SLongLeaf<V>(Arrays.copyOfRange(nk, h, n), Arrays.copyOfRange(nv, h, n))
+            };
+        }
+        @Override
+        public long Last()
+        {
+            return keys[count - 1];
+        }
+}
@@ -5,11 +5,17 @@
  */
 package org.shareabledata;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Spliterator;
+
 /**
  *
  * @author Malcolm
  */
 public class SMTree<K extends Comparable> extends Collection<SSlot<SCList<Variant>, Long>> implements Comparable {
+    // node size for the SITrees of all multilevel indexes
+    public static final int NodeSize = SDict.LARGE;
 
     public boolean Contains(SCList<Variant> k) {
         if (k==null) {
@@ -34,13 +40,13 @@ public class SMTree<K extends Comparable> extends Collection<SSlot<SCList<Varian
         public final Variants variant;
 
         SITree(TreeInfo<K> ti, Variants vt) {
-            super((SBucket)null);
+            super(NodeSize, (SBucket)null);
             info = ti;
             variant = vt;
         }
 
         SITree(TreeInfo<K> ti, Variants vt, SBucket<Variant, Variant> r) {
-            super(r);
+            super(NodeSize, r);
             info = ti;
             variant = vt;
         }
@@ -50,7 +56,7 @@ public class SMTree<K extends Comparable> extends Collection<SSlot<SCList<Varian
         }
 
         SITree Update(Variant k, Variant v) {
-            return new SITree(info, variant, root.Update(k, v));
+            return new SITree(info, variant, Root().Update(k, v));
         }
 
         public Bookmark<SSlot<Variant, Variant>> PositionAt(Variant k) {
@@ -58,7 +64,7 @@ public class SMTree<K extends Comparable> extends Collection<SSlot<SCList<Varian
                 return First();
             }
             SBookmark<Variant, Variant> bmk = null;
-            SBucket<Variant, Variant> cb = root;
+            SBucket<Variant, Variant> cb = Root();
             while (cb != null) {
                 MatchPos m = cb.PositionFor(k);
                 bmk = new SBookmark<Variant, Variant>(cb, m.pos, bmk);
@@ -79,21 +85,23 @@ public class SMTree<K extends Comparable> extends Collection<SSlot<SCList<Varian
         }
 
         public SDict<Variant, Variant> Add(Variant k, Variant v) {
-            return (root == null || root.total == 0)
+            var r = Root();
+            return (r == null || r.total == 0)
                     ? new SITree(info, variant, k, v)
-                    : (root.Contains(k))
-                    ? new SITree(info, variant, root.Update(k, v))
-                    : (root.count == SIZE)
-                            ? new SITree(info, variant, root.Split()).Add(k, v)
-                            : new SITree(info, variant, root.Add(k, v));
+                    : (r.Contains(k))
+                    ? new SITree(info, variant, r.Update(k, v))
+                    : (r.count == size)
+                            ? new SITree(info, variant, r.Split()).Add(k, v)
+                            : new SITree(info, variant, r.Add(k, v, size));
         }
 
         @Override
         public SITree Remove(Variant k)
         {
-            return (root == null || root.Lookup(k) == null) ? this :
-                (root.total == 1) ? null :
-                new SITree(info,variant, root.Remove(k));
+            var r = Root();
+            return (r == null || r.Lookup(k) == null) ? this :
+                (r.total == 1) ? null :
+                new SITree(info,variant, r.Remove(k, size).Reduce());
         }
     }
 
@@ -140,9 +148,88 @@ public class SMTree<K extends Comparable> extends Collection<SSlot<SCList<Varian
                                 new SMTree(ti.next, k.next, v)));
     }
 
+    /// <summary>
+    /// Build an SMTree bottom-up from (key,value) entries in any order.
+    /// The entries are sorted (stably, so that for duplicate keys the earliest wins
+    /// as with repeated Add) and each level is then built with SDictBuilder.
+    /// Entries that Add would refuse are left out.
+    /// </summary>
+    public static <K extends Comparable> SMTree<K> Build(SList<TreeInfo<K>> ti,
+            ArrayList<SSlot<SCList<Variant>, Long>> entries)
+    {
+        var a = new ArrayList<SSlot<SCList<Variant>, Long>>(entries.size());
+        for (var e : entries)
+            if (e.key != null)
+                a.add(e);
+            else if (ti.element.onNullKey == TreeBehaviour.Allow)
+                a.add(new SSlot<SCList<Variant>, Long>(
+                        new SCList<Variant>(new Variant(0,true), null), e.val));
+        a.sort((x, y) -> x.key.compareTo(y.key));
+        var t = new SMTree<K>(ti);
+        var e = ti.element;
+        var b = new SDictBuilder<Variant, Variant>(NodeSize);
+        int n = 0;
+        for (int i = 0; i < a.size();)
+        {
+            var k0 = a.get(i).key.element;
+            int j = i + 1;
+            while (j < a.size() && a.get(j).key.element.compareTo(k0) == 0)
+                j++;
+            Variant nv;
+            if (ti.Length >= 2)
+            {
+                var s = new ArrayList<SSlot<SCList<Variant>, Long>>(j - i);
+                for (int m = i; m < j; m++)
+                    s.add(new SSlot<SCList<Variant>, Long>(
+                            (SCList<Variant>)a.get(m).key.next, a.get(m).val));
+                var mt = Build(ti.next, s);
+                if (mt.Length == 0)
+                {
+                    i = j;
+                    continue;
+                }
+                n += mt.Length;
+                nv = new Variant(Variants.Compound, mt);
+            }
+            else if (e.onDuplicate == TreeBehaviour.Allow)
+            {
+                var vs = new long[j - i];
+                for (int m = i; m < j; m++)
+                    vs[m - i] = a.get(m).val;
+                Arrays.sort(vs);
+                var bt = new SDictBuilder<Long, Boolean>();
+                for (var v : vs)
+                    bt.Add(v, true);
+                n += bt.Count();
+                nv = new Variant(Variants.Partial, bt.Build());
+            }
+            else
+            {
+                n++;
+                nv = new Variant(a.get(i).val, true);
+            }
+            b.Add(k0, nv);
+            i = j;
+        }
+        var d = b.Build();
+        if (d == null)
+            return t;
+        var vt = (ti.Length >= 2) ? Variants.Compound
+                : (e.onDuplicate == TreeBehaviour.Allow) ? Variants.Partial
+                : e.asc ? Variants.Ascending : Variants.Descending;
+        return new SMTree<K>(ti, t.new SITree(e, vt, d.Root()), n);
+    }
+
     public Bookmark<SSlot<SCList<Variant>, Long>> First(){
         return (Length == 0) ? null : MTreeBookmark.New(this);
     }
+    /// <summary>
+    /// Splits along the buckets of the top-level SITree, with exact sizes
+    /// </summary>
+    @Override
+    public Spliterator<SSlot<SCList<Variant>, Long>> spliterator() {
+        return new SMTreeSpliterator(this);
+    }
 
     public MTreeBookmark PositionAt(SCList<Variant> k) {
         return MTreeBookmark.New(this, k);
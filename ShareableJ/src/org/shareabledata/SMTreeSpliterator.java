@@ -0,0 +1,147 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * An SDictSpliterator for SMTree: the split follows the buckets of the
+ * top-level SITree. A bucket holds the entries of all the keys below it,
+ * so its Part records how many there are: they are counted once,
+ * when the Part is made, from the Lengths of the SMTrees and SDicts
+ * in its slots.
+ * @author Malcolm
+ */
+public class SMTreeSpliterator
+        extends SDictSpliterator<SCList<Variant>, Long, SMTreeSpliterator.Part> {
+        static class Part
+        {
+            final SBucket<Variant, Variant> bucket;
+            final int total; // the number of SMTree entries in bucket
+            Part(SBucket<Variant, Variant> b)
+            {
+                bucket = b;
+                var n = 0;
+                for (var c = new SBucketCursor<Variant, Variant>(b, null); c.Advance();)
+                    n += Count(c.Value());
+                total = n;
+            }
+        }
+        SMTreeSpliterator(SMTree t)
+        {
+            this(Root(t), t.Length);
+        }
+        SMTreeSpliterator(SBucket<Variant, Variant> r, int n)
+        {
+            super((r == null) ? new Object[0] : new Object[] { new Part(r) }, 0,
+                    (r == null) ? 0 : 1, n);
+        }
+        static SBucket<Variant, Variant> Root(SMTree t)
+        {
+            return (t._impl == null) ? null : t._impl.Root();
+        }
+        SMTreeSpliterator(Object[] p, int f, int t, long s)
+        {
+            super(p, f, t, s);
+        }
+        // the number of entries for a top-level key
+        static int Count(Variant v)
+        {
+            switch (v.variant)
+            {
+                case Compound: return ((SMTree)v.ob).Length;
+                case Partial: return ((SDict)v.ob).Length;
+                default: return 1;
+            }
+        }
+        @Override
+        protected int Total(Part b)
+        {
+            return b.total;
+        }
+        @Override
+        protected Object[] Children(Part b)
+        {
+            if (!(b.bucket instanceof SInner))
+                return null;
+            var n = (SInner<Variant, Variant>)b.bucket;
+            var r = new Object[n.count + 1];
+            for (var i = 0; i <= n.count; i++)
+                r[i] = new Part(n.Child(i));
+            return r;
+        }
+        @Override
+        protected SDictCursor<SCList<Variant>, Long> Cursor(Part b)
+        {
+            return new Cursor(b);
+        }
+        @Override
+        protected SDictSpliterator<SCList<Variant>, Long, Part> New(Object[] p, int f, int t, long s)
+        {
+            return new SMTreeSpliterator(p, f, t, s);
+        }
+        /// <summary>
+        /// The entries of one Part: for each top-level key in its bucket,
+        /// those of the SMTree or SDict it has, or its single value
+        /// </summary>
+        static class Cursor extends SDictCursor<SCList<Variant>, Long>
+        {
+            final SBucketCursor<Variant, Variant> outer;
+            Bookmark<SSlot<SCList<Variant>, Long>> inner = null; // Compound
+            SDictCursor<Long, Boolean> pmk = null; // Partial
+            Cursor(Part b)
+            {
+                outer = new SBucketCursor<Variant, Variant>(b.bucket, null);
+                remaining = b.total;
+            }
+            @Override
+            public boolean Advance()
+            {
+                if (inner != null && (inner = inner.Next()) != null
+                        || pmk != null && pmk.Advance())
+                {
+                    remaining--;
+                    return true;
+                }
+                pmk = null;
+                while (outer.Advance())
+                {
+                    var v = outer.Value();
+                    switch (v.variant)
+                    {
+                        case Compound:
+                            inner = ((SMTree)v.ob).First();
+                            if (inner == null)
+                                continue;
+                            break;
+                        case Partial:
+                            pmk = ((SDict<Long, Boolean>)v.ob).Cursor();
+                            if (!pmk.Advance())
+                                continue;
+                            break;
+                    }
+                    remaining--;
+                    return true;
+                }
+                return false;
+            }
+            @Override
+            public SCList<Variant> Key()
+            {
+                return new SCList<Variant>(outer.Key(),
+                        (inner == null) ? null : inner.getValue().key);
+            }
+            @Override
+            public Long Value()
+            {
+                return (inner != null) ? inner.getValue().val
+                        : (pmk != null) ? pmk.Key() : (long)outer.Value().ob;
+            }
+            @Override
+            public SSlot<SCList<Variant>, Long> Slot()
+            {
+                return new SSlot<SCList<Variant>, Long>(Key(), Value());
+            }
+        }
+}
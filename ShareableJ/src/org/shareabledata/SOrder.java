@@ -25,6 +25,11 @@ public class SOrder extends Serialisable {
         }
         @Override
         public boolean isValue() {return false;}
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return Needs(cs, col);
+        }
         public static SOrder Get(ReaderBase f) throws Exception
         {
             return new SOrder(f);
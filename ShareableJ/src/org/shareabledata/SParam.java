@@ -0,0 +1,58 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+/**
+ * A parameter (?) of a prepared statement (see StrongConnect.PrepareStatement).
+ * On the server the parameters of a statement share an array that is filled
+ * in for each execution (see Types.Execute), so this class is not shareable.
+ * @author Malcolm
+ */
+public class SParam extends Serialisable {
+        public final int pos;
+        final Serialisable[] args; // null on the client
+        public SParam(int p)
+        {
+            super(Types.SParam);
+            pos = p;
+            args = null;
+        }
+        SParam(ReaderBase f) throws Exception
+        {
+            super(Types.SParam);
+            pos = f.GetInt();
+            args = f.args;
+            if (args == null || pos < 0 || pos >= args.length)
+                throw new Exception("Unexpected parameter");
+        }
+        @Override
+        public void Put(WriterBase f) throws Exception
+        {
+            super.Put(f);
+            f.PutInt(pos);
+        }
+        @Override
+        public Serialisable Lookup(SDatabase tr,Context cx)
+        {
+            var v = (args == null)? null : args[pos];
+            return (v == null)? Null : v;
+        }
+        @Override
+        public boolean isValue()
+        {
+            return false;
+        }
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return cs;
+        }
+        @Override
+        public String toString()
+        {
+            return "?" + pos;
+        }
+}
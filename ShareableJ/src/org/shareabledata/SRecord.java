@@ -12,6 +12,7 @@ import java.io.*;
 public class SRecord extends SDbObject {
         public final SDict<Long, Serialisable> fields;
         public final long table;
+        public final boolean partial; // only some fields were decoded, see SDatabase.Full
         public SRecord(STransaction tr,long t,SDict<Long,Serialisable> f) throws Exception
         {
             this(Types.SRecord,tr,t,f);
@@ -36,7 +37,7 @@ public class SRecord extends SDbObject {
                     {
                         case SFunction.Func.Default:
                             if ((!f.Contains(cn)) || f.get(cn) == Null)
-                                f=(f==null)?new SDict(cn, fn.arg):f.Add(cn,fn.arg);
+                                f=(f==null)?new SLongDict<Serialisable>(cn, fn.arg):f.Add(cn,fn.arg);
                             break;
                         case SFunction.Func.NotNull:
                             if ((!f.Contains(cn)) || f.get(cn) == Null)
@@ -55,7 +56,7 @@ public class SRecord extends SDbObject {
                                 if (f.Contains(cn) && f.get(cn) != Null)
                                     throw new Exception("Value cannot be supplied for column " + tr.Name(cn));
                                 var v = fn.arg.Lookup(tr,cf);
-                                f=(f==null)?new SDict(cn, v):f.Add(cn,v);
+                                f=(f==null)?new SLongDict<Serialisable>(cn, v):f.Add(cn,v);
                             }
                             break;
                     }
@@ -63,6 +64,7 @@ public class SRecord extends SDbObject {
             }
             fields = f;
             table = t;
+            partial = false;
         }
         public long Defpos()
         {
@@ -73,6 +75,7 @@ public class SRecord extends SDbObject {
             super(r,f); 
             table = f.Fix(r.table);
             fields = r.fields;
+            partial = false;
             f.PutLong(table);
             var tb = (STable)db.objects.Lookup(table);
             f.PutInt(r.fields.Length);
@@ -83,21 +86,31 @@ public class SRecord extends SDbObject {
             }
         }
         protected SRecord(int t,ReaderBase f) throws Exception
+        {
+            this(t,f,null);
+        }
+        /// <summary>
+        /// If cs is not null, only the fields in cs are decoded:
+        /// the others are skipped without constructing anything (see STable.Projection)
+        /// </summary>
+        protected SRecord(int t,ReaderBase f,SDict<Long,Boolean> cs) throws Exception
         {
             super(t,f);
             table = f.GetLong();
             int n = f.GetInt();
-            var tb = (STable)f.db.objects.Lookup(table);
-            SDict<Long,Serialisable> a = null;
+            SLongDict<Serialisable> a = null;
             for(int i = 0;i< n;i++)
             {
                 var k = f.GetLong();
-                if (a==null)
-                    a = new SDict<Long,Serialisable>(k,f._Get());
+                if (cs!=null && !cs.Contains(k))
+                    ((Reader)f).SkipValue();
+                else if (a==null)
+                    a = new SLongDict<Serialisable>(k,f._Get());
                 else
-                    a = a.Add(k, f._Get());
+                    a = a.AddLong(k, f._Get());
             }
             fields = a;
+            partial = cs!=null;
         }
         public static SRecord Get(ReaderBase f) throws Exception
         {
@@ -139,7 +152,8 @@ public class SRecord extends SDbObject {
         {
             var cx = Context.New(fields,Context.Empty);
             for (var b= st.cols.First();b!=null;b=b.Next())
-                for (var c = b.getValue().val.constraints.First();c!=null;c=c.Next())
+                for (var c = (b.getValue().val.constraints==null)?null
+                        :b.getValue().val.constraints.First();c!=null;c=c.Next())
                     switch (c.getValue().key)
                     {
                         case "CHECK":
@@ -147,7 +161,7 @@ public class SRecord extends SDbObject {
                                 throw new Exception("Check condition fails");
                             break;
                     }
-            for (var b = st.indexes.First(); b != null; b = b.Next())
+            for (var b = (st.indexes==null)?null:st.indexes.First(); b != null; b = b.Next())
             {
                 var x = (SIndex)db.objects.get(b.getValue().key);
                 x.Check(db, this, false);
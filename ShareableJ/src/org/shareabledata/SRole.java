@@ -12,7 +12,7 @@ package org.shareabledata;
 public class SRole extends SDbObject implements ILookup<Long,String>
 {
     public final String name;
-    public final SDict<Long, String> uids;
+    public final SLongDict<String> uids;
     public final SDict<Long, SRObject> subs;
     public final SDict<String, Long> globalNames;
     public static final SRole Public = new SRole("PUBLIC", -1);
@@ -31,7 +31,7 @@ public class SRole extends SDbObject implements ILookup<Long,String>
         subs = null;
         globalNames = null;
     }
-    public SRole(SRole sr,SDict<Long,String>u)
+    public SRole(SRole sr,SLongDict<String>u)
     {
         super(Types.SRole,sr.uid);
         name = sr.name;
@@ -43,7 +43,7 @@ public class SRole extends SDbObject implements ILookup<Long,String>
     {
         super(Types.SRole,sr.uid);
         name = sr.name;
-        uids = (sr.uids==null)?new SDict(u,n):sr.uids.Add(u,n);
+        uids = (sr.uids==null)?new SLongDict<String>(u,n):sr.uids.AddLong(u,n);
         subs = sr.subs;
         globalNames = sr.globalNames;
     }
@@ -51,7 +51,7 @@ public class SRole extends SDbObject implements ILookup<Long,String>
     {
         super(Types.SRole,sr.uid);
         name = sr.name;
-        uids = (sr.uids==null)?new SDict(u,n):sr.uids.Add(u,n);
+        uids = (sr.uids==null)?new SLongDict<String>(u,n):sr.uids.AddLong(u,n);
         subs = sr.subs;
         globalNames = (sr.globalNames==null)?new SDict(n,u):
                 sr.globalNames.Add(n,u);
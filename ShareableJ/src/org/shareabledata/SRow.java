@@ -103,7 +103,7 @@ public class SRow extends Serialisable implements ILookup<Long,Serialisable>,
         {
             var sc = (SColumn)b.getValue().val;
             var id = new Ident(sc.uid,db.Name(sc.uid));
-            var v = r.fields.Lookup(sc.uid);
+            var v = (r.fields==null)?null:r.fields.Lookup(sc.uid);
             if (v==null)
                 v = Null;
             if (sc.constraints!=null)
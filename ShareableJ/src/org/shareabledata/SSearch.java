@@ -13,6 +13,7 @@ public class SSearch extends SQuery {
 
     public final SQuery sce;
     public final SList<Serialisable> where;
+    public final SearchRowSet.Plan plan; // see Planned
 
     public SSearch(SQuery sc,ReaderBase f,long u) throws Exception {
         super(Types.SSearch, u);
@@ -24,6 +25,7 @@ public class SSearch extends SQuery {
         }
         sce = sc;
         where = w;
+        plan = null;
         f.context = this;
     }
 
@@ -31,6 +33,25 @@ public class SSearch extends SQuery {
         super(Types.SSearch, -1);
         sce = s;
         where = w;
+        plan = null;
+    }
+    SSearch(SSearch s, SearchRowSet.Plan p)
+    {
+        super(Types.SSearch, s.uid);
+        sce = s.sce;
+        where = s.where;
+        plan = p;
+    }
+    /// <summary>
+    /// For a prepared statement: this search with its access path chosen
+    /// once (see StrongServer.Prepared). SearchRowSet.Source chooses again
+    /// if the indexes of the table have changed.
+    /// </summary>
+    public SSearch Planned(SDatabase tr)
+    {
+        if (!(sce instanceof STable))
+            return this;
+        return new SSearch(this, SearchRowSet.Plan.Choose(tr, (STable)sce, this));
     }
     @Override
     public SDict<Long, Long> Names(SDatabase tr, SDict<Long, Long> pt)
@@ -101,6 +122,14 @@ public class SSearch extends SQuery {
                 sce.Lookup(tr,cx):this;
     }
 
+    @Override
+    public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+    {
+        if (where != null)
+            for (var b = where.First(); b != null; b = b.Next())
+                cs = Needs(cs, b.getValue());
+        return Needs(cs, sce);
+    }
     @Override
     public RowSet RowSet(SDatabase db, SQuery top, 
             Context cx) throws Exception {
@@ -0,0 +1,104 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.util.Comparator;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator over a sequence of whole subtrees parts[from..to-1] of an
+ * SSearchTree, as SDictSpliterator is for SDict. Subtrees know their
+ * Lengths, so splitting is exact (SIZED|SUBSIZED): if only one subtree
+ * is left it is replaced by its left subtree, its node on its own, and its
+ * right subtree. Each subtree is traversed with its Bookmarks.
+ * There can be duplicates, so it is not DISTINCT.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class SSearchTreeSpliterator<T extends Comparable<T>> implements Spliterator<T> {
+        Object[] parts; // shared with the spliterators split from this one: never modified
+        int from, to;
+        long size;
+        Bookmark<T> cur = null; // in parts[from-1]
+        SSearchTreeSpliterator(SSearchTree<T> t)
+        {
+            this(new Object[] { t }, 0, 1, t.Length);
+        }
+        SSearchTreeSpliterator(Object[] p, int f, int t, long s)
+        {
+            parts = p; from = f; to = t; size = s;
+        }
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action)
+        {
+            if (cur != null)
+                cur = cur.Next();
+            if (cur == null)
+            {
+                if (from == to)
+                    return false;
+                cur = ((SSearchTree<T>)parts[from++]).First();
+            }
+            size--;
+            action.accept(cur.getValue());
+            return true;
+        }
+        @Override
+        public void forEachRemaining(Consumer<? super T> action)
+        {
+            while (tryAdvance(action))
+                ;
+        }
+        @Override
+        public Spliterator<T> trySplit()
+        {
+            if (cur != null) // the rest of the current subtree must come first
+                return null;
+            while (to - from == 1)
+            {
+                var s = (SSearchTree<T>)parts[from];
+                if (s.Length == 1)
+                    return null;
+                var c = new Object[3];
+                var n = 0;
+                if (s.left != null)
+                    c[n++] = s.left;
+                c[n++] = new SSearchTree<T>(s.node, null, null);
+                if (s.right != null)
+                    c[n++] = s.right;
+                parts = c;
+                from = 0;
+                to = n;
+            }
+            if (to == from)
+                return null;
+            // the prefix with about half of the entries
+            long h = size / 2, t = ((SSearchTree<T>)parts[from]).Length;
+            int m = from + 1;
+            while (m < to - 1 && t + ((SSearchTree<T>)parts[m]).Length <= h)
+                t += ((SSearchTree<T>)parts[m++]).Length;
+            var r = new SSearchTreeSpliterator<T>(parts, from, m, t);
+            from = m;
+            size -= t;
+            return r;
+        }
+        @Override
+        public long estimateSize()
+        {
+            return size;
+        }
+        @Override
+        public int characteristics()
+        {
+            return ORDERED | SORTED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+        }
+        @Override
+        public Comparator<? super T> getComparator()
+        {
+            return null; // the natural order
+        }
+}
@@ -217,6 +217,21 @@ public class SSelectStatement extends SQuery {
             return sb.toString();
         }
 
+        /// <summary>
+        /// Without column expressions the select returns all the columns of qry
+        /// </summary>
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            if (cpos == null)
+                return AllColumns;
+            for (var b = cpos.First(); b != null; b = b.Next())
+                cs = Needs(cs, b.getValue().val);
+            if (order != null)
+                for (var b = order.First(); b != null; b = b.Next())
+                    cs = Needs(cs, b.getValue());
+            return Needs(cs, qry);
+        }
         @Override
         public RowSet RowSet(SDatabase tr,SQuery top,
                 Context cx) throws Exception
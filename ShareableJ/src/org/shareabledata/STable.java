@@ -10,8 +10,9 @@ package org.shareabledata;
  */
 public class STable extends SQuery {
         public final SDict<Long,SColumn> cols;
-        public final SDict<Long, Long> rows; // defpos->uid of latest update
+        public final SLongDict<Long> rows; // defpos->uid of latest update
         public final SDict<Long,Boolean> indexes;
+        public static boolean projections = true; // false: always decode whole records
         public STable Add(int sq,SColumn c,String s) 
         {
             var sd = (sq>=0)?sq:(display==null)?0:display.Length;
@@ -27,7 +28,7 @@ public class STable extends SQuery {
         {
             var k = r.Defpos();
             var v = r.uid;
-            var rws = (rows==null)?new SDict<Long,Long>(k,v):rows.Add(k,v);
+            var rws = (rows==null)?new SLongDict<Long>(SDict.LARGE,k,v):rows.AddLong(k,v);
             return new STable(this,rws);
         }
         public SColumn FindForRole(SDatabase db,String nm)
@@ -132,7 +133,7 @@ public class STable extends SQuery {
             rows = t.rows;
             indexes = t.indexes;
         }
-        STable(STable t,SDict<Long,Long> r)
+        STable(STable t,SLongDict<Long> r)
         {
             super(t);
             cols = t.cols;
@@ -191,19 +192,59 @@ public class STable extends SQuery {
              return (nms.refs instanceof RowBookmark)?
                      (SRow)((RowBookmark)nms.refs)._cx.refs: this;
         }
+        /// <summary>
+        /// A table is a source of columns, and does not itself refer to any
+        /// </summary>
+        @Override
+        public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+        {
+            return cs;
+        }
+        /// <summary>
+        /// The columns of this table that the select statement top uses,
+        /// so that records need not be decoded in full: null for all columns.
+        /// This is only attempted if everything top refers to is a known column
+        /// (not an alias, say), and if no column is generated from others.
+        /// </summary>
+        public SDict<Long,Boolean> Projection(SDatabase db,SQuery top)
+        {
+            if (!projections || !(top instanceof SSelectStatement) || cols == null)
+                return null;
+            var ns = top.Needs(null);
+            if (ns == null || ns == AllColumns)
+                return null;
+            for (var b = cols.First(); b != null; b = b.Next())
+                if (b.getValue().val.constraints != null)
+                    for (var c = b.getValue().val.constraints.First(); c != null; c = c.Next())
+                        if (c.getValue().val.func == SFunction.Func.Generated)
+                            return null;
+            SDict<Long,Boolean> r = null;
+            for (var b = ns.First(); b != null; b = b.Next())
+            {
+                var u = b.getValue().key;
+                if (!(db.objects.Lookup(u) instanceof SColumn))
+                    return null;
+                if (cols.Contains(u))
+                    r = (r == null) ? new SDict<>(u, true) : r.Add(u, true);
+            }
+            return (r == null || r.Length == cols.Length) ? null : r;
+        }
         @Override
         public RowSet RowSet(SDatabase tr,SQuery top, 
                 Context cx)
         {
-            if (indexes!=null)
-                for (var b = indexes.First(); b != null; b = b.Next())
+            // a prepared statement may hold an older version of this table
+            var ob = tr.objects.Lookup(uid);
+            var tb = (ob instanceof STable)? (STable)ob : this;
+            if (tb.indexes!=null)
+                for (var b = tb.indexes.First(); b != null; b = b.Next())
                 {
                     var x = (SIndex)tr.objects.Lookup(b.getValue().key);
                     if (x.references < 0)
-                        return new IndexRowSet(tr, this, x, null, 
-                                SExpression.Op.NotEql, null, cx);
+                        return new IndexRowSet(tr, tb, x, null, 
+                                SExpression.Op.NotEql, null, tb.Projection(tr, top), cx);
                 }
-            return new TableRowSet(tr, this, cx);
+            return new TableRowSet(tr, tb, tb.Projection(tr, top), cx);
         }
         @Override
         public boolean Conflicts(SDatabase db, STransaction tr, Serialisable that)
@@ -231,7 +272,7 @@ public class STable extends SQuery {
                         { 
                             long cu=0;
                             var j = 0;
-                            var mb = x.rows.PositionAt(k);
+                            var mb = x.Rows().PositionAt(k);
                             for (var cb = x.cols.First(); j <= i && cb != null; cb = cb.Next(), j++)
                             {
                                 cu = cb.getValue();
@@ -241,7 +282,7 @@ public class STable extends SQuery {
                             var sc = (SColumn)tr.objects.get(cu);
                             if (sc.dataType == Types.SInteger)
                             {
-                                var bu = mb._outer._bmk;
+                                var bu = mb._outer.Bmk();
                                 while (bu._parent != null)
                                     bu = bu._parent;
                                 var ov = (Variant)bu._bucket.Last();
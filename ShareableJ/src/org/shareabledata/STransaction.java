@@ -32,7 +32,7 @@ public class STransaction extends SDatabase {
             readConstraints = null;
             rdr.db = this;
         }
-        private STransaction(STransaction tr,SDict<Long,SDbObject>obs,SRole r,long c) throws Exception
+        private STransaction(STransaction tr,SLongDict<SDbObject>obs,SRole r,long c) throws Exception
         {
             super(tr,obs,r,c);
             uid =  tr.uid+1;
@@ -68,7 +68,7 @@ public class STransaction extends SDatabase {
         }
         public STransaction Add(long u,SDbObject ob)
         {
-            return (STransaction)New(objects.Add(u,ob),role,curpos);
+            return (STransaction)New(objects.AddLong(u,ob),role,curpos);
         }
         @Override
         public Serialisable _Get(long pos) {
@@ -77,7 +77,7 @@ public class STransaction extends SDatabase {
             return super._Get(pos);
         }
         @Override
-        protected SDatabase New(SDict<Long, SDbObject> o, SRole ro, long c)
+        protected SDatabase New(SLongDict<SDbObject> o, SRole ro, long c)
         {
             STransaction r;
             try {
@@ -91,69 +91,121 @@ public class STransaction extends SDatabase {
             return role.uids.get(u);
         }
         /// <summary>
-        /// If there are concurrent transactions there will be more code here.
+        /// Only the log records written since our snapshot are validated, and
+        /// only the records written since the installed database are applied to it,
+        /// so the cost of Commit does not depend on the size of the database.
+        /// The new database is installed only once GroupCommit has forced it,
+        /// so other sessions (and read-only autocommits) never see a commit
+        /// that could be lost. Until then the next commit catches up with it
+        /// from the file, and fails with it if the force fails.
         /// </summary>
         /// <returns>the steps as modified by the commit process</returns>
         public SSlot<SDatabase,Long> Commit() throws Exception
         {
-            SDatabase db = databases.Lookup(name);
-            var ts = db.curpos;
-            var f = new Writer(dbfiles.get(name));
-            var rdr = new Reader(this);
+            var f = new Writer(Log()); // our snapshot's file, see Compactor
+            if (f.log.superseded)
+                throw new Exception("Database has been compacted: transaction rolled back");
+            if (f.log.failed)
+                throw new Exception("Database file could not be forced: close and reopen it");
             var tb = objects.PositionAt(_uid); // start of the work we want to commit
-            var since = rdr.GetAll(f.length());
-            for (SDbObject since1 : since) {
-                if (since1.Check(readConstraints))
-                    throw new Exception("Transaction conflict with read");
-                for (org.shareabledata.Bookmark<org.shareabledata.SSlot<java.lang.Long, org.shareabledata.SDbObject>> b = objects.PositionAt(_uid); b != null; b = b.Next()) {
-                    if (since1.Conflicts(db,this,b.getValue().val)) {
-                        throw new Exception("Transaction conflict on " + b.getValue());
-                    }
-                }
-            }
-            synchronized (f.file)
+            // Validate what has been committed since our snapshot without holding the lock:
+            // only as far as the installed database, as the file may end with a
+            // transaction that another writer is still appending. If the database
+            // has been closed or compacted meanwhile, the checks below will say so.
+            var inst = Installed(name);
+            var validated = curpos;
+            if (inst != null && inst.Log() == f.log)
             {
-                db = databases.get(name).Load();
-                ts = db.curpos;
-                for (var b = tb; b != null; b = b.Next())
+                validated = Math.max(curpos, inst.curpos);
+                Validate(inst, new Reader(this, curpos, validated).GetAll(validated));
+            }
+            SDatabase db;
+            long ts, end;
+            var g = f.log.group;
+            var written = false;
+            g.Enter();
+            try {
+                f.log.lock.lock();
+                try
                 {
-                    var ov = b.getValue().val;
-                    if (ov instanceof SRecord)
-                    {
-                        var sr = (SRecord)ov;
-                        sr.CheckConstraints(db, (STable)objects.get(sr.table));
-                    }
-                    else if (ov instanceof SDelete)
+                    if (f.log.superseded) // a compaction replaced the file while we validated
+                        throw new Exception("Database has been compacted: transaction rolled back");
+                    if (f.log.failed)
+                        throw new Exception("Database file could not be forced: close and reopen it");
+                    inst = Installed(name);
+                    if (inst == null || inst.Log() != f.log) // reopened as another LogFile
+                        throw new Exception("Database has been closed: transaction rolled back");
+                    end = f.length();
+                    db = inst.Catchup(end);
+                    ts = db.curpos;
+                    for (var b = tb; b != null; b = b.Next())
                     {
-                        var sd = (SDelete)ov;
-                        sd.CheckConstraints(db, (STable)objects.get(sd.table));
-                    }
-                }
-                since = rdr.GetAll(f.length());
-                for (SDbObject since1 : since) {
-                    if (since1.Check(readConstraints))
-                        throw new Exception("Transaction conflict with read");
-                    for (org.shareabledata.Bookmark<org.shareabledata.SSlot<java.lang.Long, org.shareabledata.SDbObject>> b = objects.PositionAt(_uid); b != null; b= b.Next()) {
-                        if (since1.Conflicts(db,this,b.getValue().val)) {
-                            throw new Exception("Transaction conflict on " + b.getValue());
+                        var ov = b.getValue().val;
+                        if (ov instanceof SRecord)
+                        {
+                            var sr = (SRecord)ov;
+                            sr.CheckConstraints(db, (STable)objects.get(sr.table));
+                        }
+                        else if (ov instanceof SDelete)
+                        {
+                            var sd = (SDelete)ov;
+                            sd.CheckConstraints(db, (STable)objects.get(sd.table));
                         }
                     }
+                    // and whatever was committed while we were validating
+                    if (end > validated)
+                        Validate(db, new Reader(this, validated, end).GetAll(end));
+                    db = f.Commit(db,this);
+                    f.CommitDone();
+                    end = db.curpos;
+                } finally {
+                    f.log.lock.unlock();
                 }
-                db = f.Commit(db,this);
-                f.CommitDone();
-                Install(db);
+                written = true;
+            } finally {
+                if (!written)
+                    g.Leave();
             }
+            g.Sync(end); // wait for our batch to be forced
+            Install(db);
+            f.log.checkpoint.Maybe(db);
             return new SSlot(db,ts);
         }
+        /// <summary>
+        /// Check committed records against our reads and our proposed changes
+        /// </summary>
+        void Validate(SDatabase db,SDbObject[] since) throws Exception
+        {
+            for (var since1 : since) {
+                if (since1.Check(readConstraints))
+                    throw new Exception("Transaction conflict with read");
+                for (var c = objects.Cursor(_uid); c.Advance();) {
+                    if (since1.Conflicts(db,this,c.Value())) {
+                        throw new Exception("Transaction conflict on " + c.Slot());
+                    }
+                }
+            }
+        }
         @Override
-        public STransaction Transact(ReaderBase rdr,boolean auto)
+        public STransaction Transact(ReaderBase rdr,boolean auto) throws Exception
         {
             rdr.db = this;
             return this; // ignore the parameter
         }
-        public SSlot<SDatabase,Long> MaybeCommit() throws Exception
+        /// <summary>
+        /// An autocommit transaction that has added nothing (no objects above
+        /// _uid, e.g. for a Get) is not committed: it was served from the
+        /// immutable snapshot it started from, so no Writer, log read or lock
+        /// is needed, and that snapshot is the session's database afterwards.
+        /// </summary>
+        @Override
+        public SSlot<SDatabase,Long> MaybeAutoCommit() throws Exception
         {
-            return autoCommit? Commit(): new SSlot(this,curpos);
+            if (!autoCommit)
+                return new SSlot(this,curpos);
+            if (objects.PositionAt(_uid) == null)
+                return new SSlot(rollback,curpos);
+            return Commit();
         }
         @Override
         public SDatabase Rollback()
@@ -163,9 +215,9 @@ public class STransaction extends SDatabase {
         @Override
         public SDatabase Rdc(SIndex ix, SCList<Variant> _key)
         {
-            if (_key.Length == 0)
+            if (_key == null || _key.Length == 0)
                 return new STransaction(this,ix.table);
-            var mb = ix.rows.PositionAt(_key);
+            var mb = ix.Rows().PositionAt(_key);
             if (mb == null)
                 return this;
             if (mb.hasMore(this, ix.cols.Length))
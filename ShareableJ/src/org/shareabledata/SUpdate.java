@@ -39,7 +39,8 @@ public class SUpdate extends SRecord {
             defpos = f.Fix(r.defpos);
             oldfields = r.oldfields;
             f.PutLong(defpos);
-            f.PutInt(oldfields.Length);
+            f.PutInt((oldfields==null)?0:oldfields.Length);
+            if (oldfields!=null)
             for (var b=oldfields.First();b!=null;b=b.Next())
             {
                 f.PutLong(b.getValue().key);
@@ -48,10 +49,20 @@ public class SUpdate extends SRecord {
         }
         SUpdate(ReaderBase f) throws Exception
         {
-            super(Types.SUpdate,f);
+            this(f,null);
+        }
+        /// <summary>
+        /// As for SRecord: if cs is not null only the fields in cs are decoded,
+        /// and oldfields (needed only to maintain indexes) is skipped
+        /// </summary>
+        SUpdate(ReaderBase f,SDict<Long,Boolean> cs) throws Exception
+        {
+            super(Types.SUpdate,f,cs);
             defpos = f.GetLong();
             SDict<Long, Serialisable> ofs = null;
-            if (!(f instanceof SocketReader))
+            if (cs!=null)
+                ((Reader)f).SkipFields();
+            else if (!(f instanceof SocketReader))
             {
                 var n = f.GetInt();
                 for (var i = 0; i < n; i++)
@@ -67,13 +78,13 @@ public class SUpdate extends SRecord {
             SDict<Long,Serialisable> us)
         {
             var tb = (STable)tr.objects.Lookup(r.table);
-            SDict<Long, Serialisable> u = null;
+            SLongDict<Serialisable> u = null;
             if (us!=null)
             for (var b=us.First();b!=null;b=b.Next())
             {
                 var k = b.getValue().key;
                 var v = b.getValue().val;
-                u =(u==null)?new SDict(k,v):u.Add(k,v);
+                u =(u==null)?new SLongDict<Serialisable>(k,v):u.AddLong(k,v);
             }
             return r.fields.Merge(u);
         }
@@ -90,8 +101,8 @@ public class SUpdate extends SRecord {
         {
             var cx = Context.New(fields,Context.Empty);
             for (var b = st.cols.First(); b != null; b = b.Next())
-                for (var c = b.getValue().val.constraints.First(); c != null; 
-                        c = c.Next())
+                for (var c = (b.getValue().val.constraints==null)?null
+                        :b.getValue().val.constraints.First();c!=null;c=c.Next())
                     switch (c.getValue().key)
                     {
                         case "CHECK":
@@ -24,12 +24,12 @@ public class SUpdateSearch extends Serialisable
             for (var b = (RowBookmark)qry.RowSet(tr,qry,null).First(); 
                     b != null; b = (RowBookmark)b.Next())
             {
-                SDict<Long, Serialisable> u = null;
+                SLongDict<Serialisable> u = null;
                 for (var c = assigs.First(); c != null; c = c.Next())
                 {
                     var v = c.getValue();
                     var vl = v.val.Lookup(tr,b._cx);
-                    u=(u==null)?new SDict(v.key,vl):u.Add(v.key, vl);
+                    u=(u==null)?new SLongDict<Serialisable>(v.key,vl):u.AddLong(v.key, vl);
                 }
                 tr = b.Update(tr,u);
             }
@@ -27,73 +27,111 @@ public class SearchRowSet extends RowSet {
     static RowSet Source(SDatabase tr,SQuery top,SSearch sc,Context cx)
             throws Exception
     {
-            RowSet s = null;
-            SDict<Long,SSlot<Serialisable,Integer>> matches = null;
             if (sc.sce instanceof STable)
             {
+                // a cached plan (see SSearch.Planned) may hold an older
+                // version of the table
                 var tb = (STable)sc.sce;
-                for (var wb = sc.where.First(); wb != null; wb = wb.Next())
-                    if (wb.getValue() instanceof SExpression)
-                    { 
-                        var x = (SExpression)wb.getValue(); 
-                        if (x.left instanceof SColumn)
-                        {
-                            var c = (SColumn)x.left;
-                            if (tb.refs.Contains(c.uid) &&
-                                x.right != null && x.right.isValue())
-                            {
-                                var sl = new SSlot(x.right,x.op);
-                                matches = (matches==null)?new SDict(c.uid,sl):
-                                    matches.Add(c.uid, sl);
-                            }
-                        }
-                        else if (x.right instanceof SColumn)
-                        {
-                            var c = (SColumn)x.right;
-                            if (tb.refs.Contains(c.uid) &&
-                                x.left != null && x.left.isValue())
-                            {
-                                var sl = new SSlot(x.left,Reverse(x.op));
-                                matches = (matches==null)?new SDict(c.uid,sl):
-                                    matches.Add(c.uid, sl);
-                            }
-                        }
-                     }
-                SCList<Variant> best = null;
-                if (matches != null && tb.indexes!=null)
-                    for (var b = tb.indexes.First();(best==null || 
-                            matches.Length> best.Length) && b != null;
-                        b = b.Next())
+                var ob = tr.objects.Lookup(tb.uid);
+                if (ob instanceof STable)
+                    tb = (STable)ob;
+                var p = (sc.plan!=null && sc.plan.indexes==tb.indexes)?
+                        sc.plan : Plan.Choose(tr, tb, sc);
+                if (p.index>=0)
+                {
+                    SCList<Variant> ma = null;
+                    var n = 0;
+                    for (var b = p.key.First(); b != null; b = b.Next(), n++)
                     {
-                        SCList<Variant> ma = null;
-                        int op = SExpression.Op.Eql;
-                        var n = 0;
-                        var ix = (SIndex)tr.objects.get(b.getValue().key);
-                        for (var wb = ix.cols.First(); wb != null; wb = wb.Next())
-                        {
-                            if (!matches.Contains(wb.getValue()))
-                                break;
-                            op = Compat(op, (int)((SSlot)matches.get(wb.getValue())).val);
-                            if (op == SExpression.Op.NotEql)
-                                break;
-                            var v = new Variant(Variants.Ascending, matches.get(wb.getValue()).key);
-                            ma = (ma==null)?new SCList(v):ma.InsertAt(v,n);
-                            n++;
-                        }
-                        if (ma!= null && (best==null || ma.Length > best.Length))
-                        {
-                            best = ma;
-                            s = new IndexRowSet(tr, tb, ix, ma, op, sc.where, cx);
-                            tr = s._tr;
-                        }
+                        var v = new Variant(Variants.Ascending, 
+                                b.getValue().Lookup(tr, cx));
+                        ma = (ma==null)?new SCList(v):ma.InsertAt(v,n);
                     }
+                    return new IndexRowSet(tr, tb, 
+                            (SIndex)tr.objects.get(p.index), ma, p.op, 
+                            sc.where, tb.Projection(tr, top), cx);
+                }
+                return tb.RowSet(tr, top, cx);
             }
-            if (s!=null)
-                return s;
             if (sc.sce!=null)
                 return sc.sce.RowSet(tr,top,cx);
             throw new Exception("PE03");
     }
+    /// <summary>
+    /// The access path for a search of a table: the index whose leading
+    /// columns the where condition fixes, if any, with the expressions for
+    /// the key. Parameters (SParam) are accepted as well as values, so that
+    /// a prepared statement can keep its plan (see SSearch.Planned) until the 
+    /// indexes of the table change.
+    /// </summary>
+    static class Plan {
+        public final SDict<Long,Boolean> indexes; // of the table when planned
+        public final long index; // -1 for a scan of the table
+        public final SList<Serialisable> key;
+        public final int op;
+        Plan(SDict<Long,Boolean> xs,long ix,SList<Serialisable> k,int o)
+        {
+            indexes = xs; index = ix; key = k; op = o;
+        }
+        static boolean Fixed(Serialisable x)
+        {
+            return x != null && (x.isValue() || x instanceof SParam);
+        }
+        static Plan Choose(SDatabase tr,STable tb,SSearch sc)
+        {
+            SDict<Long,SSlot<Serialisable,Integer>> matches = null;
+            for (var wb = sc.where.First(); wb != null; wb = wb.Next())
+                if (wb.getValue() instanceof SExpression)
+                { 
+                    var x = (SExpression)wb.getValue(); 
+                    if (x.left instanceof SColumn)
+                    {
+                        var c = (SColumn)x.left;
+                        if (tb.refs.Contains(c.uid) && Fixed(x.right))
+                        {
+                            var sl = new SSlot(x.right,x.op);
+                            matches = (matches==null)?new SDict(c.uid,sl):
+                                matches.Add(c.uid, sl);
+                        }
+                    }
+                    else if (x.right instanceof SColumn)
+                    {
+                        var c = (SColumn)x.right;
+                        if (tb.refs.Contains(c.uid) && Fixed(x.left))
+                        {
+                            var sl = new SSlot(x.left,Reverse(x.op));
+                            matches = (matches==null)?new SDict(c.uid,sl):
+                                matches.Add(c.uid, sl);
+                        }
+                    }
+                 }
+            var r = new Plan(tb.indexes,-1,null,SExpression.Op.NotEql);
+            if (matches != null && tb.indexes!=null)
+                for (var b = tb.indexes.First();(r.key==null || 
+                        matches.Length> r.key.Length) && b != null;
+                    b = b.Next())
+                {
+                    SList<Serialisable> ma = null;
+                    int op = SExpression.Op.Eql;
+                    var n = 0;
+                    var ix = (SIndex)tr.objects.get(b.getValue().key);
+                    for (var wb = ix.cols.First(); wb != null; wb = wb.Next())
+                    {
+                        if (!matches.Contains(wb.getValue()))
+                            break;
+                        op = Compat(op, (int)((SSlot)matches.get(wb.getValue())).val);
+                        if (op == SExpression.Op.NotEql)
+                            break;
+                        var v = matches.get(wb.getValue()).key;
+                        ma = (ma==null)?new SList(v):ma.InsertAt(v,n);
+                        n++;
+                    }
+                    if (ma!= null && (r.key==null || ma.Length > r.key.Length))
+                        r = new Plan(tb.indexes,ix.uid,ma,op);
+                }
+            return r;
+        }
+    }
     static int Reverse(int op)
     {
         switch (op)
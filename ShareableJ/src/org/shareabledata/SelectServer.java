@@ -0,0 +1,364 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.*;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A non-blocking alternative to a thread per connection (StrongStart -n).
+ * One selector thread accepts connections and reads their frames (with the
+ * length header used by SocketReader and SocketWriter), taking as many as
+ * have arrived from each read of the channel. When the last frame of a
+ * request arrives (one that is not full: see SocketWriter.PutLast) the
+ * request is given to a bounded pool of worker threads, which carry it out
+ * using StrongServer.Open and StrongServer.Serve. A worker is only given
+ * complete requests, so it never waits for the network: a slow client
+ * holds no worker however long it takes to send a request.
+ * If the workers and their queue are all busy, complete requests wait here,
+ * and no connection with a complete request waiting has more than maxFrames
+ * frames read ahead, so that under overload TCP flow control pushes back on
+ * clients. (The frames of a request still arriving are always read.)
+ * Responses are queued by the worker and written by the selector thread,
+ * all that are waiting in one gathering write.
+ * This class is not shareable.
+ * @author Malcolm
+ */
+public class SelectServer implements Runnable {
+        public static int maxQueued = 256; // requests waiting for a worker
+        public static int maxFrames = 64; // frames read ahead for one connection
+        final ServerSocketChannel tcp;
+        final Selector selector;
+        final ThreadPoolExecutor workers;
+        // sessions whose interest ops must be recomputed by the selector thread
+        final ConcurrentLinkedQueue<Session> changed = new ConcurrentLinkedQueue<>();
+        // sessions with a complete request rejected by a full worker queue
+        final ArrayDeque<Session> overflow = new ArrayDeque<>();
+        public SelectServer(ServerSocketChannel t,int n) throws Exception
+        {
+            tcp = t;
+            selector = Selector.open();
+            workers = new ThreadPoolExecutor(n, n, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(maxQueued));
+            tcp.configureBlocking(false);
+            tcp.register(selector, SelectionKey.OP_ACCEPT);
+        }
+        /// <summary>
+        /// The selector loop: runs until Close
+        /// </summary>
+        public void run()
+        {
+            try {
+                while (tcp.isOpen())
+                {
+                    selector.select();
+                    for (Session s; (s = changed.poll()) != null;)
+                        s.Interest();
+                    while (!overflow.isEmpty() && Dispatch(overflow.peek()))
+                        overflow.poll();
+                    var ks = selector.selectedKeys();
+                    for (var k : ks)
+                        try {
+                            if (!k.isValid())
+                                continue;
+                            if (k.isAcceptable())
+                                Accept();
+                            else
+                            {
+                                var s = (Session)k.attachment();
+                                if (k.isWritable())
+                                    s.Write();
+                                if (k.isValid() && k.isReadable())
+                                    s.Read();
+                            }
+                        } catch (Exception e) {
+                            if (k.attachment() != null)
+                                ((Session)k.attachment()).Close();
+                        }
+                    ks.clear();
+                }
+            } catch (Exception e) {
+                System.out.println(e.getMessage());
+            } finally {
+                workers.shutdown();
+                for (var k : selector.keys())
+                    try {
+                        k.channel().close();
+                    } catch (Exception e) {
+                    }
+                try {
+                    selector.close();
+                } catch (Exception e) {
+                }
+            }
+        }
+        public void Close() throws Exception
+        {
+            tcp.close();
+            selector.wakeup();
+        }
+        void Accept() throws Exception
+        {
+            var ch = tcp.accept();
+            if (ch == null)
+                return;
+            ch.configureBlocking(false);
+            ch.socket().setTcpNoDelay(true);
+            var s = new Session(ch);
+            s.key = ch.register(selector, SelectionKey.OP_READ, s);
+        }
+        /// <summary>
+        /// Give a session's complete request to a worker
+        /// </summary>
+        /// <returns>false if the workers are too busy</returns>
+        boolean Dispatch(Session s)
+        {
+            try {
+                workers.execute(s);
+                return true;
+            } catch (RejectedExecutionException e) {
+                return false;
+            }
+        }
+        /// <summary>
+        /// The state of one connection
+        /// </summary>
+        class Session implements Runnable
+        {
+            final SocketChannel ch;
+            SelectionKey key;
+            final ChannelReader rdr;
+            final ChannelWriter wtr;
+            final StrongServer server;
+            ByteBuffer in = ByteBuffer.allocate(2 * Buffer.Size);
+            ConcurrentLinkedQueue<ByteBuffer> out = new ConcurrentLinkedQueue<>();
+            volatile boolean busy = false; // set by the selector thread, cleared by the worker
+            // complete requests read: counted by the selector thread, and down by the worker
+            final AtomicInteger requests = new AtomicInteger();
+            volatile boolean closing = false;
+            boolean opened = false; // the first request names the database
+            Session(SocketChannel c) throws Exception
+            {
+                ch = c;
+                rdr = new ChannelReader(this);
+                wtr = new ChannelWriter(this);
+                server = new StrongServer(new ServerStream(rdr, wtr));
+            }
+            /// <summary>
+            /// Read frames until the channel is empty. Frames that arrive
+            /// while a worker is busy with this session are for it to read.
+            /// </summary>
+            void Read() throws Exception
+            {
+                while (!closing && !Full())
+                {
+                    var n = ch.read(in);
+                    if (n < 0)
+                    {
+                        Close();
+                        return;
+                    }
+                    var empty = in.hasRemaining(); // the channel had no more
+                    Split();
+                    if (empty)
+                        break; // wait for the rest of the frame
+                }
+                Interest();
+            }
+            /// <summary>
+            /// Take the complete frames that have been read. The frame size
+            /// only changes when the worker has read a Types.FrameSize
+            /// request and before it replies, so the client has not yet
+            /// sent a frame of the new size.
+            /// </summary>
+            void Split() throws Exception
+            {
+                in.flip();
+                var h = rdr.head;
+                while (in.remaining() >= h)
+                {
+                    var n = Buffer.GetHead(in.array(), in.position(), h);
+                    var m = rdr.padded ? rdr.size : n + h;
+                    if (m > rdr.size)
+                        throw new Exception("Bad frame");
+                    if (in.remaining() < m)
+                        break;
+                    var b = new byte[m];
+                    in.get(b);
+                    rdr.frames.add(b);
+                    if (n < rdr.size - h) // the last frame
+                    {
+                        requests.incrementAndGet();
+                        if (!busy)
+                            Start();
+                    }
+                }
+                in.compact();
+                if (!in.hasRemaining()) // a frame larger than the buffer
+                {
+                    var b = ByteBuffer.allocate(2 * in.capacity());
+                    b.put(in.flip());
+                    in = b;
+                }
+            }
+            /// <summary>
+            /// Enough frames are read ahead, and the worker has a request to get on with
+            /// </summary>
+            boolean Full()
+            {
+                return rdr.frames.size() >= maxFrames && requests.get() > 0;
+            }
+            /// <summary>
+            /// Called on the selector thread: give the request to a worker
+            /// </summary>
+            void Start()
+            {
+                busy = true;
+                if (!Dispatch(this))
+                    overflow.add(this);
+            }
+            /// <summary>
+            /// Write the queued frames, as many as the channel will take
+            /// </summary>
+            void Write() throws Exception
+            {
+                ch.write(out.toArray(new ByteBuffer[0]));
+                for (var b = out.peek(); b != null && !b.hasRemaining(); b = out.peek())
+                    out.poll();
+                Interest();
+            }
+            /// <summary>
+            /// Called on the selector thread: read unless enough frames are
+            /// waiting, write when there is something to write
+            /// </summary>
+            void Interest() throws Exception
+            {
+                if (!key.isValid())
+                    return;
+                if (closing && !busy && out.isEmpty())
+                {
+                    Close();
+                    return;
+                }
+                if (!busy && !closing && requests.get() > 0)
+                    Start(); // a request that arrived as the worker finished
+                key.interestOps(((closing || Full()) ? 0 : SelectionKey.OP_READ)
+                        | (out.isEmpty() ? 0 : SelectionKey.OP_WRITE));
+            }
+            /// <summary>
+            /// Close the connection, or arrange to do so when the request in
+            /// progress is done
+            /// </summary>
+            void Close()
+            {
+                closing = true;
+                if (busy)
+                {
+                    if (key.isValid())
+                        key.interestOps(0);
+                    return;
+                }
+                key.cancel();
+                try {
+                    ch.close();
+                } catch (Exception e) {
+                }
+            }
+            /// <summary>
+            /// Called on a worker thread: carry out the complete requests that
+            /// have been read, each of which may have several protocol operations
+            /// </summary>
+            public void run()
+            {
+                try {
+                    while (!closing && requests.get() > 0)
+                    {
+                        if (!opened)
+                        {
+                            opened = true;
+                            if (!server.Open())
+                                closing = true;
+                        }
+                        else
+                            do
+                                server.Serve(rdr.ReadByte());
+                            while (!rdr.Done());
+                        requests.decrementAndGet();
+                    }
+                } catch (Exception e) {
+                    closing = true;
+                } finally {
+                    busy = false;
+                    Changed(this);
+                }
+            }
+        }
+        void Changed(Session s)
+        {
+            changed.add(s);
+            selector.wakeup();
+        }
+        /// <summary>
+        /// A ServerReader whose frames have been read by the selector thread:
+        /// each becomes the buffer in turn, so they are not copied again.
+        /// The selector thread starts a request only when its last frame has
+        /// arrived, so the frames a worker reads are always here.
+        /// </summary>
+        class ChannelReader extends ServerReader
+        {
+            final Session session;
+            final LinkedBlockingQueue<byte[]> frames = new LinkedBlockingQueue<>();
+            boolean last = false; // buf is the last frame of a request
+            ChannelReader(Session s) throws Exception
+            {
+                super(null);
+                session = s;
+            }
+            @Override
+            protected int ReadFrame() throws Exception
+            {
+                var f = frames.poll();
+                if (f == null)
+                    return -1;
+                if (frames.size() == maxFrames - 1)
+                    Changed(session); // the selector thread can read again
+                buf.buf = f;
+                var n = Buffer.GetHead(f, 0, head);
+                buf.len = n + head;
+                last = n < size - head;
+                return n;
+            }
+            /// <summary>
+            /// The request being served has been read to its end
+            /// </summary>
+            boolean Done()
+            {
+                return last && buf.pos >= buf.len;
+            }
+        }
+        /// <summary>
+        /// A ServerWriter whose frames are written by the selector thread
+        /// </summary>
+        class ChannelWriter extends ServerWriter
+        {
+            final Session session;
+            ChannelWriter(Session s)
+            {
+                super(null);
+                session = s;
+            }
+            @Override
+            protected void Send(byte[] b,int n)
+            {
+                session.out.add(ByteBuffer.wrap(Arrays.copyOf(b, n)));
+                Changed(session);
+            }
+        }
+}
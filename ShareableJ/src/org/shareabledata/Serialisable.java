@@ -25,6 +25,27 @@ public class Serialisable implements Comparable {
         type = t;
     }
     public boolean isValue() { return true;}
+    /// <summary>
+    /// Used in place of a set of column uids when any column may be needed
+    /// </summary>
+    public final static SDict<Long,Boolean> AllColumns = new SDict<>(Long.MIN_VALUE, true);
+    /// <summary>
+    /// Add the uids of the columns this refers to into cs, so that records
+    /// can be decoded with only the fields a query uses (see STable.Projection).
+    /// A value refers to none. Anything not known to be safe gives AllColumns.
+    /// </summary>
+    public SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs)
+    {
+        return isValue() ? cs : AllColumns;
+    }
+    protected static SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs,long u)
+    {
+        return (cs == AllColumns) ? cs : (cs == null) ? new SDict<>(u, true) : cs.Add(u, true);
+    }
+    protected static SDict<Long,Boolean> Needs(SDict<Long,Boolean> cs,Serialisable s)
+    {
+        return (s == null) ? cs : s.Needs(cs);
+    }
     public static Serialisable Get(ReaderBase f) throws Exception
     {
         return Null;
@@ -17,22 +17,28 @@ public class ServerStream  {
         boolean exception = false;
         ServerStream(Socket c) throws Exception
         {
-            super();
-            client = c;
-            rdr = new ServerReader(client);
-            wtr = new ServerWriter(client);
-            rdr.buf.pos = 2;
+            this(new ServerReader(c), new ServerWriter(c));
+        }
+        /// <summary>
+        /// A stream whose frames do not come directly from a socket (see SelectServer)
+        /// </summary>
+        ServerStream(ServerReader r, ServerWriter w)
+        {
+            rdr = r;
+            wtr = w;
+            client = r.client;
+            rdr.buf.pos = rdr.head;
             rdr.buf.len = 0;
         }
-        void StartException()
+        void StartException() throws Exception
         {
-            rdr.buf.pos = rdr.buf.len;
-            wtr.buf.pos = 4;
+            rdr.Discard();
+            wtr.buf.pos = 2 * wtr.head;
             wtr.exception = true;
         }
         public void Flush() throws Exception
         {
             wtr.PutBuf();
-            wtr.buf.pos = 2;
+            wtr.buf.pos = wtr.head;
         }
 };
@@ -20,22 +20,20 @@ public class ServerWriter extends SocketWriter {
     @Override
     public void PutBuf() throws Exception
     {
-        if (buf.pos == 2)
+        if (buf.pos == head)
             return;
-        // now always send bSize bytes (not wcount)
         if (!exception) {// version 2.0
             super.PutBuf();
             return;
         }
+            // the length header is one no frame can have, and a second
+            // header gives the length of the exception
             exception = false;
-            buf.buf[0] = (byte)((Buffer.Size - 1) >> 7);
-            buf.buf[1] = (byte)((Buffer.Size - 1) & 0x7f);
-            buf.pos -= 4;
-            buf.buf[2] = (byte)(buf.pos >> 7);
-            buf.buf[3] = (byte)(buf.pos & 0x7f);
+            Buffer.PutHead(buf.buf, 0, head, size - 1);
+            Buffer.PutHead(buf.buf, head, head, buf.pos - 2 * head);
         try
         {
-            client.getOutputStream().write(buf.buf);
+            Send(buf.buf, padded ? size : buf.pos);
         }
         catch (Exception e)
         {
@@ -5,6 +5,7 @@
  */
 package org.shareabledata;
 import java.net.Socket;
+import java.util.Arrays;
 
 /**
  *
@@ -12,6 +13,9 @@ import java.net.Socket;
  */
 public class SocketReader extends ReaderBase {
     protected Socket client;
+    int size = Buffer.Size; // the frame size: see Resize
+    int head = 2; // the length of a frame header: see Buffer.Head
+    boolean padded = true; // every frame is size bytes, whatever its length
     public SocketReader(Socket c) throws Exception
     {
         client = c;
@@ -21,36 +25,120 @@ public class SocketReader extends ReaderBase {
     /// </summary>
     /// <returns>the byte</returns>
     @Override
-    public boolean GetBuf(long s) // s is ignored for ServerStream
+    public boolean GetBuf(long s) throws Exception // s is ignored for ServerStream
     {
-        int rcount;
         try
         {
-            var rc = client.getInputStream().read(buf.buf);
-            if (rc == 0)
-            {
-                rcount = 0;
-                return false;
-            }
-            rcount = (buf.buf[0] << 7) + buf.buf[1];
-            buf.len = rcount + 2;
-            return rcount > 0;
+            return ReadFrame() > 0;
         }
         catch (Exception e)
         {
             return false;
         }
     }
+    /// <summary>
+    /// Read the next frame into buf, and give the length in its header
+    /// (-1 if the connection has closed). Unless the frames are padded, the
+    /// header says how many bytes follow, except that an exception frame
+    /// (see ServerWriter.PutBuf) has a second header with the exception's length
+    /// </summary>
+    protected int ReadFrame() throws Exception
+    {
+        var b = buf.buf;
+        if (!Receive(b, 0, head))
+            return -1;
+        var n = Buffer.GetHead(b, 0, head);
+        var got = head;
+        var m = padded ? size : n + head;
+        if (!padded && n == size - 1)
+        {
+            if (!Receive(b, got, head))
+                return -1;
+            got += head;
+            m = got + Buffer.GetHead(b, head, head);
+        }
+        if (m > b.length)
+            throw new Exception("Bad frame");
+        if (!Receive(b, got, m - got))
+            return -1;
+        buf.len = n + head;
+        return n;
+    }
+    /// <summary>
+    /// Read exactly n bytes into b at off: a read from the socket may
+    /// return less than that
+    /// </summary>
+    protected boolean Receive(byte[] b,int off,int n) throws Exception
+    {
+        var s = client.getInputStream();
+        for (var e = off + n; off < e;)
+        {
+            var rc = s.read(b, off, e - off);
+            if (rc <= 0)
+                return false;
+            off += rc;
+        }
+        return true;
+    }
+    /// <summary>
+    /// Use frames of up to s bytes from the next one on, with only their
+    /// used bytes sent (see Types.FrameSize). The rest of the current
+    /// frame is kept.
+    /// </summary>
+    void Resize(int s)
+    {
+        size = s;
+        head = Buffer.Head(s);
+        padded = false;
+        if (buf.buf.length < s)
+            buf.buf = Arrays.copyOf(buf.buf, s);
+    }
+    /// <summary>
+    /// Skip the rest of the current message (see ServerStream.StartException).
+    /// A peer that has agreed a frame size (see Resize) ends each message
+    /// with SocketWriter.PutLast, so the last frame is the first that is not
+    /// full, and any message sent after it, as by a ClientPipeline, is still
+    /// read. Other peers may send a full last frame: for them only the
+    /// current frame is skipped, so as not to wait for a message that is
+    /// not coming.
+    /// </summary>
+    void Discard() throws Exception
+    {
+        while (!padded && buf.len >= size && GetBuf(0))
+            ;
+        buf.pos = buf.len;
+    }
+    /// <summary>
+    /// Start on the next frame
+    /// </summary>
+    void NextFrame() throws Exception
+    {
+        if (!GetBuf(0))
+            throw new Exception("EOF on input");
+        buf.pos = head;
+    }
     @Override
     public int ReadByte() throws Exception
     {
         if (buf.pos >= buf.len)
+            NextFrame();
+        return (buf.len == 0) ? -1 : buf.buf[buf.pos++];
+    }
+    /// <summary>
+    /// Copy whole runs of bytes from the frames, not one byte at a time
+    /// </summary>
+    @Override
+    protected void GetBytes(byte[] b) throws Exception
+    {
+        for (var i = 0; i < b.length;)
         {
-            if (!GetBuf(0))
-                throw new Exception("EOF on input");
-            buf.pos = 2;
+            if (buf.pos >= buf.len)
+                NextFrame();
+            var n = Math.min(b.length - i, buf.len - buf.pos);
+            System.arraycopy(buf.buf, buf.pos, b, i, n);
+            buf.pos += n;
+            i += n;
         }
-        return (buf.len == 0) ? -1 : buf.buf[buf.pos++];
     }
     @Override
     public STable GetTable() throws Exception
@@ -13,26 +13,79 @@ import java.net.Socket;
  */
 public abstract class SocketWriter extends WriterBase {
     protected Socket client;
+    int size = Buffer.Size; // the frame size: see Resize
+    int head = 2; // the length of a frame header: see Buffer.Head
+    boolean padded = true; // every frame is size bytes, whatever its length
     public SocketWriter(Socket c)
     {
         client = c;
-        buf.pos = 2;
+        buf.pos = head;
         buf.len = 0;
     }
     @Override
     public void PutBuf() throws Exception
     {
-        buf.pos -= 2;
-        buf.buf[0] = (byte)(buf.pos >> 7);
-        buf.buf[1] = (byte)(buf.pos & 0x7f);
-        client.getOutputStream().write(buf.buf);
-        buf.pos = 2;
+        Buffer.PutHead(buf.buf, 0, head, buf.pos - head);
+        Send(buf.buf, padded ? size : buf.pos);
+        buf.pos = head;
+    }
+    /// <summary>
+    /// Send the last frame of a message. If the buffer is full its last byte
+    /// is carried over to a further frame, so that the last frame of a
+    /// message is never full: this is how SelectServer finds the end of a request
+    /// (it starts the request a frame early in this case, which does no harm)
+    /// </summary>
+    public void PutLast() throws Exception
+    {
+        if (buf.pos >= size)
+        {
+            var b = buf.buf[--buf.pos];
+            PutBuf();
+            buf.buf[buf.pos++] = b;
+        }
+        PutBuf();
+    }
+    /// <summary>
+    /// Use frames of up to s bytes from the next one on, and send only
+    /// their used bytes (see Types.FrameSize). The buffer must be empty.
+    /// </summary>
+    void Resize(int s)
+    {
+        size = s;
+        head = Buffer.Head(s);
+        padded = false;
+        if (buf.buf.length < s)
+            buf.buf = new byte[s];
+        buf.pos = head;
+    }
+    /// <summary>
+    /// Send the first n bytes of b as a frame
+    /// </summary>
+    protected void Send(byte[] b,int n) throws Exception
+    {
+        client.getOutputStream().write(b, 0, n);
     }
     @Override
     public void WriteByte(byte value) throws Exception
     {
-        if (buf.pos >= Buffer.Size)
+        if (buf.pos >= size)
             PutBuf();
         buf.buf[buf.pos++] = value;
     }
+    /// <summary>
+    /// Copy whole runs of bytes into the frames, not one byte at a time
+    /// </summary>
+    @Override
+    protected void PutBytes(byte[] b) throws Exception
+    {
+        for (var i = 0; i < b.length;)
+        {
+            if (buf.pos >= size)
+                PutBuf();
+            var n = Math.min(b.length - i, size - buf.pos);
+            System.arraycopy(b, i, buf.buf, buf.pos, n);
+            buf.pos += n;
+            i += n;
+        }
+    }
 }
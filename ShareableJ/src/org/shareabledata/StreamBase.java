@@ -23,7 +23,7 @@ public abstract class StreamBase {
     }
         public void PutInt(int n)
         {
-            PutInteger(new Bigint(n));
+            PutLong(n);
         }
         public void PutInteger(Bigint b) 
         {
@@ -32,9 +32,15 @@ public abstract class StreamBase {
             for (int j = 0; j<m ; j++)
                 WriteByte(b.bytes[j]);
         }
+        /// <summary>
+        /// As WriterBase.PutLong: the bytes of new Bigint(n) without the Bigint
+        /// </summary>
         public void PutLong(long n) 
         {
-            PutInteger(new Bigint(n));
+            var m = (n == 0) ? 0 : (64 - Long.numberOfLeadingZeros(n ^ (n >> 63))) / 8 + 1;
+            WriteByte((byte)m);
+            for (var j = m - 1; j >= 0; j--)
+                WriteByte((byte)(n >> (8 * j)));
         }
 
     public void PutString(String s) {
@@ -5,6 +5,7 @@
  */
 package org.shareabledata;
 import java.net.*;
+import java.util.ArrayList;
 /**
  *
  * @author Malcolm
@@ -15,6 +16,16 @@ public class StrongConnect {
         public boolean inTransaction = false;
         SDict<Long,String> preps = null;
         public SDict<Integer,String> description = null;
+        ClientCursor cursor = null; // see OpenCursor
+        ClientPipeline pipeline = null; // see Pipeline
+        boolean binary = false; // see BinaryRows
+        SDict<String,ClientStatement> statements = null; // see PrepareStatement
+        /// <summary>
+        /// The frame size that new connections ask for (see FrameSize).
+        /// The default, Buffer.Size, asks for nothing and keeps the fixed
+        /// frames of older servers, which do not know Types.FrameSize.
+        /// </summary>
+        public static int frameSize = Buffer.Size;
         public StrongConnect(String host,int port,String fn) throws Exception
         {
             Socket socket = null;
@@ -22,6 +33,7 @@ public class StrongConnect {
             {
                 var ad = InetAddress.getByName(host);
                 socket = new Socket(ad,port);
+                socket.setTcpNoDelay(true);
             }
             catch (Exception e)
             {
@@ -34,6 +46,28 @@ public class StrongConnect {
             asy.Flush();
             asy.Receive();
             preps = null;
+            if (frameSize != Buffer.Size)
+                FrameSize(frameSize);
+        }
+        /// <summary>
+        /// Ask the server for frames of up to n bytes, and use the size it
+        /// agrees from now on. Frames are no longer padded to their full
+        /// size, so a short message is sent as a short frame, and a long one
+        /// in fewer frames.
+        /// </summary>
+        /// <returns>the size agreed</returns>
+        public int FrameSize(int n) throws Exception
+        {
+            if (cursor != null)
+                cursor.Close();
+            asy.wtr.Write((byte)Types.FrameSize);
+            asy.wtr.PutInt(n);
+            if (asy.Receive().proto != Types.Done)
+                throw new Exception("PE28");
+            n = asy.rdr.GetInt();
+            asy.wtr.Resize(n);
+            asy.rdr.Resize(n);
+            return n;
         }
         public long Prepare(String n)
         {
@@ -128,7 +162,13 @@ public class StrongConnect {
                 return Types.Exception;
             asy.wtr.SendUids(s.ns);
             s.ob.Put(asy.wtr);
-            var b = asy.Receive();
+            ClientTriple b;
+            try {
+                b = asy.Receive();
+            } catch (ServerException e) {
+                inTransaction = false; // the server has rolled back
+                throw e;
+            }
             if (b.proto == Types.Exception)
                 inTransaction = false;
             else
@@ -146,27 +186,154 @@ public class StrongConnect {
         public DocArray Get(SDict<Long,String> d,Serialisable tn) throws Exception
         {
             var wtr = asy.wtr;
-            var rdr = asy.rdr;
             wtr.SendUids(d);
             wtr.Write((byte)Types.DescribedGet);
             tn.Put(wtr);
-            var b = asy.Receive();
+            Describe();
+            return Rows();
+        }
+        /// <summary>
+        /// Read the rows of a query result after Describe
+        /// </summary>
+        DocArray Rows() throws Exception
+        {
+            var rdr = asy.rdr;
+            if (!binary)
+                return new DocArray(rdr.GetString());
+            var a = new ArrayList<Document>();
+            while (rdr.ReadByte() == Types.SRow)
+                a.add(new ClientRow(rdr, description).ToDocument());
+            return new DocArray(a);
+        }
+        /// <summary>
+        /// Read the binary rows of a query result after Describe
+        /// </summary>
+        ClientRow[] ClientRows(SDict<Integer,String> d) throws Exception
+        {
+            var rdr = asy.rdr;
+            var a = new ArrayList<ClientRow>();
+            while (rdr.ReadByte() == Types.SRow)
+                a.add(new ClientRow(rdr, d));
+            return a.toArray(new ClientRow[0]);
+        }
+        /// <summary>
+        /// Read the reply to a query up to its rows: Done and the column names
+        /// </summary>
+        SDict<Integer,String> Describe() throws Exception
+        {
+            try {
+                return Describe(asy.Receive());
+            } catch (ServerException e) {
+                inTransaction = false; // the server has rolled back
+                throw e;
+            }
+        }
+        SDict<Integer,String> Describe(ClientTriple b) throws Exception
+        {
+            var rdr = asy.rdr;
             if (b.proto == (byte)Types.Exception)
             {
                 inTransaction = false;
                 rdr.GetException();
             }
-            if (b.proto == (byte)Types.Done)
+            if (b.proto != (byte)Types.Done)
+                throw new Exception("PE28");
+            description = null;
+            var n = rdr.GetInt();
+            for (var i = 0; i < n; i++)
+                description = (description==null)?
+                        new SDict(i, rdr.GetString()):
+                        description.Add(i, rdr.GetString());
+            return description;
+        }
+        /// <summary>
+        /// Ask the server to send the rows of query results in binary
+        /// from now on (see StrongServer.PutRow), so that they can be read
+        /// as ClientRows. ExecuteQuery and ClientCursor give the same Documents
+        /// as before. A client that does not ask gets JSON text.
+        /// </summary>
+        public void BinaryRows() throws Exception
+        {
+            if (binary)
+                return;
+            if (cursor != null)
+                cursor.Close();
+            asy.wtr.Write((byte)Types.BinaryRows);
+            if (asy.Receive().proto != Types.Done)
+                throw new Exception("PE28");
+            binary = true;
+        }
+        /// <summary>
+        /// As ExecuteQuery, but with typed values: the connection is
+        /// switched to BinaryRows if need be
+        /// </summary>
+        public ClientRow[] ExecuteRows(String sql) throws Exception
+        {
+            BinaryRows();
+            var pair = Parser.Parse(sql);
+            if (pair.ob.type!=Types.SSelect)
+                throw new Exception("Bad query " + sql);
+            var wtr = asy.wtr;
+            wtr.SendUids(pair.ns);
+            wtr.Write((byte)Types.DescribedGet);
+            pair.ob.Put(wtr);
+            return ClientRows(Describe());
+        }
+        /// <summary>
+        /// Start a query whose rows are sent fetchSize at a time as the
+        /// cursor is read, instead of all at once as for ExecuteQuery
+        /// </summary>
+        public ClientCursor OpenCursor(String sql,int fetchSize) throws Exception
+        {
+            if (cursor != null)
+                cursor.Close();
+            var pair = Parser.Parse(sql);
+            if (pair.ob.type!=Types.SSelect)
+                throw new Exception("Bad query " + sql);
+            var wtr = asy.wtr;
+            wtr.SendUids(pair.ns);
+            wtr.Write((byte)Types.OpenCursor);
+            wtr.PutInt(fetchSize);
+            pair.ob.Put(wtr);
+            cursor = new ClientCursor(this, fetchSize, Describe(), binary);
+            return cursor;
+        }
+        /// <summary>
+        /// A select, update or delete statement with ? for its parameters,
+        /// for repeated execution without parsing or planning: the server
+        /// keeps the statement and its access path until the schema changes.
+        /// The statement is prepared when it is first executed, and is kept
+        /// for the connection, so the same text gives the same statement.
+        /// </summary>
+        public ClientStatement PrepareStatement(String sql) throws Exception
+        {
+            var st = (statements==null)?null:statements.Lookup(sql);
+            if (st == null)
             {
-                description = null;
-                var n = rdr.GetInt();
-                for (var i = 0; i < n; i++)
-                    description = (description==null)?
-                            new SDict(i, rdr.GetString()):
-                            description.Add(i, rdr.GetString());
-                return new DocArray(rdr.GetString());
+                st = new ClientStatement(this, sql);
+                statements = (statements==null)?new SDict(sql,st):
+                        statements.Add(sql,st);
             }
-            throw new Exception("PE28");
+            return st;
+        }
+        /// <summary>
+        /// Start sending requests without waiting for each response: see
+        /// ClientPipeline. A small transaction can then take one round trip
+        /// instead of one for each statement. The server must know
+        /// Types.FrameSize: unless a frame size has been agreed, one is
+        /// agreed here, so that the server can find the end of a message
+        /// that has failed.
+        /// </summary>
+        public ClientPipeline Pipeline() throws Exception
+        {
+            if (pipeline != null)
+                return pipeline;
+            if (cursor != null)
+                cursor.Close();
+            if (asy.rdr.padded)
+                FrameSize(Buffer.Size);
+            pipeline = new ClientPipeline(this);
+            return pipeline;
         }
         public void BeginTransaction() throws Exception
         {
@@ -29,7 +29,28 @@ public class StrongServer implements Runnable {
     static Random testlock = new Random();
     public LocalDateTime lastop = LocalDateTime.now();
     public Thread myThread = null;
+    /// <summary>
+    /// The next row of the open cursor, if any (see Types.OpenCursor)
+    /// </summary>
+    Bookmark<Serialisable> cursor = null;
+    /// <summary>
+    /// The column header of the current result
+    /// </summary>
+    SDict<Integer,Ident> display = null;
+    /// <summary>
+    /// Whether the client has asked for rows in binary (see Types.BinaryRows)
+    /// </summary>
+    boolean binary = false;
+    /// <summary>
+    /// The statements this client has prepared (see Types.Prepare)
+    /// </summary>
+    SDict<Integer,Prepared> prepared = null;
+    int nextPrepared = 0;
     public static String path = System.getProperty("user.dir");
+    /// <summary>
+    /// The largest frame size a client can ask for (see Types.FrameSize)
+    /// </summary>
+    public static int maxFrameSize = Buffer.MaxSize;
 
     /// <summary>
     /// Constructor: called on Accept
@@ -39,10 +60,50 @@ public class StrongServer implements Runnable {
         client = c;
     }
 
+    /// <summary>
+    /// Constructor for a session whose frames come from a SelectServer
+    /// </summary>
+    StrongServer(ServerStream s) {
+        asy = s;
+    }
+
     public void run() {
-        int p = -1;
         try {
             asy = new ServerStream(client);
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+            return;
+        }
+        try {
+            if (!Open())
+                return;
+            // start a Strong protocol service
+            for (;;) {
+                int p = -1;
+                try {
+                    p = asy.rdr.ReadByte();
+                } catch (Exception e) {
+                    p = -1;
+                }
+                if (p < 0) {
+                    return;
+                }
+                Serve(p);
+            }
+        } finally {
+            try {
+                client.close(); // not left for the garbage collector
+            } catch (Exception e) {
+            }
+        }
+    }
+    /// <summary>
+    /// Read the database name from the client and open the database.
+    /// This and Serve do not depend on the socket: see SelectServer
+    /// </summary>
+    /// <returns>false if the database could not be opened</returns>
+    boolean Open() {
+        try {
             var fn = asy.rdr.GetString();
             //       Console.WriteLine("Received " + fn);
             db = SDatabase.Open(path, fn);
@@ -60,21 +121,16 @@ public class StrongServer implements Runnable {
             } catch (Exception ee) {
                 System.out.println(ee.getMessage());
             }
-            return;
+            return false;
         }
-        // start a Strong protocol service
-        for (;;) {
+        return true;
+    }
+    /// <summary>
+    /// Carry out the request whose protocol byte p has been read
+    /// </summary>
+    void Serve(int p) {
             var rdr = asy.rdr;
             var wtr = asy.wtr;
-            p = -1;
-            try {
-                p = rdr.ReadByte();
-            } catch (Exception e) {
-                p = -1;
-            }
-            if (p < 0) {
-                return;
-            }
             try {
                 switch ((byte) p) {
                     case Types.SNames:
@@ -88,7 +144,7 @@ public class StrongServer implements Runnable {
                             var s = rdr.GetString();
                             if (u < rdr.lastAlias)
                                 rdr.lastAlias = u;
-                            us = (us==null)?new SDict(u, s):us.Add(u,s);
+                            us = (us==null)?new SLongDict<String>(u, s):us.AddLong(u,s);
                         }
                         db = new STransaction(tr,new SRole(tr.role,us));
                         break;
@@ -109,36 +165,172 @@ public class StrongServer implements Runnable {
                             throw new Exception("Bad query");
                         var qy = (SQuery)q;
                         qy = (SQuery)qy.Prepare(tr, qy.Names(tr,null));
-                        RowSet rs = qy.RowSet(tr,qy,null);
-                        var sb = new StringBuilder("[");
-                        var cm = "";
-                        for (var b = rs.First();b!=null;b=b.Next())
+                        PutResult(qy.RowSet(tr,qy,null),p==Types.DescribedGet);
+                        break;
+                    }
+                    case Types.OpenCursor: {
+                        // as DescribedGet, but the rows are sent in batches of
+                        // at most n as the client asks for them (see ClientCursor)
+                        var tr = db.Transact(rdr,true);
+                        var n = rdr.GetInt();
+                        Serialisable q = Serialisable.Null;
+                        try {
+                            q = rdr._Get();
+                            tr = (STransaction)rdr.db;
+                        } catch(Exception e)
                         {
-                            var ob = ((RowBookmark)b).Ob();
-                            if (!(ob instanceof SRow))
-                                continue;
-                            var sr = (SRow)ob;
-                            if (!sr.isValue())
-                                continue;
-                            sb.append(cm); cm = ",";
-                            sr.Append(db,sb);
+                            rdr.buf.len = 0;
+                            throw e;
                         }
-                        sb.append(']');
-                        var ts = db.curpos;
+                        if (!(q instanceof SQuery))
+                            throw new Exception("Bad query");
+                        var qy = (SQuery)q;
+                        qy = (SQuery)qy.Prepare(tr, qy.Names(tr,null));
+                        RowSet rs = qy.RowSet(tr,qy,null);
+                        // the RowSet is on an immutable snapshot, so the
+                        // transaction can end before the rows are read
                         var ss = rs._tr.MaybeAutoCommit();
                         db = ss.key;
-                        ts = ss.val;
                         wtr.Write(Types.Done);
-                        wtr.PutLong(ts);
+                        wtr.PutLong(ss.val);
+                        wtr.PutLong(db.curpos);
+                        PutDisplay(rs);
+                        cursor = rs.First();
+                        PutRows(n);
+                        asy.Flush();
+                        break;
+                    }
+                    case Types.Fetch: {
+                        var n = rdr.GetInt();
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(db.curpos);
+                        wtr.PutLong(db.curpos);
+                        PutRows(n);
+                        asy.Flush();
+                        break;
+                    }
+                    case Types.CloseCursor: {
+                        cursor = null;
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(db.curpos);
+                        wtr.PutLong(db.curpos);
+                        asy.Flush();
+                        break;
+                    }
+                    case Types.BinaryRows: {
+                        binary = true;
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(db.curpos);
+                        wtr.PutLong(db.curpos);
+                        asy.Flush();
+                        break;
+                    }
+                    case Types.FrameSize: {
+                        // the client asks for frames of up to n bytes, sent
+                        // without padding: the reply gives the size agreed.
+                        // The client waits for it before using the new size,
+                        // so the reader changes first and the writer after.
+                        var n = Math.max(Buffer.Size,
+                                Math.min(rdr.GetInt(), maxFrameSize));
+                        rdr.Resize(n);
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(db.curpos);
                         wtr.PutLong(db.curpos);
-                        if (p==Types.DescribedGet)
+                        wtr.PutInt(n);
+                        asy.Flush();
+                        wtr.Resize(n);
+                        break;
+                    }
+                    case Types.InTransaction: {
+                        // a pipelined message that continues a transaction
+                        // (see ClientPipeline): if a request in an earlier
+                        // message failed, the transaction has been rolled
+                        // back, and the rest of this message is skipped
+                        if (!(db instanceof STransaction))
+                            throw new Exception("No transaction in progress");
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(db.curpos);
+                        wtr.PutLong(db.curpos);
+                        asy.Flush();
+                        break;
+                    }
+                    case Types.Prepare: {
+                        // a statement with n parameters (SParam): it is
+                        // prepared and planned once, and kept for Execute
+                        var tr = db.Transact(rdr,true);
+                        var n = rdr.GetInt();
+                        Serialisable st;
+                        var args = new Serialisable[n];
+                        rdr.args = args;
+                        try {
+                            var t = rdr.ReadByte();
+                            switch (t)
+                            {
+                                case Types.SSelect: 
+                                    st = SSelectStatement.Get(rdr); break;
+                                case Types.SUpdateSearch: 
+                                    st = SUpdateSearch.Get(rdr); break;
+                                case Types.SDeleteSearch:
+                                    st = SDeleteSearch.Get(rdr); break;
+                                default:
+                                    throw new Exception("Cannot prepare "
+                                            + Types.types[t]);
+                            }
+                            tr = (STransaction)rdr.db;
+                        } catch(Exception e)
                         {
-                            var d = rs._qry.getDisplay();
-                            wtr.PutInt(d.Length);
-                            for (var b=d.First();b!=null;b=b.Next())
-                                wtr.PutString(b.getValue().val.id);
+                            rdr.buf.len = 0;
+                            throw e;
+                        } finally {
+                            rdr.args = null;
                         }
-                        wtr.PutString(sb.toString());
+                        var ps = new Prepared(tr, st, args);
+                        var id = nextPrepared++;
+                        prepared = (prepared==null)?new SDict(id,ps):
+                                prepared.Add(id,ps);
+                        var ss = tr.MaybeAutoCommit();
+                        db = ss.key;
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(ss.val);
+                        wtr.PutLong(db.curpos);
+                        wtr.PutInt(id);
+                        asy.Flush();
+                        break;
+                    }
+                    case Types.Execute: {
+                        // a prepared statement and the values of its
+                        // parameters: no parsing or planning
+                        var id = rdr.GetInt();
+                        var n = rdr.GetInt();
+                        var ps = (prepared==null)?null:prepared.Lookup(id);
+                        var tr = db.Transact(rdr,true);
+                        var args = new Serialisable[n];
+                        for (var i = 0; i < n; i++)
+                            args[i] = rdr._Get();
+                        if (ps == null || !ps.Current(tr))
+                        {
+                            // the schema has changed: the client must 
+                            // prepare the statement again
+                            if (ps != null)
+                                prepared = prepared.Remove(id);
+                            wtr.Write(Types.Prepare);
+                            asy.Flush();
+                            break;
+                        }
+                        if (n != ps.args.length)
+                            throw new Exception("Wrong number of parameters");
+                        System.arraycopy(args, 0, ps.args, 0, n);
+                        if (ps.stmt instanceof SQuery)
+                        {
+                            var qy = (SQuery)ps.stmt;
+                            PutResult(qy.RowSet(tr,qy,null),true);
+                            break;
+                        }
+                        var ss = ps.stmt.Obey(tr,Context.Empty).MaybeAutoCommit();
+                        db = ss.key;
+                        wtr.Write(Types.Done);
+                        wtr.PutLong(ss.val);
+                        wtr.PutLong(db.curpos);
                         asy.Flush();
                         break;
                     }
@@ -231,18 +423,18 @@ public class StrongServer implements Runnable {
                         }
                         var nr = rdr.GetInt(); // #records
                         for (var i = 0; i < nr; i++) {
-                            SDict<Long, Serialisable> f = null;
+                            SLongDict<Serialisable> f = null;
                             if (n == 0) {
                                 for (var b = tb.cpos.First(); b!=null; b = b.Next()) {
                                     var k = ((SDbObject)b.getValue().val).uid;
                                     var v = rdr._Get();
-                                    f = (f==null)?new SDict(k,v):f.Add(k,v); // serialisable values
+                                    f = (f==null)?new SLongDict<Serialisable>(k,v):f.AddLong(k,v); // serialisable values
                                 }
                             } else {
                                 for (var b = cs; b!=null && b.Length != 0; b = b.next) {
                                     var k = b.element.uid;
                                     var v = rdr._Get();
-                                    f = (f==null)?new SDict(k,v):f.Add(k,v); // serialisable values
+                                    f = (f==null)?new SLongDict<Serialisable>(k,v):f.AddLong(k,v); // serialisable values
                                 }
                             }
                             tr = (STransaction)tr.Install(new SRecord(tr, tb.uid, f),tr.curpos);
@@ -346,13 +538,13 @@ public class StrongServer implements Runnable {
                         var rc = db.Get(id);
                         var tb = (STable) tr.objects.Lookup(rc.table);
                         var n = rdr.GetInt(); // # cols updated
-                        SDict<Long, Serialisable> f = null;
+                        SLongDict<Serialisable> f = null;
                         Exception ex = null;
                         for (var i = 0; i < n; i++)
                         {
                             var cn = rdr.GetLong();
-                            f =(f==null)?new SDict(cn,rdr._Get())
-                                    :f.Add(cn, rdr._Get());
+                            f =(f==null)?new SLongDict<Serialisable>(cn,rdr._Get())
+                                    :f.AddLong(cn, rdr._Get());
                         }
                         tr = (STransaction)tr.Install(new SUpdate(tr, rc, f),
                                 tr.curpos);
@@ -452,6 +644,138 @@ public class StrongServer implements Runnable {
                 } catch (Exception ee) {
                 }
             }
+    }
+    /// <summary>
+    /// Send the result of a query with Done, and the column names if
+    /// described (or if the client has asked for BinaryRows), then
+    /// the rows: as one JSON string, or with PutRow up to EoF
+    /// </summary>
+    void PutResult(RowSet rs,boolean described) throws Exception
+    {
+        var wtr = asy.wtr;
+        if (binary)
+        {
+            // the column header, then the rows (see PutRow)
+            var ss = rs._tr.MaybeAutoCommit();
+            db = ss.key;
+            wtr.Write(Types.Done);
+            wtr.PutLong(ss.val);
+            wtr.PutLong(db.curpos);
+            PutDisplay(rs);
+            for (var b = rs.First();b!=null;b=b.Next())
+            {
+                var sr = Row(b);
+                if (sr != null)
+                    PutRow(sr);
+            }
+            wtr.Write(Types.EoF);
+            asy.Flush();
+            return;
+        }
+        var sb = new StringBuilder("[");
+        var cm = "";
+        for (var b = rs.First();b!=null;b=b.Next())
+        {
+            var sr = Row(b);
+            if (sr == null)
+                continue;
+            sb.append(cm); cm = ",";
+            sr.Append(db,sb);
+        }
+        sb.append(']');
+        var ss = rs._tr.MaybeAutoCommit();
+        db = ss.key;
+        wtr.Write(Types.Done);
+        wtr.PutLong(ss.val);
+        wtr.PutLong(db.curpos);
+        if (described)
+        {
+            var d = rs._qry.getDisplay();
+            wtr.PutInt(d.Length);
+            for (var b=d.First();b!=null;b=b.Next())
+                wtr.PutString(b.getValue().val.id);
+        }
+        wtr.PutString(sb.toString());
+        asy.Flush();
+    }
+    /// <summary>
+    /// Send up to n rows from the open cursor (see PutRow),
+    /// then Fetch if there may be more, or CloseCursor when there are none.
+    /// Rows go out in frames as they are written, so the client can start on
+    /// the first row while later rows are computed.
+    /// </summary>
+    void PutRows(int n) throws Exception
+    {
+        for (; cursor != null && n > 0; cursor = cursor.Next())
+        {
+            var sr = Row(cursor);
+            if (sr == null)
+                continue;
+            PutRow(sr);
+            n--;
+        }
+        asy.wtr.Write((cursor == null) ? Types.CloseCursor : Types.Fetch);
+    }
+    /// <summary>
+    /// The row at a RowSet bookmark, or null if there is no value to send
+    /// </summary>
+    static SRow Row(Bookmark<Serialisable> b) throws Exception
+    {
+        var ob = ((RowBookmark)b).Ob();
+        if (!(ob instanceof SRow))
+            return null;
+        var sr = (SRow)ob;
+        return sr.isValue() ? sr : null;
+    }
+    /// <summary>
+    /// Send the column names of a result, and keep them for PutRow
+    /// </summary>
+    void PutDisplay(RowSet rs) throws Exception
+    {
+        var wtr = asy.wtr;
+        display = rs._qry.getDisplay();
+        wtr.PutInt(display.Length);
+        for (var b=display.First();b!=null;b=b.Next())
+            wtr.PutString(b.getValue().val.id);
+    }
+    /// <summary>
+    /// Send a row as SRow and its JSON text, or if the client has asked for
+    /// BinaryRows, as SRow and the value of each column in the header in the
+    /// Serialisable.Put encoding (Null for a missing value)
+    /// </summary>
+    void PutRow(SRow sr) throws Exception
+    {
+        var wtr = asy.wtr;
+        wtr.Write(Types.SRow);
+        if (!binary)
+        {
+            var sb = new StringBuilder();
+            sr.Append(db,sb);
+            wtr.PutString(sb.toString());
+            return;
+        }
+        for (var b=display.First();b!=null;b=b.Next())
+        {
+            var v = (sr.vals==null)?null:sr.vals.Lookup(b.getValue().val.uid);
+            if (v == null)
+                v = Serialisable.Null;
+            switch (v.type)
+            {
+                case Types.Serialisable:
+                case Types.SInteger:
+                case Types.SBigInt:
+                case Types.SNumeric:
+                case Types.SString:
+                case Types.SDate:
+                case Types.STimeSpan:
+                case Types.SBoolean:
+                    v.Put(wtr);
+                    break;
+                default: // e.g. a row from a subquery: send its JSON text
+                    var sb = new StringBuilder();
+                    v.Append(db,sb);
+                    new SString(sb.toString()).Put(wtr);
+            }
         }
     }
     void CreateColumn(ReaderBase rdr) throws Exception
@@ -469,4 +793,108 @@ public class StrongServer implements Runnable {
         var db = (STransaction)rdr.db;
         rdr.db = db.Install((SIndex)SIndex.Get(rdr).Prepare(db,null), db.curpos);
     }
+    /// <summary>
+    /// A prepared statement: the result of Prepare, with the access path of
+    /// its search chosen (see SSearch.Planned), and the array its SParams
+    /// read their values from. It stays current while the names of the role
+    /// and the columns and indexes of the tables it refers to are unchanged.
+    /// This class is not shareable
+    /// </summary>
+    static class Prepared {
+        final Serialisable stmt;
+        final Serialisable[] args;
+        final SDict<String,Long> names;
+        final SDict<Long,SRObject> subs;
+        final SDict<Long,STable> tables; // as they were when prepared
+        Prepared(STransaction tr,Serialisable st,Serialisable[] a) throws Exception
+        {
+            if (st instanceof SQuery)
+            {
+                var q = (SQuery)st;
+                st = q.Prepare(tr, q.Names(tr,null));
+            } else if (st instanceof SUpdateSearch)
+            {
+                var u = (SUpdateSearch)st;
+                st = u.Prepare(tr,u.qry.Names(tr,null));
+            } else 
+            {
+                var d = (SDeleteSearch)st;
+                st = d.Prepare(tr,d.qry.Names(tr,null));
+            }
+            stmt = Planned(tr, st);
+            args = a;
+            names = tr.role.globalNames;
+            subs = tr.role.subs;
+            tables = Tables(tr, (st instanceof SQuery)?(SQuery)st:
+                    (st instanceof SUpdateSearch)?((SUpdateSearch)st).qry:
+                    ((SDeleteSearch)st).qry, null);
+        }
+        boolean Current(SDatabase tr)
+        {
+            if (tr.role.globalNames != names || tr.role.subs != subs)
+                return false;
+            if (tables != null)
+                for (var b = tables.First(); b != null; b = b.Next())
+                {
+                    var ob = tr.objects.Lookup(b.getValue().key);
+                    if (!(ob instanceof STable))
+                        return false;
+                    var tb = (STable)ob;
+                    var was = b.getValue().val;
+                    if (tb.cols != was.cols || tb.indexes != was.indexes)
+                        return false;
+                }
+            return true;
+        }
+        /// <summary>
+        /// The statement with its top-level search planned
+        /// </summary>
+        static Serialisable Planned(SDatabase tr,Serialisable st)
+        {
+            if (st instanceof SSelectStatement)
+            {
+                var ss = (SSelectStatement)st;
+                if (ss.qry instanceof SSearch)
+                    return new SSelectStatement(ss.distinct, ss.display, 
+                            ss.cpos, ((SSearch)ss.qry).Planned(tr), ss.order);
+            } else if (st instanceof SSearch)
+                return ((SSearch)st).Planned(tr);
+            else if (st instanceof SUpdateSearch)
+            {
+                var u = (SUpdateSearch)st;
+                if (u.qry instanceof SSearch)
+                    return new SUpdateSearch(((SSearch)u.qry).Planned(tr),u.assigs);
+            } else if (st instanceof SDeleteSearch)
+            {
+                var d = (SDeleteSearch)st;
+                if (d.qry instanceof SSearch)
+                    return new SDeleteSearch(((SSearch)d.qry).Planned(tr));
+            }
+            return st;
+        }
+        /// <summary>
+        /// The tables a query refers to
+        /// </summary>
+        static SDict<Long,STable> Tables(SDatabase tr,SQuery q,
+                SDict<Long,STable> ts)
+        {
+            if (q instanceof STable)
+            {
+                var ob = tr.objects.Lookup(q.uid);
+                if (ob instanceof STable)
+                    ts = (ts==null)?new SDict(q.uid,ob):ts.Add(q.uid,(STable)ob);
+            }
+            else if (q instanceof SSelectStatement)
+                ts = Tables(tr,((SSelectStatement)q).qry,ts);
+            else if (q instanceof SSearch)
+                ts = Tables(tr,((SSearch)q).sce,ts);
+            else if (q instanceof SAlias)
+                ts = Tables(tr,((SAlias)q).qry,ts);
+            else if (q instanceof SGroupQuery)
+                ts = Tables(tr,((SGroupQuery)q).source,ts);
+            else if (q instanceof SJoin)
+                ts = Tables(tr,((SJoin)q).right,Tables(tr,((SJoin)q).left,ts));
+            return ts;
+        }
+    }
 }
@@ -5,7 +5,9 @@
  */
 package org.shareabledata;
 import java.net.*;
+import java.nio.channels.ServerSocketChannel;
 import java.io.FilePermission;
+import java.lang.reflect.Method;
 import java.security.AccessController;
 /**
  *  The Client Listener for the StrongDBMS.
@@ -17,12 +19,23 @@ public class StrongStart {
         static String host = "127.0.0.1";
         static int port = 50433;
         static ServerSocket tcp;
+        // run each session on a virtual thread (-v), if this JVM has them
+        public static boolean virtualThreads = false;
+        // Thread.startVirtualThread, found by reflection as we build for Java 11
+        public static final Method startVirtual = VirtualThreads();
+        // if positive, serve all connections from a SelectServer with this many workers (-n)
+        public static int workers = 0;
         /// <summary>
         /// The main service loop of the StrongDBMS is here
         /// </summary>
         static void Run() throws Exception
         {
             var ad = InetAddress.getByName(host);
+            if (workers > 0)
+            {
+                Select(ad);
+                return;
+            }
             var i = 0;
             while (tcp == null && i++ < 100)
             {
@@ -45,13 +58,65 @@ public class StrongStart {
             for (; ; )
                 try
                 {
-                    Socket client = tcp.accept();
-                    var t = new Thread(new StrongServer(client));
-                    t.start();
+                    Serve(tcp.accept());
                 }
                 catch (Exception e)
                 { }
         }
+        /// <summary>
+        /// The service loop for StrongStart -n: one selector thread and a
+        /// fixed number of workers however many clients there are
+        /// </summary>
+        static void Select(InetAddress ad) throws Exception
+        {
+            ServerSocketChannel ch = null;
+            for (var i = 0; ch == null && i++ < 100;)
+                try
+                {
+                    ch = ServerSocketChannel.open();
+                    ch.bind(new InetSocketAddress(ad, port), 50);
+                }
+                catch (Exception e)
+                {
+                    ch.close();
+                    port++;
+                    ch = null;
+                }
+            if (ch == null)
+                throw new Exception("Cannot open a port on " + host);
+            System.out.println("StrongDBMS protocol on " + host + ":" + port
+                    + " with " + workers + " workers");
+            if (StrongServer.path != "")
+                System.out.println("Database folder " + StrongServer.path);
+            new SelectServer(ch, workers).run();
+        }
+        /// <summary>
+        /// Start a session for the given client on a new thread.
+        /// A session spends most of its time blocked reading from its socket,
+        /// so with thousands of mostly idle clients virtual threads are much
+        /// cheaper than platform threads
+        /// </summary>
+        public static Thread Serve(Socket client) throws Exception
+        {
+            client.setTcpNoDelay(true); // a short last frame must not wait for an ack
+            var s = new StrongServer(client);
+            if (virtualThreads && startVirtual != null)
+                s.myThread = (Thread)startVirtual.invoke(null, s);
+            else
+            {
+                s.myThread = new Thread(s);
+                s.myThread.start();
+            }
+            return s.myThread;
+        }
+        static Method VirtualThreads()
+        {
+            try {
+                return Thread.class.getMethod("startVirtualThread", Runnable.class);
+            } catch (Exception e) {
+                return null; // before Java 21
+            }
+        }
         /// The main entry point for the application. Process arguments and create the main service loop
         public static void main(String[] args) throws Exception
         {
@@ -76,6 +141,22 @@ public class StrongStart {
                         StrongServer.path = args[k].substring(3);
                         FixPath();
                         break;
+                    case 'c':
+                        RecordCache.shared.Configure(Integer.parseInt(args[k].substring(3)),
+                                RecordCache.shared.maxBytes);
+                        break;
+                    case 'm':
+                        RecordCache.shared.Configure(RecordCache.shared.maxEntries,
+                                Long.parseLong(args[k].substring(3))*1024*1024);
+                        break;
+                    case 'w': GroupCommit.maxDelay = Long.parseLong(args[k].substring(3)); break;
+                    case 'b': GroupCommit.maxBatch = Integer.parseInt(args[k].substring(3)); break;
+                    case 'v': virtualThreads = true; break;
+                    case 'n': workers = Integer.parseInt(args[k].substring(3)); break;
+                    case 'f':
+                        StrongServer.maxFrameSize = Math.max(Buffer.Size, Math.min(Buffer.MaxSize,
+                                Integer.parseInt(args[k].substring(3))));
+                        break;
                     default: Usage(); return;
                 }
                 k++;
@@ -98,11 +179,18 @@ public class StrongStart {
         static void Usage()
         {
             String serverName = "StrongDBMS";
-            System.out.println("Usage: " + serverName + " [-d:path] [-h:host] [-p:port] [-s:http] [-t:nn] [-S:https] {-flag}");
+            System.out.println("Usage: " + serverName + " [-d:path] [-h:host] [-p:port] [-c:entries] [-m:MB] [-w:us] [-b:n] [-v] [-n:n] [-f:bytes] [-s:http] [-t:nn] [-S:https] {-flag}");
             System.out.println("Parameters:");
             System.out.println("   -d  Use the given folder for database storage");
             System.out.println("   -h  Use the given host address. Default is 127.0.0.1.");
             System.out.println("   -p  Listen on the given port. Default is 5433");
+            System.out.println("   -c  Record cache size in entries. Default is 100000, 0 for no limit");
+            System.out.println("   -m  Record cache size in megabytes. Default is no limit");
+            System.out.println("   -w  Group commit: microseconds to wait for a batch. Default is 200");
+            System.out.println("   -b  Group commit: maximum transactions in a batch. Default is 32");
+            System.out.println("   -v  Run each session on a virtual thread (Java 21 or later)");
+            System.out.println("   -n  Serve all connections from one selector thread with n worker threads");
+            System.out.println("   -f  Largest frame size in bytes a client can ask for. Default is 65536");
         }
         /// <summary>
         /// Version information
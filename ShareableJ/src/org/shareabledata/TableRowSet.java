@@ -12,10 +12,12 @@ package org.shareabledata;
 public class TableRowSet extends RowSet {
 
     public final STable _tb;
+    public final SDict<Long,Boolean> _cols; // the columns to decode, null for all
 
-    public TableRowSet(SDatabase db, STable t, Context cx) {
+    public TableRowSet(SDatabase db, STable t, SDict<Long,Boolean> cs, Context cx) {
         super(db.Rdc(t.uid), t,cx);
         _tb = t;
+        _cols = cs;
     }
 
     @Override
@@ -39,7 +41,7 @@ public class TableRowSet extends RowSet {
                 throws Exception
         {
             super(trs,_Cx(trs,new SRow(trs._tr,
-                    trs._tr.Get(bm.getValue().val)),null), p);
+                    trs._tr.Get(bm.getValue().val,trs._cols)),null), p);
             _trs = trs;
             _bmk = bm;
         }
@@ -58,12 +60,12 @@ public class TableRowSet extends RowSet {
         public STransaction Update(STransaction tr, SDict<Long, Serialisable> assigs)
                 throws Exception
         {
-            return (STransaction)tr.Install(new SUpdate(tr, Ob().rec, assigs),tr.curpos); // ok
+            return (STransaction)tr.Install(new SUpdate(tr, tr.Full(Ob().rec), assigs),tr.curpos); // ok
         }
         @Override
         public STransaction Delete(STransaction tr) throws Exception
         {
-            var rc = Ob().rec;
+            var rc = tr.Full(Ob().rec);
             return (STransaction)tr.Install(new SDelete(tr, rc),tr.curpos); // ok
         }
     }
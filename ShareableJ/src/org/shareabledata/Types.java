@@ -65,7 +65,16 @@ public class Types {
             SQuery = 51, // only used for "STATIC"
             SSysTable = 52,
             SCreateView = 53,
-            SDropIndex = 54;
+            SDropIndex = 54,
+            OpenCursor = 55,
+            Fetch = 56,
+            CloseCursor = 57,
+            BinaryRows = 58,
+            SParam = 59,
+            Prepare = 60,
+            Execute = 61,
+            FrameSize = 62,
+            InTransaction = 63;
     static String[] types = new String[]{
         "", "?", "Integer", "Numeric", "String", "Date", "TimeSpan",//0-6
         "Boolean", "Row", "Table", "Column", "Record", "Update", "Delete",//7-13
@@ -76,7 +85,10 @@ public class Types {
         "SFunction","SValues","SOrder","SBigInt","SInPredicate",//36-40
         "DescribedGet","SGroupQuery","STableExp","SAlias",//41-44
         "SSelector","SArg","SRole","SUser","SName","SNames",//45-50
-        "SQuery","SSysTable","SCreateView","SDropIndex" //51-54
+        "SQuery","SSysTable","SCreateView","SDropIndex", //51-54
+        "OpenCursor","Fetch","CloseCursor","BinaryRows", //55-58
+        "SParam","Prepare","Execute","FrameSize", //59-62
+        "InTransaction" //63
     };
 
     public static String toString(int t) {
@@ -16,47 +16,42 @@ import java.util.*;
  */
 public class Writer extends WriterBase {
 
-    public RandomAccessFile file; // shared with Reader(s)
-    SDict<Long, Long> uids = null; // used for movement of SDbObjects
-    public Writer(RandomAccessFile f)
+    public final LogFile log; // shared with Reader(s)
+    public final RandomAccessFile file;
+    SLongDict<Long> uids = null; // used for movement of SDbObjects
+    public Writer(LogFile f)
     {
-        file = f;
+        log = f;
+        file = f.file;
     }
     protected long length() throws Exception {
-        return file.length() + buf.pos;
+        return log.length() + buf.pos;
     }
     Serialisable Lookup(SDatabase db, long pos)
     {
         pos = Fix(pos);
-        if (pos>=STransaction._uid)
+        if (pos>=STransaction._uid || db.objects.Contains(pos))
             return db.objects.Lookup(pos);
-        try {
-            return new Reader(db,pos)._Get();
-        } catch(Exception e)
-        {
-            throw new Error("invalid log at "+pos);
-        }
+        return db._Get(pos);
     }
 
     long Fix(long pos) 
     {
-        if (uids != null && uids.Contains(pos)) {
-            pos = uids.Lookup(pos);
-        }
-        return pos;
+        var u = (uids == null) ? null : uids.Lookup(pos);
+        return (u == null) ? pos : u;
     }
   
     public SDatabase Commit(SDatabase db, STransaction tr) throws Exception {
-        uids = new SDict<Long, Long>(-1L, -1L);
+        uids = new SLongDict<Long>(-1L, -1L);
         // We need two passes: manage a cache of SRecords being deleted or updated
         // before we start writing
         SDict<Long,SRecord> cache = null; 
-        for (var b=tr.objects.PositionAt(STransaction._uid);b!=null;b=b.Next())
-            switch(b.getValue().val.type) 
+        for (var c = tr.objects.Cursor(STransaction._uid); c.Advance();)
+            switch(c.Value().type) 
             {
                 case Types.SUpdate:
                 {
-                    var su = (SUpdate)b.getValue().val;
+                    var su = (SUpdate)c.Value();
                     var u = su.Defpos();
                     var sr = db.Get(u);
                     cache = (cache==null)?new SDict(u,sr):cache.Add(u, sr);
@@ -64,7 +59,7 @@ public class Writer extends WriterBase {
                 }
                 case Types.SDelete:
                 {
-                    var sd = (SDelete)b.getValue().val;
+                    var sd = (SDelete)c.Value();
                     var u = sd.delpos;
                     var sr = db.Get(u);
                     cache = (cache==null)?new SDict(u,sr):cache.Add(u, sr);
@@ -72,18 +67,18 @@ public class Writer extends WriterBase {
                 }
             }
         if (tr.objects!=null)
-        for (var b = tr.objects.PositionAt(STransaction._uid); b != null; b = b.Next()) {
-            var bs = b.getValue();
-            switch (bs.val.type) {
+        for (var c = tr.objects.Cursor(STransaction._uid); c.Advance();) {
+            var ob = c.Value();
+            switch (ob.type) {
                 case Types.STable: {
-                    var st = (STable) b.getValue().val;
+                    var st = (STable) c.Value();
                     var nm = tr.Name(st.uid);
                     var nt = new STable(st, nm, this);
                     db = db._Add(nt, nm, length());
                     break;
                 }
                 case Types.SColumn: {
-                    var sc = (SColumn) bs.val;
+                    var sc = (SColumn) ob;
                     var nm = tr.Name(sc.uid);
                     var nc = new SColumn(sc, nm, this);
                     var tb = (STable)db.objects.get(nc.table);
@@ -94,51 +89,50 @@ public class Writer extends WriterBase {
                     break;
                 }
                 case Types.SRecord: {
-                    var sr = (SRecord) bs.val;
+                    var sr = (SRecord) ob;
                     var st = (STable) Lookup(db, Fix(sr.table));
                     var nr = new SRecord(db, sr, this);
                     db = db._Add(nr, length());
                     break;
                 }
                 case Types.SDelete: {
-                    var sd = (SDelete) bs.val;
+                    var sd = (SDelete) ob;
                     var st = (STable) Lookup(db, Fix(sd.table));
                     var nd = new SDelete(sd, this);
                     db = db._Add(nd, length());
                     break;
                 }
                 case Types.SUpdate: {
-                    var su = (SUpdate) b.getValue().val;
+                    var su = (SUpdate) c.Value();
                     var st = (STable) Lookup(db, Fix(su.table));
                     var nr = new SUpdate(db, su, this);
                     db = db._Add(nr,length());
                     break;
                 }
                 case Types.SAlter: {
-                    var sa = new SAlter((SAlter) b.getValue().val, this);
+                    var sa = new SAlter((SAlter) c.Value(), this);
                     db = db._Add(sa, length());
                     break;
                 }
                 case Types.SDrop: {
-                    var sd = new SDrop((SDrop) b.getValue().val, this);
+                    var sd = new SDrop((SDrop) c.Value(), this);
                     db = db._Add(sd, length());
                     break;
                 }
                 case Types.SIndex: {
-                    var si = new SIndex(db,(SIndex) b.getValue().val, this);
+                    var si = new SIndex(db,(SIndex) c.Value(), this);
                     db = db._Add(si, length());
                     break;
                 }
                 case Types.SDropIndex:
                 {
-                    var di = new SDropIndex(db, (SDropIndex)b.getValue().val, this);
+                    var di = new SDropIndex(db, (SDropIndex)c.Value(), this);
                     db = db._Add(di, length());
                     break;
                 }
             }
         }
         Flush();
-        SDatabase.Install(db);
         return db;
     }
     void CommitDone()
@@ -146,28 +140,27 @@ public class Writer extends WriterBase {
         uids = null;
     }
     public void Close() throws IOException {
-        file.close();
+        log.Close();
     }
     @Override
     protected void PutBuf() throws Exception {
-        synchronized(file) {
-            var p = file.length();
-            file.seek(p);
-            file.write(buf.buf, 0, buf.pos);
+        log.lock.lock();
+        try {
+            log.Append(buf.buf, buf.pos);
             buf.pos = 0;
-        } 
+        } finally {
+            log.lock.unlock();
+        }
     }
     @Override
     public void WriteByte(byte value) throws Exception
     {
-        if (buf.pos>=Buffer.Size)
-        {
-            PutBuf();
-            buf.pos = 0;
-        }
+        if (buf.pos>=buf.buf.length) // a transaction is appended in one go
+            buf.buf = Arrays.copyOf(buf.buf, buf.buf.length*2);
         buf.buf[buf.pos++] = value;
     }
     public void Flush() throws Exception {
-        PutBuf();
+        if (buf.pos>0)
+            PutBuf();
     }
 }
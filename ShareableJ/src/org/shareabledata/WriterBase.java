@@ -16,7 +16,7 @@ public abstract class WriterBase extends IOBase {
     }
     public void PutInt(int n) throws Exception
     {
-        PutInteger(new Bigint(n));
+        PutLong(n);
     }
     public void PutInteger(Bigint b) throws Exception
     {
@@ -25,16 +25,30 @@ public abstract class WriterBase extends IOBase {
         for (int j = 0; j<m ; j++)
             WriteByte(b.bytes[j]);
     }
+    /// <summary>
+    /// The same bytes as PutInteger(new Bigint(n)), without the Bigint:
+    /// the fewest big-endian two's complement bytes that hold n (none for 0)
+    /// </summary>
     public void PutLong(long n) throws Exception
     {
-        PutInteger(new Bigint(n));
+        var m = (n == 0) ? 0 : (64 - Long.numberOfLeadingZeros(n ^ (n >> 63))) / 8 + 1;
+        WriteByte((byte)m);
+        for (var j = m - 1; j >= 0; j--)
+            WriteByte((byte)(n >> (8 * j)));
+    }
+    /// <summary>
+    /// Write the bytes of b: see SocketWriter
+    /// </summary>
+    protected void PutBytes(byte[] b) throws Exception
+    {
+        for (int i = 0; i < b.length; i++)
+            WriteByte(b[i]);
     }
     public void PutString(String s) {
         try {
             byte[] cs = s.getBytes("UTF-8");
             PutInt(cs.length);
-            for (int i = 0; i < cs.length; i++)
-                WriteByte(cs[i]);
+            PutBytes(cs);
         } catch(Exception e)
         {
             throw new Error("UTF-8 Coding error");
@@ -0,0 +1,59 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.common;
+
+import org.shareabledata.*;
+
+/**
+ * The contents of a database as text, so that tests can check that two
+ * ways of opening or rewriting a database give the same tables, rows and
+ * index entries: each table by name, its rows in order with their values
+ * by column name, and the keys of each of its indexes in order.
+ * With positions, the log positions of the rows and the values of the
+ * index entries are included too: leave them out where the log has been
+ * rewritten (see Compactor).
+ * The database must still be open, as its rows are read from its file.
+ * @author Malcolm
+ */
+public class DbContents {
+
+    public static String Of(SDatabase db, boolean positions) throws Exception {
+        var sb = new StringBuilder();
+        if (db.role.globalNames == null)
+            return "";
+        for (var g = db.role.globalNames.First(); g != null; g = g.Next()) {
+            var ob = db.objects.Lookup(g.getValue().val);
+            if (!(ob instanceof STable))
+                continue;
+            var t = (STable) ob;
+            sb.append("table ").append(g.getValue().key).append('\n');
+            for (var c = (t.rows == null) ? null : t.rows.Cursor(); c != null && c.Advance();) {
+                var r = db.Get(c.Value());
+                if (positions)
+                    sb.append(c.LongKey()).append(':');
+                for (var f = r.fields.First(); f != null; f = f.Next())
+                    sb.append(' ').append(db.Name(f.getValue().key)).append('=')
+                            .append(f.getValue().val);
+                sb.append('\n');
+            }
+            for (var x = t.indexes == null ? null : t.indexes.First(); x != null; x = x.Next()) {
+                var ix = (SIndex) db.objects.Lookup(x.getValue().key);
+                sb.append("index");
+                for (var b = ix.cols.First(); b != null; b = b.Next())
+                    sb.append(' ').append(db.Name(b.getValue()));
+                sb.append('\n');
+                for (var e = ix.Rows().First(); e != null; e = e.Next()) {
+                    for (SList<Variant> k = e.getValue().key; k != null && k.Length > 0; k = k.next)
+                        sb.append(' ').append(k.element.ob);
+                    if (positions)
+                        sb.append(" -> ").append(e.getValue().val);
+                    sb.append('\n');
+                }
+            }
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.common;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.util.function.IntFunction;
+import org.shareabledata.*;
+
+/**
+ * A database in the temporary folder, and a StrongServer for it on a
+ * loopback port, for the evaluation tests that go through the client
+ * protocol. The tables and rows are added directly (Table, Load), then
+ * Start accepts connections, each served on its own thread as by
+ * StrongStart. Stop closes the server, deletes the database, and writes
+ * the test's times to name+"Output_Java.csv".
+ * @author Malcolm
+ */
+public class TestServer {
+    public static final int batch = 10000; // rows per commit in Load
+    public final String name;
+    public final TimeAndMemoryLogger tml = new TimeAndMemoryLogger();
+    public SDatabase db;
+    ServerSocket tcp;
+    Thread acceptor;
+
+    public TestServer(String n) throws Exception {
+        name = n;
+        StrongServer.path = System.getProperty("java.io.tmpdir");
+        Delete();
+        db = SDatabase.Open(StrongServer.path, name);
+    }
+
+    void Delete() {
+        new File(StrongServer.path, name).delete();
+        new File(StrongServer.path, name + ".ckpt").delete();
+    }
+
+    public STransaction Transact() throws Exception {
+        return db.Transact(new ReaderBase() {}, false);
+    }
+
+    public void Commit(STransaction tr) throws Exception {
+        db = tr.Commit().key;
+    }
+
+    /**
+     * Add a table whose columns are given as pairs of name and type (see
+     * Types), with a unique index on the key column if there is one
+     */
+    public static STransaction Table(STransaction tr, String tn, String key,
+            Object... cols) throws Exception {
+        var tb = new STable(tr);
+        tr = (STransaction) tr.Add(tb, tn, tr.curpos);
+        for (var i = 0; i < cols.length; i += 2)
+            tr = (STransaction) tr.Add(new SColumn(tr, tb.uid, (Integer) cols[i + 1],
+                    new SDict<String, SFunction>()), (String) cols[i], tr.curpos);
+        if (key != null) {
+            var k = ((STable) tr.objects.get(tb.uid)).FindForRole(tr, key).uid;
+            tr = (STransaction) tr.Add(new SIndex(tr, tb.uid, true, -1L,
+                    new SList<Long>(k)), tr.curpos);
+        }
+        return tr;
+    }
+
+    /**
+     * Add a row with a value for each column of the table, in order
+     */
+    public static STransaction Row(STransaction tr, String tn, Serialisable... vals)
+            throws Exception {
+        var t = (STable) tr.objects.get(tr.role.globalNames.get(tn));
+        SDict<Long, Serialisable> f = null;
+        var i = 0;
+        for (var b = t.cpos.First(); b != null; b = b.Next(), i++) {
+            var c = ((SColumn) b.getValue().val).uid;
+            f = (f == null) ? new SDict<>(c, vals[i]) : f.Add(c, vals[i]);
+        }
+        return (STransaction) tr.Add(new SRecord(tr, t.uid, f), tr.curpos);
+    }
+
+    /**
+     * Add n rows to a table, row(i) giving the values of the ith,
+     * committing every batch rows
+     */
+    public void Load(String tn, int n, IntFunction<Serialisable[]> row)
+            throws Exception {
+        for (var i = 0; i < n; i += batch) {
+            var tr = Transact();
+            for (var j = i; j < i + batch && j < n; j++)
+                tr = Row(tr, tn, row.apply(j));
+            Commit(tr);
+        }
+    }
+
+    public void Start() throws Exception {
+        tcp = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            while (!tcp.isClosed())
+                try {
+                    StrongStart.Serve(tcp.accept());
+                } catch (Exception e) {
+                }
+        });
+        acceptor.start();
+    }
+
+    public int Port() {
+        return tcp.getLocalPort();
+    }
+
+    public StrongConnect Connect() throws Exception {
+        return new StrongConnect("127.0.0.1", Port(), name);
+    }
+
+    public void Stop() throws Exception {
+        tcp.close();
+        acceptor.join();
+        SDatabase.Open(StrongServer.path, name).Close();
+        Delete();
+        try {
+            tml.writeToCSV(name + "Output_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Print the time for n operations (rows, queries, transactions) of a
+     * test case, and anything else to say about it
+     */
+    public static void Report(String caseName, int n, String what, long el,
+            String more) {
+        System.out.println(caseName + ": " + n + " " + what + " in " + el / 1000000
+                + "ms (" + el / (n * 1000L) + "us each, " + n * 1000000000L / el
+                + "/s)" + more);
+    }
+
+    public static void Report(String caseName, int n, String what, long el) {
+        Report(caseName, n, what, el, "");
+    }
+}
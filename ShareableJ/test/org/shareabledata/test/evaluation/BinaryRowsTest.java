@@ -0,0 +1,155 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Query results with integer, string and numeric columns, sent as JSON text
+ * and parsed into Documents, or sent in binary (StrongConnect.BinaryRows) and
+ * read with the typed accessors of ClientRow, for a whole result and for a
+ * cursor. The number of rows is 200000 unless -Drows says otherwise.
+ * @author Malcolm
+ */
+public class BinaryRowsTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 200000);
+    private static final int fetchSize = 1000;
+
+    public BinaryRowsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("BinaryRowsTest");
+        tml = server.tml;
+        var tr = TestServer.Table(server.Transact(), "T", "A",
+                "A", Types.SInteger, "B", Types.SString, "C", Types.SNumeric);
+        server.Commit(tr);
+        server.Load("T", numberOfRows, j -> new Serialisable[] {
+            new SInteger(j), new SString("Row " + j),
+            new SNumeric(new Numeric(j + 0.5)) });
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static void report(String caseName, long el, double sum) {
+        TestServer.Report(caseName, numberOfRows, "rows", el, ", sum of C " + sum);
+    }
+
+    @Test
+    public void testJson() throws Exception {
+        var conn = server.Connect();
+        try {
+            tml.setTestCaseName("JSON");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var rs = conn.ExecuteQuery("select from T");
+            var n = 0;
+            var sum = 0.0;
+            for (var b = rs.items.First(); b != null; b = b.Next(), n++) {
+                var d = b.getValue();
+                assertEquals(n, ((Number) d.get("A")).intValue());
+                assertNotNull(d.get("B"));
+                sum += ((Numeric) d.get("C")).toDouble();
+            }
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            assertEquals(numberOfRows, n);
+            report("JSON", el, sum);
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testBinary() throws Exception {
+        var conn = server.Connect();
+        try {
+            conn.BinaryRows();
+            tml.setTestCaseName("Binary");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var rs = conn.ExecuteRows("select from T");
+            var sum = 0.0;
+            for (var i = 0; i < rs.length; i++) {
+                assertEquals(i, rs[i].getInt(0));
+                assertNotNull(rs[i].getString(1));
+                sum += rs[i].getDouble(2);
+            }
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            assertEquals(numberOfRows, rs.length);
+            report("Binary", el, sum);
+            // the Documents are as for JSON
+            var d = conn.ExecuteQuery("select from T").items.First().getValue();
+            assertEquals(0, ((Number) d.get("A")).intValue());
+            assertEquals("Row 0", d.get("B"));
+        } finally {
+            conn.Close();
+        }
+    }
+
+    private void cursor(String caseName, boolean binary) throws Exception {
+        var conn = server.Connect();
+        try {
+            if (binary)
+                conn.BinaryRows();
+            tml.setTestCaseName(caseName);
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var c = conn.OpenCursor("select from T", fetchSize);
+            var n = 0;
+            var sum = 0.0;
+            for (; c.hasNext(); n++)
+                if (binary) {
+                    var r = c.NextRow();
+                    assertEquals(n, r.getInt(0));
+                    assertNotNull(r.getString(1));
+                    sum += r.getDouble(2);
+                } else {
+                    var d = c.next();
+                    assertEquals(n, ((Number) d.get("A")).intValue());
+                    assertNotNull(d.get("B"));
+                    sum += ((Numeric) d.get("C")).toDouble();
+                }
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            assertEquals(numberOfRows, n);
+            report(caseName, el, sum);
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testJsonCursor() throws Exception {
+        cursor("JSON cursor", false);
+    }
+
+    @Test
+    public void testBinaryCursor() throws Exception {
+        cursor("Binary cursor", true);
+    }
+}
@@ -0,0 +1,173 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Opening a database from its checkpoint (see Checkpoint) must give
+ * exactly the database that replaying the whole log gives, and a
+ * checkpoint that is damaged, or was taken of a different log, must be
+ * ignored. The log goes on after the checkpoint, with updates and deletes
+ * of rows it has, so Open has to replay that part on top of it.
+ * There are 100000 rows unless -Drows says otherwise.
+ * @author Malcolm
+ */
+public class CheckpointTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 100000);
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "CheckpointTest", other = "CheckpointTestB";
+    private static byte[] checkpoint, otherCheckpoint; // as written by Checkpoint
+    private static String replayed, otherReplayed; // the contents without them
+
+    public CheckpointTest() {
+    }
+
+    private static File file(String n) {
+        return new File(path, n);
+    }
+
+    private static File ckpt(String n) {
+        return new File(path, n + ".ckpt");
+    }
+
+    /// A database with n rows, and a checkpoint taken after about half of them
+    private static void build(String n, int rows, int seed) throws Exception {
+        file(n).delete();
+        ckpt(n).delete();
+        var db = SDatabase.Open(path, n);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        tr = TestServer.Table(tr, "T", "A", "A", Types.SInteger, "B", Types.SString);
+        db = tr.Commit().key;
+        for (int i = 0; i < rows;) {
+            tr = db.Transact(new ReaderBase() {}, false);
+            var t = (STable) tr.objects.get(tr.role.globalNames.get("T"));
+            var ca = t.FindForRole(tr, "A").uid;
+            var cb = t.FindForRole(tr, "B").uid;
+            for (int j = 0; j < TestServer.batch && i < rows; j++, i++)
+                tr = TestServer.Row(tr, "T", new SInteger(i), new SString("row" + (i + seed)));
+            // change and remove some committed rows
+            var m = 0;
+            for (var c = (t.rows == null) ? null : t.rows.Cursor();
+                    c != null && c.Advance() && m < 1000; m++) {
+                var r = db.Get(c.Value());
+                tr = (STransaction) ((m % 2 == 0)
+                        ? tr.Add(new SUpdate(tr, r, new SDict<Long, Serialisable>(ca,
+                                new SInteger(-i - m)).Add(cb, new SString("updated"))),
+                                tr.curpos)
+                        : tr.Add(new SDelete(tr, r), tr.curpos));
+            }
+            db = tr.Commit().key;
+            if (i >= rows / 2 && !ckpt(n).exists())
+                db.Checkpoint();
+        }
+        db.Close();
+    }
+
+    /// The number of indexes restored from checkpoints so far
+    private static int restored() {
+        return Checkpoint.getIndexesLoaded() + Checkpoint.getIndexesDeferred();
+    }
+
+    /// Open the database, check whether it was restored from its checkpoint,
+    /// and get its contents
+    private static String open(String caseName, String n, boolean restored) throws Exception {
+        var d = restored();
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        var db = SDatabase.Open(path, n);
+        tml.logTimeAndMemoryUsage(numberOfRows);
+        assertEquals(caseName, restored ? d + 1 : d, restored());
+        try {
+            return DbContents.Of(db, true);
+        } finally {
+            db.Close();
+        }
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        tml = new TimeAndMemoryLogger();
+        build(name, numberOfRows, 0);
+        build(other, numberOfRows + numberOfRows / 2, 1);
+        checkpoint = Files.readAllBytes(ckpt(name).toPath());
+        otherCheckpoint = Files.readAllBytes(ckpt(other).toPath());
+        ckpt(name).delete();
+        ckpt(other).delete();
+        replayed = open("Open by replaying the log", name, false);
+        otherReplayed = open("Open by replaying the log", other, false);
+        assertNotEquals(replayed, otherReplayed);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        for (var n : new String[] { name, other }) {
+            file(n).delete();
+            ckpt(n).delete();
+        }
+        try {
+            tml.writeToCSV("CheckpointTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ckpt(name).delete();
+        ckpt(other).delete();
+        Runtime.getRuntime().gc();
+    }
+
+    private static void assertNotEquals(String a, String b) {
+        assertFalse(a.equals(b));
+    }
+
+    @Test
+    public void testWithCheckpoint() throws Exception {
+        Files.write(ckpt(name).toPath(), checkpoint);
+        assertEquals(replayed, open("Open from the checkpoint", name, true));
+        Files.write(ckpt(other).toPath(), otherCheckpoint);
+        assertEquals(otherReplayed, open("Open from the checkpoint", other, true));
+    }
+
+    @Test
+    public void testDamaged() throws Exception {
+        // a byte changed in the rows: the CRC does not match
+        var b = checkpoint.clone();
+        b[b.length / 2] ^= 1;
+        Files.write(ckpt(name).toPath(), b);
+        assertEquals(replayed, open("Damaged checkpoint", name, false));
+        // cut short, as by a crash while it was written
+        Files.write(ckpt(name).toPath(), Arrays.copyOf(checkpoint, checkpoint.length / 2));
+        assertEquals(replayed, open("Truncated checkpoint", name, false));
+        Files.write(ckpt(name).toPath(), new byte[0]);
+        assertEquals(replayed, open("Empty checkpoint", name, false));
+    }
+
+    @Test
+    public void testStale() throws Exception {
+        // taken of a different log, which was longer
+        Files.write(ckpt(name).toPath(), otherCheckpoint);
+        assertEquals(replayed, open("Checkpoint beyond the log", name, false));
+        // and shorter, so that only the fingerprint tells
+        Files.write(ckpt(other).toPath(), checkpoint);
+        assertEquals(otherReplayed, open("Checkpoint of another log", other, false));
+    }
+}
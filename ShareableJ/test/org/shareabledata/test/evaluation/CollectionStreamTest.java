@@ -0,0 +1,192 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Spliterator;
+import java.util.stream.Collectors;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Sequential and parallel streams over Collections.
+ * @author Malcolm
+ */
+public class CollectionStreamTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfElements = 500000;
+    private static SDict<Long, Long> dict;
+    private static SLongDict<Long> longDict;
+    private static long sum = 0;
+
+    public CollectionStreamTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+        var r = new Random(0);
+        var k = (long) r.nextInt();
+        dict = new SDict<Long, Long>(SDict.LARGE, k, k);
+        longDict = new SLongDict<Long>(SDict.LARGE, k, k);
+        for (int i = 1; i < numberOfElements; i++) {
+            k = r.nextInt();
+            dict = dict.Add(k, k);
+            longDict = longDict.AddLong(k, k);
+        }
+        for (var c = dict.Cursor(); c.Advance();)
+            sum += c.Value();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("CollectionStreamTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private void sumCase(String caseName, SDict<Long, Long> d, boolean parallel) {
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        var s = (parallel ? d.parallelStream() : d.stream())
+                .mapToLong(e -> e.val).sum();
+        tml.logTimeAndMemoryUsage(d.Length);
+        assertEquals(sum, s);
+    }
+
+    @Test
+    public void testSequentialSum() {
+        sumCase("SDict stream sum", dict, false);
+        sumCase("SLongDict stream sum", longDict, false);
+    }
+
+    @Test
+    public void testParallelSum() {
+        sumCase("SDict parallel stream sum", dict, true);
+        sumCase("SLongDict parallel stream sum", longDict, true);
+    }
+
+    @Test
+    public void testParallelOrder() {
+        var a = dict.parallelStream().map(e -> e.key).collect(Collectors.toList());
+        var b = longDict.parallelStream().map(e -> e.key).collect(Collectors.toList());
+        assertEquals(dict.Length, a.size());
+        assertEquals(a, b);
+        for (int i = 1; i < a.size(); i++)
+            assertTrue(a.get(i - 1) < a.get(i));
+    }
+
+    @Test
+    public void testExactSplits() {
+        var s = dict.spliterator();
+        assertTrue(s.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        var n = s.estimateSize();
+        var p = s.trySplit();
+        assertNotNull(p);
+        assertEquals(n, p.estimateSize() + s.estimateSize());
+        long[] c = { 0 };
+        p.forEachRemaining(e -> c[0]++);
+        s.forEachRemaining(e -> c[0]++);
+        assertEquals(n, c[0]);
+    }
+
+    @Test
+    public void testOtherCollections() throws Exception {
+        assertEquals(10, new SList<Integer>(1, 2, 3, 4).parallelStream()
+                .mapToInt(i -> i).sum());
+        assertEquals(6, new SArray<Integer>(1, 2, 3).stream()
+                .mapToInt(i -> i).sum());
+        assertEquals("1358", new SSearchTree<Integer>(5, 3, 8, 1).stream()
+                .map(i -> i.toString()).collect(Collectors.joining()));
+    }
+
+    /// Split s until it will not split, checking that the sizes are exact,
+    /// and add its elements to out in order: the number of pieces
+    private static <T> int splitAll(Spliterator<T> s, List<T> out) {
+        assertTrue(s.hasCharacteristics(Spliterator.SIZED | Spliterator.SUBSIZED));
+        var n = s.estimateSize();
+        var p = s.trySplit();
+        if (p != null) {
+            assertEquals(n, p.estimateSize() + s.estimateSize());
+            return splitAll(p, out) + splitAll(s, out);
+        }
+        var m = out.size();
+        s.forEachRemaining(e -> out.add(e));
+        assertEquals(n, out.size() - m);
+        return 1;
+    }
+
+    private static <T> List<T> bookmarks(Collection<T> c) {
+        var r = new ArrayList<T>();
+        for (var b = c.First(); b != null; b = b.Next())
+            r.add(b.getValue());
+        return r;
+    }
+
+    private static String show(SSlot<SCList<Variant>, Long> e) {
+        var sb = new StringBuilder();
+        for (SList<Variant> k = e.key; k != null; k = k.next)
+            sb.append(k.element.ob).append('/');
+        return sb.append(e.val).toString();
+    }
+
+    private static void mtreeCase(SMTree<String> t, int n) {
+        assertEquals(n, t.Length);
+        var a = new ArrayList<SSlot<SCList<Variant>, Long>>();
+        assertTrue(splitAll(t.spliterator(), a) > 1);
+        var b = bookmarks(t);
+        assertEquals(n, a.size());
+        assertEquals(n, b.size());
+        for (int i = 0; i < n; i++)
+            assertEquals(show(b.get(i)), show(a.get(i)));
+        assertEquals(b.stream().mapToLong(e -> e.val).sum(),
+                t.parallelStream().mapToLong(e -> e.val).sum());
+    }
+
+    @Test
+    public void testTreeSplits() throws Exception {
+        var r = new Random(0);
+        var st = new SSearchTree<Integer>(r.nextInt(1000));
+        for (int i = 1; i < 10000; i++)
+            st = st.Add(r.nextInt(1000)); // with duplicates
+        var a = new ArrayList<Integer>();
+        assertTrue(splitAll(st.spliterator(), a) > 1);
+        assertEquals(bookmarks(st), a);
+        // a compound index with duplicates on its second column
+        var ti = new SList<TreeInfo<String>>(new TreeInfo<String>("A", 'D', 'D', true),
+                new TreeInfo<String>("B", 'A', 'D', false));
+        var es = new ArrayList<SSlot<SCList<Variant>, Long>>();
+        for (long i = 0; i < 20000; i++)
+            es.add(new SSlot<SCList<Variant>, Long>(new SCList<Variant>(
+                    new Variant(r.nextInt(2000), true),
+                    new SCList<Variant>(new Variant(r.nextInt(10), false), null)), i));
+        mtreeCase(SMTree.Build(ti, es), es.size());
+        // a unique index on one column
+        var ui = new SList<TreeInfo<String>>(new TreeInfo<String>("A", 'D', 'D', true));
+        es.clear();
+        for (long i = 0; i < 20000; i++)
+            es.add(new SSlot<SCList<Variant>, Long>(new SCList<Variant>(
+                    new Variant(i * 7 % 20000, true), null), i));
+        mtreeCase(SMTree.Build(ui, es), es.size());
+    }
+}
@@ -0,0 +1,340 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Compaction (see Compactor) of a database whose log has many updates
+ * and deletes: the compacted file must be smaller and hold the same
+ * tables, rows and index entries, both as installed and when the
+ * database is opened again. Snapshots taken before an online compaction
+ * must still read their own rows, but a transaction begun before it
+ * cannot commit. Commits made while the new generation of the file is
+ * written must be carried over to it, and the old generation is deleted
+ * once no snapshot refers to it. A compaction that fails must leave the
+ * database as it was.
+ * There are 100000 rows unless -Drows says otherwise.
+ * @author Malcolm
+ */
+public class CompactionTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 100000);
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "CompactionTest";
+
+    public CompactionTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("CompactionTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        var db = SDatabase.Open(path, name); // in case a test failed with it open
+        db.Close();
+        delete();
+        Runtime.getRuntime().gc();
+    }
+
+    /// Every generation of the database file, and their checkpoints
+    private static void delete() {
+        var fs = new File(path).listFiles((d, n) -> n.startsWith(name + ".gen")
+                || n.equals(name) || n.equals(name + ".ckpt"));
+        if (fs != null)
+            for (var f : fs)
+                f.delete();
+    }
+
+    /// The current generation of the database file
+    private static File file() throws Exception {
+        return SDatabase.Open(path, name).File().path;
+    }
+
+    /// Close the database, and remove its checkpoint so that it is reopened from the log
+    private static void close(SDatabase db) throws Exception {
+        var f = file();
+        db.Close();
+        new File(f.getPath() + ".ckpt").delete();
+    }
+
+    /// The table T(A,B) with an index on A: each row is updated twice,
+    /// and every other one is then deleted
+    private static void build() throws Exception {
+        delete();
+        var db = SDatabase.Open(path, name);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        tr = TestServer.Table(tr, "T", "A", "A", Types.SInteger, "B", Types.SString);
+        db = tr.Commit().key;
+        for (int i = 0; i < numberOfRows; i += TestServer.batch) {
+            tr = db.Transact(new ReaderBase() {}, false);
+            for (int j = i; j < i + TestServer.batch && j < numberOfRows; j++)
+                tr = TestServer.Row(tr, "T", new SInteger(j), new SString("row" + j));
+            db = tr.Commit().key;
+        }
+        for (var pass = 0; pass < 3; pass++) {
+            var t = (STable) db.objects.get(db.role.globalNames.get("T"));
+            var cb = t.FindForRole(db, "B").uid;
+            tr = db.Transact(new ReaderBase() {}, false);
+            var n = 0;
+            for (var c = t.rows.Cursor(); c.Advance(); n++) {
+                var r = db.Get(c.Value());
+                if (pass < 2)
+                    tr = (STransaction) tr.Add(new SUpdate(tr, r,
+                            new SDict<Long, Serialisable>(cb, new SString("update" + pass + " " + n))),
+                            tr.curpos);
+                else if (n % 2 == 0)
+                    tr = (STransaction) tr.Add(new SDelete(tr, r), tr.curpos);
+                if (n % TestServer.batch == TestServer.batch - 1) {
+                    db = tr.Commit().key;
+                    tr = db.Transact(new ReaderBase() {}, false);
+                }
+            }
+            db = tr.Commit().key;
+        }
+        db.Close();
+    }
+
+    private static STransaction insert(SDatabase db, int a) throws Exception {
+        var tr = db.Transact(new ReaderBase() {}, false);
+        return TestServer.Row(tr, "T", new SInteger(a), new SString("new"));
+    }
+
+    private static void check(Compactor c) throws Exception {
+        System.out.println(c);
+        assertTrue(c.sizeAfter > 0);
+        assertTrue(c.sizeAfter < c.sizeBefore / 2);
+        assertEquals(c.sizeAfter, file().length());
+    }
+
+    @Test
+    public void testOnline() throws Exception {
+        build();
+        var db = SDatabase.Open(path, name);
+        var before = DbContents.Of(db, false);
+        var tr = insert(db, -1); // begun before the compaction
+        var old = file();
+        tml.setTestCaseName("Online compaction");
+        tml.setInitialTimeAndMemory();
+        var c = db.Compact();
+        tml.logTimeAndMemoryUsage(numberOfRows);
+        check(c);
+        var nd = SDatabase.Open(path, name); // the installed database
+        assertTrue(nd != db);
+        assertFalse(old.equals(file()));
+        assertTrue(old.exists());
+        assertEquals(before, DbContents.Of(nd, false));
+        // the snapshot still reads the rows of the file it was taken from,
+        // not those at the same positions in the new one
+        assertEquals(before, DbContents.Of(db, false));
+        assertEquals(before, DbContents.Of(nd, false));
+        try {
+            tr.Commit();
+            fail("a transaction begun before the compaction committed");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("compacted"));
+        }
+        // the old generation goes once nothing refers to it
+        db = null;
+        tr = null;
+        for (var i = 0; i < 100 && old.exists(); i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertFalse(old.exists());
+        // the compacted database takes new commits
+        nd = insert(nd, -2).Commit().key;
+        var after = DbContents.Of(nd, false);
+        assertTrue(after.contains("A=Integer -2"));
+        close(nd);
+        // and it reloads from the compacted file as it was
+        nd = SDatabase.Open(path, name);
+        try {
+            assertEquals(after, DbContents.Of(nd, false));
+        } finally {
+            nd.Close();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        build();
+        var db = SDatabase.Open(path, name);
+        var before = DbContents.Of(db, false);
+        var size = file().length();
+        // the compacted file cannot be written
+        var tmp = new File(path, name + ".compact");
+        var in = new File(tmp, "in the way");
+        tmp.mkdir();
+        in.createNewFile();
+        try {
+            db.Compact();
+            fail("compacted to a directory");
+        } catch (Exception e) {
+        } finally {
+            in.delete();
+            tmp.delete();
+        }
+        // the database goes on as it was
+        assertEquals(size, file().length());
+        assertTrue(db == SDatabase.Open(path, name));
+        assertEquals(before, DbContents.Of(db, false));
+        db = insert(db, -3).Commit().key;
+        var after = DbContents.Of(db, false);
+        assertTrue(after.contains("A=Integer -3"));
+        // and can be compacted later
+        check(db.Compact());
+        db = SDatabase.Open(path, name);
+        assertEquals(after, DbContents.Of(db, false));
+        close(db);
+        db = SDatabase.Open(path, name);
+        try {
+            assertEquals(after, DbContents.Of(db, false));
+        } finally {
+            db.Close();
+        }
+    }
+
+    @Test
+    public void testConcurrent() throws Exception {
+        // a writer inserts, updates and deletes rows while the compaction runs:
+        // only the catch-up and the swap hold the lock, so its commits go on,
+        // and those made before the swap must be in the compacted file
+        build();
+        var db = SDatabase.Open(path, name);
+        var t = (STable) db.objects.get(db.role.globalNames.get("T"));
+        var cb = t.FindForRole(db, "B").uid;
+        var expected = new TreeMap<Integer, String>(); // A -> B of the rows the writer touched
+        var stop = new AtomicBoolean();
+        var error = new AtomicReference<Exception>();
+        var commits = new int[2]; // before and after the swap
+        var compacted = new AtomicBoolean();
+        var w = new Thread(() -> {
+            for (var i = 1; !stop.get() && error.get() == null; i++)
+                try {
+                    var d = SDatabase.Open(path, name);
+                    var after = compacted.get();
+                    var tr = insert(d, -10 * i);
+                    var changes = new TreeMap<Integer, String>();
+                    changes.put(-10 * i, "new");
+                    var tb = (STable) tr.objects.get(tr.role.globalNames.get("T"));
+                    var n = 0;
+                    for (var b = tb.rows.Cursor(); b.Advance() && n < 2; n++) {
+                        var r = d.Get(b.Value());
+                        var a = ((SInteger) r.fields.Lookup(tb.FindForRole(d, "A").uid)).value;
+                        if (n == 0) {
+                            tr = (STransaction) tr.Add(new SUpdate(tr, r,
+                                    new SDict<Long, Serialisable>(cb, new SString("during " + i))), tr.curpos);
+                            changes.put(a, "during " + i);
+                        } else {
+                            tr = (STransaction) tr.Add(new SDelete(tr, r), tr.curpos);
+                            changes.put(a, null);
+                        }
+                    }
+                    try {
+                        tr.Commit();
+                    } catch (Exception e) {
+                        if (!e.getMessage().contains("compacted"))
+                            throw e;
+                        continue; // begun before the swap: the changes are not there
+                    }
+                    expected.putAll(changes);
+                    commits[after ? 1 : 0]++;
+                } catch (Exception e) {
+                    error.set(e);
+                }
+        });
+        w.start();
+        Compactor c;
+        try {
+            Thread.sleep(20);
+            tml.setTestCaseName("Online compaction with a concurrent writer");
+            tml.setInitialTimeAndMemory();
+            c = db.Compact();
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            compacted.set(true);
+            Thread.sleep(20);
+        } finally {
+            stop.set(true);
+            w.join();
+        }
+        if (error.get() != null)
+            throw error.get();
+        System.out.println(c + ", " + commits[0] + " commits before the swap, "
+                + commits[1] + " after");
+        assertTrue(commits[0] > 0);
+        db = SDatabase.Open(path, name);
+        var contents = DbContents.Of(db, false);
+        for (var e : expected.entrySet()) {
+            var row = " A=Integer " + e.getKey() + " ";
+            if (e.getValue() == null)
+                assertFalse(row, contents.contains(row));
+            else
+                assertTrue(row, contents.contains(row + "B=String '" + e.getValue() + "'\n"));
+        }
+        close(db);
+        db = SDatabase.Open(path, name);
+        try {
+            assertEquals(contents, DbContents.Of(db, false));
+        } finally {
+            db.Close();
+        }
+    }
+
+    @Test
+    public void testOffline() throws Exception {
+        build();
+        var db = SDatabase.Open(path, name);
+        var before = DbContents.Of(db, false);
+        db.Close();
+        tml.setTestCaseName("Offline compaction");
+        tml.setInitialTimeAndMemory();
+        var c = Compactor.Offline(path, name);
+        tml.logTimeAndMemoryUsage(numberOfRows);
+        check(c);
+        assertTrue(c.loadBefore >= 0 && c.loadAfter >= 0);
+        db = SDatabase.Open(path, name);
+        try {
+            assertEquals(before, DbContents.Of(db, false));
+        } finally {
+            db.Close();
+        }
+        // a database that is open must be compacted online
+        db = SDatabase.Open(path, name);
+        try {
+            Compactor.Offline(path, name);
+            fail("Offline compacted an open database");
+        } catch (Exception e) {
+            assertTrue(e.getMessage().contains("is open"));
+        } finally {
+            db.Close();
+        }
+    }
+}
@@ -0,0 +1,439 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Concurrent writers to one database (see STransaction.Commit). A commit
+ * validates what was committed since its snapshot without the lock, and
+ * then only [validated,end) under it, after SDatabase.Catchup has brought
+ * the installed database up to end. Conflicts must be found by whichever
+ * pass sees them: a commit that lands while another waits for the lock
+ * is held there by taking LogFile.lock in the test. No update may be lost
+ * however the commits interleave, and the database must reopen as it was
+ * installed. The cost of a commit must not grow with the log.
+ * There are 10000 rows unless -Drows says otherwise.
+ * @author Malcolm
+ */
+public class ConcurrentCommitTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 10000);
+    private static final int threads = 8;
+    private static final int commits = 2000; // per case, over all threads
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "ConcurrentCommitTest";
+
+    public ConcurrentCommitTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("ConcurrentCommitTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /// The table T(A,B,C) with an index on A, and numberOfRows rows with C=0
+    @Before
+    public void setUp() throws Exception {
+        delete();
+        var db = SDatabase.Open(path, name);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        tr = TestServer.Table(tr, "T", "A", "A", Types.SInteger, "B", Types.SString,
+                "C", Types.SInteger);
+        db = tr.Commit().key;
+        load(db, 0, numberOfRows);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        SDatabase.Open(path, name).Close();
+        delete();
+        Runtime.getRuntime().gc();
+    }
+
+    private static void delete() {
+        new File(path, name).delete();
+        new File(path, name + ".ckpt").delete();
+    }
+
+    private static SDatabase load(SDatabase db, int from, int to) throws Exception {
+        for (int i = from; i < to; i += TestServer.batch) {
+            var tr = db.Transact(new ReaderBase() {}, false);
+            for (int j = i; j < i + TestServer.batch && j < to; j++)
+                tr = TestServer.Row(tr, "T", new SInteger(j), new SString("row" + j),
+                        new SInteger(0));
+            db = tr.Commit().key;
+        }
+        return db;
+    }
+
+    private static STable table(SDatabase db) {
+        return (STable) db.objects.get(db.role.globalNames.get("T"));
+    }
+
+    private static long column(SDatabase db, String n) throws Exception {
+        return table(db).FindForRole(db, n).uid;
+    }
+
+    /// The defpos of the nth row
+    private static long row(SDatabase db, int n) throws Exception {
+        var c = table(db).rows.Cursor();
+        for (var i = 0; i <= n; i++)
+            assertTrue(c.Advance());
+        return c.LongKey();
+    }
+
+    /// The current record of a row, as seen by db
+    private static SRecord get(SDatabase db, long defpos) throws Exception {
+        return db.Get(table(db).rows.Lookup(defpos));
+    }
+
+    private static int counter(SDatabase db, long defpos) throws Exception {
+        return (int) ((SInteger) get(db, defpos).fields.Lookup(column(db, "C"))).value;
+    }
+
+    /// A transaction on the snapshot db that adds one to the counter of a row
+    private static STransaction increment(SDatabase db, long defpos) throws Exception {
+        var tr = db.Transact(new ReaderBase() {}, false);
+        var r = get(tr, defpos);
+        return (STransaction) tr.Add(new SUpdate(tr, r, new SDict<Long, Serialisable>(
+                column(tr, "C"), new SInteger(counter(tr, defpos) + 1))), tr.curpos);
+    }
+
+    private static STransaction insert(SDatabase db, int a) throws Exception {
+        var tr = db.Transact(new ReaderBase() {}, false);
+        return TestServer.Row(tr, "T", new SInteger(a), new SString("new" + a),
+                new SInteger(0));
+    }
+
+    private static void assertConflict(STransaction tr) {
+        try {
+            tr.Commit();
+            fail("a conflicting transaction committed");
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("conflict"));
+        }
+    }
+
+    /// The installed database must be what the log gives when it is reopened
+    private static String checkReopen() throws Exception {
+        var db = SDatabase.Open(path, name);
+        var installed = DbContents.Of(db, true);
+        db.Close();
+        new File(path, name + ".ckpt").delete();
+        db = SDatabase.Open(path, name);
+        assertEquals(installed, DbContents.Of(db, true));
+        return installed;
+    }
+
+    /// <summary>
+    /// Commit tr on another thread while we hold the lock of its file, and
+    /// return once it has validated what it could without the lock and is
+    /// waiting for it. Whatever we commit before unlocking is therefore
+    /// seen only by its second pass, over [validated,end).
+    /// </summary>
+    private static Thread commitBlocked(STransaction tr, LogFile f,
+            AtomicReference<Object> result) throws Exception {
+        assertTrue(f.lock.isHeldByCurrentThread());
+        var t = new Thread(() -> {
+            try {
+                result.set(tr.Commit().key);
+            } catch (Exception e) {
+                result.set(e);
+            }
+        });
+        t.start();
+        while (!f.lock.hasQueuedThread(t)) {
+            assertTrue(t.isAlive());
+            Thread.sleep(1);
+        }
+        return t;
+    }
+
+    @Test
+    public void testConflictBeforeLock() throws Exception {
+        var db = SDatabase.Open(path, name);
+        var p = row(db, 5);
+        var a = increment(db, p);
+        var b = increment(db, p);
+        a.Commit();
+        // b's first pass sees a's update
+        assertConflict(b);
+        db = SDatabase.Open(path, name);
+        assertEquals(1, counter(db, p));
+        // a row deleted since our snapshot cannot be updated, nor one updated deleted
+        var d = db.Transact(new ReaderBase() {}, false);
+        d = (STransaction) d.Add(new SDelete(d, get(d, p)), d.curpos);
+        var u = increment(db, p);
+        d.Commit();
+        assertConflict(u);
+        var q = row(db, 6);
+        u = increment(db, q);
+        d = db.Transact(new ReaderBase() {}, false);
+        d = (STransaction) d.Add(new SDelete(d, get(d, q)), d.curpos);
+        u.Commit();
+        assertConflict(d);
+        db = SDatabase.Open(path, name);
+        assertNull(table(db).rows.Lookup(p));
+        assertEquals(1, counter(db, q));
+        checkReopen();
+    }
+
+    @Test
+    public void testConflictInLock() throws Exception {
+        var db = SDatabase.Open(path, name);
+        var f = db.File();
+        var p = row(db, 7);
+        var a = increment(db, p);
+        var b = increment(db, p);
+        var result = new AtomicReference<Object>();
+        f.lock.lock();
+        Thread t;
+        try {
+            t = commitBlocked(b, f, result);
+            a.Commit(); // the lock is reentrant
+        } finally {
+            f.lock.unlock();
+        }
+        t.join();
+        // b's second pass, over what a wrote, finds the conflict
+        assertTrue(String.valueOf(result.get()), result.get() instanceof Exception);
+        assertTrue(((Exception) result.get()).getMessage().contains("conflict"));
+        db = SDatabase.Open(path, name);
+        assertEquals(1, counter(db, p));
+        // and likewise for a delete of the row b updates
+        a = db.Transact(new ReaderBase() {}, false);
+        a = (STransaction) a.Add(new SDelete(a, get(a, p)), a.curpos);
+        b = increment(db, p);
+        f.lock.lock();
+        try {
+            t = commitBlocked(b, f, result);
+            a.Commit();
+        } finally {
+            f.lock.unlock();
+        }
+        t.join();
+        assertTrue(String.valueOf(result.get()), result.get() instanceof Exception);
+        db = SDatabase.Open(path, name);
+        assertNull(table(db).rows.Lookup(p));
+        checkReopen();
+    }
+
+    @Test
+    public void testCatchup() throws Exception {
+        // commits that do not conflict are caught up with under the lock,
+        // and the one that waited is installed on top of them
+        var db = SDatabase.Open(path, name);
+        var f = db.File();
+        var p = row(db, 8);
+        var q = row(db, 9);
+        var b = increment(db, q);
+        var result = new AtomicReference<Object>();
+        f.lock.lock();
+        Thread t;
+        try {
+            t = commitBlocked(b, f, result);
+            increment(db, p).Commit();
+            insert(db, -1).Commit();
+            insert(SDatabase.Open(path, name), -2).Commit();
+        } finally {
+            f.lock.unlock();
+        }
+        t.join();
+        assertTrue(String.valueOf(result.get()), result.get() instanceof SDatabase);
+        var nd = (SDatabase) result.get();
+        assertTrue(nd == SDatabase.Open(path, name));
+        assertEquals(1, counter(nd, p));
+        assertEquals(1, counter(nd, q));
+        assertEquals(numberOfRows + 2, table(nd).rows.Length);
+        var contents = checkReopen();
+        assertTrue(contents.contains("A=Integer -1"));
+        assertTrue(contents.contains("A=Integer -2"));
+        // the snapshot b started from is unchanged
+        assertEquals(0, counter(db, p));
+        assertEquals(numberOfRows, table(db).rows.Length);
+    }
+
+    @Test
+    public void testClosed() throws Exception {
+        // a transaction whose database was closed, and perhaps reopened
+        // with another LogFile, must not commit through its old one
+        var db = SDatabase.Open(path, name);
+        var f = db.File();
+        var p = row(db, 0);
+        var a = increment(db, p);
+        var b = increment(db, p);
+        db.Close();
+        assertClosed(a);
+        var nd = SDatabase.Open(path, name);
+        assertTrue(nd.File() != f);
+        assertClosed(b);
+        nd = increment(nd, p).Commit().key;
+        assertEquals(1, counter(nd, p));
+        checkReopen();
+    }
+
+    private static void assertClosed(STransaction tr) {
+        try {
+            tr.Commit();
+            fail("committed to a closed database");
+        } catch (Exception e) {
+            assertTrue(String.valueOf(e.getMessage()), String.valueOf(e.getMessage()).contains("closed"));
+        }
+    }
+
+    /// <summary>
+    /// Each thread commits transactions that add one to the counter of a
+    /// row chosen from hot rows, starting again from the installed database
+    /// when it conflicts. Conflicts are found by both passes, as the others
+    /// commit during the first one or while the lock is awaited; any that
+    /// is missed loses an update, so the counters add up to the commits.
+    /// Returns the number of conflicts and the time per commit in ns.
+    /// </summary>
+    private long[] contend(String caseName, int hot) throws Exception {
+        var db = SDatabase.Open(path, name);
+        var rows = new long[hot];
+        for (var i = 0; i < hot; i++)
+            rows[i] = row(db, i * (numberOfRows / hot));
+        var before = 0;
+        for (var r : rows)
+            before += counter(db, r);
+        var committed = new AtomicInteger();
+        var conflicts = new AtomicInteger();
+        var error = new AtomicReference<Exception>();
+        var ts = new ArrayList<Thread>();
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        for (var k = 0; k < threads; k++) {
+            var rnd = new Random(k);
+            ts.add(new Thread(() -> {
+                while (committed.get() < commits && error.get() == null)
+                    try {
+                        var r = rows[rnd.nextInt(hot)];
+                        increment(SDatabase.Open(path, name), r).Commit();
+                        committed.incrementAndGet();
+                    } catch (Exception e) {
+                        if (e.getMessage() != null && e.getMessage().contains("conflict"))
+                            conflicts.incrementAndGet();
+                        else
+                            error.set(e);
+                    }
+            }));
+        }
+        var s = System.nanoTime();
+        for (var t : ts)
+            t.start();
+        for (var t : ts)
+            t.join();
+        var el = System.nanoTime() - s;
+        tml.logTimeAndMemoryUsage(committed.get());
+        if (error.get() != null)
+            throw error.get();
+        TestServer.Report(caseName, committed.get(), "commits", el,
+                ", " + threads + " threads, " + hot + " rows, " + conflicts.get() + " conflicts");
+        db = SDatabase.Open(path, name);
+        var sum = -before;
+        for (var r : rows)
+            sum += counter(db, r);
+        assertEquals(committed.get(), sum);
+        checkReopen();
+        return new long[] { conflicts.get(), el / committed.get() };
+    }
+
+    @Test
+    public void testDisjoint() throws Exception {
+        // one row per thread: no conflicts at all
+        var db = SDatabase.Open(path, name);
+        var rows = new long[threads];
+        for (var i = 0; i < threads; i++)
+            rows[i] = row(db, i);
+        var error = new AtomicReference<Exception>();
+        var ts = new ArrayList<Thread>();
+        tml.setTestCaseName("Disjoint writers");
+        tml.setInitialTimeAndMemory();
+        for (var k = 0; k < threads; k++) {
+            var k0 = k;
+            ts.add(new Thread(() -> {
+                try {
+                    for (var i = 0; i < commits / threads; i++) {
+                        var tr = increment(SDatabase.Open(path, name), rows[k0]);
+                        tr = TestServer.Row(tr, "T", new SInteger(-1 - k0 - i * threads),
+                                new SString("t" + k0), new SInteger(0));
+                        tr.Commit();
+                    }
+                } catch (Exception e) {
+                    error.set(e);
+                }
+            }));
+        }
+        var s = System.nanoTime();
+        for (var t : ts)
+            t.start();
+        for (var t : ts)
+            t.join();
+        var el = System.nanoTime() - s;
+        tml.logTimeAndMemoryUsage(commits);
+        if (error.get() != null)
+            throw error.get();
+        TestServer.Report("Disjoint writers", commits, "commits", el);
+        db = SDatabase.Open(path, name);
+        for (var r : rows)
+            assertEquals(commits / threads, counter(db, r));
+        assertEquals(numberOfRows + commits / threads * threads, table(db).rows.Length);
+        checkReopen();
+    }
+
+    @Test
+    public void testContended() throws Exception {
+        contend("Contended writers, 100 rows", 100);
+        assertTrue(contend("Contended writers, 4 rows", 4)[0] > 0);
+    }
+
+    @Test
+    public void testLatency() throws Exception {
+        // the same contended commits after the log has grown, each time by
+        // more than all of it so far: commit validates and catches up with
+        // only what was written since its snapshot, so this must not matter
+        var db = SDatabase.Open(path, name);
+        var times = new ArrayList<Long>();
+        var size = numberOfRows;
+        for (var stage = 0; stage < 4; stage++) {
+            var caseName = "Commit latency, " + size + " rows, log "
+                    + db.File().length() / 1024 + "KB";
+            times.add(contend(caseName, 100)[1]);
+            db = SDatabase.Open(path, name);
+            db = load(db, size, 3 * size);
+            size = 3 * size;
+        }
+        System.out.println("Commit latency (ns) as the log grows: " + times);
+        // generously: the log is more than 50 times as long at the end
+        assertTrue(times.toString(), times.get(3) < 5 * times.get(0) + 1000000);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import com.sun.management.UnixOperatingSystemMXBean;
+import org.junit.After;
+import org.junit.Assume;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Many mostly idle connections to the server, with each session on a
+ * platform thread or on a virtual thread (StrongStart.virtualThreads),
+ * or with all of them served by a SelectServer and a few workers.
+ * Memory is measured once all the connections are open, and the latency
+ * of queries sent on a sample of them is measured while the rest are idle.
+ * A SelectServer must not let clients that are slow to send a request hold
+ * its workers, and must read a request longer than maxFrames frames.
+ * Each connection uses two file descriptors in this process, so the number
+ * of connections is 10000 or as many as the descriptor limit allows, unless
+ * -Dconnections says otherwise; the cases are skipped if that many will not fit.
+ * Virtual threads need Java 21: on an earlier JVM that case is skipped.
+ * @author Malcolm
+ */
+public class ConnectionLoadTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int reserve = 1000; // descriptors for everything else
+    private static final int connections = Integer.getInteger("connections",
+            Math.min(10000, (spare() - reserve) / 2));
+    private static final int clientThreads = 8;
+    private static final int requests = 20000;
+    private static final String name = "ConnectionLoadTest";
+
+    public ConnectionLoadTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        tml = new TimeAndMemoryLogger();
+        StrongServer.path = System.getProperty("java.io.tmpdir");
+        new File(StrongServer.path, name).delete();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        StrongStart.virtualThreads = false;
+        new File(StrongServer.path, name).delete();
+        try {
+            tml.writeToCSV("ConnectionLoadTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    /// <summary>
+    /// The file descriptors this process may still open, if the platform says
+    /// </summary>
+    private static int spare() {
+        var os = ManagementFactory.getOperatingSystemMXBean();
+        if (!(os instanceof UnixOperatingSystemMXBean))
+            return Integer.MAX_VALUE;
+        var u = (UnixOperatingSystemMXBean) os;
+        return (int) Math.min(Integer.MAX_VALUE,
+                u.getMaxFileDescriptorCount() - u.getOpenFileDescriptorCount());
+    }
+
+    /// <summary>
+    /// Resident set size in bytes (Linux), or the heap in use
+    /// </summary>
+    private static long memory() {
+        Runtime.getRuntime().gc();
+        try {
+            for (var s : Files.readAllLines(new File("/proc/self/status").toPath()))
+                if (s.startsWith("VmRSS:"))
+                    return Long.parseLong(s.replaceAll("[^0-9]", "")) * 1024;
+        } catch (Exception e) {
+        }
+        return Runtime.getRuntime().totalMemory() - Runtime.getRuntime().freeMemory();
+    }
+
+    private void run(String caseName, boolean virtual) throws Exception {
+        StrongStart.virtualThreads = virtual;
+        var tcp = new ServerSocket(0, 1000, InetAddress.getLoopbackAddress());
+        var acceptor = new Thread(() -> {
+            while (!tcp.isClosed())
+                try {
+                    StrongStart.Serve(tcp.accept());
+                } catch (Exception e) {
+                }
+        });
+        acceptor.start();
+        try {
+            measure(caseName, tcp.getLocalPort());
+        } finally {
+            tcp.close();
+            acceptor.join();
+        }
+    }
+
+    private void measure(String caseName, int port) throws Exception {
+        // the sessions of an earlier case may still be closing their sockets
+        for (var i = 0; i < 100 && 2L * connections >= spare(); i++) {
+            Runtime.getRuntime().gc();
+            Thread.sleep(100);
+        }
+        Assume.assumeTrue("not enough file descriptors for " + connections + " connections",
+                connections > 0 && 2L * connections < spare());
+        var conns = new StrongConnect[connections];
+        try {
+            var m0 = memory();
+            var t0 = ManagementFactory.getThreadMXBean().getThreadCount();
+            tml.setTestCaseName(caseName);
+            tml.setInitialTimeAndMemory();
+            for (var i = 0; i < connections; i++)
+                conns[i] = new StrongConnect("127.0.0.1", port, name);
+            tml.logTimeAndMemoryUsage(connections);
+            var m1 = memory();
+            var t1 = ManagementFactory.getThreadMXBean().getThreadCount();
+            // each client thread uses its own connections, so requests on a
+            // connection never overlap: most connections stay idle
+            var per = connections / clientThreads;
+            var lat = new long[requests];
+            var failed = new int[1];
+            var ts = new ArrayList<Thread>();
+            for (var c = 0; c < clientThreads; c++) {
+                var k = c;
+                var t = new Thread(() -> {
+                    for (var i = k; i < requests; i += clientThreads) {
+                        var sc = conns[(int)(((i / clientThreads) * 7919L) % per) * clientThreads + k];
+                        var s = System.nanoTime();
+                        try {
+                            sc.ExecuteQuery("select from _Tables");
+                        } catch (Exception e) {
+                            synchronized (failed) { failed[0]++; }
+                        }
+                        lat[i] = System.nanoTime() - s;
+                    }
+                });
+                ts.add(t);
+            }
+            var s = System.nanoTime();
+            for (var t : ts)
+                t.start();
+            for (var t : ts)
+                t.join();
+            var el = System.nanoTime() - s;
+            assertEquals(0, failed[0]);
+            Arrays.sort(lat);
+            System.out.println(caseName + ": " + connections + " connections, memory +"
+                    + (m1 - m0) / (1024 * 1024) + "MB, platform threads +" + (t1 - t0)
+                    + ", " + requests + " queries in " + el / 1000000 + "ms, p50 "
+                    + lat[requests / 2] / 1000 + "us, p99 " + lat[requests * 99 / 100] / 1000 + "us");
+        } finally {
+            for (var c : conns)
+                if (c != null)
+                    c.Close();
+        }
+    }
+
+    @Test
+    public void testPlatformThreads() throws Exception {
+        run("Platform threads", false);
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception {
+        Assume.assumeTrue("virtual threads need Java 21", StrongStart.startVirtual != null);
+        run("Virtual threads", true);
+    }
+
+    @Test
+    public void testSelector() throws Exception {
+        var tcp = ServerSocketChannel.open();
+        tcp.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1000);
+        var ss = new SelectServer(tcp, clientThreads);
+        var t = new Thread(ss);
+        t.start();
+        try {
+            measure("Selector", ((InetSocketAddress)tcp.getLocalAddress()).getPort());
+        } finally {
+            ss.Close();
+            t.join();
+        }
+    }
+
+    @Test
+    public void testSlowClients() throws Exception {
+        var tcp = ServerSocketChannel.open();
+        tcp.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1000);
+        var ss = new SelectServer(tcp, 1);
+        var t = new Thread(ss);
+        t.start();
+        var port = ((InetSocketAddress)tcp.getLocalAddress()).getPort();
+        var slow = new ArrayList<Socket>();
+        try {
+            // a full frame, which is never the last of a request, starting
+            // a database name longer than the frame (see WriterBase.PutLong)
+            var frame = new byte[Buffer.Size];
+            frame[0] = (byte) ((Buffer.Size - 2) >> 7);
+            frame[1] = (byte) ((Buffer.Size - 2) & 0x7f);
+            frame[2] = 2;
+            frame[3] = (byte) ((4 * Buffer.Size) >> 8);
+            frame[4] = (byte) (4 * Buffer.Size);
+            for (var i = 0; i < 4; i++) {
+                var sk = new Socket(InetAddress.getLoopbackAddress(), port);
+                sk.getOutputStream().write(frame);
+                sk.getOutputStream().flush();
+                slow.add(sk);
+            }
+            Thread.sleep(100); // for the selector thread to read them
+            tml.setTestCaseName("Slow clients");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var conn = new StrongConnect("127.0.0.1", port, name);
+            try {
+                for (var i = 0; i < 100; i++)
+                    conn.ExecuteQuery("select from _Tables");
+                // more frames than SelectServer.maxFrames in one request
+                var sb = new StringBuilder("select from _Tables where Name='");
+                while (sb.length() < 2 * SelectServer.maxFrames * Buffer.Size)
+                    sb.append("slow");
+                assertEquals(0, conn.ExecuteQuery(sb.append("'").toString()).getLength());
+            } finally {
+                conn.Close();
+            }
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(101);
+            TestServer.Report("Slow clients", 101, "queries", el,
+                    ", " + slow.size() + " clients part way through a request, 1 worker");
+            // a worker waiting for one of them would have taken seconds
+            assertTrue(el < 2000000000L);
+        } finally {
+            for (var sk : slow)
+                sk.close();
+            ss.Close();
+            t.join();
+        }
+    }
+}
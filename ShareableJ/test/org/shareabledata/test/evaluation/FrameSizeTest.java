@@ -0,0 +1,125 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Throughput over loopback with the fixed 1K frames of older servers
+ * and with the largest frames a connection can agree
+ * (see StrongConnect.FrameSize): a bulk insert, sent as Insert
+ * requests of many rows each, and a large query result read with ExecuteQuery.
+ * Each row has a string of about 100 bytes. There are 100000 rows unless
+ * -Drows says otherwise.
+ * @author Malcolm
+ */
+public class FrameSizeTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 100000);
+    private static final int batch = 1000; // rows per Insert request
+    private static final String text = "x".repeat(90);
+
+    public FrameSizeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("FrameSizeTest");
+        tml = server.tml;
+        var tr = server.Transact();
+        tr = TestServer.Table(tr, "T", null, "A", Types.SInteger, "B", Types.SString);
+        tr = TestServer.Table(tr, "R", null, "A", Types.SInteger, "B", Types.SString);
+        server.Commit(tr);
+        // T is for testBulkInsert, R for testLargeResult
+        server.Load("R", numberOfRows, j -> new Serialisable[] {
+            new SInteger(j), new SString(text + j) });
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static StrongConnect connect(int frameSize) throws Exception {
+        var conn = server.Connect();
+        if (frameSize != Buffer.Size)
+            assertEquals(frameSize, conn.FrameSize(frameSize));
+        return conn;
+    }
+
+    private static void report(String caseName, long el) {
+        TestServer.Report(caseName, numberOfRows, "rows", el);
+    }
+
+    private static int count(StrongConnect conn, String tn) throws Exception {
+        return conn.ExecuteQuery("select from " + tn).getLength();
+    }
+
+    @Test
+    public void testBulkInsert() throws Exception {
+        var cols = new String[] { "A", "B" };
+        var pass = 0;
+        for (var size : new int[] { Buffer.Size, Buffer.MaxSize }) {
+            var conn = connect(size);
+            try {
+                var caseName = "Bulk insert, " + size / 1024 + "K frames";
+                tml.setTestCaseName(caseName);
+                tml.setInitialTimeAndMemory();
+                var s = System.nanoTime();
+                for (var i = 0; i < numberOfRows; i += batch) {
+                    var rows = new Serialisable[Math.min(batch, numberOfRows - i)][];
+                    for (var j = 0; j < rows.length; j++) {
+                        var k = pass * numberOfRows + i + j;
+                        rows[j] = new Serialisable[] { new SInteger(k),
+                            new SString(text + k) };
+                    }
+                    conn.Insert("T", cols, rows);
+                }
+                var el = System.nanoTime() - s;
+                tml.logTimeAndMemoryUsage(numberOfRows);
+                report(caseName, el);
+                assertEquals((pass + 1) * numberOfRows, count(conn, "T"));
+            } finally {
+                conn.Close();
+            }
+            pass++;
+        }
+    }
+
+    @Test
+    public void testLargeResult() throws Exception {
+        for (var size : new int[] { Buffer.Size, Buffer.MaxSize }) {
+            var conn = connect(size);
+            try {
+                var caseName = "Large result, " + size / 1024 + "K frames";
+                tml.setTestCaseName(caseName);
+                tml.setInitialTimeAndMemory();
+                var s = System.nanoTime();
+                assertEquals(numberOfRows, count(conn, "R"));
+                var el = System.nanoTime() - s;
+                tml.logTimeAndMemoryUsage(numberOfRows);
+                report(caseName, el);
+            } finally {
+                conn.Close();
+            }
+        }
+    }
+}
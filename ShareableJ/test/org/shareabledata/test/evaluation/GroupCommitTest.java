@@ -0,0 +1,168 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * A commit must not be installed, and so seen by other sessions or by
+ * read-only autocommits, before GroupCommit has forced it: the batch is
+ * held open by a committer that has entered but not yet synced, so the
+ * leader waits for maxDelay before forcing. If the force fails, the commit
+ * is never installed, and every later commit to the file fails too.
+ * @author Malcolm
+ */
+public class GroupCommitTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "GroupCommitTest";
+    private static final long delay = 2000000; // microseconds: the leader's wait
+    private static long maxDelay;
+
+    public GroupCommitTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+        maxDelay = GroupCommit.maxDelay;
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("GroupCommitTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        delete();
+        var db = SDatabase.Open(path, name);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        tr = TestServer.Table(tr, "T", "A", "A", Types.SInteger);
+        tr.Commit();
+        GroupCommit.maxDelay = delay;
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        GroupCommit.maxDelay = maxDelay;
+        SDatabase.Open(path, name).Close();
+        delete();
+        Runtime.getRuntime().gc();
+    }
+
+    private static void delete() {
+        new File(path, name).delete();
+        new File(path, name + ".ckpt").delete();
+    }
+
+    private static int rows(SDatabase db) {
+        var t = (STable) db.objects.get(db.role.globalNames.get("T"));
+        return (t.rows == null) ? 0 : t.rows.Length;
+    }
+
+    private static STransaction insert(SDatabase db, int a) throws Exception {
+        return TestServer.Row(db.Transact(new ReaderBase() {}, false), "T", new SInteger(a));
+    }
+
+    /// <summary>
+    /// Commit tr on another thread, with the batch held open by another
+    /// committer, and return once its records are in the file: the leader
+    /// is then waiting for the batch to fill before it forces it
+    /// </summary>
+    private static Thread commitHeld(STransaction tr, LogFile f,
+            AtomicReference<Object> result) throws Exception {
+        var length = f.length();
+        var t = new Thread(() -> {
+            try {
+                result.set(tr.Commit().key);
+            } catch (Exception e) {
+                result.set(e);
+            }
+        });
+        t.start();
+        while (f.length() == length) {
+            assertTrue(t.isAlive());
+            Thread.sleep(1);
+        }
+        return t;
+    }
+
+    @Test
+    public void testInstalledWhenDurable() throws Exception {
+        var db = SDatabase.Open(path, name);
+        var f = db.File();
+        var result = new AtomicReference<Object>();
+        f.group.Enter(); // another committer is on its way
+        Thread t;
+        try {
+            tml.setTestCaseName("Commit held for a batch");
+            tml.setInitialTimeAndMemory();
+            t = commitHeld(insert(db, 1), f, result);
+            // written but not yet forced: nobody else may see it
+            assertTrue(SDatabase.Open(path, name) == db);
+            var ro = db.Transact(new ReaderBase() {}, true);
+            assertEquals(0, rows(ro.MaybeAutoCommit().key));
+            // a commit meanwhile builds on it, from the file
+            var other = insert(db, 2);
+            assertTrue(t.isAlive());
+            other.Commit();
+        } finally {
+            f.group.Leave();
+        }
+        t.join();
+        tml.logTimeAndMemoryUsage(1);
+        assertTrue(String.valueOf(result.get()), result.get() instanceof SDatabase);
+        db = SDatabase.Open(path, name);
+        assertEquals(2, rows(db));
+        db.Close();
+        db = SDatabase.Open(path, name);
+        assertEquals(2, rows(db));
+    }
+
+    @Test
+    public void testForceFails() throws Exception {
+        var db = SDatabase.Open(path, name);
+        db = insert(db, 1).Commit().key;
+        var f = db.File();
+        var result = new AtomicReference<Object>();
+        f.group.Enter();
+        try {
+            var t = commitHeld(insert(db, 2), f, result);
+            f.channel.close(); // the leader's force will fail
+            t.join();
+        } finally {
+            f.group.Leave();
+        }
+        assertTrue(String.valueOf(result.get()), result.get() instanceof Exception);
+        // the commit is not installed, and nothing more can be committed
+        var installed = SDatabase.Open(path, name);
+        assertTrue(installed == db);
+        assertEquals(1, rows(installed));
+        try {
+            insert(installed, 3).Commit();
+            fail("committed to a file that could not be forced");
+        } catch (Exception e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("could not be forced"));
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * WriterBase.PutLong and ReaderBase.GetLong against PutInteger and
+ * GetInteger with a Bigint: the bytes must be the same, and must be those
+ * of java.math.BigInteger.toByteArray (none for 0), so that files and
+ * messages written either way can be read either way. Then the time for
+ * each way over 1000000 random values of random length.
+ * @author Malcolm
+ */
+public class IntegerCodingTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfValues = 1000000;
+    private static long[] values;
+    private static final long[] boundaries = { 0, 1, -1, 127, -127, 128, -128,
+        129, -129, 255, -255, 256, -256, 32767, -32768, 32768, -32769, 65535,
+        -65535, 65536, -65536, Integer.MAX_VALUE, Integer.MIN_VALUE,
+        Integer.MAX_VALUE + 1L, Integer.MIN_VALUE - 1L, 1L << 55, -(1L << 55),
+        (1L << 56) - 1, -(1L << 56), Long.MAX_VALUE - 1, Long.MIN_VALUE + 1,
+        Long.MAX_VALUE, Long.MIN_VALUE };
+
+    public IntegerCodingTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+        var r = new Random(0);
+        values = new long[numberOfValues];
+        for (int i = 0; i < numberOfValues; i++)
+            values[i] = r.nextLong() >> r.nextInt(64);
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("IntegerCodingTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    static class ByteWriter extends WriterBase {
+        final ByteArrayOutputStream os = new ByteArrayOutputStream();
+        @Override
+        public void WriteByte(byte value) {
+            os.write(value);
+        }
+        byte[] Bytes() {
+            return os.toByteArray();
+        }
+    }
+
+    static class ByteReader extends ReaderBase {
+        final byte[] bs;
+        int pos = 0;
+        ByteReader(byte[] b) {
+            bs = b;
+        }
+        @Override
+        public int ReadByte() {
+            return bs[pos++] & 0xff;
+        }
+    }
+
+    /// The length byte and the minimal two's complement bytes of n
+    private static byte[] expected(BigInteger n) {
+        var b = (n.signum() == 0) ? new byte[0] : n.toByteArray();
+        var r = new byte[b.length + 1];
+        r[0] = (byte) b.length;
+        System.arraycopy(b, 0, r, 1, b.length);
+        return r;
+    }
+
+    private static byte[] putLong(long n) throws Exception {
+        var w = new ByteWriter();
+        w.PutLong(n);
+        return w.Bytes();
+    }
+
+    private static byte[] putInteger(Bigint n) throws Exception {
+        var w = new ByteWriter();
+        w.PutInteger(n);
+        return w.Bytes();
+    }
+
+    private static void check(long n) throws Exception {
+        var e = expected(BigInteger.valueOf(n));
+        var a = putLong(n);
+        assertArrayEquals("PutLong(" + n + ")", e, a);
+        assertArrayEquals("new Bigint(" + n + ")", e, putInteger(new Bigint(n)));
+        assertEquals("GetLong " + n, n, new ByteReader(a).GetLong());
+        var r = new ByteReader(a);
+        assertArrayEquals("GetInteger " + n, Arrays.copyOfRange(a, 1, a.length),
+                r.GetInteger().bytes);
+        assertEquals(a.length, r.pos);
+        if (n == (int) n) {
+            var w = new ByteWriter();
+            w.PutInt((int) n);
+            assertArrayEquals("PutInt(" + n + ")", e, w.Bytes());
+            assertEquals("GetInt " + n, (int) n, new ByteReader(a).GetInt());
+        }
+        checkSInteger(new SInteger(new Bigint(n)), BigInteger.valueOf(n));
+    }
+
+    /// An SInteger is written with its type byte, and read back by SInteger.Get
+    private static void checkSInteger(SInteger s, BigInteger n) throws Exception {
+        var w = new ByteWriter();
+        s.Put(w);
+        var a = w.Bytes();
+        assertEquals(s.type, a[0]);
+        assertArrayEquals("SInteger " + n, expected(n), Arrays.copyOfRange(a, 1, a.length));
+        var r = new ByteReader(a);
+        assertEquals(s.type, r.ReadByte());
+        var t = (SInteger) SInteger.Get(r);
+        assertEquals(a.length, r.pos);
+        assertEquals(s.type, t.type);
+        assertEquals(0, s.compareTo(t));
+        assertEquals(n.toString(), (t.big == null) ? Integer.toString(t.value)
+                : t.big.toString());
+    }
+
+    @Test
+    public void testBoundaries() throws Exception {
+        for (var n : boundaries)
+            check(n);
+    }
+
+    @Test
+    public void testRandom() throws Exception {
+        for (var n : values)
+            check(n);
+    }
+
+    @Test
+    public void testBeyondLong() throws Exception {
+        var one = BigInteger.ONE;
+        var max = BigInteger.valueOf(Long.MAX_VALUE);
+        var min = BigInteger.valueOf(Long.MIN_VALUE);
+        for (var n : new BigInteger[] { max.add(one), max.add(one).add(one),
+            min.subtract(one), min.subtract(one).subtract(one),
+            one.shiftLeft(64), one.shiftLeft(64).negate() }) {
+            var b = Bigint.Parse(n.toString());
+            var a = putInteger(b);
+            assertArrayEquals("Bigint " + n, expected(n), a);
+            // GetLong gives the low 64 bits of an integer that is too long
+            assertEquals("GetLong " + n, n.longValue(), new ByteReader(a).GetLong());
+            checkSInteger(new SInteger(b), n);
+        }
+    }
+
+    @Test
+    public void testWriteTimes() throws Exception {
+        tml.setTestCaseName("PutInteger(new Bigint(n))");
+        tml.setInitialTimeAndMemory();
+        var w = new ByteWriter();
+        for (var n : values)
+            w.PutInteger(new Bigint(n));
+        tml.logTimeAndMemoryUsage(numberOfValues);
+        tml.setTestCaseName("PutLong(n)");
+        tml.setInitialTimeAndMemory();
+        var v = new ByteWriter();
+        for (var n : values)
+            v.PutLong(n);
+        tml.logTimeAndMemoryUsage(numberOfValues);
+        assertTrue("PutLong and PutInteger differ", Arrays.equals(w.Bytes(), v.Bytes()));
+    }
+
+    @Test
+    public void testReadTimes() throws Exception {
+        var w = new ByteWriter();
+        for (var n : values)
+            w.PutLong(n);
+        var a = w.Bytes();
+        tml.setTestCaseName("GetInteger()");
+        tml.setInitialTimeAndMemory();
+        var r = new ByteReader(a);
+        for (int i = 0; i < numberOfValues; i++)
+            r.GetInteger();
+        tml.logTimeAndMemoryUsage(numberOfValues);
+        tml.setTestCaseName("GetLong()");
+        tml.setInitialTimeAndMemory();
+        r = new ByteReader(a);
+        for (int i = 0; i < numberOfValues; i++)
+            assertEquals(values[i], r.GetLong());
+        tml.logTimeAndMemoryUsage(numberOfValues);
+    }
+}
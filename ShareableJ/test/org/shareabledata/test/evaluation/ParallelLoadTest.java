@@ -0,0 +1,144 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Loading a database with the parallel decoder must give exactly the
+ * database that the serial loop gives.
+ * @author Malcolm
+ */
+public class ParallelLoadTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = 100000;
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "ParallelLoadTest";
+
+    public ParallelLoadTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        tml = new TimeAndMemoryLogger();
+        new File(path, name).delete();
+        new File(path, name + ".ckpt").delete();
+        var db = SDatabase.Open(path, name);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        var tb = new STable(tr);
+        tr = (STransaction) tr.Add(tb, "T", tr.curpos);
+        tr = (STransaction) tr.Add(new SColumn(tr, tb.uid, Types.SInteger,
+                new SDict<String, SFunction>()), "A", tr.curpos);
+        tr = (STransaction) tr.Add(new SColumn(tr, tb.uid, Types.SString,
+                new SDict<String, SFunction>()), "B", tr.curpos);
+        var a = ((STable) tr.objects.get(tb.uid)).FindForRole(tr, "A").uid;
+        tr = (STransaction) tr.Add(new SIndex(tr, tb.uid, true, -1L,
+                new SList<Long>(a)), tr.curpos);
+        tr.Commit();
+        for (int i = 0; i < numberOfRows;) {
+            db = SDatabase.Open(path, name);
+            tr = db.Transact(new ReaderBase() {}, false);
+            var t = (STable) tr.objects.get(tr.role.globalNames.get("T"));
+            var ca = t.FindForRole(tr, "A").uid;
+            var cb = t.FindForRole(tr, "B").uid;
+            for (int j = 0; j < 10000; j++, i++)
+                tr = (STransaction) tr.Add(new SRecord(tr, t.uid,
+                        new SDict<Long, Serialisable>(ca, new SInteger(i))
+                                .Add(cb, new SString("row" + i))), tr.curpos);
+            // change and remove some committed rows
+            var n = 0;
+            for (var c = (t.rows == null) ? null : t.rows.Cursor();
+                    c != null && c.Advance() && n < 1000; n++) {
+                var r = db.Get(c.Value());
+                tr = (STransaction) ((n % 2 == 0)
+                        ? tr.Add(new SUpdate(tr, r, new SDict<Long, Serialisable>(ca,
+                                new SInteger(-i - n)).Add(cb, new SString("updated"))),
+                                tr.curpos)
+                        : tr.Add(new SDelete(tr, r), tr.curpos));
+            }
+            tr.Commit();
+        }
+        SDatabase.Open(path, name).Close();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        new File(path, name).delete();
+        try {
+            tml.writeToCSV("ParallelLoadTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private SDatabase load(String caseName, long parallelLoad) throws Exception {
+        var p = SDatabase.parallelLoad;
+        SDatabase.parallelLoad = parallelLoad;
+        try {
+            tml.setTestCaseName(caseName);
+            tml.setInitialTimeAndMemory();
+            var db = SDatabase.Open(path, name);
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            db.Close();
+            return db;
+        } finally {
+            SDatabase.parallelLoad = p;
+        }
+    }
+
+    @Test
+    public void testSameAsSerial() throws Exception {
+        var s = load("Serial load", Long.MAX_VALUE);
+        var p = load("Parallel load", 0);
+        assertEquals(s.curpos, p.curpos);
+        assertEquals(s.objects.Length, p.objects.Length);
+        var c = s.objects.Cursor();
+        var d = p.objects.Cursor();
+        while (c.Advance()) {
+            assertTrue(d.Advance());
+            assertEquals(c.LongKey(), d.LongKey());
+            var x = c.Value();
+            var y = d.Value();
+            assertEquals(x.type, y.type);
+            if (x instanceof STable) {
+                var xr = ((STable) x).rows;
+                var yr = ((STable) y).rows;
+                if (xr == null) {
+                    assertNull(yr);
+                    continue;
+                }
+                assertEquals(xr.Length, yr.Length);
+                for (var e = xr.Cursor(); e.Advance();)
+                    assertEquals(e.Value(), yr.Lookup(e.LongKey()));
+            } else if (x instanceof SIndex) {
+                var b = ((SIndex) x).Rows().First();
+                var f = ((SIndex) y).Rows().First();
+                for (; b != null; b = b.Next(), f = f.Next()) {
+                    assertNotNull(f);
+                    assertEquals(0, b.getValue().key.compareTo(f.getValue().key));
+                    assertEquals(b.getValue().val, f.getValue().val);
+                }
+                assertNull(f);
+            }
+        }
+        assertFalse(d.Advance());
+    }
+}
@@ -0,0 +1,311 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.net.Socket;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * TPC-C style NewOrder transactions over loopback: read the district and
+ * the item and stock of each order line, then update the district and the
+ * stock and insert the order and its lines. Without pipelining each
+ * statement is a round trip; with a ClientPipeline the reads are one round
+ * trip and the writes and commit another. Then a pipeline with a failing
+ * request, whose transaction is rolled back, one whose transaction goes on
+ * in later messages, which are not done until a Rollback, and a failing
+ * request from a client whose last frame is full.
+ * There are 500 transactions of 10 order lines unless -Dtransactions
+ * says otherwise.
+ * @author Malcolm
+ */
+public class PipelineTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfTransactions = Integer.getInteger("transactions", 500);
+    private static final int districts = 10;
+    private static final int items = 1000;
+    private static final int lines = 10; // order lines in each transaction
+
+    public PipelineTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("PipelineTest");
+        tml = server.tml;
+        var tr = server.Transact();
+        tr = TestServer.Table(tr, "DISTRICT", "D_ID", "D_ID", Types.SInteger,
+                "D_NEXT_O_ID", Types.SInteger);
+        tr = TestServer.Table(tr, "ITEM", "I_ID", "I_ID", Types.SInteger,
+                "I_PRICE", Types.SNumeric, "I_NAME", Types.SString);
+        tr = TestServer.Table(tr, "STOCK", "S_I_ID", "S_I_ID", Types.SInteger,
+                "S_QUANTITY", Types.SInteger);
+        tr = TestServer.Table(tr, "ORDERS", null, "O_ID", Types.SInteger,
+                "O_D_ID", Types.SInteger, "O_OL_CNT", Types.SInteger);
+        tr = TestServer.Table(tr, "NEW_ORDER", null, "NO_O_ID", Types.SInteger,
+                "NO_D_ID", Types.SInteger);
+        tr = TestServer.Table(tr, "ORDER_LINE", null, "OL_O_ID", Types.SInteger,
+                "OL_D_ID", Types.SInteger, "OL_NUMBER", Types.SInteger,
+                "OL_I_ID", Types.SInteger, "OL_QUANTITY", Types.SInteger,
+                "OL_AMOUNT", Types.SNumeric);
+        server.Commit(tr);
+        tr = server.Transact();
+        for (var d = 1; d <= districts; d++)
+            tr = TestServer.Row(tr, "DISTRICT", new SInteger(d), new SInteger(1));
+        for (var i = 1; i <= items; i++) {
+            tr = TestServer.Row(tr, "ITEM", new SInteger(i),
+                    new SNumeric(new Numeric(i % 100 + 0.5)), new SString("Item " + i));
+            tr = TestServer.Row(tr, "STOCK", new SInteger(i), new SInteger(100));
+        }
+        server.Commit(tr);
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static void report(String caseName, long el) {
+        TestServer.Report(caseName, numberOfTransactions, "NewOrders", el);
+    }
+
+    private static int intOf(Document d, String c) {
+        return ((Number) d.get(c)).intValue();
+    }
+
+    private static int[] order(Random rnd) {
+        var r = new int[lines];
+        for (var k = 0; k < lines; k++)
+            r[k] = 1 + (k * items / lines + rnd.nextInt(items / lines));
+        return r;
+    }
+
+    private static int orders(StrongConnect conn) throws Exception {
+        return conn.ExecuteQuery("select from ORDERS").getLength();
+    }
+
+    private static void newOrder(StrongConnect conn, Random rnd) throws Exception {
+        var d = 1 + rnd.nextInt(districts);
+        var it = order(rnd);
+        conn.BeginTransaction();
+        var o = intOf(conn.ExecuteQuery("select from DISTRICT where D_ID=" + d).get(0),
+                "D_NEXT_O_ID");
+        conn.ExecuteNonQuery("update DISTRICT where D_ID=" + d
+                + " set D_NEXT_O_ID=" + (o + 1));
+        conn.ExecuteNonQuery("insert ORDERS values(" + o + "," + d + "," + lines + ")");
+        conn.ExecuteNonQuery("insert NEW_ORDER values(" + o + "," + d + ")");
+        for (var k = 0; k < lines; k++) {
+            var q = 1 + rnd.nextInt(10);
+            var price = ((Numeric) conn.ExecuteQuery("select from ITEM where I_ID="
+                    + it[k]).get(0).get("I_PRICE")).toDouble();
+            var s = intOf(conn.ExecuteQuery("select from STOCK where S_I_ID="
+                    + it[k]).get(0), "S_QUANTITY");
+            conn.ExecuteNonQuery("update STOCK where S_I_ID=" + it[k]
+                    + " set S_QUANTITY=" + ((s >= q + 10) ? s - q : s - q + 91));
+            conn.ExecuteNonQuery("insert ORDER_LINE values(" + o + "," + d + ","
+                    + (k + 1) + "," + it[k] + "," + q + "," + q * price + ")");
+        }
+        conn.Commit();
+    }
+
+    private static void pipelinedNewOrder(ClientPipeline p, Random rnd) throws Exception {
+        var d = 1 + rnd.nextInt(districts);
+        var it = order(rnd);
+        // the reads: one round trip
+        p.BeginTransaction();
+        var df = p.ExecuteQuery("select from DISTRICT where D_ID=" + d);
+        var pf = new CompletableFuture[lines];
+        var sf = new CompletableFuture[lines];
+        for (var k = 0; k < lines; k++) {
+            pf[k] = p.ExecuteQuery("select from ITEM where I_ID=" + it[k]);
+            sf[k] = p.ExecuteQuery("select from STOCK where S_I_ID=" + it[k]);
+        }
+        p.Sync();
+        // the writes and the commit: another
+        var o = intOf(df.get().get(0), "D_NEXT_O_ID");
+        p.ExecuteNonQuery("update DISTRICT where D_ID=" + d + " set D_NEXT_O_ID=" + (o + 1));
+        p.ExecuteNonQuery("insert ORDERS values(" + o + "," + d + "," + lines + ")");
+        p.ExecuteNonQuery("insert NEW_ORDER values(" + o + "," + d + ")");
+        for (var k = 0; k < lines; k++) {
+            var q = 1 + rnd.nextInt(10);
+            var price = ((Numeric) ((DocArray) pf[k].get()).get(0).get("I_PRICE")).toDouble();
+            var s = intOf(((DocArray) sf[k].get()).get(0), "S_QUANTITY");
+            p.ExecuteNonQuery("update STOCK where S_I_ID=" + it[k]
+                    + " set S_QUANTITY=" + ((s >= q + 10) ? s - q : s - q + 91));
+            p.ExecuteNonQuery("insert ORDER_LINE values(" + o + "," + d + ","
+                    + (k + 1) + "," + it[k] + "," + q + "," + q * price + ")");
+        }
+        var c = p.Commit();
+        p.Sync();
+        c.get();
+    }
+
+    @Test
+    public void testNewOrder() throws Exception {
+        var conn = server.Connect();
+        try {
+            var n = orders(conn);
+            var rnd = new Random(1);
+            tml.setTestCaseName("NewOrder");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            for (var i = 0; i < numberOfTransactions; i++)
+                newOrder(conn, rnd);
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfTransactions);
+            report("NewOrder", el);
+            assertEquals(n + numberOfTransactions, orders(conn));
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testPipelinedNewOrder() throws Exception {
+        var conn = server.Connect();
+        try {
+            var n = orders(conn);
+            var rnd = new Random(1);
+            tml.setTestCaseName("Pipelined NewOrder");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var p = conn.Pipeline();
+            for (var i = 0; i < numberOfTransactions; i++)
+                pipelinedNewOrder(p, rnd);
+            p.Close();
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfTransactions);
+            report("Pipelined NewOrder", el);
+            assertEquals(n + numberOfTransactions, orders(conn));
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testFailure() throws Exception {
+        var conn = server.Connect();
+        try {
+            var n = orders(conn);
+            var p = conn.Pipeline();
+            p.BeginTransaction();
+            var a = p.ExecuteNonQuery("insert ORDERS values(-1,1,0)");
+            var b = p.ExecuteNonQuery("insert NO_SUCH_TABLE values(-1,1)");
+            var c = p.ExecuteNonQuery("insert ORDERS values(-2,1,0)");
+            var d = p.Commit();
+            p.Flush();
+            var e = p.ExecuteQuery("select from ORDERS");
+            p.Close();
+            assertEquals(Types.Done, a.get().proto);
+            for (var f : new CompletableFuture[] { b, c, d })
+                try {
+                    f.get();
+                    fail("expected a ServerException");
+                } catch (ExecutionException x) {
+                    assertTrue(x.getCause() instanceof ServerException);
+                }
+            // the transaction was rolled back, and the next message was done
+            assertEquals(n, e.get().getLength());
+            assertFalse(conn.inTransaction);
+            assertEquals(n, orders(conn));
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testFailedTransaction() throws Exception {
+        var conn = server.Connect();
+        try {
+            var n = orders(conn);
+            var p = conn.Pipeline();
+            p.BeginTransaction();
+            p.ExecuteNonQuery("insert ORDERS values(-3,1,0)");
+            var a = p.ExecuteNonQuery("insert NO_SUCH_TABLE values(-3,1)");
+            p.Flush();
+            // more of the transaction, sent before the failure is known:
+            // none of it is done, and nothing is autocommitted
+            var b = p.ExecuteNonQuery("insert ORDERS values(-4,1,0)");
+            p.Flush();
+            var c = p.ExecuteNonQuery("insert ORDERS values(-5,1,0)");
+            var d = p.Commit();
+            p.Flush();
+            var e = p.Rollback();
+            var f = p.ExecuteQuery("select from ORDERS");
+            p.Sync();
+            for (var x : new CompletableFuture[] { a, b, c, d })
+                try {
+                    x.get();
+                    fail("expected a ServerException");
+                } catch (ExecutionException ex) {
+                    assertTrue(ex.getCause() instanceof ServerException);
+                }
+            assertEquals(Types.Done, e.get().proto);
+            assertEquals(n, f.get().getLength());
+            // after the Rollback, transactions are carried out as usual
+            p.BeginTransaction();
+            p.ExecuteNonQuery("insert ORDERS values(-6,1,0)");
+            p.Flush();
+            p.ExecuteNonQuery("insert ORDERS values(-7,1,0)");
+            var g = p.Commit();
+            p.Close();
+            assertEquals(Types.Done, g.get().proto);
+            assertFalse(conn.inTransaction);
+            assertEquals(n + 2, orders(conn));
+        } finally {
+            conn.Close();
+        }
+    }
+
+    /// A client without PutLast, such as the C# client, can end a failing
+    /// request with a full frame: the server must reply without waiting
+    /// for another frame
+    @Test
+    public void testFullLastFrame() throws Exception {
+        try (var s = new Socket("127.0.0.1", server.Port())) {
+            s.setSoTimeout(10000);
+            var f = new byte[Buffer.Size];
+            var nm = server.name.getBytes("UTF-8");
+            f[1] = (byte) (nm.length + 2); // the database name as a string
+            f[2] = 1;
+            f[3] = (byte) nm.length;
+            System.arraycopy(nm, 0, f, 4, nm.length);
+            var out = s.getOutputStream();
+            var in = s.getInputStream();
+            out.write(f);
+            in.readNBytes(Buffer.Size);
+            // an Insert into a table that does not exist, in a full frame
+            f = new byte[Buffer.Size];
+            f[0] = (byte) ((Buffer.Size - 2) >> 7);
+            f[1] = (byte) ((Buffer.Size - 2) & 0x7f);
+            f[2] = Types.Insert;
+            f[3] = 1;
+            f[4] = 99;
+            out.write(f);
+            var r = in.readNBytes(Buffer.Size);
+            assertEquals(Buffer.Size, r.length);
+            assertEquals(Buffer.Size - 1, (r[0] << 7) + r[1]); // an exception
+            assertEquals(Types.Exception, r[4]);
+        }
+    }
+}
@@ -0,0 +1,135 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Repeated point queries on an indexed column, as SQL text that is parsed
+ * and planned each time (ExecuteQuery), and as a prepared statement with a
+ * parameter (StrongConnect.PrepareStatement) that the server keeps with its
+ * access path. Then a prepared query on a column without an index, which
+ * the server plans again once an index has been created.
+ * The table has 100000 rows, and there are 10000 queries unless -Dqueries
+ * says otherwise.
+ * @author Malcolm
+ */
+public class PreparedStatementTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = 100000;
+    private static final int numberOfQueries = Integer.getInteger("queries", 10000);
+
+    public PreparedStatementTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("PreparedStatementTest");
+        tml = server.tml;
+        var tr = TestServer.Table(server.Transact(), "T", "A",
+                "A", Types.SInteger, "B", Types.SString);
+        server.Commit(tr);
+        server.Load("T", numberOfRows, j -> new Serialisable[] {
+            new SInteger(j), new SString("Row " + j) });
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static void report(String caseName, int n, long el) {
+        TestServer.Report(caseName, n, "queries", el);
+    }
+
+    private static int key(int i) {
+        return (int) ((i * 7919L) % numberOfRows);
+    }
+
+    @Test
+    public void testAdHoc() throws Exception {
+        var conn = server.Connect();
+        try {
+            tml.setTestCaseName("Ad hoc");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            for (var i = 0; i < numberOfQueries; i++) {
+                var rs = conn.ExecuteQuery("select from T where A=" + key(i));
+                assertEquals(key(i), ((Number) rs.get(0).get("A")).intValue());
+            }
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfQueries);
+            report("Ad hoc", numberOfQueries, el);
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testPrepared() throws Exception {
+        var conn = server.Connect();
+        try {
+            tml.setTestCaseName("Prepared");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var ps = conn.PrepareStatement("select from T where A=?");
+            for (var i = 0; i < numberOfQueries; i++) {
+                var rs = ps.ExecuteQuery(new SInteger(key(i)));
+                assertEquals(key(i), ((Number) rs.get(0).get("A")).intValue());
+            }
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfQueries);
+            report("Prepared", numberOfQueries, el);
+            assertSame(ps, conn.PrepareStatement("select from T where A=?"));
+            assertTrue(ps.ExecuteQuery(new SInteger(-1)).IsEmpty());
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testReplanned() throws Exception {
+        var conn = server.Connect();
+        try {
+            var n = 10; // each is a scan of the table
+            var ps = conn.PrepareStatement("select from T where B=?");
+            var s = System.nanoTime();
+            for (var i = 0; i < n; i++)
+                assertEquals(key(i), ((Number) ps.ExecuteQuery(
+                        new SString("Row " + key(i))).get(0).get("A")).intValue());
+            report("Prepared, no index", n, System.nanoTime() - s);
+            // the new index invalidates the statement on the server
+            conn.CreateIndex("T", IndexType.Unique, null, "B");
+            tml.setTestCaseName("Replanned");
+            tml.setInitialTimeAndMemory();
+            n = numberOfQueries / 10;
+            s = System.nanoTime();
+            for (var i = 0; i < n; i++)
+                assertEquals(key(i), ((Number) ps.ExecuteQuery(
+                        new SString("Row " + key(i))).get(0).get("A")).intValue());
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(n);
+            report("Prepared, index created", n, el);
+        } finally {
+            conn.Close();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.util.ArrayList;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Selects that decode only the columns they use (see STable.Projection)
+ * must give the same results as decoding whole records
+ * (STable.projections = false). The table has a column of each type that
+ * Reader.SkipValue skips, some nulls, and a log with updates and deletes,
+ * so that SUpdate records are read with their oldfields skipped.
+ * Records are also read directly with a set of columns, and a partial
+ * record is updated and deleted after SDatabase.Full. Table G has a
+ * generated column, so selects of it are never projected.
+ * There are 20000 rows unless -Drows says otherwise.
+ * @author Malcolm
+ */
+public class ProjectionTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 20000);
+    private static final String[] columns = { "K", "I", "N", "S", "D", "T", "B", "X", "W" };
+    // each query, and whether it can decode only some columns
+    private static final Object[][] queries = {
+        { "select from P", false },
+        { "select K,S from P", true },
+        { "select N,D from P where I>500", true },
+        { "select K,S,T,X from P where K=3", true }, // by the index
+        { "select K from P where B=true orderby I desc", true },
+        { "select B,count(K),sum(I) from P groupby B", true },
+        { "select S,count(K) from P where I<500 groupby S", true },
+        { "select S as Y,I from P where I<10", true },
+        { "select K,S from P Q where I<10", true },
+    };
+
+    public ProjectionTest() {
+    }
+
+    private static Serialisable[] row(int i) throws Exception {
+        return new Serialisable[] {
+            new SInteger(i),
+            new SInteger(i % 1000),
+            new SNumeric(new Numeric((double) i / 8)),
+            new SString("s" + (i % 97)),
+            (i % 5 == 0) ? Serialisable.Null
+                    : new SDate(2000 + i % 20, 1 + i % 12, 1 + i % 28, i % 24, i % 60, i % 60, 0),
+            new STimeSpan(i % 2 == 0, i % 30, i % 24, i % 60, i % 60, 0),
+            (i % 3 == 0) ? SBoolean.True : SBoolean.False,
+            new SInteger(Bigint.Parse("123456789012345678901234567890" + i)),
+            new SString("w" + i + "x".repeat(200))
+        };
+    }
+
+    private static STable table(SDatabase db, String n) {
+        return (STable) db.objects.get(db.role.globalNames.get(n));
+    }
+
+    private static long column(SDatabase db, String n) throws Exception {
+        return table(db, "P").FindForRole(db, n).uid;
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("ProjectionTest");
+        tml = server.tml;
+        var tr = server.Transact();
+        tr = TestServer.Table(tr, "P", "K", "K", Types.SInteger, "I", Types.SInteger,
+                "N", Types.SNumeric, "S", Types.SString, "D", Types.SDate,
+                "T", Types.STimeSpan, "B", Types.SBoolean, "X", Types.SInteger,
+                "W", Types.SString);
+        server.Commit(tr);
+        server.Load("P", numberOfRows, i -> {
+            try {
+                return row(i);
+            } catch (Exception e) {
+                throw new RuntimeException(e);
+            }
+        });
+        // update a third of the rows, some twice, and delete some
+        var ci = column(server.db, "I");
+        var cs = column(server.db, "S");
+        var cd = column(server.db, "D");
+        for (var pass = 0; pass < 2; pass++) {
+            tr = server.Transact();
+            var n = 0;
+            for (var b = table(server.db, "P").rows.Cursor(); b.Advance(); n++) {
+                if (n % (3 + pass) != 0)
+                    continue;
+                var r = server.db.Get(b.Value());
+                tr = (STransaction) ((n % 7 == 1)
+                        ? tr.Add(new SDelete(tr, r), tr.curpos)
+                        : tr.Add(new SUpdate(tr, r, new SDict<Long, Serialisable>(ci,
+                                new SInteger(n % 1000 + pass)).Add(cs, new SString("u" + pass))
+                                .Add(cd, Serialisable.Null)), tr.curpos));
+            }
+            server.Commit(tr);
+        }
+        tr = server.Transact();
+        tr = TestServer.Table(tr, "G", "A", "A", Types.SInteger, "B", Types.SInteger);
+        var g = table(tr, "G");
+        tr = (STransaction) tr.Add(new SColumn(tr, g.uid, Types.SInteger,
+                new SDict<>("GENERATED", new SFunction(SFunction.Func.Generated, new SInteger(7)))),
+                "C", tr.curpos);
+        server.Commit(tr);
+        server.Load("G", 20, i -> new Serialisable[] {
+            new SInteger(i), new SInteger(i * 3), Serialisable.Null });
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        STable.projections = true;
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        STable.projections = true;
+        Runtime.getRuntime().gc();
+    }
+
+    /// Forget the records decoded so far, so that the next reads go to the log
+    private static void clearCache() throws Exception {
+        RecordCache.shared.Clear(SDatabase.Open(null, server.name).File());
+    }
+
+    private static String run(StrongConnect conn, String caseName, String q) throws Exception {
+        tml.setTestCaseName(caseName + ": " + q);
+        tml.setInitialTimeAndMemory();
+        var rs = conn.ExecuteQuery(q);
+        tml.logTimeAndMemoryUsage(rs.getLength());
+        var sb = new StringBuilder();
+        for (var i = 0; i < rs.getLength(); i++)
+            sb.append(rs.get(i)).append('\n');
+        return sb.toString();
+    }
+
+    @Test
+    public void testQueries() throws Exception {
+        var conn = server.Connect();
+        try {
+            for (var q : queries) {
+                var sql = (String) q[0];
+                clearCache();
+                var n = RecordCache.shared.Count();
+                var projected = run(conn, "Projected", sql);
+                // partial records are not cached
+                assertEquals(sql, (Boolean) q[1], RecordCache.shared.Count() == n);
+                STable.projections = false;
+                clearCache();
+                var full = run(conn, "Full", sql);
+                STable.projections = true;
+                assertTrue(sql, full.length() > 0);
+                assertEquals(sql, full, projected);
+            }
+        } finally {
+            conn.Close();
+        }
+    }
+
+    /// select cs from t, with the column objects themselves as the expressions
+    private static SSelectStatement select(SDatabase db, STable t, String... cs) throws Exception {
+        SDict<Integer, Ident> a = null;
+        SDict<Integer, Serialisable> c = null;
+        for (var i = 0; i < cs.length; i++) {
+            var sc = t.FindForRole(db, cs[i]);
+            a = (a == null) ? new SDict<>(i, new Ident(sc.uid, cs[i])) : a.Add(i, new Ident(sc.uid, cs[i]));
+            c = (c == null) ? new SDict<>(i, (Serialisable) sc) : c.Add(i, sc);
+        }
+        return new SSelectStatement(false, a, c, t, null);
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        var db = SDatabase.Open(null, server.name);
+        var p = table(db, "P");
+        var cs = p.Projection(db, select(db, p, "K", "S"));
+        assertEquals(2, cs.Length);
+        assertTrue(cs.Contains(column(db, "K")) && cs.Contains(column(db, "S")));
+        assertNull(p.Projection(db, select(db, p, columns))); // all of them
+        assertNull(p.Projection(db, select(db, p))); // select from P
+        assertNull(p.Projection(db, p)); // not a select
+        var g = table(db, "G");
+        assertNull(g.Projection(db, select(db, g, "A")));
+        STable.projections = false;
+        assertNull(p.Projection(db, select(db, p, "K", "S")));
+    }
+
+    @Test
+    public void testRecords() throws Exception {
+        var db = SDatabase.Open(null, server.name);
+        var t = table(db, "P");
+        var uids = new long[columns.length];
+        for (var i = 0; i < columns.length; i++)
+            uids[i] = column(db, columns[i]);
+        // single columns, pairs, and all but one
+        var sets = new ArrayList<SDict<Long, Boolean>>();
+        for (var i = 0; i < uids.length; i++) {
+            sets.add(new SDict<>(uids[i], true));
+            sets.add(new SDict<>(uids[i], true).Add(uids[(i + 3) % uids.length], true));
+            SDict<Long, Boolean> s = null;
+            for (var j = 0; j < uids.length; j++)
+                if (j != i)
+                    s = (s == null) ? new SDict<>(uids[j], true) : s.Add(uids[j], true);
+            sets.add(s);
+        }
+        clearCache();
+        var updates = 0;
+        for (var b = t.rows.Cursor(); b.Advance();) {
+            var pos = b.Value();
+            var rs = new SRecord[sets.size()];
+            for (var i = 0; i < rs.length; i++)
+                rs[i] = db.Get(pos, sets.get(i)); // before the full record is cached
+            var full = db.Get(pos);
+            assertFalse(full.partial);
+            if (full instanceof SUpdate)
+                updates++;
+            for (var i = 0; i < rs.length; i++) {
+                var r = rs[i];
+                var cs = sets.get(i);
+                assertTrue(r.partial);
+                assertEquals(full.getClass(), r.getClass());
+                assertEquals(full.uid, r.uid);
+                assertEquals(full.table, r.table);
+                assertEquals(full.Defpos(), r.Defpos());
+                var n = 0;
+                for (var f = full.fields.First(); f != null; f = f.Next())
+                    if (cs.Contains(f.getValue().key)) {
+                        assertEquals(String.valueOf(f.getValue().val),
+                                String.valueOf(r.fields.Lookup(f.getValue().key)));
+                        n++;
+                    }
+                assertEquals(n, (r.fields == null) ? 0 : r.fields.Length);
+            }
+        }
+        assertTrue(updates > 0);
+    }
+
+    @Test
+    public void testFull() throws Exception {
+        var db = SDatabase.Open(null, server.name);
+        var ck = column(db, "K");
+        var ci = column(db, "I");
+        var cw = column(db, "W");
+        var only = new SDict<Long, Boolean>(ci, true);
+        clearCache();
+        var b = table(db, "P").rows.Cursor();
+        assertTrue(b.Advance());
+        var p = db.Get(b.Value(), only);
+        assertTrue(b.Advance());
+        var q = db.Get(b.Value(), only);
+        assertTrue(p.partial && q.partial);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        var fp = tr.Full(p);
+        assertFalse(fp.partial);
+        assertEquals(db.Get(b.Value()).fields.Length, tr.Full(q).fields.Length);
+        tr = (STransaction) tr.Add(new SUpdate(tr, fp,
+                new SDict<Long, Serialisable>(ci, new SInteger(-1))), tr.curpos);
+        tr = (STransaction) tr.Add(new SDelete(tr, tr.Full(q)), tr.curpos);
+        db = tr.Commit().key;
+        clearCache();
+        // the update kept the fields that were not decoded
+        var t = table(db, "P");
+        var r = db.Get(t.rows.Lookup(fp.Defpos()));
+        assertEquals(String.valueOf(fp.fields.Lookup(ck)), String.valueOf(r.fields.Lookup(ck)));
+        assertEquals(String.valueOf(fp.fields.Lookup(cw)), String.valueOf(r.fields.Lookup(cw)));
+        assertEquals("Integer -1", String.valueOf(r.fields.Lookup(ci)));
+        assertNull(t.rows.Lookup(q.Defpos()));
+    }
+}
@@ -0,0 +1,112 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * An autocommit transaction that only reads (as for a Get request) is not
+ * committed by MaybeAutoCommit: compare the time for Commit on the same work.
+ * @author Malcolm
+ */
+public class ReadOnlyCommitTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = 10000;
+    private static final int reads = 100000;
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "ReadOnlyCommitTest";
+    private static long[] rows;
+
+    public ReadOnlyCommitTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        tml = new TimeAndMemoryLogger();
+        new File(path, name).delete();
+        new File(path, name + ".ckpt").delete();
+        var db = SDatabase.Open(path, name);
+        var tr = db.Transact(new ReaderBase() {}, false);
+        var tb = new STable(tr);
+        tr = (STransaction) tr.Add(tb, "T", tr.curpos);
+        tr = (STransaction) tr.Add(new SColumn(tr, tb.uid, Types.SInteger,
+                new SDict<String, SFunction>()), "A", tr.curpos);
+        var a = ((STable) tr.objects.get(tb.uid)).FindForRole(tr, "A").uid;
+        tr = (STransaction) tr.Add(new SIndex(tr, tb.uid, true, -1L,
+                new SList<Long>(a)), tr.curpos);
+        db = tr.Commit().key;
+        tr = db.Transact(new ReaderBase() {}, false);
+        var t = (STable) tr.objects.get(tr.role.globalNames.get("T"));
+        a = t.FindForRole(tr, "A").uid;
+        for (var i = 0; i < numberOfRows; i++)
+            tr = (STransaction) tr.Add(new SRecord(tr, t.uid,
+                    new SDict<Long, Serialisable>(a, new SInteger(i))), tr.curpos);
+        db = tr.Commit().key;
+        t = (STable) db.objects.get(t.uid);
+        rows = new long[t.rows.Length];
+        var i = 0;
+        for (var c = t.rows.Cursor(); c.Advance();)
+            rows[i++] = c.LongKey();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        SDatabase.Open(path, name).Close();
+        new File(path, name).delete();
+        new File(path, name + ".ckpt").delete();
+        try {
+            tml.writeToCSV("ReadOnlyCommitTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private void run(String caseName, boolean commit) throws Exception {
+        var db = SDatabase.Open(path, name);
+        var length = db.File().length();
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        var s = System.nanoTime();
+        for (var i = 0; i < reads; i++) {
+            var tr = db.Transact(new ReaderBase() {}, true);
+            assertNotNull(tr.Get(rows[i % rows.length]));
+            var ss = commit ? tr.Commit() : tr.MaybeAutoCommit();
+            if (!commit)
+                assertSame(db, ss.key);
+            db = ss.key;
+        }
+        var el = System.nanoTime() - s;
+        tml.logTimeAndMemoryUsage(reads);
+        assertEquals(length, db.File().length());
+        System.out.println(caseName + ": " + reads + " reads in " + el / 1000000
+                + "ms (" + reads * 1000000000L / el + "/s)");
+    }
+
+    @Test
+    public void testCommit() throws Exception {
+        run("Commit", true);
+    }
+
+    @Test
+    public void testMaybeAutoCommit() throws Exception {
+        run("MaybeAutoCommit", false);
+    }
+}
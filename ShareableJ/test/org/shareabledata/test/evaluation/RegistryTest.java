@@ -0,0 +1,143 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Throughput of SDatabase.Open and Transact (and Commit) from many threads
+ * on a server with several databases: the registry of open databases is
+ * read without locking, and commits to different databases do not contend.
+ * @author Malcolm
+ */
+public class RegistryTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int databases = 8;
+    private static final int threads = 16;
+    private static final int operations = 200000; // per case, over all threads
+    private static final String path = System.getProperty("java.io.tmpdir");
+    private static final String name = "RegistryTest";
+
+    public RegistryTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        tml = new TimeAndMemoryLogger();
+        for (var i = 0; i < databases; i++) {
+            new File(path, name + i).delete();
+            new File(path, name + i + ".ckpt").delete();
+            var db = SDatabase.Open(path, name + i);
+            var tr = db.Transact(new ReaderBase() {}, false);
+            var tb = new STable(tr);
+            tr = (STransaction) tr.Add(tb, "T", tr.curpos);
+            tr = (STransaction) tr.Add(new SColumn(tr, tb.uid, Types.SInteger,
+                    new SDict<String, SFunction>()), "A", tr.curpos);
+            var a = ((STable) tr.objects.get(tb.uid)).FindForRole(tr, "A").uid;
+            tr = (STransaction) tr.Add(new SIndex(tr, tb.uid, true, -1L,
+                    new SList<Long>(a)), tr.curpos);
+            tr.Commit();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        for (var i = 0; i < databases; i++) {
+            SDatabase.Open(path, name + i).Close();
+            new File(path, name + i).delete();
+            new File(path, name + i + ".ckpt").delete();
+        }
+        try {
+            tml.writeToCSV("RegistryTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static int rows(SDatabase db) throws Exception {
+        var t = (STable) db.objects.get(db.role.globalNames.get("T"));
+        return (t.rows == null) ? 0 : t.rows.Length;
+    }
+
+    /// <summary>
+    /// Each thread opens a database and starts a transaction, and every
+    /// commitEvery-th time inserts a row and commits it
+    /// </summary>
+    private int run(String caseName, int commitEvery) throws Exception {
+        var committed = new AtomicInteger();
+        var failed = new AtomicInteger();
+        var ts = new ArrayList<Thread>();
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        for (var k = 0; k < threads; k++) {
+            var t0 = k;
+            ts.add(new Thread(() -> {
+                for (var i = t0; i < operations; i += threads)
+                    try {
+                        var db = SDatabase.Open(path, name + (i % databases));
+                        var tr = db.Transact(new ReaderBase() {}, false);
+                        assertEquals(name + (i % databases), tr.name);
+                        if (commitEvery == 0 || i % commitEvery != 0)
+                            continue;
+                        var t = (STable) tr.objects.get(tr.role.globalNames.get("T"));
+                        var a = t.FindForRole(tr, "A").uid;
+                        tr = (STransaction) tr.Add(new SRecord(tr, t.uid,
+                                new SDict<Long, Serialisable>(a, new SInteger(i))), tr.curpos);
+                        tr.Commit();
+                        committed.incrementAndGet();
+                    } catch (Exception e) {
+                        failed.incrementAndGet(); // a conflict
+                    }
+            }));
+        }
+        var s = System.nanoTime();
+        for (var t : ts)
+            t.start();
+        for (var t : ts)
+            t.join();
+        var el = System.nanoTime() - s;
+        tml.logTimeAndMemoryUsage(operations);
+        System.out.println(caseName + ": " + databases + " databases, " + threads
+                + " threads, " + operations + " operations in " + el / 1000000 + "ms ("
+                + operations * 1000000000L / el + "/s), " + committed.get()
+                + " commits, " + failed.get() + " failed");
+        return committed.get();
+    }
+
+    @Test
+    public void testOpenTransact() throws Exception {
+        run("Open and Transact", 0);
+    }
+
+    @Test
+    public void testOpenTransactCommit() throws Exception {
+        var before = 0;
+        for (var i = 0; i < databases; i++)
+            before += rows(SDatabase.Open(path, name + i));
+        var n = run("Open, Transact and Commit", 100);
+        var after = 0;
+        for (var i = 0; i < databases; i++)
+            after += rows(SDatabase.Open(path, name + i));
+        assertEquals(before + n, after);
+    }
+}
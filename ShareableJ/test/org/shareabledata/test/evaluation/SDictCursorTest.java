@@ -0,0 +1,140 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.IOException;
+import java.util.Random;
+import java.util.stream.StreamSupport;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Full scans of an SDict and an SLongDict with Bookmarks,
+ * with SDictCursor and with ForEach.
+ * The logged memory figures show the allocation for each kind of scan.
+ * @author Malcolm
+ */
+public class SDictCursorTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfElements = 200000;
+    private static SDict<Long, Long> dict;
+    private static SLongDict<Long> longDict;
+    private static long sum = 0;
+
+    public SDictCursorTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+        var r = new Random(0);
+        var k = r.nextLong();
+        dict = new SDict<Long, Long>(SDict.LARGE, k, k);
+        longDict = new SLongDict<Long>(SDict.LARGE, k, k);
+        sum = k;
+        for (int i = 1; i < numberOfElements; i++) {
+            k = r.nextLong();
+            dict = dict.Add(k, k);
+            longDict = longDict.AddLong(k, k);
+            sum += k;
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("SDictCursorTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private void bookmarkCase(String caseName, SDict<Long, Long> d) {
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        long s = 0;
+        for (var b = d.First(); b != null; b = b.Next())
+            s += b.getValue().val;
+        tml.logTimeAndMemoryUsage(numberOfElements);
+        assertEquals(sum, s);
+    }
+
+    private void cursorCase(String caseName, SDict<Long, Long> d) {
+        tml.setTestCaseName(caseName);
+        tml.setInitialTimeAndMemory();
+        long s = 0;
+        var n = 0;
+        Long last = null;
+        for (var c = d.Cursor(); c.Advance(); n++) {
+            assertTrue(last == null || last < c.Key());
+            last = c.Key();
+            s += c.Value();
+        }
+        tml.logTimeAndMemoryUsage(numberOfElements);
+        assertEquals(numberOfElements, n);
+        assertEquals(sum, s);
+    }
+
+    private void forEachCase(String caseName, SDict<Long, Long> d) {
+        tml.setTestCaseName(caseName);
+        var s = new long[1];
+        tml.setInitialTimeAndMemory();
+        d.ForEach((k, v) -> s[0] += v);
+        tml.logTimeAndMemoryUsage(numberOfElements);
+        assertEquals(sum, s[0]);
+    }
+
+    @Test
+    public void testBookmarkScan() {
+        bookmarkCase("SDict bookmark scan", dict);
+        bookmarkCase("SLongDict bookmark scan", longDict);
+    }
+
+    @Test
+    public void testCursorScan() {
+        cursorCase("SDict cursor scan", dict);
+        cursorCase("SLongDict cursor scan", longDict);
+    }
+
+    @Test
+    public void testForEach() {
+        forEachCase("SDict ForEach", dict);
+        forEachCase("SLongDict ForEach", longDict);
+    }
+
+    @Test
+    public void testCursorFrom() {
+        var k = dict.First().Next().Next().getValue().key;
+        var c = dict.Cursor(k);
+        assertEquals(numberOfElements - 2, c.estimateSize());
+        assertTrue(c.Advance());
+        assertEquals(k, c.Key());
+        var e = longDict.Cursor((long) k);
+        assertTrue(e.Advance());
+        assertEquals((long) k, e.LongKey());
+        assertEquals(numberOfElements - 3, e.estimateSize());
+    }
+
+    @Test
+    public void testSpliterator() {
+        assertEquals(numberOfElements,
+                StreamSupport.stream(dict.Cursor(), false).count());
+        assertEquals(sum, StreamSupport.stream(longDict.Cursor(), false)
+                .mapToLong(s -> s.val).sum());
+    }
+}
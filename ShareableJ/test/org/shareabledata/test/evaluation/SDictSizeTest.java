@@ -0,0 +1,168 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Sweep of SDict node sizes for insert, lookup, iteration and delete,
+ * with Long and String keys. The case counter in the output is the node size.
+ * @author Malcolm
+ */
+public class SDictSizeTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int[] sizes = { 8, 16, 32, 64, 128, 256 };
+    private static final int numberOfElements = 100000;
+
+    public SDictSizeTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("SDictSizeTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static Long[] longKeys() {
+        var r = new Random(0);
+        var ks = new Long[numberOfElements];
+        for (int i = 0; i < numberOfElements; i++)
+            ks[i] = r.nextLong();
+        return ks;
+    }
+
+    private static String[] stringKeys() {
+        var ls = longKeys();
+        var ks = new String[numberOfElements];
+        for (int i = 0; i < numberOfElements; i++)
+            ks[i] = "Key " + ls[i];
+        return ks;
+    }
+
+    private static <K extends Comparable> SDict<K, Integer> build(int size, K[] ks) {
+        var d = new SDict<K, Integer>(size, ks[0], 0);
+        for (int i = 1; i < ks.length; i++)
+            d = d.Add(ks[i], i);
+        return d;
+    }
+
+    private <K extends Comparable> void insertCase(String caseName, K[] ks) {
+        tml.setTestCaseName(caseName);
+        for (var s : sizes) {
+            tml.setInitialTimeAndMemory();
+            var d = build(s, ks);
+            tml.logTimeAndMemoryUsage(s);
+            assertEquals(ks.length, d.Length);
+            assertEquals(s, d.size);
+        }
+    }
+
+    private <K extends Comparable> void lookupCase(String caseName, K[] ks) {
+        tml.setTestCaseName(caseName);
+        for (var s : sizes) {
+            var d = build(s, ks);
+            tml.setInitialTimeAndMemory();
+            for (int i = 0; i < ks.length; i++)
+                assertEquals(i, (int) d.Lookup(ks[i]));
+            tml.logTimeAndMemoryUsage(s);
+        }
+    }
+
+    private <K extends Comparable> void iterationCase(String caseName, K[] ks) {
+        tml.setTestCaseName(caseName);
+        for (var s : sizes) {
+            var d = build(s, ks);
+            tml.setInitialTimeAndMemory();
+            var n = 0;
+            K last = null;
+            for (var b = d.First(); b != null; b = b.Next(), n++) {
+                var k = b.getValue().key;
+                assertTrue(last == null || last.compareTo(k) < 0);
+                assertEquals(n, b.Position);
+                last = k;
+            }
+            tml.logTimeAndMemoryUsage(s);
+            assertEquals(ks.length, n);
+        }
+    }
+
+    private <K extends Comparable> void deleteCase(String caseName, K[] ks) {
+        tml.setTestCaseName(caseName);
+        for (var s : sizes) {
+            var d = build(s, ks);
+            tml.setInitialTimeAndMemory();
+            for (int i = 0; i < ks.length; i += 2)
+                d = d.Remove(ks[i]);
+            tml.logTimeAndMemoryUsage(s);
+            assertEquals(ks.length / 2, d.Length);
+            for (int i = 0; i < ks.length; i++)
+                assertEquals(i % 2 == 1, d.Contains(ks[i]));
+        }
+    }
+
+    @Test
+    public void testInsertLong() {
+        insertCase("SDict Long insert", longKeys());
+    }
+
+    @Test
+    public void testLookupLong() {
+        lookupCase("SDict Long lookup", longKeys());
+    }
+
+    @Test
+    public void testIterationLong() {
+        iterationCase("SDict Long iteration", longKeys());
+    }
+
+    @Test
+    public void testDeleteLong() {
+        deleteCase("SDict Long delete", longKeys());
+    }
+
+    @Test
+    public void testInsertString() {
+        insertCase("SDict String insert", stringKeys());
+    }
+
+    @Test
+    public void testLookupString() {
+        lookupCase("SDict String lookup", stringKeys());
+    }
+
+    @Test
+    public void testIterationString() {
+        iterationCase("SDict String iteration", stringKeys());
+    }
+
+    @Test
+    public void testDeleteString() {
+        deleteCase("SDict String delete", stringKeys());
+    }
+}
@@ -0,0 +1,185 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.io.IOException;
+import java.util.Random;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * SLongDict against SDict&lt;Long,V&gt; for insert, lookup and merge,
+ * and as an SDict to code that walks SDict's tree itself.
+ * The logged memory figures give the allocation for each case.
+ * @author Malcolm
+ */
+public class SLongDictTest {
+
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfElements = 100000;
+    private static long[] keys;
+
+    public SLongDictTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() {
+        tml = new TimeAndMemoryLogger();
+        var r = new Random(0);
+        keys = new long[numberOfElements];
+        for (int i = 0; i < numberOfElements; i++)
+            keys[i] = r.nextLong();
+    }
+
+    @AfterClass
+    public static void tearDownClass() {
+        try {
+            tml.writeToCSV("SLongDictTestOutput_Java.csv");
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static SDict<Long, Integer> buildSDict() {
+        var d = new SDict<Long, Integer>(SDict.LARGE, keys[0], 0);
+        for (int i = 1; i < numberOfElements; i++)
+            d = d.Add(keys[i], i);
+        return d;
+    }
+
+    private static SLongDict<Integer> buildSLongDict() {
+        var d = new SLongDict<Integer>(SDict.LARGE, keys[0], 0);
+        for (int i = 1; i < numberOfElements; i++)
+            d = d.AddLong(keys[i], i);
+        return d;
+    }
+
+    @Test
+    public void testInsertSDict() {
+        tml.setTestCaseName("SDict<Long> insert");
+        tml.setInitialTimeAndMemory();
+        var d = buildSDict();
+        tml.logTimeAndMemoryUsage(numberOfElements);
+        assertEquals(numberOfElements, d.Length);
+    }
+
+    @Test
+    public void testInsertSLongDict() {
+        tml.setTestCaseName("SLongDict insert");
+        tml.setInitialTimeAndMemory();
+        var d = buildSLongDict();
+        tml.logTimeAndMemoryUsage(numberOfElements);
+        assertEquals(numberOfElements, d.Length);
+    }
+
+    @Test
+    public void testLookupSDict() {
+        var d = buildSDict();
+        tml.setTestCaseName("SDict<Long> lookup");
+        tml.setInitialTimeAndMemory();
+        for (int i = 0; i < numberOfElements; i++)
+            assertEquals(i, (int) d.Lookup(keys[i]));
+        tml.logTimeAndMemoryUsage(numberOfElements);
+    }
+
+    @Test
+    public void testLookupSLongDict() {
+        var d = buildSLongDict();
+        tml.setTestCaseName("SLongDict lookup");
+        tml.setInitialTimeAndMemory();
+        for (int i = 0; i < numberOfElements; i++)
+            assertEquals(i, (int) d.Lookup(keys[i]));
+        tml.logTimeAndMemoryUsage(numberOfElements);
+    }
+
+    @Test
+    public void testSameAsSDict() {
+        var d = buildSDict();
+        var e = buildSLongDict();
+        for (int i = 0; i < numberOfElements; i += 3)
+        {
+            d = d.Remove(keys[i]);
+            e = e.Remove(keys[i]);
+        }
+        assertEquals(d.Length, e.Length);
+        var b = d.First();
+        for (var c = e.First(); c != null; c = c.Next(), b = b.Next())
+        {
+            assertEquals(b.getValue().key, c.getValue().key);
+            assertEquals(b.getValue().val, c.getValue().val);
+            assertEquals(b.Position, c.Position);
+        }
+        assertNull(b);
+        var k = keys[1];
+        assertEquals(d.PositionAt(k).Position, e.PositionAt(k).Position);
+    }
+
+    @Test
+    public void testBuckets() {
+        // code that walks SDict's tree of SBuckets itself must see the
+        // entries of an SLongDict, not an empty tree
+        var e = buildSLongDict();
+        SDict<Long, Integer> d = e;
+        var r = d.Root();
+        assertNotNull(r);
+        assertEquals(e.Length, r.total);
+        for (int i = 0; i < numberOfElements; i += 997)
+        {
+            assertEquals(i, (int) r.Lookup(keys[i]));
+            var b = (SDictBookmark<Long, Integer>) d.PositionAt(keys[i]);
+            assertEquals(keys[i], (long) b.Bmk().getKey());
+            assertEquals(i, (int) b.Bmk().getValue());
+        }
+        assertNull(new SLongDict<Integer>(1L, 1).Remove(1L).Root());
+    }
+
+    private static void assertSameEntries(SDict<Long, Integer> d, SDict<Long, Integer> e) {
+        assertEquals(d.Length, e.Length);
+        var b = d.First();
+        for (var c = e.First(); c != null; c = c.Next(), b = b.Next())
+        {
+            assertEquals(b.getValue().key, c.getValue().key);
+            assertEquals(b.getValue().val, c.getValue().val);
+        }
+        assertNull(b);
+    }
+
+    @Test
+    public void testMerge() {
+        var d = buildSDict();
+        var e = buildSLongDict();
+        // every other key gets a new value, and there are as many new keys
+        var u = new SDict<Long, Integer>(SDict.LARGE, keys[0], -1);
+        var v = new SLongDict<Integer>(SDict.LARGE, keys[0], -1);
+        for (int i = 0; i < numberOfElements; i += 2)
+        {
+            u = u.Add(keys[i], -i).Add(keys[i] ^ 1, i);
+            v = v.AddLong(keys[i], -i).AddLong(keys[i] ^ 1, i);
+        }
+        var m = d.Merge(u);
+        tml.setTestCaseName("SLongDict merge");
+        tml.setInitialTimeAndMemory();
+        var n = e.Merge(v);
+        tml.logTimeAndMemoryUsage(numberOfElements);
+        assertSameEntries(m, n);
+        assertSameEntries(m, e.Merge(u));
+        for (int i = 0; i < numberOfElements; i++)
+            assertEquals((i % 2 == 0) ? -i : i, (int) n.Lookup(keys[i]));
+        n = n.Remove(keys[1]).AddLong(keys[1], 1);
+        assertEquals(1, (int) n.Lookup(keys[1]));
+    }
+}
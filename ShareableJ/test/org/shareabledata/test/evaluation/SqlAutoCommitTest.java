@@ -0,0 +1,117 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Autocommitted SQL requests on tables created with SQL, whose columns have
+ * no constraints: each insert, update and delete is committed by the server
+ * (see STransaction.MaybeAutoCommit), and is still there when the database
+ * is read again from its file. Then the time for updates one at a time.
+ * There are 1000 updates unless -Dupdates says otherwise.
+ * @author Malcolm
+ */
+public class SqlAutoCommitTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfUpdates = Integer.getInteger("updates", 1000);
+
+    public SqlAutoCommitTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("SqlAutoCommitTest");
+        tml = server.tml;
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static int intOf(Document d, String c) {
+        return ((Number) d.get(c)).intValue();
+    }
+
+    /// Read the database from its file again
+    private static void reload() throws Exception {
+        SDatabase.Open(StrongServer.path, server.name).Close();
+    }
+
+    @Test
+    public void testUpdateDelete() throws Exception {
+        var conn = server.Connect();
+        try {
+            conn.ExecuteNonQuery("create table A(B integer,C integer,D string) primary key(B)");
+            conn.ExecuteNonQuery("insert A values(1,10,'one')");
+            conn.ExecuteNonQuery("insert A values(2,20,'two')");
+            conn.ExecuteNonQuery("insert A values(3,30,'three')");
+            assertEquals(Types.Done, conn.ExecuteNonQuery("update A where B=2 set C=19"));
+            assertEquals(Types.Done, conn.ExecuteNonQuery("update A where B=1 set D='ONE'"));
+            assertEquals(Types.Done, conn.ExecuteNonQuery("delete A where B=3"));
+        } finally {
+            conn.Close();
+        }
+        reload();
+        conn = server.Connect();
+        try {
+            var rs = conn.ExecuteQuery("select from A");
+            assertEquals(2, rs.getLength());
+            assertEquals(1, intOf(rs.get(0), "B"));
+            assertEquals("ONE", rs.get(0).get("D"));
+            assertEquals(19, intOf(rs.get(1), "C"));
+            assertEquals("two", rs.get(1).get("D"));
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testUpdates() throws Exception {
+        var conn = server.Connect();
+        try {
+            conn.ExecuteNonQuery("create table E(F integer,G integer) primary key(F)");
+            for (var i = 0; i < 10; i++)
+                conn.ExecuteNonQuery("insert E values(" + i + ",0)");
+            tml.setTestCaseName("Updates");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            for (var i = 0; i < numberOfUpdates; i++)
+                conn.ExecuteNonQuery("update E where F=" + (i % 10) + " set G=" + (i + 1));
+            var el = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfUpdates);
+            TestServer.Report("Updates", numberOfUpdates, "updates", el);
+        } finally {
+            conn.Close();
+        }
+        reload();
+        conn = server.Connect();
+        try {
+            var rs = conn.ExecuteQuery("select from E");
+            assertEquals(10, rs.getLength());
+            for (var i = 0; i < 10; i++)
+                assertEquals(numberOfUpdates - 9 + i, intOf(rs.get(i), "G"));
+        } finally {
+            conn.Close();
+        }
+    }
+}
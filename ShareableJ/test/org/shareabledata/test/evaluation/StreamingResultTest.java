@@ -0,0 +1,138 @@
+/*
+ * To change this license header, choose License Headers in Project Properties.
+ * To change this template file, choose Tools | Templates
+ * and open the template in the editor.
+ */
+package org.shareabledata.test.evaluation;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import org.junit.After;
+import org.shareabledata.test.common.*;
+import org.shareabledata.*;
+import static org.junit.Assert.*;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * A large query result read with ExecuteQuery (the whole result as one
+ * JSON string) and with a ClientCursor (fetchSize rows at a time): the time
+ * to the first row, the total time, and the peak heap. The server runs in
+ * this process, so the peak heap is for the server and client together.
+ * The number of rows is 1000000 unless -Drows says otherwise.
+ * @author Malcolm
+ */
+public class StreamingResultTest {
+
+    private static TestServer server;
+    private static TimeAndMemoryLogger tml;
+    private static final int numberOfRows = Integer.getInteger("rows", 1000000);
+
+    public StreamingResultTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        server = new TestServer("StreamingResultTest");
+        tml = server.tml;
+        var tr = TestServer.Table(server.Transact(), "T", "A",
+                "A", Types.SInteger, "B", Types.SString);
+        server.Commit(tr);
+        server.Load("T", numberOfRows, j -> new Serialisable[] {
+            new SInteger(j), new SString("Row " + j) });
+        server.Start();
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+        server.Stop();
+    }
+
+    @After
+    public void tearDown() {
+        Runtime.getRuntime().gc();
+    }
+
+    private static void resetPeak() {
+        Runtime.getRuntime().gc();
+        for (var p : ManagementFactory.getMemoryPoolMXBeans())
+            if (p.getType() == MemoryType.HEAP)
+                p.resetPeakUsage();
+    }
+
+    private static long peak() {
+        var r = 0L;
+        for (var p : ManagementFactory.getMemoryPoolMXBeans())
+            if (p.getType() == MemoryType.HEAP)
+                r += p.getPeakUsage().getUsed();
+        return r;
+    }
+
+    private static void report(String caseName, long first, long total, long heap) {
+        TestServer.Report(caseName, numberOfRows, "rows", total, ", first row after "
+                + first / 1000 + "us, peak heap " + heap / (1024 * 1024) + "MB");
+    }
+
+    @Test
+    public void testExecuteQuery() throws Exception {
+        var conn = server.Connect();
+        try {
+            resetPeak();
+            tml.setTestCaseName("ExecuteQuery");
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var rs = conn.ExecuteQuery("select from T");
+            var b = rs.items.First();
+            var first = System.nanoTime() - s;
+            var n = 0;
+            for (; b != null; b = b.Next())
+                assertEquals(n++, ((Number) b.getValue().get("A")).intValue());
+            var total = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            assertEquals(numberOfRows, n);
+            report("ExecuteQuery", first, total, peak());
+        } finally {
+            conn.Close();
+        }
+    }
+
+    private void cursor(int fetchSize) throws Exception {
+        var caseName = "Cursor, fetch size " + fetchSize;
+        var conn = server.Connect();
+        try {
+            resetPeak();
+            tml.setTestCaseName(caseName);
+            tml.setInitialTimeAndMemory();
+            var s = System.nanoTime();
+            var c = conn.OpenCursor("select from T", fetchSize);
+            var d = c.next();
+            var first = System.nanoTime() - s;
+            var n = 0;
+            for (; d != null; d = c.hasNext() ? c.next() : null)
+                assertEquals(n++, ((Number) d.get("A")).intValue());
+            var total = System.nanoTime() - s;
+            tml.logTimeAndMemoryUsage(numberOfRows);
+            assertEquals(numberOfRows, n);
+            report(caseName, first, total, peak());
+            // the connection is usable again
+            c = conn.OpenCursor("select from T", fetchSize);
+            assertEquals(0, ((Number) c.next().get("A")).intValue());
+            c.Close();
+            assertFalse(conn.ExecuteQuery("select from _Tables").IsEmpty());
+        } finally {
+            conn.Close();
+        }
+    }
+
+    @Test
+    public void testCursor100() throws Exception {
+        cursor(100);
+    }
+
+    @Test
+    public void testCursor1000() throws Exception {
+        cursor(1000);
+    }
+}